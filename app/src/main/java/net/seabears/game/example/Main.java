@@ -2,6 +2,8 @@ package net.seabears.game.example;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -26,14 +28,21 @@ import net.seabears.game.guis.fonts.creator.FontType;
 import net.seabears.game.guis.fonts.creator.MetaFile;
 import net.seabears.game.guis.fonts.creator.TextMeshCreator;
 import net.seabears.game.models.TexturedModel;
+import net.seabears.game.particles.GpuParticleShader;
+import net.seabears.game.particles.GpuParticles;
 import net.seabears.game.particles.ParticleSystem;
 import net.seabears.game.particles.ParticleTexture;
+import net.seabears.game.particles.ParticleUpdateShader;
 import net.seabears.game.render.DisplayManager;
 import net.seabears.game.render.Loader;
 import net.seabears.game.skybox.Skybox;
 import net.seabears.game.skybox.SkyboxRenderer;
-import net.seabears.game.terrains.FakePerlinNoise;
+import net.seabears.game.spatial.EntityList;
+import net.seabears.game.terrains.GradientNoise;
 import net.seabears.game.terrains.Terrain;
+import net.seabears.game.terrains.TerrainCache;
+import net.seabears.game.terrains.TerrainGrid;
+import net.seabears.game.terrains.TerrainStreamer;
 import net.seabears.game.textures.ModelTexture;
 import net.seabears.game.textures.TerrainTexture;
 import net.seabears.game.textures.TerrainTexturePack;
@@ -50,6 +59,15 @@ public class Main extends App {
   private static final float FOV = 70.0f;
   private static final float NEAR_PLANE = 0.1f;
   private static final float FAR_PLANE = 1000.0f;
+  private static final int MODEL_LODS = 3;
+  private static final float TERRAIN_SIZE = 800.0f;
+  private static final float TERRAIN_LOAD_DISTANCE = 800.0f;
+  private static final long TERRAIN_MEMORY_LIMIT = 256L << 20;
+  private static final long TERRAIN_UPLOAD_BUDGET_NS = TimeUnit.MILLISECONDS.toNanos(2L);
+  // the same seed gives the same terrain every run
+  private static final long TERRAIN_SEED = 20160101L;
+  private static final double TERRAIN_FREQUENCY = 1.0 / 32.0;
+  private static final Path TERRAIN_CACHE = Paths.get("build", "terrain-cache");
   private static final float GRAVITY = -32.0f;
   private static final Vector3f SKY_COLOR = new Vector3f(0.5f);
   private static final long DAY_LENGTH_MS = TimeUnit.HOURS.toMillis(1L);
@@ -58,14 +76,16 @@ public class Main extends App {
   private Camera camera;
   private Player player;
   private Skybox skybox;
-  private final List<Entity> entities = new ArrayList<>();
-  private final List<Entity> nmEntities = new ArrayList<>();
-  private final List<Terrain> terrains = new ArrayList<>();
+  private TerrainStreamer terrainStreamer;
+  private final List<Entity> entities = new EntityList();
+  private final List<Entity> nmEntities = new EntityList();
   private final List<WaterTile> water = new ArrayList<>();
   private final List<ParticleSystem> particles = new ArrayList<>();
+  private final List<GpuParticles> gpuParticles = new ArrayList<>();
   private final List<Light> lights = new ArrayList<>();
   private final List<GuiTexture> guis = new ArrayList<>();
   private final List<GuiText> text = new ArrayList<>();
+  private final List<TexturedModel> impostors = new ArrayList<>();
 
   public Main() {
     super(FOV, NEAR_PLANE, FAR_PLANE, SKY_COLOR);
@@ -87,31 +107,37 @@ public class Main extends App {
     /*
      * models
      */
-    final TexturedModel stall = new TexturedModel(loader.loadToVao(ObjFileLoader.load("stall")),
+    final TexturedModel stall = new TexturedModel(loader.loadToVao(ObjFileLoader.load("stall"), MODEL_LODS),
         new ModelTexture(loader.loadTexture("stall"), 1.0f, 10.0f));
     final TexturedModel lamp = new TexturedModel(loader.loadToVao(ObjFileLoader.load("lamp")),
         new ModelTexture(loader.loadTexture("lamp"), 1.0f, 5.0f));
-    final TexturedModel tree = new TexturedModel(loader.loadToVao(ObjFileLoader.load("pine")),
+    final TexturedModel tree = new TexturedModel(loader.loadToVao(ObjFileLoader.load("pine"), MODEL_LODS),
         new ModelTexture(loader.loadTexture("pine"), true, true));
-    final TexturedModel lowPolyTree = new TexturedModel(loader.loadToVao(ObjFileLoader.load("lowPolyTree")),
+    final TexturedModel lowPolyTree = new TexturedModel(loader.loadToVao(ObjFileLoader.load("lowPolyTree"), MODEL_LODS),
         new ModelTexture(loader.loadTexture("lowPolyTree"), 2));
-    final TexturedModel fern = new TexturedModel(loader.loadToVao(ObjFileLoader.load("fern")),
+    final TexturedModel fern = new TexturedModel(loader.loadToVao(ObjFileLoader.load("fern"), MODEL_LODS),
         new ModelTexture(loader.loadTexture("fern"), 2, true, true));
-    final TexturedModel barrel = new TexturedModel(loader.loadToVao(NormalMappedObjFileLoader.load("barrel")),
+    final TexturedModel barrel = new TexturedModel(loader.loadToVao(NormalMappedObjFileLoader.load("barrel"), MODEL_LODS),
         new ModelTexture(loader.loadTexture("barrel"), loader.loadTexture("barrel-normal"), 1, 0.5f, 10.0f, false, false));
+    impostors.add(tree);
+    impostors.add(lowPolyTree);
+    impostors.add(fern);
 
     /*
      * terrains
      */
     final TerrainTexturePack terrainPack = new TerrainTexturePack(
-            new TerrainTexture(loader.loadTexture("grass")),
-            new TerrainTexture(loader.loadTexture("mud")),
-            new TerrainTexture(loader.loadTexture("grass-flowers")),
-            new TerrainTexture(loader.loadTexture("tile-path")));
-    final TerrainTexture terrainBlend = new TerrainTexture(loader.loadTexture("blend-map"));
-    final long[] seeds = FakePerlinNoise.makeSeeds();
-    terrains.add(new Terrain(0, 0, loader, terrainPack, terrainBlend, new FakePerlinNoise(0, 0, 70.0, 3, 0.3, new Random(), seeds)));
-    terrains.add(new Terrain(1, 0, loader, terrainPack, terrainBlend, new FakePerlinNoise(1, 0, 70.0, 3, 0.3, new Random(), seeds)));
+            loader.loadTextureArray("grass", "mud", "grass-flowers", "tile-path"));
+    final TerrainTexture terrainBlend = new TerrainTexture(loader.loadTextureArray("blend-map"), 0);
+    // tiles are generated on the first run and read back from disk after that
+    final TerrainCache terrainCache = new TerrainCache(TERRAIN_CACHE, TERRAIN_SIZE, terrainPack,
+        Collections.singletonMap("blend-map", terrainBlend)::get);
+    terrainStreamer = new TerrainStreamer(loader,
+        (x, z) -> terrainCache.load(x, z, new GradientNoise(TERRAIN_SEED, x, z, 70.0, 4, 0.35, TERRAIN_FREQUENCY), "blend-map"),
+        TERRAIN_SIZE, TERRAIN_LOAD_DISTANCE, TERRAIN_MEMORY_LIMIT, TERRAIN_UPLOAD_BUDGET_NS, Runtime.getRuntime().availableProcessors());
+    // everything is placed around the start, so it has to be there before the first frame
+    terrainStreamer.load(new Vector3f(800, 0, 0));
+    final TerrainGrid terrains = terrainStreamer.getTerrains();
 
 
     /*
@@ -149,8 +175,16 @@ public class Main extends App {
       entities.add(new Entity(new EntityTexture(tree), position(rand, terrains), new Vector3f(), 0.8f));
       entities.add(new Entity(new EntityTexture(lowPolyTree, rand.nextInt(4)), position(rand, terrains), new Vector3f(), 0.4f));
     }
-    for (int i = 0; i < NUM_ENTITIES * 4; ++i) {
-      entities.add(new Entity(new EntityTexture(fern, rand.nextInt(4)), position(rand, terrains), new Vector3f(), 0.6f));
+    final float[] fernPositions = new float[NUM_ENTITIES * 4 * 2];
+    for (int i = 0; i < fernPositions.length; i += 2) {
+      fernPositions[i] = rand.nextFloat() * 1600;
+      fernPositions[i + 1] = rand.nextFloat() * 800;
+    }
+    final float[] fernHeights = new float[NUM_ENTITIES * 4];
+    terrains.getHeights(fernPositions, fernHeights);
+    for (int i = 0; i < fernHeights.length; ++i) {
+      final Vector3f position = new Vector3f(fernPositions[i * 2], fernHeights[i], fernPositions[i * 2 + 1]);
+      entities.add(new Entity(new EntityTexture(fern, rand.nextInt(4)), position, new Vector3f(), 0.6f));
     }
     for (int i = 0; i < 10; ++i) {
       entities.add(new Entity(new EntityTexture(stall), position(rand, terrains), new Vector3f(0.0f, rand.nextInt(360), 0.0f), 1.0f));
@@ -164,9 +198,15 @@ public class Main extends App {
     /*
      * particles
      */
+    final int flare = loader.loadTexture("flare-particle");
     particles.add(new SimpleParticleSystem(
-        new ParticleTexture(loader.loadTexture("flare-particle"), 4),
+        new ParticleTexture(flare, 4),
         new Vector3f(player.getPosition()), 1.0f, GRAVITY, 2.0f, 5));
+    // a fountain too big to simulate on the CPU every frame
+    final GpuParticles fountain = new GpuParticles(loader, new ParticleUpdateShader(), new GpuParticleShader(), projMatrix,
+        new ParticleTexture(flare, 4, true), 0.5f, 100000, 2000);
+    fountain.add(new SimpleParticleSystem(fountain.getTexture(), position(800, 50, terrains), 0.5f, GRAVITY, 2.0f, 500));
+    gpuParticles.add(fountain);
 
     /*
      * GUIs
@@ -218,9 +258,19 @@ public class Main extends App {
     return nmEntities;
   }
 
+  @Override
+  protected List<TexturedModel> getImpostorModels() {
+    return impostors;
+  }
+
+  @Override
+  protected List<GpuParticles> getGpuParticles() {
+    return gpuParticles;
+  }
+
   @Override
   protected List<Terrain> getTerrain() {
-    return terrains;
+    return terrainStreamer.getTerrains();
   }
 
   @Override
@@ -243,6 +293,16 @@ public class Main extends App {
     return skybox;
   }
 
+  @Override
+  protected void update(DisplayManager display, Matrix4f viewMatrix, float secondsDelta) {
+    terrainStreamer.update(player.getPosition());
+  }
+
+  @Override
+  protected void close() {
+    terrainStreamer.close();
+  }
+
   private static Vector3f position(float x, float z, List<Terrain> terrains) {
     return new Vector3f(x, Terrain.getHeight(terrains, x, z), z);
   }
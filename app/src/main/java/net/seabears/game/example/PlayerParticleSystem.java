@@ -1,13 +1,11 @@
 package net.seabears.game.example;
 
-import java.util.Collections;
-import java.util.List;
 import java.util.Random;
 
 import org.joml.Vector3f;
 
 import net.seabears.game.entities.Player;
-import net.seabears.game.particles.Particle;
+import net.seabears.game.particles.ParticleEmitter;
 import net.seabears.game.particles.ParticleSystem;
 import net.seabears.game.particles.ParticleTexture;
 
@@ -28,11 +26,12 @@ public class PlayerParticleSystem implements ParticleSystem {
   }
 
   @Override
-  public List<Particle> generate(float t) {
-        return Collections.singletonList(new Particle(texture, player.getPosition(),
-                new Vector3f((float) Math.sin(Math.toRadians(player.getRotation().y + r.nextInt(10))),
-                        30.0f + r.nextInt(3),
-                        (float) Math.cos(Math.toRadians(player.getRotation().y + r.nextInt(10)))),
-                gravity, ttl, 0.0f, scale));
+  public void generate(float t, ParticleEmitter emitter) {
+    final Vector3f position = player.getPosition();
+    emitter.emit(texture, position.x, position.y, position.z,
+        (float) Math.sin(Math.toRadians(player.getRotation().y + r.nextInt(10))),
+        30.0f + r.nextInt(3),
+        (float) Math.cos(Math.toRadians(player.getRotation().y + r.nextInt(10))),
+        gravity, ttl, 0.0f, scale);
   }
 }
@@ -1,14 +1,8 @@
 package net.seabears.game.example;
 
-import static java.util.stream.Collectors.toCollection;
-import static java.util.stream.IntStream.range;
-
-import java.util.LinkedList;
-import java.util.List;
-
 import org.joml.Vector3f;
 
-import net.seabears.game.particles.Particle;
+import net.seabears.game.particles.ParticleEmitter;
 import net.seabears.game.particles.ParticleSystem;
 import net.seabears.game.particles.ParticleTexture;
 
@@ -30,11 +24,13 @@ public class SimpleParticleSystem implements ParticleSystem {
   }
 
   @Override
-  public List<Particle> generate(float t) {
-    return range(0, n).mapToObj(i -> new Particle(texture, position,
-        new Vector3f((float) Math.random() * 10.0f - 5.0f,
-                     30.0f + (float) Math.random() * 5.0f,
-                     (float) Math.random() * 10.0f - 5.0f),
-        gravity, ttl, 0.0f, scale)).collect(toCollection(LinkedList::new));
+  public void generate(float t, ParticleEmitter emitter) {
+    for (int i = 0; i < n; ++i) {
+      emitter.emit(texture, position.x, position.y, position.z,
+          (float) Math.random() * 10.0f - 5.0f,
+          30.0f + (float) Math.random() * 5.0f,
+          (float) Math.random() * 10.0f - 5.0f,
+          gravity, ttl, 0.0f, scale);
+    }
   }
 }
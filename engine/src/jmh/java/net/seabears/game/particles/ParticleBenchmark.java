@@ -0,0 +1,81 @@
+package net.seabears.game.particles;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Simulates a frame of particles and builds their instance data on pools of 1 to 8 threads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParticleBenchmark {
+  private static final ParticleTexture SMOKE = new ParticleTexture(1, 4);
+  private static final ParticleTexture FIRE = new ParticleTexture(2, 4, true);
+
+  @Param({"1", "2", "4", "8"})
+  public int threads;
+
+  @Param({"100000"})
+  public int particles;
+
+  private ForkJoinPool executor;
+  private ParticlePool pool;
+  private ParticleInstances instances;
+  private int[] visible;
+  private final Vector3f eye = new Vector3f(0.0f, 20.0f, -50.0f);
+  private final Matrix4f view = new Matrix4f().lookAt(eye.x, eye.y, eye.z, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f);
+
+  @Setup
+  public void setup() {
+    executor = new ForkJoinPool(threads);
+    pool = new ParticlePool(particles);
+    instances = new ParticleInstances(particles);
+    visible = new int[particles];
+    final Random random = new Random(1L);
+    for (int i = 0; i < particles; ++i) {
+      // particles live long enough to outlast the run
+      pool.emit(i % 2 == 0 ? SMOKE : FIRE, random.nextFloat() * 100.0f, random.nextFloat() * 100.0f, random.nextFloat() * 100.0f,
+          random.nextFloat() - 0.5f, random.nextFloat(), random.nextFloat() - 0.5f, -0.001f, 1E9f, random.nextFloat() * 360.0f, 1.0f);
+      visible[i] = i;
+    }
+    pool.measure(eye, executor);
+  }
+
+  @TearDown
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  /**
+   * Moves and ages every particle, then measures its distance from the eye.
+   */
+  @Benchmark
+  public ParticlePool update() {
+    pool.update(1.0f / 60.0f, executor);
+    pool.measure(eye, executor);
+    return pool;
+  }
+
+  /**
+   * Groups, sorts and fills the instance data of every particle.
+   */
+  @Benchmark
+  public float[] instances() {
+    instances.build(pool, visible, particles, view, executor);
+    return instances.getData();
+  }
+}
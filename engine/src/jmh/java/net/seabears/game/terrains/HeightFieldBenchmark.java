@@ -0,0 +1,73 @@
+package net.seabears.game.terrains;
+
+import java.util.concurrent.TimeUnit;
+
+import org.joml.Vector3f;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Generates the heights and normals of one terrain tile.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class HeightFieldBenchmark {
+  @Param({"128", "256"})
+  public int size;
+
+  private FakePerlinNoise noise;
+  private GradientNoise gradient;
+  private float[][] heights;
+  private float[] normals;
+
+  @Setup
+  public void setup() {
+    noise = new FakePerlinNoise(1, 0, 70.0, 3, 0.3, new long[] {1L, 2L, 3L}, size);
+    gradient = new GradientNoise(1L, 1, 0, 70.0, 4, 0.35, 1.0 / 32.0, size);
+    heights = new float[size][size];
+    normals = new float[size * size * 3];
+  }
+
+  /**
+   * What the terrain used to do: one sample per vertex for its height and four for its normal, on
+   * one thread.
+   */
+  @Benchmark
+  public float[] perVertex() {
+    int pointer = 0;
+    for (int x = 0; x < size; ++x) {
+      for (int z = 0; z < size; ++z) {
+        heights[x][z] = noise.generate(x, z);
+        final Vector3f normal = new Vector3f(noise.generate(x - 1, z) - noise.generate(x + 1, z), 2.0f,
+            noise.generate(x, z - 1) - noise.generate(x, z + 1)).normalize();
+        normals[pointer++] = normal.x;
+        normals[pointer++] = normal.y;
+        normals[pointer++] = normal.z;
+      }
+    }
+    return normals;
+  }
+
+  @Benchmark
+  public float[] heightField() {
+    final HeightField field = HeightField.generate(noise, size);
+    field.getHeights(heights);
+    field.getNormals(normals);
+    return normals;
+  }
+
+  @Benchmark
+  public float[] gradientHeightField() {
+    final HeightField field = HeightField.generate(gradient, size);
+    field.getHeights(heights);
+    field.getNormals(normals);
+    return normals;
+  }
+}
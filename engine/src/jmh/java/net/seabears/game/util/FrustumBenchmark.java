@@ -0,0 +1,112 @@
+package net.seabears.game.util;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Culls spheres scattered around a camera, like the entities of a large scene.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FrustumBenchmark {
+  @Param({"100000", "1000000"})
+  public int count;
+
+  private Frustum frustum;
+  private float[] spheres;
+  private Vector3f[] positions;
+  private float[] radii;
+  private int[] visible;
+  private BitSet bits;
+  private Map<Frustum.Plane, Vector3f> normals;
+  private Map<Frustum.Plane, Vector3f> points;
+
+  @Setup
+  public void setup() {
+    final Matrix4f projection = new ProjectionMatrix(1280, 720, 70.0f, 0.1f, 1000.0f).toMatrix();
+    final Matrix4f view = new Matrix4f().rotateX((float) Math.toRadians(20.0)).translate(-800.0f, -20.0f, -400.0f);
+    frustum = new Frustum(projection.mul(view, new Matrix4f()));
+    normals = new EnumMap<>(Frustum.Plane.class);
+    points = new EnumMap<>(Frustum.Plane.class);
+    for (Frustum.Plane plane : Frustum.Plane.values()) {
+      // recover a normal and a point on the plane from its distance function
+      final float d = frustum.distance(plane, new Vector3f());
+      final Vector3f normal = new Vector3f(frustum.distance(plane, new Vector3f(1, 0, 0)) - d,
+          frustum.distance(plane, new Vector3f(0, 1, 0)) - d, frustum.distance(plane, new Vector3f(0, 0, 1)) - d);
+      normals.put(plane, normal);
+      points.put(plane, normal.mul(-d, new Vector3f()));
+    }
+    spheres = new float[count * Frustum.SPHERE_FLOATS];
+    positions = new Vector3f[count];
+    radii = new float[count];
+    visible = new int[count];
+    bits = new BitSet(count);
+    final Random random = new Random(42);
+    for (int i = 0; i < count; ++i) {
+      final int j = i * Frustum.SPHERE_FLOATS;
+      spheres[j] = random.nextFloat() * 1600.0f;
+      spheres[j + 1] = random.nextFloat() * 50.0f;
+      spheres[j + 2] = random.nextFloat() * 1600.0f - 800.0f;
+      spheres[j + 3] = random.nextFloat() * 5.0f;
+      positions[i] = new Vector3f(spheres[j], spheres[j + 1], spheres[j + 2]);
+      radii[i] = spheres[j + 3];
+    }
+  }
+
+  /**
+   * The stream and {@link EnumMap} based test that {@link Frustum} used to do, kept as a baseline.
+   */
+  private static boolean streamContains(Map<Frustum.Plane, Vector3f> normals, Map<Frustum.Plane, Vector3f> points, Vector3f position, float radius) {
+    return Arrays.stream(Frustum.Plane.values())
+        .allMatch(p -> normals.get(p).dot(position.sub(points.get(p), new Vector3f())) >= -radius);
+  }
+
+  @Benchmark
+  public int streamEach() {
+    int length = 0;
+    for (int i = 0; i < count; ++i) {
+      if (streamContains(normals, points, positions[i], radii[i])) {
+        visible[length++] = i;
+      }
+    }
+    return length;
+  }
+
+  @Benchmark
+  public int containsEach() {
+    int length = 0;
+    for (int i = 0; i < count; ++i) {
+      if (frustum.contains(positions[i], radii[i])) {
+        visible[length++] = i;
+      }
+    }
+    return length;
+  }
+
+  @Benchmark
+  public int cullToIndices() {
+    return frustum.cullSpheres(spheres, count, visible);
+  }
+
+  @Benchmark
+  public BitSet cullToBits() {
+    frustum.cullSpheres(spheres, count, bits);
+    return bits;
+  }
+}
@@ -5,9 +5,11 @@ import org.lwjgl.openal.AL10;
 
 public class Source implements AutoCloseable {
   private final int sourceId;
+  private final Vector3f position;
 
   public Source() {
     this.sourceId = AL10.alGenSources();
+    this.position = new Vector3f();
   }
 
   public void setGain(int gain) {
@@ -18,7 +20,12 @@ public class Source implements AutoCloseable {
     AL10.alSourcef(sourceId, AL10.AL_PITCH, pitch);
   }
 
+  public Vector3f getPosition() {
+    return position;
+  }
+
   public void setPosition(Vector3f v) {
+    position.set(v);
     AL10.alSource3f(sourceId, AL10.AL_POSITION, v.x, v.y, v.z);
   }
 
@@ -1,44 +1,63 @@
 package net.seabears.game.entities;
 
+import org.joml.Matrix4f;
 import org.joml.Vector2f;
 import org.joml.Vector3f;
 
 import net.seabears.game.models.TexturedModel;
 
-public class Entity extends TextureAtlasItem {
+/**
+ * A view of an entity held in an {@link EntityStore}. The state itself lives in the store's columns;
+ * this object only holds the handle plus the things that are not stored per column (the texture and
+ * an attached light).
+ */
+public class Entity {
+  private final EntityStore store;
+  private final int handle;
   private final EntityTexture model;
+  private final EntityLight light;
+  // scratch objects returned by the getters
   private final Vector3f position;
   private final Vector3f rotation;
-  private float scale;
-  private final EntityLight light;
+  private final Vector2f textureOffset;
+  private final Matrix4f transformation;
 
   public Entity(EntityTexture model, Vector3f position, Vector3f rotation, float scale) {
     this(model, position, rotation, scale, null);
   }
 
   public Entity(EntityTexture model, Vector3f position, Vector3f rotation, float scale, EntityLight light) {
+    this(EntityStore.getDefault(), model, position, rotation, scale, light);
+  }
+
+  public Entity(EntityStore store, EntityTexture model, Vector3f position, Vector3f rotation, float scale, EntityLight light) {
+    this.store = store;
+    this.handle = store.create(model, position.x, position.y, position.z, rotation.x, rotation.y, rotation.z, scale);
     this.model = model;
-    this.position = position;
-    this.rotation = rotation;
-    this.scale = scale;
     this.light = light;
+    this.position = new Vector3f();
+    this.rotation = new Vector3f();
+    this.textureOffset = new Vector2f();
+    this.transformation = new Matrix4f();
     this.updateLight();
   }
 
   private final void updateLight() {
     // move light to this entity
     if (light != null) {
-      light.getLight().getPosition().set(position).add(new Vector3f(scale).mul(light.getOffset()));
+      final Vector3f offset = light.getOffset();
+      final float scale = getScale();
+      light.getLight().getPosition().set(getPosition()).add(scale * offset.x, scale * offset.y, scale * offset.z);
     }
   }
 
   public void place(Vector3f position) {
-    this.position.set(position);
+    store.place(handle, position.x, position.y, position.z);
     this.updateLight();
   }
 
   public void increasePosition(Vector3f delta) {
-    this.position.add(delta);
+    store.move(handle, delta.x, delta.y, delta.z);
     if (light != null) {
       light.getLight().getPosition().add(delta);
     }
@@ -46,12 +65,27 @@ public class Entity extends TextureAtlasItem {
 
   public void increaseRotation(Vector3f delta) {
     // TODO should light rotate as well?
-    this.rotation.add(delta);
+    store.rotate(handle, delta.x, delta.y, delta.z);
   }
 
   public void increaseScale(float scale) {
     // TODO should light scale as well?
-    this.scale += scale;
+    store.scale(handle, scale);
+  }
+
+  /**
+   * Removes this entity from its store. The entity must not be used afterwards.
+   */
+  public void release() {
+    store.release(handle);
+  }
+
+  public EntityStore getStore() {
+    return store;
+  }
+
+  public int getHandle() {
+    return handle;
   }
 
   public TexturedModel getModel() {
@@ -62,19 +96,46 @@ public class Entity extends TextureAtlasItem {
     return model;
   }
 
+  /**
+   * @return texture atlas offset; the vector is reused by later calls
+   */
   public Vector2f getTextureOffset() {
-      return super.getTextureOffset(model.getTextureIndex(), model.getModel().getTexture().getRows());
+    final int offset = handle * EntityStore.TEXTURE_OFFSET_FLOATS;
+    final float[] offsets = store.getTextureOffsets();
+    return textureOffset.set(offsets[offset], offsets[offset + 1]);
+  }
+
+  /**
+   * Returns the world transformation of this entity. The matrix is rebuilt only after the entity has
+   * been moved, rotated or scaled.
+   *
+   * @return transformation matrix; the matrix is reused by later calls
+   */
+  public Matrix4f getTransformation() {
+    store.updateTransformation(handle);
+    return transformation.set(store.getTransformations(), handle * EntityStore.TRANSFORMATION_FLOATS);
   }
 
+  /**
+   * @return position of this entity; the vector is reused by later calls, so use
+   *         {@link #place(Vector3f)} or {@link #increasePosition(Vector3f)} to change it
+   */
   public Vector3f getPosition() {
-    return position;
+    final int offset = handle * EntityStore.POSITION_FLOATS;
+    final float[] positions = store.getPositions();
+    return position.set(positions[offset], positions[offset + 1], positions[offset + 2]);
   }
 
+  /**
+   * @return rotation of this entity in degrees; the vector is reused by later calls
+   */
   public Vector3f getRotation() {
-    return rotation;
+    final int offset = handle * EntityStore.ROTATION_FLOATS;
+    final float[] rotations = store.getRotations();
+    return rotation.set(rotations[offset], rotations[offset + 1], rotations[offset + 2]);
   }
 
   public float getScale() {
-    return scale;
+    return store.getScales()[handle];
   }
 }
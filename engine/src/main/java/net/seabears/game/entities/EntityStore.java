@@ -0,0 +1,422 @@
+package net.seabears.game.entities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.joml.Matrix4f;
+
+import net.seabears.game.models.Bounds;
+import net.seabears.game.models.TexturedModel;
+import net.seabears.game.models.TriangleMesh;
+import net.seabears.game.util.Frustum;
+import net.seabears.game.util.Intersection;
+
+/**
+ * Structure-of-arrays storage for entity state. Each entity is identified by a handle, which is an
+ * index into every column; handles stay valid until released and are then reused. Columns are
+ * exposed directly so that per-frame work can run as plain loops over primitive arrays.
+ */
+public class EntityStore {
+  public static final int POSITION_FLOATS = 3;
+  public static final int ROTATION_FLOATS = 3;
+  public static final int TRANSFORMATION_FLOATS = 16;
+  public static final int TEXTURE_OFFSET_FLOATS = 2;
+  /** World bounding sphere: center x, y, z and radius, as packed for {@link Frustum} */
+  public static final int SPHERE_FLOATS = 4;
+  /** World axis-aligned box: min x, y, z then max x, y, z */
+  public static final int BOX_FLOATS = 6;
+  public static final int NO_MODEL = -1;
+
+  private static final int FLAG_ALIVE = 1;
+  private static final int FLAG_DIRTY = 2;
+  private static final int INITIAL_CAPACITY = 256;
+  // local center x, y, z, extents x, y, z and radius of each model
+  private static final int MODEL_BOUNDS_FLOATS = 7;
+  private static final EntityStore DEFAULT = new EntityStore();
+
+  /**
+   * Receives the handles of entities that were moved, rotated or scaled.
+   */
+  public interface MoveListener {
+    void moved(int handle);
+  }
+
+  /**
+   * @return store used by entities that are not given one explicitly
+   */
+  public static EntityStore getDefault() {
+    return DEFAULT;
+  }
+
+  private final List<TexturedModel> models;
+  private final Map<TexturedModel, Integer> modelIds;
+  private final Matrix4f scratch;
+  private final List<MoveListener> listeners;
+  private float[] modelBounds;
+  private float[] positions;
+  private float[] rotations;
+  private float[] scales;
+  private float[] transformations;
+  private float[] textureOffsets;
+  private float[] spheres;
+  private float[] boxes;
+  private int[] modelIdsByHandle;
+  private byte[] lods;
+  private int[] flags;
+  private int[] free;
+  private int freeCount;
+  private int size;
+  private int count;
+  private int transformationsBuilt;
+
+  public EntityStore() {
+    this(INITIAL_CAPACITY);
+  }
+
+  public EntityStore(int capacity) {
+    this.models = new ArrayList<>();
+    this.modelIds = new HashMap<>();
+    this.scratch = new Matrix4f();
+    this.listeners = new ArrayList<>();
+    this.modelBounds = new float[0];
+    this.positions = new float[capacity * POSITION_FLOATS];
+    this.rotations = new float[capacity * ROTATION_FLOATS];
+    this.scales = new float[capacity];
+    this.transformations = new float[capacity * TRANSFORMATION_FLOATS];
+    this.textureOffsets = new float[capacity * TEXTURE_OFFSET_FLOATS];
+    this.spheres = new float[capacity * SPHERE_FLOATS];
+    this.boxes = new float[capacity * BOX_FLOATS];
+    this.modelIdsByHandle = new int[capacity];
+    this.lods = new byte[capacity];
+    this.flags = new int[capacity];
+    this.free = new int[capacity];
+  }
+
+  /**
+   * Adds an entity to the store.
+   *
+   * @param texture model and atlas index of the entity, or <code>null</code> for an entity that is
+   *        never drawn
+   * @return handle of the new entity
+   */
+  public int create(EntityTexture texture, float x, float y, float z, float rx, float ry, float rz, float scale) {
+    final int handle;
+    if (freeCount > 0) {
+      handle = free[--freeCount];
+    } else {
+      if (size == flags.length) {
+        grow(size * 2);
+      }
+      handle = size++;
+    }
+    ++count;
+    flags[handle] = FLAG_ALIVE | FLAG_DIRTY;
+    set(positions, handle * POSITION_FLOATS, x, y, z);
+    set(rotations, handle * ROTATION_FLOATS, rx, ry, rz);
+    scales[handle] = scale;
+    lods[handle] = 0;
+    if (texture == null) {
+      modelIdsByHandle[handle] = NO_MODEL;
+      textureOffsets[handle * TEXTURE_OFFSET_FLOATS] = 0.0f;
+      textureOffsets[handle * TEXTURE_OFFSET_FLOATS + 1] = 0.0f;
+    } else {
+      final int rows = texture.getModel().getTexture().getRows();
+      final int index = texture.getTextureIndex();
+      modelIdsByHandle[handle] = getModelId(texture.getModel());
+      // this integer division is intentional
+      textureOffsets[handle * TEXTURE_OFFSET_FLOATS] = (float) (index % rows) / rows;
+      textureOffsets[handle * TEXTURE_OFFSET_FLOATS + 1] = (float) (index / rows) / rows;
+    }
+    return handle;
+  }
+
+  /**
+   * Removes an entity from the store. Its handle may be returned by a later call to
+   * {@link #create(EntityTexture, float, float, float, float, float, float, float)}.
+   */
+  public void release(int handle) {
+    if (isAlive(handle)) {
+      flags[handle] = 0;
+      free[freeCount++] = handle;
+      --count;
+    }
+  }
+
+  public boolean isAlive(int handle) {
+    return handle >= 0 && handle < size && (flags[handle] & FLAG_ALIVE) != 0;
+  }
+
+  private void grow(int capacity) {
+    positions = Arrays.copyOf(positions, capacity * POSITION_FLOATS);
+    rotations = Arrays.copyOf(rotations, capacity * ROTATION_FLOATS);
+    scales = Arrays.copyOf(scales, capacity);
+    transformations = Arrays.copyOf(transformations, capacity * TRANSFORMATION_FLOATS);
+    textureOffsets = Arrays.copyOf(textureOffsets, capacity * TEXTURE_OFFSET_FLOATS);
+    spheres = Arrays.copyOf(spheres, capacity * SPHERE_FLOATS);
+    boxes = Arrays.copyOf(boxes, capacity * BOX_FLOATS);
+    modelIdsByHandle = Arrays.copyOf(modelIdsByHandle, capacity);
+    lods = Arrays.copyOf(lods, capacity);
+    flags = Arrays.copyOf(flags, capacity);
+    free = Arrays.copyOf(free, capacity);
+  }
+
+  private static void set(float[] column, int offset, float x, float y, float z) {
+    column[offset] = x;
+    column[offset + 1] = y;
+    column[offset + 2] = z;
+  }
+
+  public void place(int handle, float x, float y, float z) {
+    set(positions, handle * POSITION_FLOATS, x, y, z);
+    moved(handle);
+  }
+
+  public void move(int handle, float dx, float dy, float dz) {
+    final int offset = handle * POSITION_FLOATS;
+    positions[offset] += dx;
+    positions[offset + 1] += dy;
+    positions[offset + 2] += dz;
+    moved(handle);
+  }
+
+  public void rotate(int handle, float dx, float dy, float dz) {
+    final int offset = handle * ROTATION_FLOATS;
+    rotations[offset] += dx;
+    rotations[offset + 1] += dy;
+    rotations[offset + 2] += dz;
+    moved(handle);
+  }
+
+  public void scale(int handle, float delta) {
+    scales[handle] += delta;
+    moved(handle);
+  }
+
+  private void moved(int handle) {
+    flags[handle] |= FLAG_DIRTY;
+    for (int i = 0; i < listeners.size(); ++i) {
+      listeners.get(i).moved(handle);
+    }
+  }
+
+  public void addMoveListener(MoveListener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeMoveListener(MoveListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Rebuilds the transformation matrix and world bounds of an entity if it has changed since they
+   * were last built.
+   */
+  public void updateTransformation(int handle) {
+    if ((flags[handle] & FLAG_DIRTY) != 0) {
+      final int p = handle * POSITION_FLOATS;
+      final int r = handle * ROTATION_FLOATS;
+      final Matrix4f m = scratch.translation(positions[p], positions[p + 1], positions[p + 2])
+          .rotateX((float) Math.toRadians(rotations[r]))
+          .rotateY((float) Math.toRadians(rotations[r + 1]))
+          .rotateZ((float) Math.toRadians(rotations[r + 2]))
+          .scale(scales[handle]);
+      m.get(transformations, handle * TRANSFORMATION_FLOATS);
+      updateBounds(handle, m);
+      flags[handle] &= ~FLAG_DIRTY;
+      ++transformationsBuilt;
+    }
+  }
+
+  private void updateBounds(int handle, Matrix4f m) {
+    final int model = modelIdsByHandle[handle];
+    float cx = 0, cy = 0, cz = 0, ex = 0, ey = 0, ez = 0, radius = 0;
+    if (model != NO_MODEL) {
+      final int b = model * MODEL_BOUNDS_FLOATS;
+      cx = modelBounds[b];
+      cy = modelBounds[b + 1];
+      cz = modelBounds[b + 2];
+      ex = modelBounds[b + 3];
+      ey = modelBounds[b + 4];
+      ez = modelBounds[b + 5];
+      radius = modelBounds[b + 6];
+    }
+    // the center moves with the entity; rotation leaves the sphere alone but widens the box
+    final float x = m.m00 * cx + m.m10 * cy + m.m20 * cz + m.m30;
+    final float y = m.m01 * cx + m.m11 * cy + m.m21 * cz + m.m31;
+    final float z = m.m02 * cx + m.m12 * cy + m.m22 * cz + m.m32;
+    final float wx = Math.abs(m.m00) * ex + Math.abs(m.m10) * ey + Math.abs(m.m20) * ez;
+    final float wy = Math.abs(m.m01) * ex + Math.abs(m.m11) * ey + Math.abs(m.m21) * ez;
+    final float wz = Math.abs(m.m02) * ex + Math.abs(m.m12) * ey + Math.abs(m.m22) * ez;
+    final int s = handle * SPHERE_FLOATS;
+    spheres[s] = x;
+    spheres[s + 1] = y;
+    spheres[s + 2] = z;
+    spheres[s + 3] = radius * Math.abs(scales[handle]);
+    final int o = handle * BOX_FLOATS;
+    boxes[o] = x - wx;
+    boxes[o + 1] = y - wy;
+    boxes[o + 2] = z - wz;
+    boxes[o + 3] = x + wx;
+    boxes[o + 4] = y + wy;
+    boxes[o + 5] = z + wz;
+  }
+
+  /**
+   * Tests the world bounds of an entity against a frustum, sphere first and then the tighter box.
+   * Call {@link #updateTransformation(int)} first.
+   */
+  public boolean isInside(Frustum frustum, int handle) {
+    final int s = handle * SPHERE_FLOATS;
+    if (!frustum.containsSphere(spheres[s], spheres[s + 1], spheres[s + 2], spheres[s + 3])) {
+      return false;
+    }
+    final int b = handle * BOX_FLOATS;
+    return frustum.containsBox(boxes[b], boxes[b + 1], boxes[b + 2], boxes[b + 3], boxes[b + 4], boxes[b + 5]);
+  }
+
+  /**
+   * Tests a ray against the world box of an entity and then, if its model kept them, against its
+   * triangles. Call {@link #updateTransformation(int)} first.
+   *
+   * @param maxDistance distance beyond which hits are ignored
+   * @return distance to the entity along the ray, or infinity if the ray misses it
+   */
+  public float intersect(int handle, float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance) {
+    final int b = handle * BOX_FLOATS;
+    final float entry = Intersection.box(ox, oy, oz, dx, dy, dz,
+        boxes[b], boxes[b + 1], boxes[b + 2], boxes[b + 3], boxes[b + 4], boxes[b + 5]);
+    if (entry > maxDistance) {
+      return Float.POSITIVE_INFINITY;
+    }
+    final int model = modelIdsByHandle[handle];
+    final TriangleMesh mesh = model == NO_MODEL ? null : models.get(model).getRawModel().getMesh();
+    if (mesh == null) {
+      return entry;
+    }
+    // carry the ray into model space; distances along it do not change
+    final Matrix4f inverse = scratch.set(transformations, handle * TRANSFORMATION_FLOATS).invertAffine();
+    final float lox = inverse.m00 * ox + inverse.m10 * oy + inverse.m20 * oz + inverse.m30;
+    final float loy = inverse.m01 * ox + inverse.m11 * oy + inverse.m21 * oz + inverse.m31;
+    final float loz = inverse.m02 * ox + inverse.m12 * oy + inverse.m22 * oz + inverse.m32;
+    final float ldx = inverse.m00 * dx + inverse.m10 * dy + inverse.m20 * dz;
+    final float ldy = inverse.m01 * dx + inverse.m11 * dy + inverse.m21 * dz;
+    final float ldz = inverse.m02 * dx + inverse.m12 * dy + inverse.m22 * dz;
+    return mesh.intersect(lox, loy, loz, ldx, ldy, ldz, maxDistance);
+  }
+
+  /**
+   * Rebuilds the transformation matrices of the given entities where needed.
+   */
+  public void updateTransformations(int[] handles, int length) {
+    for (int i = 0; i < length; ++i) {
+      updateTransformation(handles[i]);
+    }
+  }
+
+  /**
+   * @return number of transformation matrices rebuilt since the last call
+   */
+  public int resetTransformationsBuilt() {
+    final int built = transformationsBuilt;
+    transformationsBuilt = 0;
+    return built;
+  }
+
+  /**
+   * Returns the id of a model, registering the model if it has not been seen before. Ids are dense,
+   * starting at zero, so they can index arrays.
+   */
+  public int getModelId(TexturedModel model) {
+    Integer id = modelIds.get(model);
+    if (id == null) {
+      id = models.size();
+      models.add(model);
+      modelIds.put(model, id);
+      modelBounds = Arrays.copyOf(modelBounds, models.size() * MODEL_BOUNDS_FLOATS);
+      final Bounds bounds = model.getBounds();
+      if (bounds != null) {
+        final int b = id * MODEL_BOUNDS_FLOATS;
+        modelBounds[b] = bounds.getCenterX();
+        modelBounds[b + 1] = bounds.getCenterY();
+        modelBounds[b + 2] = bounds.getCenterZ();
+        modelBounds[b + 3] = bounds.getExtentX();
+        modelBounds[b + 4] = bounds.getExtentY();
+        modelBounds[b + 5] = bounds.getExtentZ();
+        modelBounds[b + 6] = bounds.getRadius();
+      }
+    }
+    return id;
+  }
+
+  public TexturedModel getModelById(int id) {
+    return models.get(id);
+  }
+
+  public int getModelCount() {
+    return models.size();
+  }
+
+  /**
+   * @return number of live entities
+   */
+  public int size() {
+    return count;
+  }
+
+  /*
+   * Columns are indexed by handle times the number of floats per entity. They are replaced when the
+   * store grows, so do not hold onto them across calls to create. Do not modify them.
+   */
+
+  public float[] getPositions() {
+    return positions;
+  }
+
+  public float[] getRotations() {
+    return rotations;
+  }
+
+  public float[] getScales() {
+    return scales;
+  }
+
+  /**
+   * Column-major matrices; call {@link #updateTransformation(int)} first.
+   */
+  public float[] getTransformations() {
+    return transformations;
+  }
+
+  public float[] getTextureOffsets() {
+    return textureOffsets;
+  }
+
+  /**
+   * World bounding spheres; call {@link #updateTransformation(int)} first.
+   */
+  public float[] getSpheres() {
+    return spheres;
+  }
+
+  /**
+   * World axis-aligned boxes; call {@link #updateTransformation(int)} first.
+   */
+  public float[] getBoxes() {
+    return boxes;
+  }
+
+  public int[] getModelIds() {
+    return modelIdsByHandle;
+  }
+
+  /**
+   * Level of detail each entity was last drawn at. Unlike the other columns this one is written by
+   * {@link net.seabears.game.render.LodSelector}, which needs the previous level to avoid flicker.
+   */
+  public byte[] getLods() {
+    return lods;
+  }
+}
@@ -1,10 +1,9 @@
 package net.seabears.game.entities;
 
-import java.util.function.BiFunction;
-
 import org.joml.Vector3f;
 
 import net.seabears.game.input.MovementKeys;
+import net.seabears.game.terrains.HeightFunction;
 import net.seabears.game.util.FpsCalc;
 import net.seabears.game.util.Volume;
 
@@ -33,7 +32,7 @@ public class Player extends Entity {
     return size;
   }
 
-  public void move(final MovementKeys keys, final BiFunction<Float, Float, Float> terrainHeight) {
+  public void move(final MovementKeys keys, final HeightFunction terrainHeight) {
     float currentSpeed = 0;
     if (keys.forward.get()) {
       currentSpeed += runSpeed;
@@ -74,9 +73,9 @@ public class Player extends Entity {
     super.increasePosition(new Vector3f(dx, dy, dz));
 
     // ensure we're not below the terrain
-    final float height = terrainHeight.apply(getPosition().x, getPosition().z);
+    final float height = terrainHeight.getHeight(getPosition().x, getPosition().z);
     if (getPosition().y < height) {
-      getPosition().y = height;
+      super.increasePosition(new Vector3f(0.0f, height - getPosition().y, 0.0f));
       upwardsSpeed = 0.0f; // stop falling
       inAir = false; // at terrain level
     }
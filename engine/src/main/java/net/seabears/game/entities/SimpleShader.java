@@ -6,7 +6,6 @@ import org.joml.Matrix4f;
 
 import net.seabears.game.shaders.ShaderProgram;
 import net.seabears.game.textures.ModelTexture;
-import net.seabears.game.util.TransformationMatrix;
 
 public class SimpleShader extends ShaderProgram {;
   private int locationProjectionMatrix;
@@ -44,7 +43,7 @@ public class SimpleShader extends ShaderProgram {;
   }
 
   public void loadEntity(Entity entity) {
-    loadTransformationMatrix(new TransformationMatrix(entity.getPosition(), entity.getRotation(), entity.getScale()).toMatrix());
+    loadTransformationMatrix(entity.getTransformation());
     super.loadFloat(locationTextureOffset, entity.getTextureOffset());
   }
 
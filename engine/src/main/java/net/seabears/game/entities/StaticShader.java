@@ -11,7 +11,6 @@ import org.joml.Vector4f;
 
 import net.seabears.game.shadows.ShadowShader;
 import net.seabears.game.textures.ModelTexture;
-import net.seabears.game.util.TransformationMatrix;
 
 public class StaticShader extends ShadowShader {
   public static final int TEXTURE_SHADOW = 1;
@@ -27,8 +26,6 @@ public class StaticShader extends ShadowShader {
   private int locationShineDamper;
   private int locationSkyColor;
   private int locationTextureRows;
-  private int locationTextureOffset;
-  private int locationTransformationMatrix;
   private int locationViewMatrix;
 
   public StaticShader(int lights) throws IOException {
@@ -41,6 +38,8 @@ public class StaticShader extends ShadowShader {
     super.bindAttribute(ATTR_POSITION, "position");
     super.bindAttribute(ATTR_TEXTURE, "textureCoords");
     super.bindAttribute(ATTR_NORMAL, "normal");
+    super.bindAttribute(ATTR_INSTANCE_MATRIX, "transformationMatrix");
+    super.bindAttribute(ATTR_INSTANCE_TEXTURE_OFFSET, "textureOffset");
   }
 
   @Override
@@ -56,8 +55,6 @@ public class StaticShader extends ShadowShader {
     locationShineDamper = super.getUniformLocation("shineDamper");
     locationSkyColor = super.getUniformLocation("skyColor");
     locationTextureRows = super.getUniformLocation("textureRows");
-    locationTextureOffset = super.getUniformLocation("textureOffset");
-    locationTransformationMatrix = super.getUniformLocation("transformationMatrix");
     locationViewMatrix = super.getUniformLocation("viewMatrix");
   }
 
@@ -90,15 +87,6 @@ public class StaticShader extends ShadowShader {
     super.loadFloat(locationTextureRows, texture.getRows());
   }
 
-  public void loadEntity(Entity entity) {
-    loadTransformationMatrix(new TransformationMatrix(entity.getPosition(), entity.getRotation(), entity.getScale()).toMatrix());
-    super.loadFloat(locationTextureOffset, entity.getTextureOffset());
-  }
-
-  public void loadTransformationMatrix(Matrix4f matrix) {
-    super.loadMatrix(locationTransformationMatrix, matrix);
-  }
-
   public void loadViewMatrix(Matrix4f matrix) {
     super.loadMatrix(locationViewMatrix, matrix);
   }
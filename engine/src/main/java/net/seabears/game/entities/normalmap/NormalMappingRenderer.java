@@ -1,27 +1,28 @@
 package net.seabears.game.entities.normalmap;
 
-import java.util.List;
-import java.util.Map;
-
 import org.joml.Matrix4f;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL13;
 import org.lwjgl.opengl.GL20;
 import org.lwjgl.opengl.GL30;
 
-import net.seabears.game.entities.Entity;
+import net.seabears.game.entities.EntityStore;
 import net.seabears.game.models.RawModel;
 import net.seabears.game.models.TexturedModel;
+import net.seabears.game.render.InstanceBuffer;
 import net.seabears.game.render.MasterRenderer;
+import net.seabears.game.render.RenderList;
 import net.seabears.game.render.Renderer;
 import net.seabears.game.shaders.ShaderProgram;
 import net.seabears.game.textures.ModelTexture;
 
 public class NormalMappingRenderer implements Renderer {
   private final NormalMappingShader shader;
+  private final InstanceBuffer instances;
 
-  public NormalMappingRenderer(NormalMappingShader shader, Matrix4f projectionMatrix) {
+  public NormalMappingRenderer(NormalMappingShader shader, Matrix4f projectionMatrix, InstanceBuffer instances) {
     this.shader = shader;
+    this.instances = instances;
     this.shader.init();
     this.shader.start();
     this.shader.loadNormalMap();
@@ -33,18 +34,20 @@ public class NormalMappingRenderer implements Renderer {
     return shader;
   }
 
-  public void render(Map<TexturedModel, List<Entity>> entities, int shadowMap) {
+  public void render(RenderList entities, int shadowMap) {
     GL13.glActiveTexture(GL13.GL_TEXTURE2);
     GL11.glBindTexture(GL11.GL_TEXTURE_2D, shadowMap);
-    for (Map.Entry<TexturedModel, List<Entity>> entry : entities.entrySet()) {
-      final TexturedModel model = entry.getKey();
-      final RawModel rawModel = model.getRawModel();
+    final int[] handles = entities.getHandles();
+    final float[] transformations = entities.getStore().getTransformations();
+    final float[] textureOffsets = entities.getStore().getTextureOffsets();
+    for (int modelId = 0; modelId < entities.getModelCount(); ++modelId) {
+      final int start = entities.getStart(modelId);
+      final int end = entities.getEnd(modelId);
+      if (start == end) {
+        continue;
+      }
+      final TexturedModel model = entities.getModel(modelId);
       final ModelTexture texture = model.getTexture();
-      GL30.glBindVertexArray(rawModel.getVaoId());
-      GL20.glEnableVertexAttribArray(ShaderProgram.ATTR_POSITION);
-      GL20.glEnableVertexAttribArray(ShaderProgram.ATTR_TEXTURE);
-      GL20.glEnableVertexAttribArray(ShaderProgram.ATTR_NORMAL);
-      GL20.glEnableVertexAttribArray(ShaderProgram.ATTR_TANGENT);
       if (texture.isTransparent()) {
         MasterRenderer.disableCulling();
       }
@@ -53,21 +56,39 @@ public class NormalMappingRenderer implements Renderer {
       GL11.glBindTexture(GL11.GL_TEXTURE_2D, texture.getTextureId());
       GL13.glActiveTexture(GL13.GL_TEXTURE1);
       GL11.glBindTexture(GL11.GL_TEXTURE_2D, texture.getNormalMapId());
-      for (Entity entity : entry.getValue()) {
-        shader.loadEntity(entity);
-        GL11.glDrawElements(GL11.GL_TRIANGLES, rawModel.getVertexCount(), GL11.GL_UNSIGNED_INT, 0);
+      for (int lod = 0; lod < model.getLodCount(); ++lod) {
+        if (entities.getStart(modelId, lod) < entities.getEnd(modelId, lod)) {
+          render(entities, modelId, lod, model.getRawModel(lod), handles, transformations, textureOffsets);
+        }
       }
       if (texture.isTransparent()) {
         MasterRenderer.enableCulling();
       }
-      GL20.glDisableVertexAttribArray(ShaderProgram.ATTR_POSITION);
-      GL20.glDisableVertexAttribArray(ShaderProgram.ATTR_TEXTURE);
-      GL20.glDisableVertexAttribArray(ShaderProgram.ATTR_NORMAL);
-      GL20.glDisableVertexAttribArray(ShaderProgram.ATTR_TANGENT);
-      GL30.glBindVertexArray(0);
     }
   }
 
+  private void render(RenderList entities, int modelId, int lod, RawModel rawModel, int[] handles, float[] transformations, float[] textureOffsets) {
+    instances.bind(rawModel);
+    GL20.glEnableVertexAttribArray(ShaderProgram.ATTR_POSITION);
+    GL20.glEnableVertexAttribArray(ShaderProgram.ATTR_TEXTURE);
+    GL20.glEnableVertexAttribArray(ShaderProgram.ATTR_NORMAL);
+    GL20.glEnableVertexAttribArray(ShaderProgram.ATTR_TANGENT);
+    for (int i = entities.getStart(modelId, lod); i < entities.getEnd(modelId, lod); ++i) {
+      final int handle = handles[i];
+      final int offset = handle * EntityStore.TEXTURE_OFFSET_FLOATS;
+      if (instances.put(transformations, handle * EntityStore.TRANSFORMATION_FLOATS, textureOffsets[offset], textureOffsets[offset + 1])) {
+        instances.draw(rawModel);
+      }
+    }
+    instances.draw(rawModel);
+    GL20.glDisableVertexAttribArray(ShaderProgram.ATTR_POSITION);
+    GL20.glDisableVertexAttribArray(ShaderProgram.ATTR_TEXTURE);
+    GL20.glDisableVertexAttribArray(ShaderProgram.ATTR_NORMAL);
+    GL20.glDisableVertexAttribArray(ShaderProgram.ATTR_TANGENT);
+    instances.unbind();
+    GL30.glBindVertexArray(0);
+  }
+
   @Override
   public void close() {
     shader.close();
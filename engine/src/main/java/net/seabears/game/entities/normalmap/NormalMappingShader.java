@@ -9,11 +9,9 @@ import org.joml.Matrix4f;
 import org.joml.Vector3f;
 import org.joml.Vector4f;
 
-import net.seabears.game.entities.Entity;
 import net.seabears.game.entities.Light;
 import net.seabears.game.shadows.ShadowShader;
 import net.seabears.game.textures.ModelTexture;
-import net.seabears.game.util.TransformationMatrix;
 
 public class NormalMappingShader extends ShadowShader {
   public static final int TEXTURE_SHADOW = 2;
@@ -30,8 +28,6 @@ public class NormalMappingShader extends ShadowShader {
   private int locationShineDamper;
   private int locationSkyColor;
   private int locationTextureRows;
-  private int locationTextureOffset;
-  private int locationTransformationMatrix;
   private int locationViewMatrix;
 
   public NormalMappingShader(int lights) throws IOException {
@@ -45,6 +41,8 @@ public class NormalMappingShader extends ShadowShader {
     super.bindAttribute(ATTR_TEXTURE, "textureCoords");
     super.bindAttribute(ATTR_NORMAL, "normal");
     super.bindAttribute(ATTR_TANGENT, "tangent");
+    super.bindAttribute(ATTR_INSTANCE_MATRIX, "transformationMatrix");
+    super.bindAttribute(ATTR_INSTANCE_TEXTURE_OFFSET, "textureOffset");
   }
 
   @Override
@@ -61,8 +59,6 @@ public class NormalMappingShader extends ShadowShader {
     locationShineDamper = super.getUniformLocation("shineDamper");
     locationSkyColor = super.getUniformLocation("skyColor");
     locationTextureRows = super.getUniformLocation("textureRows");
-    locationTextureOffset = super.getUniformLocation("textureOffset");
-    locationTransformationMatrix = super.getUniformLocation("transformationMatrix");
     locationViewMatrix = super.getUniformLocation("viewMatrix");
   }
 
@@ -103,17 +99,6 @@ public class NormalMappingShader extends ShadowShader {
     super.loadFloat(locationTextureRows, texture.getRows());
   }
 
-  public void loadEntity(Entity entity) {
-    loadTransformationMatrix(
-        new TransformationMatrix(entity.getPosition(), entity.getRotation(), entity.getScale())
-            .toMatrix());
-    super.loadFloat(locationTextureOffset, entity.getTextureOffset());
-  }
-
-  public void loadTransformationMatrix(Matrix4f matrix) {
-    super.loadMatrix(locationTransformationMatrix, matrix);
-  }
-
   public void loadViewMatrix(Matrix4f matrix) {
     super.loadMatrix(locationViewMatrix, matrix);
   }
@@ -0,0 +1,54 @@
+package net.seabears.game.impostors;
+
+import net.seabears.game.models.TexturedModel;
+import net.seabears.game.render.FrameBuffer;
+
+/**
+ * Pictures of a model taken from several directions around its vertical axis, stored as cells of a
+ * square atlas. The pictures are framed on the model's bounding sphere, so a quad as wide as the
+ * sphere, centered on it, covers the model.
+ */
+public class Impostor implements AutoCloseable {
+  private final TexturedModel model;
+  private final FrameBuffer atlas;
+  private final int views;
+  private final int rows;
+
+  public Impostor(TexturedModel model, FrameBuffer atlas, int views, int rows) {
+    this.model = model;
+    this.atlas = atlas;
+    this.views = views;
+    this.rows = rows;
+  }
+
+  public TexturedModel getModel() {
+    return model;
+  }
+
+  public int getTextureId() {
+    return atlas.getTexture();
+  }
+
+  public int getViews() {
+    return views;
+  }
+
+  public int getRows() {
+    return rows;
+  }
+
+  /**
+   * @param angle direction the model is seen from in its own space, in radians around the vertical
+   *        axis, with zero looking from +z
+   * @return the view taken closest to that direction
+   */
+  public int getView(double angle) {
+    final int view = (int) Math.round(angle / (2.0 * Math.PI) * views) % views;
+    return view < 0 ? view + views : view;
+  }
+
+  @Override
+  public void close() {
+    atlas.close();
+  }
+}
@@ -0,0 +1,68 @@
+package net.seabears.game.impostors;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lwjgl.opengl.GL11;
+
+import net.seabears.game.entities.Entity;
+import net.seabears.game.entities.EntityTexture;
+import net.seabears.game.entities.SimpleRenderer;
+import net.seabears.game.entities.SimpleShader;
+import net.seabears.game.models.Bounds;
+import net.seabears.game.models.TexturedModel;
+import net.seabears.game.render.FrameBuffer;
+import net.seabears.game.render.Renderer;
+
+/**
+ * Renders {@link Impostor} atlases with a {@link SimpleRenderer}, the same way the world editor
+ * renders its thumbnails. Each view is an orthographic picture of the model's bounding sphere taken
+ * from a direction around the vertical axis.
+ */
+public class ImpostorBaker implements Renderer {
+  private final SimpleRenderer renderer;
+  private final int cellSize;
+  private final int views;
+  private final int rows;
+
+  /**
+   * @param cellSize width of each view in pixels
+   * @param views number of directions to picture the model from
+   */
+  public ImpostorBaker(int cellSize, int views) throws IOException {
+    // views are scaled to fit a unit sphere two units in front of the camera
+    this.renderer = new SimpleRenderer(new SimpleShader(), new Matrix4f().setOrtho(-1, 1, -1, 1, 1, 3));
+    this.cellSize = cellSize;
+    this.views = views;
+    this.rows = (int) Math.ceil(Math.sqrt(views));
+  }
+
+  public Impostor bake(TexturedModel model, int displayWidth, int displayHeight) {
+    final Bounds bounds = model.getBounds();
+    final float radius = bounds.getRadius();
+    final Vector3f center = new Vector3f(bounds.getCenterX(), bounds.getCenterY(), bounds.getCenterZ());
+    final FrameBuffer atlas = new FrameBuffer(cellSize * rows, cellSize * rows, displayWidth, displayHeight, true, true);
+    final Entity entity = new Entity(new EntityTexture(model), new Vector3f(), new Vector3f(), 1.0f);
+    atlas.bind();
+    GL11.glClearColor(0, 0, 0, 0);
+    GL11.glClear(GL11.GL_COLOR_BUFFER_BIT | GL11.GL_DEPTH_BUFFER_BIT);
+    GL11.glEnable(GL11.GL_DEPTH_TEST);
+    for (int view = 0; view < views; ++view) {
+      final double angle = 2.0 * Math.PI * view / views;
+      final Vector3f eye = new Vector3f((float) Math.sin(angle), 0, (float) Math.cos(angle)).mul(2.0f * radius).add(center);
+      final Matrix4f viewMatrix = new Matrix4f().scaling(1.0f / radius).lookAt(eye, center, new Vector3f(0, 1, 0));
+      GL11.glViewport(view % rows * cellSize, view / rows * cellSize, cellSize, cellSize);
+      renderer.render(Collections.singletonList(entity), viewMatrix);
+    }
+    atlas.unbind(displayWidth, displayHeight);
+    entity.release();
+    return new Impostor(model, atlas, views, rows);
+  }
+
+  @Override
+  public void close() {
+    renderer.close();
+  }
+}
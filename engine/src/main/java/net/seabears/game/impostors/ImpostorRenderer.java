@@ -0,0 +1,206 @@
+package net.seabears.game.impostors;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL13;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+
+import net.seabears.game.entities.EntityStore;
+import net.seabears.game.models.RawModel;
+import net.seabears.game.render.Loader;
+import net.seabears.game.render.RenderList;
+import net.seabears.game.render.Renderer;
+
+/**
+ * Draws distant entities as camera-facing quads showing the nearest view of their model's
+ * {@link Impostor}. Like particles, every quad of an impostor is drawn with one instanced call.
+ * Over a band before the transition distance the quad fades in over the mesh, and past it the mesh
+ * is no longer drawn.
+ */
+public class ImpostorRenderer implements Renderer {
+  // bounding sphere, then atlas cell offset and opacity
+  private static final int INSTANCE_FLOATS = 7;
+
+  private static final class Batch {
+    private final Impostor impostor;
+    private int[] handles = new int[64];
+    private int count;
+
+    private Batch(Impostor impostor) {
+      this.impostor = impostor;
+    }
+  }
+
+  private final Loader loader;
+  private final ImpostorShader shader;
+  private final EntityStore store;
+  private final RawModel quad;
+  private final int vboId;
+  private final int maxInstances;
+  private final float[] data;
+  private final FloatBuffer buffer;
+  private final float distance;
+  private final float fade;
+  private final List<Batch> batches;
+  private final Vector3f eye;
+  private final IntPredicate far = this::take;
+  private Batch[] batchesByModel;
+
+  /**
+   * @param distance distance from the camera past which entities are drawn only as impostors
+   * @param fade width of the band before that distance over which impostors fade in
+   */
+  public ImpostorRenderer(Loader loader, ImpostorShader shader, Matrix4f projectionMatrix, Vector3f skyColor, EntityStore store,
+      float distance, float fade, int maxInstances) {
+    this.loader = loader;
+    this.store = store;
+    this.quad = loader.loadToVao(new float[] {-1, 1, -1, -1, 1, 1, 1, -1}, 2, null);
+    this.vboId = loader.emptyVbo(INSTANCE_FLOATS * maxInstances);
+    loader.addInstancedAttribute(quad.getVaoId(), vboId, ImpostorShader.ATTR_SPHERE, 4, INSTANCE_FLOATS, 0);
+    loader.addInstancedAttribute(quad.getVaoId(), vboId, ImpostorShader.ATTR_CELL, 3, INSTANCE_FLOATS, 4);
+    this.maxInstances = maxInstances;
+    this.data = new float[INSTANCE_FLOATS * maxInstances];
+    this.buffer = BufferUtils.createFloatBuffer(INSTANCE_FLOATS * maxInstances);
+    this.distance = distance;
+    this.fade = fade;
+    this.batches = new ArrayList<>();
+    this.eye = new Vector3f();
+    this.batchesByModel = new Batch[0];
+    this.shader = shader;
+    this.shader.init();
+    this.shader.start();
+    this.shader.loadProjectionMatrix(projectionMatrix);
+    this.shader.loadSky(skyColor);
+    this.shader.stop();
+  }
+
+  public ImpostorShader getShader() {
+    return shader;
+  }
+
+  /**
+   * Draws entities with the impostor's model as impostors when they are far away.
+   */
+  public void add(Impostor impostor) {
+    final int modelId = store.getModelId(impostor.getModel());
+    if (modelId >= batchesByModel.length) {
+      batchesByModel = Arrays.copyOf(batchesByModel, modelId + 1);
+    }
+    batchesByModel[modelId] = new Batch(impostor);
+    batches.add(batchesByModel[modelId]);
+  }
+
+  /**
+   * Collects the entities in the list that are far enough away to be drawn as impostors, and
+   * removes those that are too far away to be drawn as meshes too. Call before sorting the list.
+   */
+  public void take(RenderList entities, Vector3f eye) {
+    for (Batch batch : batches) {
+      batch.count = 0;
+    }
+    this.eye.set(eye);
+    entities.removeIf(far);
+  }
+
+  /**
+   * @return whether the entity is drawn only as an impostor
+   */
+  private boolean take(int handle) {
+    final int model = store.getModelIds()[handle];
+    final Batch batch = model >= 0 && model < batchesByModel.length ? batchesByModel[model] : null;
+    if (batch == null) {
+      return false;
+    }
+    final float d = distance(handle);
+    if (d < distance - fade) {
+      return false;
+    }
+    if (batch.count == batch.handles.length) {
+      batch.handles = Arrays.copyOf(batch.handles, batch.count * 2);
+    }
+    batch.handles[batch.count++] = handle;
+    return d >= distance;
+  }
+
+  private float distance(int handle) {
+    final float[] spheres = store.getSpheres();
+    final int s = handle * EntityStore.SPHERE_FLOATS;
+    return eye.distance(spheres[s], spheres[s + 1], spheres[s + 2]);
+  }
+
+  public void render(Matrix4f viewMatrix) {
+    shader.start();
+    shader.loadViewMatrix(eye, viewMatrix);
+    GL30.glBindVertexArray(quad.getVaoId());
+    GL20.glEnableVertexAttribArray(ImpostorShader.ATTR_POSITION);
+    GL20.glEnableVertexAttribArray(ImpostorShader.ATTR_SPHERE);
+    GL20.glEnableVertexAttribArray(ImpostorShader.ATTR_CELL);
+    GL11.glEnable(GL11.GL_BLEND);
+    GL11.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
+    for (Batch batch : batches) {
+      if (batch.count > 0) {
+        render(batch);
+      }
+    }
+    GL11.glDisable(GL11.GL_BLEND);
+    GL20.glDisableVertexAttribArray(ImpostorShader.ATTR_POSITION);
+    GL20.glDisableVertexAttribArray(ImpostorShader.ATTR_SPHERE);
+    GL20.glDisableVertexAttribArray(ImpostorShader.ATTR_CELL);
+    GL30.glBindVertexArray(0);
+    shader.stop();
+  }
+
+  private void render(Batch batch) {
+    final Impostor impostor = batch.impostor;
+    final int rows = impostor.getRows();
+    final float[] spheres = store.getSpheres();
+    final float[] rotations = store.getRotations();
+    shader.loadImpostor(impostor);
+    GL13.glActiveTexture(GL13.GL_TEXTURE0);
+    GL11.glBindTexture(GL11.GL_TEXTURE_2D, impostor.getTextureId());
+    int count = 0;
+    for (int i = 0; i < batch.count; ++i) {
+      final int handle = batch.handles[i];
+      final int s = handle * EntityStore.SPHERE_FLOATS;
+      // direction of the camera in the model's own space picks the view
+      final double angle = Math.atan2(eye.x - spheres[s], eye.z - spheres[s + 2])
+          - Math.toRadians(rotations[handle * EntityStore.ROTATION_FLOATS + 1]);
+      final int view = impostor.getView(angle);
+      final int p = count * INSTANCE_FLOATS;
+      System.arraycopy(spheres, s, data, p, EntityStore.SPHERE_FLOATS);
+      data[p + 4] = (float) (view % rows) / rows;
+      data[p + 5] = (float) (view / rows) / rows;
+      data[p + 6] = Math.min(1.0f, (distance(handle) - distance + fade) / fade);
+      if (++count == maxInstances) {
+        draw(count);
+        count = 0;
+      }
+    }
+    draw(count);
+  }
+
+  private void draw(int count) {
+    if (count > 0) {
+      loader.updateVbo(vboId, data, count * INSTANCE_FLOATS, buffer);
+      GL31.glDrawArraysInstanced(GL11.GL_TRIANGLE_STRIP, 0, quad.getVertexCount(), count);
+    }
+  }
+
+  @Override
+  public void close() {
+    shader.close();
+    for (Batch batch : batches) {
+      batch.impostor.close();
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package net.seabears.game.impostors;
+
+import java.io.IOException;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import net.seabears.game.shaders.ShaderProgram;
+
+public class ImpostorShader extends ShaderProgram {
+  public static final int ATTR_SPHERE = 1;
+  public static final int ATTR_CELL = 2;
+
+  private int locationProjectionMatrix;
+  private int locationViewMatrix;
+  private int locationCameraPosition;
+  private int locationTextureRows;
+  private int locationSkyColor;
+
+  public ImpostorShader() throws IOException {
+    super(SHADER_ROOT + "impostors/");
+  }
+
+  @Override
+  protected void bindAttributes() {
+    super.bindAttribute(ATTR_POSITION, "position");
+    super.bindAttribute(ATTR_SPHERE, "sphere");
+    super.bindAttribute(ATTR_CELL, "cell");
+  }
+
+  @Override
+  protected void getAllUniformLocations() {
+    locationProjectionMatrix = super.getUniformLocation("projectionMatrix");
+    locationViewMatrix = super.getUniformLocation("viewMatrix");
+    locationCameraPosition = super.getUniformLocation("cameraPosition");
+    locationTextureRows = super.getUniformLocation("textureRows");
+    locationSkyColor = super.getUniformLocation("skyColor");
+  }
+
+  public void loadProjectionMatrix(Matrix4f matrix) {
+    super.loadMatrix(locationProjectionMatrix, matrix);
+  }
+
+  public void loadViewMatrix(Vector3f cameraPosition, Matrix4f matrix) {
+    super.loadFloat(locationCameraPosition, cameraPosition);
+    super.loadMatrix(locationViewMatrix, matrix);
+  }
+
+  public void loadImpostor(Impostor impostor) {
+    super.loadFloat(locationTextureRows, impostor.getRows());
+  }
+
+  public void loadSky(Vector3f color) {
+    super.loadFloat(locationSkyColor, color);
+  }
+}
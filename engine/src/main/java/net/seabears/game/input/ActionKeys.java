@@ -1,10 +1,13 @@
 package net.seabears.game.input;
 
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ActionKeys {
   public final AtomicBoolean debug = new AtomicBoolean();
   public final AtomicBoolean interact = new AtomicBoolean();
   public final AtomicBoolean back = new AtomicBoolean();
   public final AtomicBoolean delete = new AtomicBoolean();
+  /** Number key last pressed, from 0 to 9 */
+  public final AtomicInteger number = new AtomicInteger();
 }
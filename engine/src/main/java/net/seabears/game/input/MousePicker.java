@@ -8,6 +8,8 @@ import org.joml.Vector3f;
 import org.joml.Vector4f;
 
 import net.seabears.game.entities.Camera;
+import net.seabears.game.entities.Entity;
+import net.seabears.game.spatial.EntityList;
 import net.seabears.game.terrains.Terrain;
 
 public class MousePicker {
@@ -44,39 +46,47 @@ public class MousePicker {
     return new Vector3f(worldSpace.x, worldSpace.y, worldSpace.z).normalize();
   }
 
+  /**
+   * @return where the ray under the mouse first meets the ground, if the mouse is pressed and that
+   *         is within range
+   */
   public Optional<Vector3f> findTerrainPoint(List<Terrain> terrains, float maxRange) {
-    if (mouse.isPressed() && intersectionInRange(terrains, 0, maxRange, currentRay)) {
-      return binarySearch(terrains, 0, maxRange, maxRange / 1000.0f, currentRay);
-    } else {
+    if (!mouse.isPressed()) {
       return Optional.empty();
     }
+    final Vector3f origin = camera.getPosition();
+    final float distance = Terrain.raycast(terrains, origin.x, origin.y, origin.z, currentRay.x, currentRay.y, currentRay.z, maxRange);
+    return distance <= maxRange ? Optional.of(getPointOnRay(currentRay, distance)) : Optional.empty();
   }
 
-  private Optional<Vector3f> binarySearch(List<Terrain> terrains, float start, float end, float tolerance, Vector3f ray) {
-    final float guess = start + (end - start) / 2.0f;
-    if (Math.abs(guess - start) <= tolerance) {
-      final Vector3f endPoint = getPointOnRay(ray, guess);
-      return Terrain.find(terrains, endPoint.x, endPoint.z).flatMap(t -> Optional.of(endPoint));
+  /**
+   * @return the nearest entity under the mouse, if the mouse is pressed and it is within range;
+   *         found through the index when the list is an {@link EntityList}
+   */
+  public Optional<Entity> findEntity(List<Entity> entities, float maxRange) {
+    if (!mouse.isPressed()) {
+      return Optional.empty();
     }
-
-    if (intersectionInRange(terrains, start, guess, ray)) {
-      return binarySearch(terrains, start, guess, tolerance, ray);
-    } else {
-      return binarySearch(terrains, guess, end, tolerance, ray);
+    final Vector3f origin = camera.getPosition();
+    if (entities instanceof EntityList) {
+      return Optional.ofNullable(((EntityList) entities).pick(origin, currentRay, maxRange));
     }
-  }
-
-  private boolean intersectionInRange(List<Terrain> terrains, float start, float end, Vector3f ray) {
-    final Vector3f startPoint = getPointOnRay(ray, start);
-    final Vector3f endPoint = getPointOnRay(ray, end);
-    return !isUnderGround(terrains, startPoint) && isUnderGround(terrains, endPoint);
+    Entity nearest = null;
+    float nearestDistance = maxRange;
+    for (int i = 0; i < entities.size(); ++i) {
+      final Entity entity = entities.get(i);
+      entity.getStore().updateTransformation(entity.getHandle());
+      final float distance = entity.getStore().intersect(entity.getHandle(),
+          origin.x, origin.y, origin.z, currentRay.x, currentRay.y, currentRay.z, nearestDistance);
+      if (distance <= nearestDistance) {
+        nearest = entity;
+        nearestDistance = distance;
+      }
+    }
+    return Optional.ofNullable(nearest);
   }
 
   private Vector3f getPointOnRay(Vector3f ray, float distance) {
     return new Vector3f(distance).mul(ray).add(camera.getPosition());
   }
-
-  private boolean isUnderGround(List<Terrain> terrains, Vector3f point) {
-    return point.y < Terrain.getHeight(terrains, point.x, point.z);
-  }
 }
@@ -0,0 +1,102 @@
+package net.seabears.game.models;
+
+/**
+ * Axis-aligned bounding box and bounding sphere of a model in its local space. The sphere is
+ * centered on the box.
+ */
+public class Bounds {
+  /**
+   * Computes the bounds of packed 3D positions.
+   */
+  public static Bounds of(float[] positions) {
+    if (positions.length < 3) {
+      return new Bounds(0, 0, 0, 0, 0, 0, 0);
+    }
+    float minX = positions[0], minY = positions[1], minZ = positions[2];
+    float maxX = minX, maxY = minY, maxZ = minZ;
+    for (int i = 3; i < positions.length; i += 3) {
+      minX = Math.min(minX, positions[i]);
+      minY = Math.min(minY, positions[i + 1]);
+      minZ = Math.min(minZ, positions[i + 2]);
+      maxX = Math.max(maxX, positions[i]);
+      maxY = Math.max(maxY, positions[i + 1]);
+      maxZ = Math.max(maxZ, positions[i + 2]);
+    }
+    final float cx = (minX + maxX) * 0.5f, cy = (minY + maxY) * 0.5f, cz = (minZ + maxZ) * 0.5f;
+    float radiusSquared = 0;
+    for (int i = 0; i < positions.length; i += 3) {
+      final float dx = positions[i] - cx, dy = positions[i + 1] - cy, dz = positions[i + 2] - cz;
+      radiusSquared = Math.max(radiusSquared, dx * dx + dy * dy + dz * dz);
+    }
+    return new Bounds(minX, minY, minZ, maxX, maxY, maxZ, (float) Math.sqrt(radiusSquared));
+  }
+
+  private final float minX, minY, minZ;
+  private final float maxX, maxY, maxZ;
+  private final float radius;
+
+  public Bounds(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, float radius) {
+    this.minX = minX;
+    this.minY = minY;
+    this.minZ = minZ;
+    this.maxX = maxX;
+    this.maxY = maxY;
+    this.maxZ = maxZ;
+    this.radius = radius;
+  }
+
+  public float getMinX() {
+    return minX;
+  }
+
+  public float getMinY() {
+    return minY;
+  }
+
+  public float getMinZ() {
+    return minZ;
+  }
+
+  public float getMaxX() {
+    return maxX;
+  }
+
+  public float getMaxY() {
+    return maxY;
+  }
+
+  public float getMaxZ() {
+    return maxZ;
+  }
+
+  public float getCenterX() {
+    return (minX + maxX) * 0.5f;
+  }
+
+  public float getCenterY() {
+    return (minY + maxY) * 0.5f;
+  }
+
+  public float getCenterZ() {
+    return (minZ + maxZ) * 0.5f;
+  }
+
+  public float getExtentX() {
+    return (maxX - minX) * 0.5f;
+  }
+
+  public float getExtentY() {
+    return (maxY - minY) * 0.5f;
+  }
+
+  public float getExtentZ() {
+    return (maxZ - minZ) * 0.5f;
+  }
+
+  /**
+   * @return radius of the sphere centered on the box that contains every vertex
+   */
+  public float getRadius() {
+    return radius;
+  }
+}
@@ -3,10 +3,22 @@ package net.seabears.game.models;
 public class RawModel {
     private final int vaoId;
     private final int vertexCount;
+    private final Bounds bounds;
+    private final TriangleMesh mesh;
 
     public RawModel(int vaoId, int vertexCount) {
+        this(vaoId, vertexCount, null);
+    }
+
+    public RawModel(int vaoId, int vertexCount, Bounds bounds) {
+        this(vaoId, vertexCount, bounds, null);
+    }
+
+    public RawModel(int vaoId, int vertexCount, Bounds bounds, TriangleMesh mesh) {
         this.vaoId = vaoId;
         this.vertexCount = vertexCount;
+        this.bounds = bounds;
+        this.mesh = mesh;
     }
 
     public int getVaoId() {
@@ -17,6 +29,20 @@ public class RawModel {
         return vertexCount;
     }
 
+    /**
+     * @return local bounds, or <code>null</code> if this model is not a 3D mesh
+     */
+    public Bounds getBounds() {
+        return bounds;
+    }
+
+    /**
+     * @return triangles for picking, or <code>null</code> if they were not kept
+     */
+    public TriangleMesh getMesh() {
+        return mesh;
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
@@ -3,22 +3,55 @@ package net.seabears.game.models;
 import net.seabears.game.textures.ModelTexture;
 
 public class TexturedModel {
+  /** Most levels of detail a model may have */
+  public static final int MAX_LODS = 4;
+
   private final RawModel rawModel;
+  private final RawModel[] lods;
   private final ModelTexture texture;
 
   public TexturedModel(RawModel rawModel, ModelTexture texture) {
-    this.rawModel = rawModel;
+    this(new RawModel[] {rawModel}, texture);
+  }
+
+  /**
+   * @param lods meshes from the most to the least detailed, sharing the first mesh's bounds
+   */
+  public TexturedModel(RawModel[] lods, ModelTexture texture) {
+    if (lods.length == 0 || lods.length > MAX_LODS) {
+      throw new IllegalArgumentException("Models need 1 to " + MAX_LODS + " levels of detail, not " + lods.length);
+    }
+    this.rawModel = lods[0];
+    this.lods = lods.clone();
     this.texture = texture;
   }
 
+  /**
+   * @return the most detailed mesh
+   */
   public RawModel getRawModel() {
     return rawModel;
   }
 
+  public RawModel getRawModel(int lod) {
+    return lods[lod];
+  }
+
+  public int getLodCount() {
+    return lods.length;
+  }
+
   public ModelTexture getTexture() {
     return texture;
   }
 
+  /**
+   * @return local bounds of the mesh, or <code>null</code> if unknown
+   */
+  public Bounds getBounds() {
+    return rawModel == null ? null : rawModel.getBounds();
+  }
+
   @Override
   public int hashCode() {
     final int prime = 31;
@@ -0,0 +1,37 @@
+package net.seabears.game.models;
+
+import net.seabears.game.util.Intersection;
+
+/**
+ * Positions and indices of a model kept in memory after upload, so rays can be tested against its
+ * triangles.
+ */
+public class TriangleMesh {
+  private final float[] positions;
+  private final int[] indices;
+
+  public TriangleMesh(float[] positions, int[] indices) {
+    this.positions = positions;
+    this.indices = indices;
+  }
+
+  /**
+   * @param maxDistance distance beyond which hits are ignored
+   * @return distance to the nearest triangle the ray hits, in the model's local space, or infinity
+   *         if there is none
+   */
+  public float intersect(float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance) {
+    float nearest = Float.POSITIVE_INFINITY;
+    for (int i = 0; i + 2 < indices.length; i += 3) {
+      final int a = indices[i] * 3, b = indices[i + 1] * 3, c = indices[i + 2] * 3;
+      final float t = Intersection.triangle(ox, oy, oz, dx, dy, dz,
+          positions[a], positions[a + 1], positions[a + 2],
+          positions[b], positions[b + 1], positions[b + 2],
+          positions[c], positions[c + 1], positions[c + 2]);
+      if (t < nearest && t <= maxDistance) {
+        nearest = t;
+      }
+    }
+    return nearest;
+  }
+}
@@ -0,0 +1,50 @@
+package net.seabears.game.particles;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits a range of particles into chunks of {@link #SIZE}, starting at multiples of it, and works
+ * on them in parallel. Each chunk touches only its own particles, so the results do not depend on
+ * how many threads there are.
+ */
+final class Chunks extends RecursiveAction {
+  static final int SIZE = 2048;
+  private static final long serialVersionUID = 1L;
+
+  interface Block {
+    void compute(int start, int end);
+  }
+
+  private final Block block;
+  private final int start;
+  private final int end;
+
+  private Chunks(Block block, int start, int end) {
+    this.block = block;
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   * Runs a block over particles 0 to <code>count</code>, on this thread if they fit in one chunk.
+   */
+  static void run(ForkJoinPool executor, int count, Block block) {
+    if (count <= SIZE) {
+      block.compute(0, count);
+    } else {
+      executor.invoke(new Chunks(block, 0, count));
+    }
+  }
+
+  @Override
+  protected void compute() {
+    final int chunks = (end - start + SIZE - 1) / SIZE;
+    if (chunks <= 1) {
+      block.compute(start, end);
+    } else {
+      final int middle = start + (chunks >>> 1) * SIZE;
+      invokeAll(new Chunks(block, start, middle), new Chunks(block, middle, end));
+    }
+  }
+}
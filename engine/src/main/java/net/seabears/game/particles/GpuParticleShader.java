@@ -0,0 +1,39 @@
+package net.seabears.game.particles;
+
+import java.io.IOException;
+
+import org.joml.Matrix4f;
+
+/**
+ * Draws particles straight from their simulated state, building each billboard and finding its
+ * atlas cells in the vertex shader.
+ */
+public class GpuParticleShader extends ParticleShader {
+  public static final int ATTR_PARTICLE_POSITION = 1;
+  public static final int ATTR_PARTICLE_LIFE = 2;
+  public static final int ATTR_PARTICLE_LOOK = 3;
+
+  private int locationViewMatrix;
+
+  public GpuParticleShader() throws IOException {
+    super(SHADER_ROOT + "particles/gpu/");
+  }
+
+  @Override
+  protected void bindAttributes() {
+    super.bindAttribute(ATTR_POSITION, "position");
+    super.bindAttribute(ATTR_PARTICLE_POSITION, "particlePosition");
+    super.bindAttribute(ATTR_PARTICLE_LIFE, "particleLife");
+    super.bindAttribute(ATTR_PARTICLE_LOOK, "particleLook");
+  }
+
+  @Override
+  protected void getAllUniformLocations() {
+    super.getAllUniformLocations();
+    locationViewMatrix = super.getUniformLocation("viewMatrix");
+  }
+
+  public void loadViewMatrix(Matrix4f matrix) {
+    super.loadMatrix(locationViewMatrix, matrix);
+  }
+}
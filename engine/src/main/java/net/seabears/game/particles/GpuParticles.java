@@ -0,0 +1,236 @@
+package net.seabears.game.particles;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.joml.Matrix4f;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL13;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GL33;
+
+import net.seabears.game.render.Loader;
+import net.seabears.game.render.Renderer;
+
+/**
+ * Particles of one texture that live entirely on the GPU. Each frame a transform feedback pass reads
+ * every particle from one buffer and writes it moved and aged into the other; then the buffers swap
+ * and the particles are drawn straight from the newer one. The CPU only writes the particles emitted
+ * that frame, so its cost does not depend on how many are alive.
+ * <p>
+ * Particles are kept in a ring: new ones take the slots after the last ones emitted, replacing the
+ * oldest particles once the ring is full. Dead particles keep their slots until then and are
+ * collapsed to nothing as they are drawn. The particles are not sorted by distance, so they suit
+ * textures that blend additively.
+ */
+public class GpuParticles implements ParticleEmitter, Renderer {
+  /** position, velocity, age, time to live, gravity, rotation and scale */
+  public static final int FLOATS = 11;
+  private static final int BYTES = FLOATS * Float.BYTES;
+
+  private final List<ParticleSystem> systems = new ArrayList<>();
+  private final ParticleTexture texture;
+  private final ParticleUpdateShader updateShader;
+  private final GpuParticleShader shader;
+  private final int capacity;
+  // the two buffers of particles, each with the VAO that reads it to update it and the VAO that draws it
+  private final int[] states = new int[2];
+  private final int[] updateVaos = new int[2];
+  private final int[] renderVaos = new int[2];
+  private final int vertexCount;
+  // particles emitted since the last update, waiting to be uploaded
+  private final FloatBuffer spawns;
+  private final int maxSpawns;
+  private int spawned;
+  // buffer holding the latest particles
+  private int current;
+  // slot of the next particle emitted
+  private int cursor;
+  // slots that have ever held a particle, which are the only ones to update and draw
+  private int used;
+
+  /**
+   * @param size half the width of a particle's quad before it is scaled
+   * @param capacity most particles alive at once
+   * @param maxSpawns most particles emitted in one frame
+   */
+  public GpuParticles(Loader loader, ParticleUpdateShader updateShader, GpuParticleShader shader, Matrix4f projectionMatrix,
+      ParticleTexture texture, float size, int capacity, int maxSpawns) {
+    this.texture = texture;
+    this.capacity = capacity;
+    this.maxSpawns = Math.min(maxSpawns, capacity);
+    this.spawns = BufferUtils.createFloatBuffer(this.maxSpawns * FLOATS);
+
+    final float[] vertices = {-size, size, -size, -size, size, size, size, -size};
+    this.vertexCount = vertices.length / 2;
+    final ByteBuffer quad = BufferUtils.createByteBuffer(vertices.length * Float.BYTES);
+    quad.asFloatBuffer().put(vertices);
+    // a particle whose time to live is zero is dead, so empty buffers hold no particles
+    final ByteBuffer empty = BufferUtils.createByteBuffer(capacity * BYTES);
+    for (int i = 0; i < 2; ++i) {
+      updateVaos[i] = loader.createVao();
+      states[i] = loader.storeBuffer(GL15.GL_ARRAY_BUFFER, empty, GL15.GL_DYNAMIC_COPY);
+      addAttribute(ParticleUpdateShader.ATTR_POSITION, 3, 0, false);
+      addAttribute(ParticleUpdateShader.ATTR_VELOCITY, 3, 3, false);
+      addAttribute(ParticleUpdateShader.ATTR_LIFE, 3, 6, false);
+      addAttribute(ParticleUpdateShader.ATTR_LOOK, 2, 9, false);
+      loader.unbindVao();
+
+      renderVaos[i] = loader.createVao();
+      loader.storeBuffer(GL15.GL_ARRAY_BUFFER, quad);
+      GL20.glVertexAttribPointer(GpuParticleShader.ATTR_POSITION, 2, GL11.GL_FLOAT, false, 0, 0);
+      GL20.glEnableVertexAttribArray(GpuParticleShader.ATTR_POSITION);
+      GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, states[i]);
+      addAttribute(GpuParticleShader.ATTR_PARTICLE_POSITION, 3, 0, true);
+      addAttribute(GpuParticleShader.ATTR_PARTICLE_LIFE, 3, 6, true);
+      addAttribute(GpuParticleShader.ATTR_PARTICLE_LOOK, 2, 9, true);
+      loader.unbindVao();
+      GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+    }
+
+    this.updateShader = updateShader;
+    this.updateShader.init();
+    this.shader = shader;
+    this.shader.init();
+    this.shader.start();
+    this.shader.loadProjectionMatrix(projectionMatrix);
+    this.shader.loadTexture(texture);
+    this.shader.stop();
+  }
+
+  /**
+   * Points an attribute of the bound VAO at part of each particle in the bound buffer.
+   *
+   * @param offset floats before the attribute
+   * @param instanced whether the attribute steps once per particle drawn instead of once per vertex
+   */
+  private static void addAttribute(int attribute, int size, int offset, boolean instanced) {
+    GL20.glVertexAttribPointer(attribute, size, GL11.GL_FLOAT, false, BYTES, offset * Float.BYTES);
+    if (instanced) {
+      GL33.glVertexAttribDivisor(attribute, 1);
+    }
+    GL20.glEnableVertexAttribArray(attribute);
+  }
+
+  public void add(ParticleSystem system) {
+    systems.add(system);
+  }
+
+  public ParticleTexture getTexture() {
+    return texture;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Queues a particle to upload with the next update. Only this system's texture may be emitted.
+   *
+   * @return slot of the new particle, or -1 if this frame has emitted all it may
+   */
+  @Override
+  public int emit(ParticleTexture texture, float x, float y, float z, float vx, float vy, float vz, float gravity, float ttl, float rotation,
+      float scale) {
+    if (!this.texture.equals(texture)) {
+      throw new IllegalArgumentException("Particles of texture " + this.texture.getTextureId() + " cannot have texture " + texture.getTextureId());
+    }
+    if (spawned == maxSpawns) {
+      return -1;
+    }
+    spawns.put(x).put(y).put(z);
+    spawns.put(vx).put(vy).put(vz);
+    spawns.put(0.0f).put(ttl).put(gravity);
+    spawns.put(rotation).put(scale);
+    return (cursor + spawned++) % capacity;
+  }
+
+  /**
+   * Moves and ages every particle on the GPU, then adds the particles the systems emit.
+   *
+   * @param t seconds since the last update
+   */
+  public void update(float t) {
+    for (int i = 0; i < systems.size(); ++i) {
+      systems.get(i).generate(t, this);
+    }
+
+    if (used > 0) {
+      final int next = 1 - current;
+      updateShader.start();
+      updateShader.loadDelta(t);
+      GL30.glBindVertexArray(updateVaos[current]);
+      GL30.glBindBufferBase(GL30.GL_TRANSFORM_FEEDBACK_BUFFER, 0, states[next]);
+      GL11.glEnable(GL30.GL_RASTERIZER_DISCARD);
+      GL30.glBeginTransformFeedback(GL11.GL_POINTS);
+      GL11.glDrawArrays(GL11.GL_POINTS, 0, used);
+      GL30.glEndTransformFeedback();
+      GL11.glDisable(GL30.GL_RASTERIZER_DISCARD);
+      GL30.glBindBufferBase(GL30.GL_TRANSFORM_FEEDBACK_BUFFER, 0, 0);
+      GL30.glBindVertexArray(0);
+      updateShader.stop();
+      current = next;
+    }
+
+    // new particles start where they were emitted
+    if (spawned > 0) {
+      upload();
+    }
+  }
+
+  /**
+   * Writes this frame's new particles into the slots after the last ones, wrapping to the start of
+   * the ring.
+   */
+  private void upload() {
+    spawns.flip();
+    final int first = Math.min(spawned, capacity - cursor);
+    GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, states[current]);
+    spawns.limit(first * FLOATS);
+    GL15.glBufferSubData(GL15.GL_ARRAY_BUFFER, (long) cursor * BYTES, spawns);
+    if (first < spawned) {
+      spawns.limit(spawned * FLOATS).position(first * FLOATS);
+      GL15.glBufferSubData(GL15.GL_ARRAY_BUFFER, 0, spawns);
+    }
+    GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+
+    used = cursor + spawned >= capacity ? capacity : Math.max(used, cursor + spawned);
+    cursor = (cursor + spawned) % capacity;
+    spawned = 0;
+    spawns.clear();
+  }
+
+  /**
+   * Draws every particle in one instanced call.
+   */
+  public void render(Matrix4f viewMatrix) {
+    if (used == 0) {
+      return;
+    }
+    shader.start();
+    shader.loadViewMatrix(viewMatrix);
+    GL30.glBindVertexArray(renderVaos[current]);
+    GL11.glEnable(GL11.GL_BLEND);
+    GL11.glBlendFunc(GL11.GL_SRC_ALPHA, texture.getBlendFunc());
+    GL11.glDepthMask(false);
+    GL13.glActiveTexture(GL13.GL_TEXTURE0);
+    GL11.glBindTexture(GL11.GL_TEXTURE_2D, texture.getTextureId());
+    GL31.glDrawArraysInstanced(GL11.GL_TRIANGLE_STRIP, 0, vertexCount, used);
+    GL11.glDepthMask(true);
+    GL11.glDisable(GL11.GL_BLEND);
+    GL30.glBindVertexArray(0);
+    shader.stop();
+  }
+
+  @Override
+  public void close() {
+    updateShader.close();
+    shader.close();
+  }
+}
@@ -0,0 +1,23 @@
+package net.seabears.game.particles;
+
+import org.joml.Vector3f;
+
+/**
+ * Takes newly emitted particles, whether they are simulated on the CPU or on the GPU.
+ */
+public interface ParticleEmitter {
+  default int emit(ParticleTexture texture, Vector3f position, Vector3f velocity, float gravity, float ttl, float rotation, float scale) {
+    return emit(texture, position.x, position.y, position.z, velocity.x, velocity.y, velocity.z, gravity, ttl, rotation, scale);
+  }
+
+  /**
+   * Adds a particle at the start of its life.
+   *
+   * @param gravity change in upward velocity per second
+   * @param ttl seconds the particle lives
+   * @param rotation degrees about the view direction
+   * @return index of the new particle, or -1 if there is no room for it
+   */
+  int emit(ParticleTexture texture, float x, float y, float z, float vx, float vy, float vz, float gravity, float ttl, float rotation,
+      float scale);
+}
@@ -0,0 +1,199 @@
+package net.seabears.game.particles;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.joml.Matrix4f;
+import org.lwjgl.opengl.GL11;
+
+/**
+ * Per-instance data of the particles to draw, ready to upload: a model-view matrix that faces the
+ * camera, then the atlas cells of the particle's stage of life and of the next stage and how far it
+ * is between them. Particles are grouped by texture, each group in one run of the data, with the
+ * farthest first unless the texture blends additively. The data is filled in parallel.
+ */
+public class ParticleInstances {
+  public static final int FLOATS = 21;
+
+  private final float[] data;
+  // indices of the particles in the order they are stored
+  private final int[] order;
+  // distance and index of each particle of a group, to sort by, and room to merge them
+  private final long[] keys;
+  private final long[] merged;
+  // first instance of each texture's group, then the end of the last
+  private int[] starts = new int[1];
+  private int[] rows = new int[0];
+  private int textures;
+
+  /**
+   * @param capacity most particles to store at once
+   */
+  public ParticleInstances(int capacity) {
+    this.data = new float[capacity * FLOATS];
+    this.order = new int[capacity];
+    this.keys = new long[capacity];
+    this.merged = new long[capacity];
+  }
+
+  /**
+   * @param visible indices of the particles to store
+   * @param count number of indices to use
+   */
+  public void build(ParticlePool particles, int[] visible, int count, Matrix4f viewMatrix) {
+    build(particles, visible, count, viewMatrix, ForkJoinPool.commonPool());
+  }
+
+  public void build(ParticlePool particles, int[] visible, int count, Matrix4f viewMatrix, ForkJoinPool executor) {
+    final List<ParticleTexture> textureList = particles.getTextures();
+    textures = textureList.size();
+    if (starts.length < textures + 1) {
+      starts = new int[textures + 1];
+      rows = new int[textures];
+    }
+
+    // count the particles of each texture, then place each after those of the textures before it
+    Arrays.fill(starts, 0);
+    for (int i = 0; i < count; ++i) {
+      ++starts[particles.getTexture(visible[i]) + 1];
+    }
+    for (int t = 0; t < textures; ++t) {
+      starts[t + 1] += starts[t];
+      rows[t] = textureList.get(t).getRows();
+    }
+    for (int i = 0; i < count; ++i) {
+      final int t = particles.getTexture(visible[i]);
+      order[starts[t]++] = visible[i];
+    }
+    // placing moved each start to the next group's
+    System.arraycopy(starts, 0, starts, 1, textures);
+    starts[0] = 0;
+
+    for (int t = 0; t < textures; ++t) {
+      if (textureList.get(t).getBlendFunc() != GL11.GL_ONE) {
+        sortByDistance(particles, starts[t], starts[t + 1], executor);
+      }
+    }
+
+    // the rotation of the view cancels out of the billboard, leaving its roll and scale
+    final Matrix4f v = viewMatrix;
+    Chunks.run(executor, count, (start, end) -> {
+      for (int k = start; k < end; ++k) {
+        final int i = order[k];
+        final float x = particles.getX(i), y = particles.getY(i), z = particles.getZ(i);
+        final double angle = Math.toRadians(particles.getRotation(i));
+        final float scale = particles.getScale(i);
+        final float sin = (float) Math.sin(angle) * scale;
+        final float cos = (float) Math.cos(angle) * scale;
+        int p = k * FLOATS;
+        data[p++] = cos;
+        data[p++] = sin;
+        data[p++] = 0.0f;
+        data[p++] = 0.0f;
+        data[p++] = -sin;
+        data[p++] = cos;
+        data[p++] = 0.0f;
+        data[p++] = 0.0f;
+        data[p++] = 0.0f;
+        data[p++] = 0.0f;
+        data[p++] = scale;
+        data[p++] = 0.0f;
+        data[p++] = v.m00 * x + v.m10 * y + v.m20 * z + v.m30;
+        data[p++] = v.m01 * x + v.m11 * y + v.m21 * z + v.m31;
+        data[p++] = v.m02 * x + v.m12 * y + v.m22 * z + v.m32;
+        data[p++] = 1.0f;
+
+        final int cells = rows[particles.getTexture(i)];
+        final int stageCount = cells * cells;
+        final float progress = particles.getLife(i) * stageCount;
+        final int index = (int) Math.floor(progress);
+        final int indexNext = index < stageCount - 1 ? index + 1 : index;
+        data[p++] = (float) (index % cells) / cells;
+        data[p++] = (float) (index / cells) / cells;
+        data[p++] = (float) (indexNext % cells) / cells;
+        data[p++] = (float) (indexNext / cells) / cells;
+        data[p++] = progress - index;
+      }
+    });
+  }
+
+  /**
+   * Sorts a group so the farthest particles are first. Squared distances are never negative, so
+   * their bits sort in the same order as their values.
+   */
+  private void sortByDistance(ParticlePool particles, int start, int end, ForkJoinPool executor) {
+    for (int k = start; k < end; ++k) {
+      keys[k] = (long) Float.floatToIntBits(particles.getDistance(order[k])) << 32 | order[k];
+    }
+    if (end - start <= Chunks.SIZE) {
+      Arrays.sort(keys, start, end);
+    } else {
+      executor.invoke(new Sort(keys, merged, start, end));
+    }
+    for (int k = start; k < end; ++k) {
+      order[end - 1 - (k - start)] = (int) keys[k];
+    }
+  }
+
+  /**
+   * Sorts chunks in parallel, then merges them pairwise back up.
+   */
+  private static final class Sort extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final long[] keys;
+    private final long[] merged;
+    private final int start;
+    private final int end;
+
+    private Sort(long[] keys, long[] merged, int start, int end) {
+      this.keys = keys;
+      this.merged = merged;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      final int chunks = (end - start + Chunks.SIZE - 1) / Chunks.SIZE;
+      if (chunks <= 1) {
+        Arrays.sort(keys, start, end);
+        return;
+      }
+      final int middle = start + (chunks >>> 1) * Chunks.SIZE;
+      invokeAll(new Sort(keys, merged, start, middle), new Sort(keys, merged, middle, end));
+      int a = start, b = middle, out = start;
+      while (a < middle && b < end) {
+        merged[out++] = keys[a] <= keys[b] ? keys[a++] : keys[b++];
+      }
+      System.arraycopy(keys, a, merged, out, middle - a);
+      out += middle - a;
+      System.arraycopy(keys, b, merged, out, end - b);
+      System.arraycopy(merged, start, keys, start, end - start);
+    }
+  }
+
+  public float[] getData() {
+    return data;
+  }
+
+  /**
+   * @return number of textures, some of which may have no particles
+   */
+  public int getTextureCount() {
+    return textures;
+  }
+
+  /**
+   * @return first instance with the texture at the same index in {@link ParticlePool#getTextures()}
+   */
+  public int getStart(int texture) {
+    return starts[texture];
+  }
+
+  public int getCount(int texture) {
+    return starts[texture + 1] - starts[texture];
+  }
+}
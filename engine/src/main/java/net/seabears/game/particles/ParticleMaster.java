@@ -1,23 +1,22 @@
 package net.seabears.game.particles;
 
-import static java.util.stream.Collectors.toCollection;
-
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 
 import net.seabears.game.entities.Camera;
 import net.seabears.game.util.FpsCalc;
 
 public class ParticleMaster {
   private final List<ParticleSystem> systems;
-  private final List<Particle> particles;
+  private final ParticlePool particles;
   private final FpsCalc fps;
 
-  public ParticleMaster(FpsCalc fps) {
+  /**
+   * @param capacity most particles alive at once
+   */
+  public ParticleMaster(FpsCalc fps, int capacity) {
     this.fps = fps;
-    this.particles = new ArrayList<>();
+    this.particles = new ParticlePool(capacity);
     this.systems = new ArrayList<>();
   }
 
@@ -27,22 +26,16 @@ public class ParticleMaster {
 
   public void update(Camera camera) {
     final float t = fps.get();
-    // get particles from all systems
-    final List<Particle> toAdd = systems.stream().flatMap(s -> s.generate(t).stream()).collect(toCollection(LinkedList::new));
-    toAdd.forEach(p -> p.update(0L, camera));
     // update all particles, remove expired ones
-    particles.removeIf(p -> !p.update(t, camera));
-    // add new particles to the front of the list so they are rendered first (and appear behind others)
-    particles.addAll(0, toAdd);
+    particles.update(t);
+    // new particles start where they were emitted
+    for (int i = 0; i < systems.size(); ++i) {
+      systems.get(i).generate(t, particles);
+    }
+    particles.measure(camera.getPosition());
   }
 
-  public List<Particle> getParticles() {
+  public ParticlePool getParticles() {
     return particles;
   }
-
-  public static Map<ParticleTexture, List<Particle>> sortParticles(List<Particle> particles) {
-    final ParticlesByTexture byTexture = new ParticlesByTexture();
-    byTexture.addAll(particles);
-    return byTexture.get();
-  }
 }
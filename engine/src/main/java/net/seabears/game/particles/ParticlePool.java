@@ -0,0 +1,220 @@
+package net.seabears.game.particles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.joml.Vector3f;
+
+import net.seabears.game.util.Frustum;
+
+/**
+ * Every live particle, held as parallel arrays of floats so that updating them allocates nothing
+ * and walks memory in order. Live particles fill the front of the arrays; a particle that dies is
+ * replaced by the last one, so the order of particles changes as they die. The pool never grows:
+ * particles emitted while it is full are dropped.
+ * <p>
+ * Updates are split into fixed chunks run on a fork/join pool. Particles are emitted and removed
+ * only on the calling thread, so the pool ends up the same whatever the number of threads.
+ */
+public class ParticlePool implements ParticleEmitter {
+  private final int capacity;
+  // textures in the order they were first emitted with
+  private final List<ParticleTexture> textures = new ArrayList<>();
+  private final float[] positionX, positionY, positionZ;
+  private final float[] velocityX, velocityY, velocityZ;
+  private final float[] gravity;
+  private final float[] age;
+  private final float[] ttl;
+  private final float[] rotation;
+  private final float[] scale;
+  // squared distance from the eye
+  private final float[] distance;
+  private final int[] texture;
+  private int size;
+
+  public ParticlePool(int capacity) {
+    this.capacity = capacity;
+    this.positionX = new float[capacity];
+    this.positionY = new float[capacity];
+    this.positionZ = new float[capacity];
+    this.velocityX = new float[capacity];
+    this.velocityY = new float[capacity];
+    this.velocityZ = new float[capacity];
+    this.gravity = new float[capacity];
+    this.age = new float[capacity];
+    this.ttl = new float[capacity];
+    this.rotation = new float[capacity];
+    this.scale = new float[capacity];
+    this.distance = new float[capacity];
+    this.texture = new int[capacity];
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * @return number of live particles, which are numbered from zero
+   */
+  public int size() {
+    return size;
+  }
+
+  public void clear() {
+    size = 0;
+  }
+
+  @Override
+  public int emit(ParticleTexture texture, float x, float y, float z, float vx, float vy, float vz, float gravity, float ttl, float rotation,
+      float scale) {
+    if (size == capacity) {
+      return -1;
+    }
+    final int i = size++;
+    positionX[i] = x;
+    positionY[i] = y;
+    positionZ[i] = z;
+    velocityX[i] = vx;
+    velocityY[i] = vy;
+    velocityZ[i] = vz;
+    this.gravity[i] = gravity;
+    this.age[i] = 0.0f;
+    this.ttl[i] = ttl;
+    this.rotation[i] = rotation;
+    this.scale[i] = scale;
+    this.distance[i] = 0.0f;
+    this.texture[i] = indexOf(texture);
+    return i;
+  }
+
+  private int indexOf(ParticleTexture texture) {
+    for (int i = 0; i < textures.size(); ++i) {
+      if (textures.get(i).equals(texture)) {
+        return i;
+      }
+    }
+    textures.add(texture);
+    return textures.size() - 1;
+  }
+
+  public void update(float t) {
+    update(t, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Moves every particle and ages it, removing those that outlive their time to live.
+   *
+   * @param t seconds since the last update
+   */
+  public void update(float t, ForkJoinPool executor) {
+    Chunks.run(executor, size, (start, end) -> {
+      for (int i = start; i < end; ++i) {
+        velocityY[i] += gravity[i] * t;
+        positionX[i] += velocityX[i] * t;
+        positionY[i] += velocityY[i] * t;
+        positionZ[i] += velocityZ[i] * t;
+        age[i] += t;
+      }
+    });
+    // walk backward so that the particle moved into a dead one's place has already been checked
+    for (int i = size - 1; i >= 0; --i) {
+      if (age[i] >= ttl[i]) {
+        remove(i);
+      }
+    }
+  }
+
+  private void remove(int i) {
+    final int last = --size;
+    positionX[i] = positionX[last];
+    positionY[i] = positionY[last];
+    positionZ[i] = positionZ[last];
+    velocityX[i] = velocityX[last];
+    velocityY[i] = velocityY[last];
+    velocityZ[i] = velocityZ[last];
+    gravity[i] = gravity[last];
+    age[i] = age[last];
+    ttl[i] = ttl[last];
+    rotation[i] = rotation[last];
+    scale[i] = scale[last];
+    distance[i] = distance[last];
+    texture[i] = texture[last];
+  }
+
+  public void measure(Vector3f eye) {
+    measure(eye, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Finds how far every particle is from the eye, for sorting.
+   */
+  public void measure(Vector3f eye, ForkJoinPool executor) {
+    final float x = eye.x, y = eye.y, z = eye.z;
+    Chunks.run(executor, size, (start, end) -> {
+      for (int i = start; i < end; ++i) {
+        final float dx = x - positionX[i], dy = y - positionY[i], dz = z - positionZ[i];
+        distance[i] = dx * dx + dy * dy + dz * dz;
+      }
+    });
+  }
+
+  /**
+   * @param visible filled with the indices of the particles inside the frustum
+   * @return number of indices filled
+   */
+  public int select(Frustum frustum, int[] visible) {
+    int count = 0;
+    for (int i = 0; i < size; ++i) {
+      if (frustum.containsSphere(positionX[i], positionY[i], positionZ[i], 0.0f)) {
+        visible[count++] = i;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return textures of the particles, numbered as by {@link #getTexture(int)}
+   */
+  public List<ParticleTexture> getTextures() {
+    return textures;
+  }
+
+  /**
+   * @return index of the particle's texture in {@link #getTextures()}
+   */
+  public int getTexture(int i) {
+    return texture[i];
+  }
+
+  public float getX(int i) {
+    return positionX[i];
+  }
+
+  public float getY(int i) {
+    return positionY[i];
+  }
+
+  public float getZ(int i) {
+    return positionZ[i];
+  }
+
+  public float getRotation(int i) {
+    return rotation[i];
+  }
+
+  public float getScale(int i) {
+    return scale[i];
+  }
+
+  public float getDistance(int i) {
+    return distance[i];
+  }
+
+  /**
+   * @return fraction of its life the particle has lived
+   */
+  public float getLife(int i) {
+    return age[i] / ttl[i];
+  }
+}
@@ -4,10 +4,8 @@ import static java.util.stream.IntStream.range;
 
 import java.nio.FloatBuffer;
 import java.util.List;
-import java.util.Map;
 
 import org.joml.Matrix4f;
-import org.joml.Vector3f;
 import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL13;
@@ -18,12 +16,12 @@ import org.lwjgl.opengl.GL31;
 import net.seabears.game.models.RawModel;
 import net.seabears.game.render.Loader;
 import net.seabears.game.render.Renderer;
-import net.seabears.game.util.InsertionSort;
 
 public class ParticleRenderer implements Renderer {
-  private static final int INSTANCE_FLOATS = 21;
+  private static final int INSTANCE_FLOATS = ParticleInstances.FLOATS;
 
   private final FloatBuffer buffer;
+  private final ParticleInstances instances;
   private final int maxInstances;
   private final Loader loader;
   private final ParticleShader shader;
@@ -31,7 +29,6 @@ public class ParticleRenderer implements Renderer {
   private final RawModel quad;
   private final int vboId;
   private final int attributes;
-  private int pointer;
 
   public ParticleRenderer(Loader loader, ParticleShader shader, Matrix4f projectionMatrix, float size, int maxInstances) {
     this.maxInstances = maxInstances;
@@ -41,6 +38,7 @@ public class ParticleRenderer implements Renderer {
     this.vboId = loader.emptyVbo(INSTANCE_FLOATS * maxInstances);
     this.attributes = 1 + addInstancedAttributes(INSTANCE_FLOATS, 4);
     this.buffer = BufferUtils.createFloatBuffer(maxInstances * INSTANCE_FLOATS);
+    this.instances = new ParticleInstances(maxInstances);
     this.shader = shader;
     this.shader.init();
     this.shader.start();
@@ -63,10 +61,21 @@ public class ParticleRenderer implements Renderer {
     return shader;
   }
 
-  public void render(Map<ParticleTexture, List<Particle>> particles, Matrix4f viewMatrix) {
-    if (particles.isEmpty()) {
+  /**
+   * Draws particles from a pool, a batch per texture.
+   *
+   * @param visible indices of the particles to draw
+   * @param count number of indices to use
+   */
+  public void render(ParticlePool particles, int[] visible, int count, Matrix4f viewMatrix) {
+    if (count == 0) {
       return;
     }
+    // check that there's enough room for all the particles
+    if (count > maxInstances) {
+      throw new IllegalStateException("Too many particles! Allowed " + maxInstances + " but given " + count);
+    }
+    instances.build(particles, visible, count, viewMatrix);
 
     // bind values that are the same for all particles
     shader.start();
@@ -76,32 +85,22 @@ public class ParticleRenderer implements Renderer {
     GL11.glDepthMask(false);
 
     // iterate over types of particles
-    for (Map.Entry<ParticleTexture, List<Particle>> entry : particles.entrySet()) {
-      // checl that there's enough room for all the particles
-      final int particleCount = entry.getValue().size();
-      if (particleCount > maxInstances) {
-        throw new IllegalStateException("Too many " + Particle.class + "! Allowed " + maxInstances + " but given " + particleCount);
+    final List<ParticleTexture> textures = particles.getTextures();
+    for (int t = 0; t < instances.getTextureCount(); ++t) {
+      final int particleCount = instances.getCount(t);
+      if (particleCount == 0) {
+        continue;
       }
 
       // load texture data
-      GL11.glBlendFunc(GL11.GL_SRC_ALPHA, entry.getKey().getBlendFunc());
+      final ParticleTexture texture = textures.get(t);
+      GL11.glBlendFunc(GL11.GL_SRC_ALPHA, texture.getBlendFunc());
       GL13.glActiveTexture(GL13.GL_TEXTURE0);
-      GL11.glBindTexture(GL11.GL_TEXTURE_2D, entry.getKey().getTextureId());
-      shader.loadTexture(entry.getKey());
+      GL11.glBindTexture(GL11.GL_TEXTURE_2D, texture.getTextureId());
+      shader.loadTexture(texture);
 
-      // sort so that farthest-away particles are first IF not using addditive blending
-      if (entry.getKey().getBlendFunc() != GL11.GL_ONE) {
-        InsertionSort.sortDescending(entry.getValue(), (a, b) -> (int) Math.signum(a.getDistance() - b.getDistance()));
-      }
-
-      // copy data to an array and load
-      pointer = 0;
-      final float[] vboData = new float[particleCount * INSTANCE_FLOATS];
-      for (Particle particle : entry.getValue()) {
-        storeMatrix(getModelViewMatrix(particle, viewMatrix), vboData);
-        storeTextureOffsets(particle, vboData);
-      }
-      loader.updateVbo(vboId, vboData, buffer);
+      // load this texture's instances
+      loader.updateVbo(vboId, instances.getData(), instances.getStart(t) * INSTANCE_FLOATS, particleCount * INSTANCE_FLOATS, buffer);
 
       // draw the particles
       GL31.glDrawArraysInstanced(GL11.GL_TRIANGLE_STRIP, 0, quad.getVertexCount(), particleCount);
@@ -115,38 +114,6 @@ public class ParticleRenderer implements Renderer {
     shader.stop();
   }
 
-  private Matrix4f getModelViewMatrix(Particle particle, Matrix4f viewMatrix) {
-    // get model-view matrix, but transpose some elements so there is no rotation
-    // this keeps particles always visible to the camera
-    Matrix4f modelMatrix = new Matrix4f();
-    modelMatrix.translate(particle.getPosition());
-    modelMatrix.m00 = viewMatrix.m00;
-    modelMatrix.m01 = viewMatrix.m10;
-    modelMatrix.m02 = viewMatrix.m20;
-    modelMatrix.m10 = viewMatrix.m01;
-    modelMatrix.m11 = viewMatrix.m11;
-    modelMatrix.m12 = viewMatrix.m21;
-    modelMatrix.m20 = viewMatrix.m02;
-    modelMatrix.m21 = viewMatrix.m12;
-    modelMatrix.m22 = viewMatrix.m22;
-    modelMatrix.rotate((float) Math.toRadians(particle.getRotation()), new Vector3f(0.0f, 0.0f, 1.0f));
-    modelMatrix.scale(particle.getScale());
-    return viewMatrix.mul(modelMatrix, new Matrix4f());
-  }
-
-  private void storeMatrix(Matrix4f matrix, float[] vboData) {
-    matrix.get(vboData, pointer);
-    pointer += 4 * 4;
-  }
-
-  private void storeTextureOffsets(Particle particle, float[] vboData) {
-    vboData[pointer++] = particle.getTextureOffset().x;
-    vboData[pointer++] = particle.getTextureOffset().y;
-    vboData[pointer++] = particle.getTextureOffsetNext().x;
-    vboData[pointer++] = particle.getTextureOffsetNext().x;
-    vboData[pointer++] = particle.getBlend();
-  }
-
   @Override
   public void close() {
     shader.close();
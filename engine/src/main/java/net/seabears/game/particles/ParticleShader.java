@@ -14,6 +14,13 @@ public class ParticleShader extends ShaderProgram {
     super(SHADER_ROOT + "particles/");
   }
 
+  /**
+   * Places particles with another vertex shader, which must have the same uniforms and outputs.
+   */
+  protected ParticleShader(String vertexRoot) throws IOException {
+    super(vertexRoot, SHADER_ROOT + "particles/");
+  }
+
   @Override
   protected void bindAttributes() {
     super.bindAttribute(ATTR_POSITION, "position");
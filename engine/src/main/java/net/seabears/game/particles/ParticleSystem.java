@@ -1,7 +1,10 @@
 package net.seabears.game.particles;
 
-import java.util.List;
-
 public interface ParticleSystem {
-  List<Particle> generate(float t);
+  /**
+   * Emits this frame's new particles straight into the emitter.
+   *
+   * @param t seconds since the last frame
+   */
+  void generate(float t, ParticleEmitter emitter);
 }
@@ -0,0 +1,39 @@
+package net.seabears.game.particles;
+
+import java.io.IOException;
+
+import net.seabears.game.shaders.ShaderProgram;
+
+/**
+ * Moves and ages particles on the GPU, writing them back out through transform feedback.
+ */
+public class ParticleUpdateShader extends ShaderProgram {
+  public static final int ATTR_VELOCITY = 1;
+  public static final int ATTR_LIFE = 2;
+  public static final int ATTR_LOOK = 3;
+
+  private int locationDelta;
+
+  public ParticleUpdateShader() throws IOException {
+    super(SHADER_ROOT + "particles/gpu/update/");
+  }
+
+  @Override
+  protected void bindAttributes() {
+    super.bindAttribute(ATTR_POSITION, "position");
+    super.bindAttribute(ATTR_VELOCITY, "velocity");
+    super.bindAttribute(ATTR_LIFE, "life");
+    super.bindAttribute(ATTR_LOOK, "look");
+    // written in the same layout as they are read
+    super.bindFeedbackVaryings("outPosition", "outVelocity", "outLife", "outLook");
+  }
+
+  @Override
+  protected void getAllUniformLocations() {
+    locationDelta = super.getUniformLocation("delta");
+  }
+
+  public void loadDelta(float t) {
+    super.loadFloat(locationDelta, t);
+  }
+}
@@ -19,6 +19,13 @@ public class FrameBuffer implements AutoCloseable {
   private final int frameBufferTarget;
 
   public FrameBuffer(int width, int height, int displayWidth, int displayHeight, boolean depthBuffer) {
+    this(width, height, displayWidth, displayHeight, depthBuffer, false);
+  }
+
+  /**
+   * @param alpha whether the color texture keeps an alpha channel
+   */
+  public FrameBuffer(int width, int height, int displayWidth, int displayHeight, boolean depthBuffer, boolean alpha) {
     final Map<Integer, Integer> params = new HashMap<>();
     params.put(GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
     params.put(GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR);
@@ -26,7 +33,7 @@ public class FrameBuffer implements AutoCloseable {
     this.width = width;
     this.height = height;
     this.id = createFrameBuffer(GL30.GL_COLOR_ATTACHMENT0);
-    this.texture = createTextureAttachment(params);
+    this.texture = createTextureAttachment(params, alpha);
     if (depthBuffer) {
       this.depthBuffer = createDepthBufferAttachment();
       this.depthTexture = -1;
@@ -111,8 +118,9 @@ public class FrameBuffer implements AutoCloseable {
     return createTextureAttachment(formatInternal, GL11.GL_DEPTH_COMPONENT, GL11.GL_FLOAT, GL30.GL_DEPTH_ATTACHMENT, params);
   }
 
-  private final int createTextureAttachment(Map<Integer, Integer> params) {
-    return createTextureAttachment(GL11.GL_RGB, GL11.GL_RGB, GL11.GL_UNSIGNED_BYTE, GL30.GL_COLOR_ATTACHMENT0, params);
+  private final int createTextureAttachment(Map<Integer, Integer> params, boolean alpha) {
+    final int format = alpha ? GL11.GL_RGBA : GL11.GL_RGB;
+    return createTextureAttachment(format, format, GL11.GL_UNSIGNED_BYTE, GL30.GL_COLOR_ATTACHMENT0, params);
   }
 
   private final int createTextureAttachment(int formatInternal, int format, int type, int attachment, Map<Integer, Integer> params) {
@@ -0,0 +1,97 @@
+package net.seabears.game.render;
+
+import java.nio.FloatBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+
+import net.seabears.game.models.RawModel;
+import net.seabears.game.shaders.ShaderProgram;
+
+/**
+ * Streams per-instance data (a transformation matrix and a texture-atlas offset) into a single VBO
+ * so that every entity sharing a model can be drawn with one instanced call. The buffer is shared by
+ * all renderers that use this layout because a VAO can only point each attribute at one VBO.
+ */
+public class InstanceBuffer {
+  public static final int MATRIX_FLOATS = 4 * 4;
+  public static final int INSTANCE_FLOATS = MATRIX_FLOATS + 2;
+
+  private final Loader loader;
+  private final int vboId;
+  private final int maxInstances;
+  private final float[] data;
+  private final FloatBuffer buffer;
+  private final Set<Integer> vaos;
+  private int count;
+
+  public InstanceBuffer(Loader loader, int maxInstances) {
+    this.loader = loader;
+    this.maxInstances = maxInstances;
+    this.vboId = loader.emptyVbo(INSTANCE_FLOATS * maxInstances);
+    this.data = new float[INSTANCE_FLOATS * maxInstances];
+    this.buffer = BufferUtils.createFloatBuffer(INSTANCE_FLOATS * maxInstances);
+    this.vaos = new HashSet<>();
+  }
+
+  public int getMaxInstances() {
+    return maxInstances;
+  }
+
+  /**
+   * Binds the model's VAO and enables the instanced attributes. The attributes are attached to the
+   * VAO the first time it is seen.
+   */
+  public void bind(RawModel model) {
+    final int vaoId = model.getVaoId();
+    if (vaos.add(vaoId)) {
+      for (int i = 0; i < 4; ++i) {
+        loader.addInstancedAttribute(vaoId, vboId, ShaderProgram.ATTR_INSTANCE_MATRIX + i, 4, INSTANCE_FLOATS, i * 4);
+      }
+      loader.addInstancedAttribute(vaoId, vboId, ShaderProgram.ATTR_INSTANCE_TEXTURE_OFFSET, 2, INSTANCE_FLOATS, MATRIX_FLOATS);
+    }
+    GL30.glBindVertexArray(vaoId);
+    for (int i = 0; i < 4; ++i) {
+      GL20.glEnableVertexAttribArray(ShaderProgram.ATTR_INSTANCE_MATRIX + i);
+    }
+    GL20.glEnableVertexAttribArray(ShaderProgram.ATTR_INSTANCE_TEXTURE_OFFSET);
+  }
+
+  public void unbind() {
+    for (int i = 0; i < 4; ++i) {
+      GL20.glDisableVertexAttribArray(ShaderProgram.ATTR_INSTANCE_MATRIX + i);
+    }
+    GL20.glDisableVertexAttribArray(ShaderProgram.ATTR_INSTANCE_TEXTURE_OFFSET);
+  }
+
+  /**
+   * Queues an instance.
+   *
+   * @param transformations column-major matrices
+   * @param offset index of the first float of the matrix to copy
+   * @return whether the buffer is full and must be drawn before more instances are added
+   */
+  public boolean put(float[] transformations, int offset, float textureOffsetX, float textureOffsetY) {
+    final int pointer = count * INSTANCE_FLOATS;
+    System.arraycopy(transformations, offset, data, pointer, MATRIX_FLOATS);
+    data[pointer + MATRIX_FLOATS] = textureOffsetX;
+    data[pointer + MATRIX_FLOATS + 1] = textureOffsetY;
+    return ++count == maxInstances;
+  }
+
+  /**
+   * Uploads the queued instances and draws them with the bound model.
+   */
+  public void draw(RawModel model) {
+    if (count > 0) {
+      loader.updateVbo(vboId, data, count * INSTANCE_FLOATS, buffer);
+      GL31.glDrawElementsInstanced(GL11.GL_TRIANGLES, model.getVertexCount(), GL11.GL_UNSIGNED_INT, 0, count);
+      count = 0;
+    }
+  }
+}
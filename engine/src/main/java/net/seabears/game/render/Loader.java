@@ -1,5 +1,7 @@
 package net.seabears.game.render;
 
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileInputStream;
@@ -9,7 +11,13 @@ import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
 
 import javax.imageio.ImageIO;
 
@@ -17,6 +25,7 @@ import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.EXTTextureFilterAnisotropic;
 import org.lwjgl.opengl.GL;
 import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
 import org.lwjgl.opengl.GL13;
 import org.lwjgl.opengl.GL14;
 import org.lwjgl.opengl.GL15;
@@ -27,16 +36,24 @@ import org.lwjgl.opengl.GL33;
 import de.matthiasmann.twl.utils.PNGDecoder;
 import net.seabears.game.entities.StaticShader;
 import net.seabears.game.guis.fonts.creator.TextMeshData;
+import net.seabears.game.models.Bounds;
 import net.seabears.game.models.RawModel;
+import net.seabears.game.models.TriangleMesh;
 import net.seabears.game.shaders.ShaderProgram;
 import net.seabears.game.textures.TextureData;
+import net.seabears.game.util.MeshSimplifier;
 import net.seabears.game.util.ModelData;
 
 public class Loader implements AutoCloseable {
   private static final String RES_ROOT = "src/main/res/";
   private static final int FLOAT_IN_BYTES = Float.SIZE >> 3;
-  private final List<Integer> vaos = new ArrayList<>();
-  private final List<Integer> vbos = new ArrayList<>();
+  private final Set<Integer> vaos = new HashSet<>();
+  private final Set<Integer> vbos = new HashSet<>();
+  // buffers holding each VAO's attributes and indices
+  private final Map<Integer, List<Integer>> vaoBuffers = new HashMap<>();
+  private List<Integer> boundVaoBuffers;
+  // buffers shared by many VAOs, which live until the loader is closed
+  private final Map<String, Integer> sharedBuffers = new HashMap<>();
   private final List<Integer> textures = new ArrayList<>();
 
   public int emptyVbo(int floats) {
@@ -59,8 +76,16 @@ public class Loader implements AutoCloseable {
   }
 
   public void updateVbo(int vboId, float[] data, FloatBuffer buffer) {
+    updateVbo(vboId, data, data.length, buffer);
+  }
+
+  public void updateVbo(int vboId, float[] data, int length, FloatBuffer buffer) {
+    updateVbo(vboId, data, 0, length, buffer);
+  }
+
+  public void updateVbo(int vboId, float[] data, int offset, int length, FloatBuffer buffer) {
     buffer.clear();
-    buffer.put(data);
+    buffer.put(data, offset, length);
     buffer.flip();
     GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vboId);
     GL15.glBufferData(GL15.GL_ARRAY_BUFFER, buffer.capacity() * FLOAT_IN_BYTES, GL15.GL_STREAM_DRAW);
@@ -72,8 +97,36 @@ public class Loader implements AutoCloseable {
     return ImageIO.read(new File(RES_ROOT + filename + ".png"));
   }
 
+  /**
+   * Loads a model's mesh, keeping its positions and indices so rays can be tested against it.
+   */
   public RawModel loadToVao(ModelData data) {
-      return loadToVao(data.getVertices(), data.getTextureCoords(), data.getNormals(), data.getTangents(), data.getIndices());
+      return loadToVao(data.getVertices(), data.getTextureCoords(), data.getNormals(), data.getTangents(), data.getIndices(), data.getBounds(),
+          new TriangleMesh(data.getVertices(), data.getIndices()));
+  }
+
+  /**
+   * Loads a mesh and simplified copies of it, each with about half the triangles of the one before,
+   * for use as levels of detail. Every level keeps the bounds of the full mesh, and only the full
+   * mesh keeps its triangles for picking.
+   *
+   * @param levels number of meshes wanted, including the full mesh
+   * @return meshes from the most to the least detailed; fewer than asked for if the mesh stops
+   *         getting simpler
+   */
+  public RawModel[] loadToVao(ModelData data, int levels) {
+    final RawModel[] lods = new RawModel[levels];
+    lods[0] = loadToVao(data);
+    ModelData level = data;
+    for (int i = 1; i < levels; ++i) {
+      final ModelData simpler = MeshSimplifier.simplify(level, 0.5f);
+      if (simpler.getIndices().length == level.getIndices().length) {
+        return Arrays.copyOf(lods, i);
+      }
+      level = simpler;
+      lods[i] = loadToVao(level.getVertices(), level.getTextureCoords(), level.getNormals(), level.getTangents(), level.getIndices(), data.getBounds(), null);
+    }
+    return lods;
   }
 
   public RawModel loadToVao(TextMeshData data) {
@@ -81,8 +134,11 @@ public class Loader implements AutoCloseable {
   }
 
   public RawModel loadToVao(float[] positions, float[] textureCoords, float[] normals, float[] tangents, int[] indices) {
+    return loadToVao(positions, textureCoords, normals, tangents, indices, Bounds.of(positions), null);
+  }
+
+  private RawModel loadToVao(float[] positions, float[] textureCoords, float[] normals, float[] tangents, int[] indices, Bounds bounds, TriangleMesh mesh) {
     final int vaoId = createVao();
-    vaos.add(vaoId);
     bindIndicesBuffer(indices);
     storeDataInAttributeList(ShaderProgram.ATTR_POSITION, 3, positions);
     storeDataInAttributeList(ShaderProgram.ATTR_TEXTURE, 2, textureCoords);
@@ -91,7 +147,7 @@ public class Loader implements AutoCloseable {
       storeDataInAttributeList(ShaderProgram.ATTR_TANGENT, 3, tangents);
     }
     unbindVao(); // VAO remains bound until here
-    return new RawModel(vaoId, indices.length);
+    return new RawModel(vaoId, indices.length, bounds, mesh);
   }
 
   public RawModel loadToVao(float[] positions) {
@@ -100,7 +156,6 @@ public class Loader implements AutoCloseable {
 
   public RawModel loadToVao(float[] positions, int dimensions, float[] textureCoords) {
     final int vaoId = createVao();
-    vaos.add(vaoId);
     storeDataInAttributeList(StaticShader.ATTR_POSITION, dimensions, positions);
     if (textureCoords != null) {
       storeDataInAttributeList(ShaderProgram.ATTR_TEXTURE, 2, textureCoords);
@@ -179,6 +234,53 @@ public class Loader implements AutoCloseable {
     return texId;
   }
 
+  /**
+   * Loads images as the layers of a {@link GL30#GL_TEXTURE_2D_ARRAY}, in order, so that a shader can
+   * pick among them without switching textures. Layers take the size of the largest image; smaller
+   * images are scaled up to it.
+   */
+  public int loadTextureArray(String... filenames) throws IOException {
+    return loadTextureArray(4.0f, filenames);
+  }
+
+  public int loadTextureArray(final float anisotropicLevel, String... filenames) throws IOException {
+    final TextureData[] layers = new TextureData[filenames.length];
+    int width = 0;
+    int height = 0;
+    for (int i = 0; i < filenames.length; ++i) {
+      layers[i] = loadPng(filenames[i]);
+      width = Math.max(width, layers[i].getWidth());
+      height = Math.max(height, layers[i].getHeight());
+    }
+    final int texId = initTexture(GL30.GL_TEXTURE_2D_ARRAY);
+    GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 1);
+    GL12.glTexImage3D(GL30.GL_TEXTURE_2D_ARRAY, 0, GL11.GL_RGBA8, width, height, layers.length, 0, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE,
+        (ByteBuffer) null);
+    for (int i = 0; i < layers.length; ++i) {
+      final TextureData layer = layers[i].getWidth() == width && layers[i].getHeight() == height
+          ? layers[i] : scale(loadImage(filenames[i]), width, height);
+      GL12.glTexSubImage3D(GL30.GL_TEXTURE_2D_ARRAY, 0, 0, 0, i, width, height, 1, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE,
+          layer.getBuffer());
+    }
+    optimizeTexture(GL30.GL_TEXTURE_2D_ARRAY, anisotropicLevel);
+    return texId;
+  }
+
+  private static TextureData scale(BufferedImage image, int width, int height) {
+    final BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    final Graphics2D g = scaled.createGraphics();
+    g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    g.drawImage(image, 0, 0, width, height, null);
+    g.dispose();
+    final int[] argb = scaled.getRGB(0, 0, width, height, null, 0, width);
+    final ByteBuffer buffer = BufferUtils.createByteBuffer(argb.length * 4);
+    for (int pixel : argb) {
+      buffer.put((byte) (pixel >> 16)).put((byte) (pixel >> 8)).put((byte) pixel).put((byte) (pixel >> 24));
+    }
+    buffer.flip();
+    return new TextureData(buffer, width, height);
+  }
+
   /**
    * Filenames must be in this order:<ol>
    * <li>[@link GL13#GL_TEXTURE_CUBE_MAP_POSITIVE_X}</li>
@@ -203,15 +305,59 @@ public class Loader implements AutoCloseable {
     return texId;
   }
 
-  private int createVao() {
+  /**
+   * Deletes a model's VAO and the buffers that were created for it, for models that are no longer
+   * needed while the game runs.
+   */
+  public void unload(RawModel model) {
+    final Integer vaoId = model.getVaoId();
+    if (vaos.remove(vaoId)) {
+      GL30.glDeleteVertexArrays(vaoId);
+      for (Integer vboId : vaoBuffers.remove(vaoId)) {
+        vbos.remove(vboId);
+        GL15.glDeleteBuffers(vboId);
+      }
+    }
+  }
+
+  /**
+   * Returns a buffer many VAOs can share, uploading it the first time its name is asked for. Bind it
+   * while building each VAO that uses it; it is only deleted when the loader is closed.
+   *
+   * @param target such as {@link GL15#GL_ARRAY_BUFFER}
+   * @param data makes the contents of the buffer, only if it has not been uploaded yet
+   */
+  public int loadSharedBuffer(String name, int target, Supplier<ByteBuffer> data) {
+    Integer vboId = sharedBuffers.get(name);
+    if (vboId == null) {
+      vboId = GL15.glGenBuffers();
+      vbos.add(vboId);
+      sharedBuffers.put(name, vboId);
+      GL15.glBindBuffer(target, vboId);
+      GL15.glBufferData(target, data.get(), GL15.GL_STATIC_DRAW);
+      GL15.glBindBuffer(target, 0);
+    }
+    return vboId;
+  }
+
+  /**
+   * Creates and binds a VAO, for vertex layouts that the loadToVao methods do not cover. Buffers
+   * made with {@link #storeBuffer(int, ByteBuffer)} until {@link #unbindVao()} belong to it, and
+   * {@link #unload(RawModel)} deletes them with it.
+   */
+  public int createVao() {
     final int vaoId = GL30.glGenVertexArrays();
+    vaos.add(vaoId);
     GL30.glBindVertexArray(vaoId);
+    boundVaoBuffers = new ArrayList<>();
+    vaoBuffers.put(vaoId, boundVaoBuffers);
     return vaoId;
   }
 
   private void storeDataInAttributeList(int attributeNumber, int coordinateSize, float[] data) {
     final int vboId = GL15.glGenBuffers();
     vbos.add(vboId);
+    boundVaoBuffers.add(vboId);
     GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vboId);
     final FloatBuffer buffer = storeDataInFloatBuffer(data);
     GL15.glBufferData(GL15.GL_ARRAY_BUFFER, buffer, GL15.GL_STATIC_DRAW);
@@ -219,13 +365,33 @@ public class Loader implements AutoCloseable {
     GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
   }
 
-  private void unbindVao() {
+  /**
+   * Uploads a buffer belonging to the VAO being built and leaves it bound to the target.
+   */
+  public int storeBuffer(int target, ByteBuffer data) {
+    return storeBuffer(target, data, GL15.GL_STATIC_DRAW);
+  }
+
+  /**
+   * @param usage such as {@link GL15#GL_DYNAMIC_COPY}, for buffers the GPU writes itself
+   */
+  public int storeBuffer(int target, ByteBuffer data, int usage) {
+    final int vboId = GL15.glGenBuffers();
+    vbos.add(vboId);
+    boundVaoBuffers.add(vboId);
+    GL15.glBindBuffer(target, vboId);
+    GL15.glBufferData(target, data, usage);
+    return vboId;
+  }
+
+  public void unbindVao() {
     GL30.glBindVertexArray(0);
   }
 
   private void bindIndicesBuffer(int[] indices) {
     final int vboId = GL15.glGenBuffers();
     vbos.add(vboId);
+    boundVaoBuffers.add(vboId);
     GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, vboId);
     final IntBuffer buffer = storeDataInIntBuffer(indices);
     GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, buffer, GL15.GL_STATIC_DRAW);
@@ -0,0 +1,66 @@
+package net.seabears.game.render;
+
+import org.joml.Vector3f;
+
+import net.seabears.game.entities.EntityStore;
+import net.seabears.game.models.TexturedModel;
+
+/**
+ * Chooses a level of detail for each entity from how large its bounding sphere appears on screen.
+ * An entity only changes level once its size is a margin past the threshold between two levels, so
+ * entities near a threshold do not flicker between levels from frame to frame.
+ */
+public class LodSelector {
+  private final float scale;
+  private final float[] thresholds;
+  private final float hysteresis;
+
+  /**
+   * @param fov vertical field of view in degrees
+   * @param thresholds for each level after the first, the screen size below which it is used, as a
+   *        fraction of half the screen height; descending
+   * @param hysteresis fraction of a threshold the size must pass it by before the level changes
+   */
+  public LodSelector(float fov, float[] thresholds, float hysteresis) {
+    this.scale = 1.0f / (float) Math.tan(Math.toRadians(fov) * 0.5f);
+    this.thresholds = thresholds.clone();
+    this.hysteresis = hysteresis;
+  }
+
+  /**
+   * Updates the level of each entity as seen from the eye. Bounds must be up to date.
+   */
+  public void select(EntityStore store, int[] handles, int length, Vector3f eye) {
+    final float[] spheres = store.getSpheres();
+    final int[] models = store.getModelIds();
+    final byte[] lods = store.getLods();
+    for (int i = 0; i < length; ++i) {
+      final int handle = handles[i];
+      final int model = models[handle];
+      if (model == EntityStore.NO_MODEL) {
+        continue;
+      }
+      final int s = handle * EntityStore.SPHERE_FLOATS;
+      final float dx = spheres[s] - eye.x, dy = spheres[s + 1] - eye.y, dz = spheres[s + 2] - eye.z;
+      final float size = spheres[s + 3] * scale / (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+      lods[handle] = (byte) select(store.getModelById(model), lods[handle], size);
+    }
+  }
+
+  /**
+   * @param current level used last frame
+   * @param size screen size as a fraction of half the screen height
+   * @return level to use this frame
+   */
+  public int select(TexturedModel model, int current, float size) {
+    final int levels = Math.min(model.getLodCount(), thresholds.length + 1);
+    int level = Math.min(current, levels - 1);
+    while (level + 1 < levels && size < thresholds[level] * (1.0f - hysteresis)) {
+      ++level;
+    }
+    while (level > 0 && size > thresholds[level - 1] * (1.0f + hysteresis)) {
+      --level;
+    }
+    return level;
+  }
+}
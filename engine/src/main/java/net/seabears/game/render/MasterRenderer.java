@@ -14,7 +14,7 @@ import net.seabears.game.entities.normalmap.NormalMappingRenderer;
 import net.seabears.game.shadows.ShadowMapRenderer;
 import net.seabears.game.skybox.Skybox;
 import net.seabears.game.skybox.SkyboxRenderer;
-import net.seabears.game.terrains.Terrain;
+import net.seabears.game.terrains.TerrainPatch;
 import net.seabears.game.terrains.TerrainRenderer;
 import net.seabears.game.util.CameraOrientation;
 
@@ -47,13 +47,10 @@ public class MasterRenderer {
   }
 
   public void renderShadowMap(List<Entity> entities, List<Entity> nmEntities, CameraOrientation c, List<Light> lights, int displayWidth, int displayHeight) {
-      final EntitiesByTexture e = new EntitiesByTexture();
-      e.addAll(entities);
-      e.addAll(nmEntities);
-      shadowRenderer.render(e.get(), c, lights.get(0), displayWidth, displayHeight);
+      shadowRenderer.render(entities, nmEntities, c, lights.get(0), displayWidth, displayHeight);
   }
 
-  public void render(List<Entity> entities, List<Entity> nmEntities, List<Terrain> terrains, List<Light> lights, Skybox skybox, Matrix4f viewMatrix, Vector4f clippingPlane) {
+  public void render(RenderList entities, RenderList nmEntities, List<TerrainPatch> terrains, List<Light> lights, Skybox skybox, Matrix4f viewMatrix, Vector4f clippingPlane) {
     // prepare
     GL11.glEnable(GL11.GL_DEPTH_TEST);
     GL11.glClear(GL11.GL_COLOR_BUFFER_BIT | GL11.GL_DEPTH_BUFFER_BIT);
@@ -61,29 +58,25 @@ public class MasterRenderer {
 
     // entities
     if (!entities.isEmpty()) {
-      final EntitiesByTexture e = new EntitiesByTexture();
-      e.addAll(entities);
       entityRenderer.getShader().start();
       entityRenderer.getShader().loadClippingPlane(clippingPlane);
       entityRenderer.getShader().loadLights(lights);
       entityRenderer.getShader().loadSky(skyColor);
       entityRenderer.getShader().loadViewMatrix(viewMatrix);
       entityRenderer.getShader().loadShadows(shadowRenderer);
-      entityRenderer.render(e.get(), shadowRenderer.getShadowMap());
+      entityRenderer.render(entities, shadowRenderer.getShadowMap());
       entityRenderer.getShader().stop();
     }
 
     // normal-mapped entities
     if (!nmEntities.isEmpty()) {
-      final EntitiesByTexture e = new EntitiesByTexture();
-      e.addAll(nmEntities);
       nmRenderer.getShader().start();
       nmRenderer.getShader().loadClippingPlane(clippingPlane);
       nmRenderer.getShader().loadLights(lights, viewMatrix);
       nmRenderer.getShader().loadSky(skyColor);
       nmRenderer.getShader().loadViewMatrix(viewMatrix);
       nmRenderer.getShader().loadShadows(shadowRenderer);
-      nmRenderer.render(e.get(), shadowRenderer.getShadowMap());
+      nmRenderer.render(nmEntities, shadowRenderer.getShadowMap());
       nmRenderer.getShader().stop();
     }
 
@@ -0,0 +1,240 @@
+package net.seabears.game.render;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+
+import net.seabears.game.entities.Entity;
+import net.seabears.game.entities.EntityStore;
+import net.seabears.game.models.TexturedModel;
+import net.seabears.game.spatial.EntityList;
+import net.seabears.game.util.Frustum;
+
+/**
+ * Entity handles to draw in a frame, grouped by model and then by level of detail. The list is filled, culled and sorted with
+ * loops over the {@link EntityStore} columns, so it can be reused every frame without allocating.
+ */
+public class RenderList {
+  private final EntityStore store;
+  private final IntConsumer adder = this::add;
+  private int[] handles;
+  private int[] sorted;
+  private int[] starts;
+  private int length;
+  private int modelCount;
+
+  public RenderList(EntityStore store) {
+    this.store = store;
+    this.handles = new int[64];
+    this.sorted = new int[64];
+    this.starts = new int[1];
+  }
+
+  public void clear() {
+    length = 0;
+    modelCount = 0;
+  }
+
+  public void add(int handle) {
+    if (length == handles.length) {
+      handles = Arrays.copyOf(handles, length * 2);
+    }
+    handles[length++] = handle;
+  }
+
+  public void addAll(List<Entity> entities) {
+    for (int i = 0; i < entities.size(); ++i) {
+      final Entity entity = entities.get(i);
+      assert entity.getStore() == store;
+      add(entity.getHandle());
+    }
+  }
+
+  /**
+   * Adds the entities in the list that are inside the frustum. An {@link EntityList} answers from its
+   * spatial index; any other list is scanned.
+   */
+  public void addVisible(List<Entity> entities, Frustum frustum) {
+    if (entities instanceof EntityList) {
+      ((EntityList) entities).query(frustum, adder);
+    } else {
+      final int first = length;
+      addAll(entities);
+      cull(frustum, first);
+    }
+  }
+
+  /**
+   * Removes entities whose world bounds are outside the frustum.
+   */
+  public void cull(Frustum frustum) {
+    cull(frustum, 0);
+  }
+
+  /**
+   * Removes entities whose world bounds are entirely on the negative side of a clipping plane
+   * <code>ax + by + cz + d = 0</code>, since the shaders would clip them away completely.
+   */
+  public void clip(Vector4f plane) {
+    final float[] spheres = store.getSpheres();
+    final float length = (float) Math.sqrt(plane.x * plane.x + plane.y * plane.y + plane.z * plane.z);
+    int kept = 0;
+    for (int i = 0; i < this.length; ++i) {
+      final int handle = handles[i];
+      final int s = handle * EntityStore.SPHERE_FLOATS;
+      final float distance = (plane.x * spheres[s] + plane.y * spheres[s + 1] + plane.z * spheres[s + 2] + plane.w) / length;
+      if (distance >= -spheres[s + 3]) {
+        handles[kept++] = handle;
+      }
+    }
+    this.length = kept;
+  }
+
+  /**
+   * Removes the handles the predicate accepts, keeping the order of the rest.
+   */
+  public void removeIf(IntPredicate remove) {
+    int kept = 0;
+    for (int i = 0; i < length; ++i) {
+      final int handle = handles[i];
+      if (!remove.test(handle)) {
+        handles[kept++] = handle;
+      }
+    }
+    length = kept;
+  }
+
+  private void cull(Frustum frustum, int first) {
+    int kept = first;
+    for (int i = first; i < length; ++i) {
+      final int handle = handles[i];
+      store.updateTransformation(handle);
+      if (store.isInside(frustum, handle)) {
+        handles[kept++] = handle;
+      }
+    }
+    length = kept;
+  }
+
+  /**
+   * Groups the handles by model and by the level of detail each entity was last given, and brings
+   * their transformations up to date. Entities without a model are dropped.
+   */
+  public void sort() {
+    group();
+    store.updateTransformations(handles, length);
+  }
+
+  /**
+   * Chooses a level of detail for each entity as seen from the eye, then sorts as
+   * {@link #sort()} does.
+   */
+  public void sort(LodSelector lods, Vector3f eye) {
+    store.updateTransformations(handles, length);
+    lods.select(store, handles, length, eye);
+    group();
+  }
+
+  /**
+   * Counting sort on the key <code>model * MAX_LODS + lod</code>.
+   */
+  private void group() {
+    final int[] models = store.getModelIds();
+    final byte[] lods = store.getLods();
+    modelCount = store.getModelCount();
+    final int keys = modelCount * TexturedModel.MAX_LODS;
+    if (starts.length < keys + 1) {
+      starts = new int[keys + 1];
+    }
+    if (sorted.length < handles.length) {
+      sorted = new int[handles.length];
+    }
+    Arrays.fill(starts, 0, keys + 1, 0);
+    for (int i = 0; i < length; ++i) {
+      final int handle = handles[i];
+      if (models[handle] != EntityStore.NO_MODEL) {
+        ++starts[models[handle] * TexturedModel.MAX_LODS + lods[handle] + 1];
+      }
+    }
+    for (int k = 0; k < keys; ++k) {
+      starts[k + 1] += starts[k];
+    }
+    // starts[k] is used as the insertion point for key k, leaving it at the start of key k + 1
+    for (int i = 0; i < length; ++i) {
+      final int handle = handles[i];
+      if (models[handle] != EntityStore.NO_MODEL) {
+        sorted[starts[models[handle] * TexturedModel.MAX_LODS + lods[handle]]++] = handle;
+      }
+    }
+    for (int k = keys; k > 0; --k) {
+      starts[k] = starts[k - 1];
+    }
+    starts[0] = 0;
+    length = starts[keys];
+    final int[] swap = handles;
+    handles = sorted;
+    sorted = swap;
+  }
+
+  public EntityStore getStore() {
+    return store;
+  }
+
+  /**
+   * @return handles grouped by model after {@link #sort()}
+   */
+  public int[] getHandles() {
+    return handles;
+  }
+
+  public int size() {
+    return length;
+  }
+
+  public boolean isEmpty() {
+    return length == 0;
+  }
+
+  /**
+   * @return number of model ids covered by the last sort
+   */
+  public int getModelCount() {
+    return modelCount;
+  }
+
+  public TexturedModel getModel(int modelId) {
+    return store.getModelById(modelId);
+  }
+
+  /**
+   * @return index of the first handle with the given model
+   */
+  public int getStart(int modelId) {
+    return starts[modelId * TexturedModel.MAX_LODS];
+  }
+
+  /**
+   * @return index after the last handle with the given model
+   */
+  public int getEnd(int modelId) {
+    return starts[(modelId + 1) * TexturedModel.MAX_LODS];
+  }
+
+  /**
+   * @return index of the first handle with the given model drawn at the given level of detail
+   */
+  public int getStart(int modelId, int lod) {
+    return starts[modelId * TexturedModel.MAX_LODS + lod];
+  }
+
+  /**
+   * @return index after the last handle with the given model drawn at the given level of detail
+   */
+  public int getEnd(int modelId, int lod) {
+    return starts[modelId * TexturedModel.MAX_LODS + lod + 1];
+  }
+}
@@ -15,6 +15,7 @@ import org.joml.Vector4f;
 import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
 
 import net.seabears.game.entities.Light;
 
@@ -23,6 +24,9 @@ public abstract class ShaderProgram implements AutoCloseable {
   public static final int ATTR_TEXTURE = 1;
   public static final int ATTR_NORMAL = 2;
   public static final int ATTR_TANGENT = 3;
+  /** a matrix attribute occupies four locations */
+  public static final int ATTR_INSTANCE_MATRIX = 4;
+  public static final int ATTR_INSTANCE_TEXTURE_OFFSET = 8;
 
   protected static final String SHADER_ROOT = "/shaders/";
   protected static final Light OFF_LIGHT = new Light(new Vector3f(), new Vector3f());
@@ -57,8 +61,15 @@ public abstract class ShaderProgram implements AutoCloseable {
   private final int fragmentShaderId;
 
   public ShaderProgram(String root) throws IOException {
-    this.vertexShaderId = loadShader(root + "vertexShader.txt", GL20.GL_VERTEX_SHADER);
-    this.fragmentShaderId = loadShader(root + "fragmentShader.txt", GL20.GL_FRAGMENT_SHADER);
+    this(root, root);
+  }
+
+  /**
+   * Pairs the vertex shader of one directory with the fragment shader of another.
+   */
+  public ShaderProgram(String vertexRoot, String fragmentRoot) throws IOException {
+    this.vertexShaderId = loadShader(vertexRoot + "vertexShader.txt", GL20.GL_VERTEX_SHADER);
+    this.fragmentShaderId = loadShader(fragmentRoot + "fragmentShader.txt", GL20.GL_FRAGMENT_SHADER);
     this.programId = GL20.glCreateProgram();
     GL20.glAttachShader(this.programId, this.vertexShaderId);
     GL20.glAttachShader(this.programId, this.fragmentShaderId);
@@ -109,6 +120,14 @@ public abstract class ShaderProgram implements AutoCloseable {
     GL20.glBindAttribLocation(programId, attribute, variableName);
   }
 
+  /**
+   * Names the outputs captured by transform feedback, interleaved in one buffer in the order given.
+   * Like attributes, they must be bound before the program is linked.
+   */
+  protected void bindFeedbackVaryings(String... variableNames) {
+    GL30.glTransformFeedbackVaryings(programId, variableNames, GL30.GL_INTERLEAVED_ATTRIBS);
+  }
+
   protected void loadInt(int location, int value) {
     GL20.glUniform1i(location, value);
   }
@@ -0,0 +1,33 @@
+package net.seabears.game.shadows;
+
+import java.io.IOException;
+
+import org.joml.Matrix4f;
+
+import net.seabears.game.shaders.ShaderProgram;
+
+/**
+ * Shadow caster shader for opaque models. Only positions are read and only depth is written.
+ */
+public class OpaqueShadowMapShader extends ShaderProgram {
+  private int locationProjectionViewMatrix;
+
+  public OpaqueShadowMapShader() throws IOException {
+    super(SHADER_ROOT + "shadows/opaque/");
+  }
+
+  @Override
+  protected void getAllUniformLocations() {
+    locationProjectionViewMatrix = super.getUniformLocation("projectionViewMatrix");
+  }
+
+  public void loadProjectionViewMatrix(Matrix4f matrix) {
+    super.loadMatrix(locationProjectionViewMatrix, matrix);
+  }
+
+  @Override
+  protected void bindAttributes() {
+    super.bindAttribute(ATTR_POSITION, "position");
+    super.bindAttribute(ATTR_INSTANCE_MATRIX, "modelMatrix");
+  }
+}
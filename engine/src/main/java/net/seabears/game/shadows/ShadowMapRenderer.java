@@ -1,26 +1,30 @@
 package net.seabears.game.shadows;
 
 import java.util.List;
-import java.util.Map;
 
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL13;
 import org.lwjgl.opengl.GL20;
 import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
 import org.joml.Matrix4f;
 import org.joml.Vector2f;
 import org.joml.Vector3f;
 
 import net.seabears.game.entities.Entity;
+import net.seabears.game.entities.EntityStore;
 import net.seabears.game.entities.Light;
 import net.seabears.game.models.RawModel;
 import net.seabears.game.models.TexturedModel;
 import net.seabears.game.render.FrameBuffer;
+import net.seabears.game.render.InstanceBuffer;
+import net.seabears.game.render.LodSelector;
 import net.seabears.game.render.MasterRenderer;
+import net.seabears.game.render.RenderList;
 import net.seabears.game.render.Renderer;
 import net.seabears.game.shaders.ShaderProgram;
 import net.seabears.game.util.CameraOrientation;
-import net.seabears.game.util.TransformationMatrix;
+import net.seabears.game.util.Frustum;
 
 /**
  * This class is in charge of using all of the classes in the shadows package to carry out the
@@ -47,13 +51,19 @@ public class ShadowMapRenderer implements Renderer {
 
   private final FrameBuffer shadowFbo;
   private final ShadowMapShader shader;
+  private final OpaqueShadowMapShader opaqueShader;
+  private final InstanceBuffer instances;
+  private final LodSelector lods;
   private final ShadowBox shadowBox;
   private final int size;
   private final int pcfCount;
   private final Matrix4f projectionMatrix = new Matrix4f();
   private final Matrix4f lightViewMatrix;
   private final Matrix4f projectionViewMatrix = new Matrix4f();
+  private final Matrix4f casterMatrix = new Matrix4f();
   private final Matrix4f offset = createOffset();
+  private final RenderList casters = new RenderList(EntityStore.getDefault());
+  private final RenderList nmCasters = new RenderList(EntityStore.getDefault());
 
   /**
    * Creates instances of the important objects needed for rendering the scene to the shadow map.
@@ -64,7 +74,8 @@ public class ShadowMapRenderer implements Renderer {
    * 
    * @param camera - the camera being used in the scene.
    */
-  public ShadowMapRenderer(ShadowMapShader shader, ShadowBox box, FrameBuffer shadowFbo, int pcfCount) {
+  public ShadowMapRenderer(ShadowMapShader shader, OpaqueShadowMapShader opaqueShader, ShadowBox box, FrameBuffer shadowFbo,
+      int pcfCount, InstanceBuffer instances, LodSelector lods) {
     assert shadowFbo.getWidth() == shadowFbo.getHeight();
     this.shadowBox = box;
     this.shadowFbo = shadowFbo;
@@ -73,79 +84,127 @@ public class ShadowMapRenderer implements Renderer {
     this.lightViewMatrix = box.getLightViewMatrix();
     this.shader = shader;
     this.shader.init();
+    this.opaqueShader = opaqueShader;
+    this.opaqueShader.init();
+    this.instances = instances;
+    this.lods = lods;
   }
 
   /**
    * Carries out the shadow render pass. This renders the entities to the shadow map. First the
    * shadow box is updated to calculate the size and position of the "view cuboid". The light
    * direction is assumed to be "-lightPosition" which will be fairly accurate assuming that the
-   * light is very far from the scene. It then prepares to render, renders the entities to the
-   * shadow map, and finishes rendering.
+   * light is very far from the scene. It then prepares to render, picks the entities that can cast
+   * a shadow into the "view cuboid", renders them to the shadow map, and finishes rendering.
    * 
-   * @param entities - the lists of entities to be rendered. Each list is associated with the
-   *        {@link TexturedModel} that all of the entities in that list use.
+   * @param entities - all entities in the scene, not only those visible to the camera.
+   * @param nmEntities - all normal-mapped entities in the scene.
    * @param sun - the light acting as the sun in the scene.
    */
-  public void render(Map<TexturedModel, List<Entity>> entities, CameraOrientation c, Light sun, int displayWidth, int displayHeight) {
+  public void render(List<Entity> entities, List<Entity> nmEntities, CameraOrientation c, Light sun, int displayWidth, int displayHeight) {
     shadowBox.update(c);
     Vector3f sunPosition = sun.getPosition();
     Vector3f lightDirection = new Vector3f(-sunPosition.x, -sunPosition.y, -sunPosition.z);
     prepare(lightDirection, shadowBox);
-    render(entities);
+    final Frustum casterVolume = new Frustum(casterMatrix);
+    casters.clear();
+    casters.addVisible(entities, casterVolume);
+    // casters use the same levels as in the camera's view, including those off screen
+    casters.sort(lods, c.position);
+    nmCasters.clear();
+    nmCasters.addVisible(nmEntities, casterVolume);
+    nmCasters.sort(lods, c.position);
+    render(casters, nmCasters);
     finish(displayWidth, displayHeight);
   }
 
   /**
-   * Renders entieis to the shadow map. Each model is first bound and then all of the entities using
-   * that model are rendered to the shadow map.
+   * Renders entities to the shadow map. Opaque models are drawn first with a depth-only shader that
+   * reads nothing but positions; alpha-tested models are drawn afterwards with a shader that samples
+   * their texture. Each model is bound once and all of its entities are drawn with instanced calls.
    * 
-   * @param entities - the entities to be rendered to the shadow map.
+   * @param lists - the entities to be rendered to the shadow map, grouped by model.
    */
-  protected void render(Map<TexturedModel, List<Entity>> entities) {
-    for (Map.Entry<TexturedModel, List<Entity>> entry : entities.entrySet()) {
-      final TexturedModel model = entry.getKey();
-      final RawModel rawModel = model.getRawModel();
-      bindModel(rawModel);
-      GL13.glActiveTexture(GL13.GL_TEXTURE0);
-      GL11.glBindTexture(GL11.GL_TEXTURE_2D, model.getTexture().getTextureId());
-      if (model.getTexture().isTransparent()) {
-        MasterRenderer.disableCulling();
+  protected void render(RenderList... lists) {
+    opaqueShader.start();
+    opaqueShader.loadProjectionViewMatrix(projectionViewMatrix);
+    for (RenderList list : lists) {
+      for (int modelId = 0; modelId < list.getModelCount(); ++modelId) {
+        final TexturedModel model = list.getModel(modelId);
+        if (list.getStart(modelId) < list.getEnd(modelId) && !model.getTexture().isTransparent()) {
+          renderOpaque(list, modelId);
+        }
       }
-      for (Entity entity : entry.getValue()) {
-        prepareInstance(entity);
-        GL11.glDrawElements(GL11.GL_TRIANGLES, rawModel.getVertexCount(), GL11.GL_UNSIGNED_INT, 0);
-      }
-      if (model.getTexture().isTransparent()) {
-        MasterRenderer.enableCulling();
+    }
+    opaqueShader.stop();
+
+    shader.start();
+    shader.loadProjectionViewMatrix(projectionViewMatrix);
+    MasterRenderer.disableCulling();
+    for (RenderList list : lists) {
+      for (int modelId = 0; modelId < list.getModelCount(); ++modelId) {
+        final TexturedModel model = list.getModel(modelId);
+        if (list.getStart(modelId) < list.getEnd(modelId) && model.getTexture().isTransparent()) {
+          renderTransparent(list, modelId);
+        }
       }
     }
-    GL20.glDisableVertexAttribArray(ShaderProgram.ATTR_POSITION);
-    GL20.glDisableVertexAttribArray(ShaderProgram.ATTR_TEXTURE);
+    MasterRenderer.enableCulling();
+    shader.stop();
     GL30.glBindVertexArray(0);
   }
 
-  /**
-   * Binds a raw model before rendering. Only the attribute 0 is enabled here because that is where
-   * the positions are stored in the VAO, and only the positions are required in the vertex shader.
-   * 
-   * @param rawModel - the model to be bound.
-   */
-  private void bindModel(RawModel rawModel) {
-    GL30.glBindVertexArray(rawModel.getVaoId());
-    GL20.glEnableVertexAttribArray(ShaderProgram.ATTR_POSITION);
-    GL20.glEnableVertexAttribArray(ShaderProgram.ATTR_TEXTURE);
+  private void renderOpaque(RenderList list, int modelId) {
+    final TexturedModel model = list.getModel(modelId);
+    for (int lod = 0; lod < model.getLodCount(); ++lod) {
+      if (list.getStart(modelId, lod) == list.getEnd(modelId, lod)) {
+        continue;
+      }
+      final RawModel rawModel = model.getRawModel(lod);
+      instances.bind(rawModel);
+      GL20.glEnableVertexAttribArray(ShaderProgram.ATTR_POSITION);
+      drawInstances(rawModel, list, modelId, lod);
+      GL20.glDisableVertexAttribArray(ShaderProgram.ATTR_POSITION);
+      instances.unbind();
+    }
+  }
+
+  private void renderTransparent(RenderList list, int modelId) {
+    final TexturedModel model = list.getModel(modelId);
+    shader.loadTexture(model.getTexture());
+    GL13.glActiveTexture(GL13.GL_TEXTURE0);
+    GL11.glBindTexture(GL11.GL_TEXTURE_2D, model.getTexture().getTextureId());
+    for (int lod = 0; lod < model.getLodCount(); ++lod) {
+      if (list.getStart(modelId, lod) == list.getEnd(modelId, lod)) {
+        continue;
+      }
+      final RawModel rawModel = model.getRawModel(lod);
+      instances.bind(rawModel);
+      GL20.glEnableVertexAttribArray(ShaderProgram.ATTR_POSITION);
+      GL20.glEnableVertexAttribArray(ShaderProgram.ATTR_TEXTURE);
+      drawInstances(rawModel, list, modelId, lod);
+      GL20.glDisableVertexAttribArray(ShaderProgram.ATTR_POSITION);
+      GL20.glDisableVertexAttribArray(ShaderProgram.ATTR_TEXTURE);
+      instances.unbind();
+    }
   }
 
   /**
-   * Prepares an entity to be rendered. The model matrix is created in the usual way and then
-   * multiplied with the projection and view matrix (often in the past we've done this in the vertex
-   * shader) to create the mvp-matrix. This is then loaded to the vertex shader as a uniform.
-   * 
-   * @param entity - the entity to be prepared for rendering.
+   * Queues the model matrix of each entity drawn at a level of detail. The light's projection-view
+   * matrix is applied in the vertex shader, so nothing is multiplied per entity here.
    */
-  private void prepareInstance(Entity entity) {
-    Matrix4f modelMatrix = new TransformationMatrix(entity.getPosition(), entity.getRotation(), entity.getScale()).toMatrix();
-    shader.loadMvpMatrix(projectionViewMatrix.mul(modelMatrix, new Matrix4f()));
+  private void drawInstances(RawModel rawModel, RenderList list, int modelId, int lod) {
+    final int[] handles = list.getHandles();
+    final float[] transformations = list.getStore().getTransformations();
+    final float[] textureOffsets = list.getStore().getTextureOffsets();
+    for (int i = list.getStart(modelId, lod); i < list.getEnd(modelId, lod); ++i) {
+      final int handle = handles[i];
+      final int offset = handle * EntityStore.TEXTURE_OFFSET_FLOATS;
+      if (instances.put(transformations, handle * EntityStore.TRANSFORMATION_FLOATS, textureOffsets[offset], textureOffsets[offset + 1])) {
+        instances.draw(rawModel);
+      }
+    }
+    instances.draw(rawModel);
   }
 
   /**
@@ -156,8 +215,8 @@ public class ShadowMapRenderer implements Renderer {
    * matrices are multiplied together to create the projection-view matrix. This matrix determines
    * the size, position, and orientation of the "view cuboid" in the world. This method also binds
    * the shadows FBO so that everything rendered after this gets rendered to the FBO. It also
-   * enables depth testing, and clears any data that is in the FBOs depth attachment from last
-   * frame. The simple shader program is also started.
+   * enables depth testing and depth clamping, and clears any data that is in the FBOs depth
+   * attachment from last frame.
    * 
    * @param lightDirection - the direction of the light rays coming from the sun.
    * @param box - the shadow box, which contains all the info about the "view cuboid".
@@ -166,18 +225,20 @@ public class ShadowMapRenderer implements Renderer {
     updateOrthoProjectionMatrix(box.getWidth(), box.getHeight(), box.getLength());
     updateLightViewMatrix(lightDirection, box.getCenter());
     projectionMatrix.mul(lightViewMatrix, projectionViewMatrix);
+    updateCasterMatrix(box.getLength(), box.getShadowDistance());
     shadowFbo.bind();
     GL11.glEnable(GL11.GL_DEPTH_TEST);
+    // casters between the light and the cuboid are flattened onto its near face instead of clipped
+    GL11.glEnable(GL32.GL_DEPTH_CLAMP);
     GL11.glClear(GL11.GL_DEPTH_BUFFER_BIT);
-    shader.start();
   }
 
   /**
-   * Finish the shadow render pass. Stops the shader and unbinds the shadow FBO, so everything
+   * Finish the shadow render pass. Unbinds the shadow FBO, so everything
    * rendered after this point is rendered to the screen, rather than to the shadow FBO.
    */
   private void finish(int displayWidth, int displayHeight) {
-    shader.stop();
+    GL11.glDisable(GL32.GL_DEPTH_CLAMP);
     shadowFbo.unbind(displayWidth, displayHeight);
   }
 
@@ -220,6 +281,22 @@ public class ShadowMapRenderer implements Renderer {
     projectionMatrix.m33 = 1;
   }
 
+  /**
+   * Creates the projection-view matrix of the volume in which objects can cast shadows into the
+   * "view cuboid". It is the cuboid stretched towards the light (along +z in light space), because
+   * an object above the cuboid can still shade what is inside it.
+   * 
+   * @param length - shadow box length.
+   * @param extension - how far to stretch the volume towards the light.
+   */
+  private void updateCasterMatrix(float length, float extension) {
+    casterMatrix.set(projectionMatrix);
+    // maps z from length / 2 + extension (near) to -length / 2 (far) onto [-1, 1]
+    casterMatrix.m22 = -2f / (length + extension);
+    casterMatrix.m32 = 1f + casterMatrix.m22 * length * 0.5f;
+    casterMatrix.mul(lightViewMatrix);
+  }
+
   /**
    * This biased projection-view matrix is used to convert fragments into "shadow map space" when
    * rendering the main render pass. It converts a world space position into a 2D coordinate on the
@@ -264,6 +341,7 @@ public class ShadowMapRenderer implements Renderer {
   @Override
   public void close() {
     shader.close();
+    opaqueShader.close();
     shadowFbo.close();
   }
 }
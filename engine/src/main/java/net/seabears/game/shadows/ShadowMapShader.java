@@ -5,9 +5,15 @@ import java.io.IOException;
 import org.joml.Matrix4f;
 
 import net.seabears.game.shaders.ShaderProgram;
+import net.seabears.game.textures.ModelTexture;
 
+/**
+ * Shadow caster shader for alpha-tested models. Samples the model texture to discard transparent
+ * fragments.
+ */
 public class ShadowMapShader extends ShaderProgram {
-  private int locationMvpMatrix;
+  private int locationProjectionViewMatrix;
+  private int locationTextureRows;
 
   public ShadowMapShader() throws IOException {
     super(SHADER_ROOT + "shadows/");
@@ -15,16 +21,23 @@ public class ShadowMapShader extends ShaderProgram {
 
   @Override
   protected void getAllUniformLocations() {
-    locationMvpMatrix = super.getUniformLocation("mvpMatrix");
+    locationProjectionViewMatrix = super.getUniformLocation("projectionViewMatrix");
+    locationTextureRows = super.getUniformLocation("textureRows");
   }
 
-  public void loadMvpMatrix(Matrix4f mvpMatrix) {
-    super.loadMatrix(locationMvpMatrix, mvpMatrix);
+  public void loadProjectionViewMatrix(Matrix4f matrix) {
+    super.loadMatrix(locationProjectionViewMatrix, matrix);
+  }
+
+  public void loadTexture(ModelTexture texture) {
+    super.loadFloat(locationTextureRows, texture.getRows());
   }
 
   @Override
   protected void bindAttributes() {
     super.bindAttribute(ATTR_POSITION, "position");
     super.bindAttribute(ATTR_TEXTURE, "textureCoords");
+    super.bindAttribute(ATTR_INSTANCE_MATRIX, "modelMatrix");
+    super.bindAttribute(ATTR_INSTANCE_TEXTURE_OFFSET, "textureOffset");
   }
 }
@@ -0,0 +1,111 @@
+package net.seabears.game.spatial;
+
+import java.util.Arrays;
+
+import net.seabears.game.entities.EntityStore;
+
+/**
+ * {@link SpatialHash} over the world bounding spheres of entities in an {@link EntityStore}, keyed by
+ * entity handle. Like {@link LooseOctree}, moves are picked up through the store's move listener and
+ * applied lazily before the next query.
+ */
+public class EntityHash implements EntityStore.MoveListener {
+  private final EntityStore store;
+  private final SpatialHash hash;
+  private boolean[] pendingOf;
+  private int[] pending;
+  private int pendingCount;
+
+  /**
+   * @param cellSize width of a cell; roughly the radius of a typical query
+   * @param buckets number of hash buckets
+   */
+  public EntityHash(EntityStore store, float cellSize, int buckets) {
+    this.store = store;
+    this.hash = new SpatialHash(cellSize, buckets);
+    this.pendingOf = new boolean[64];
+    this.pending = new int[64];
+    store.addMoveListener(this);
+  }
+
+  /**
+   * Stops tracking moves; the index must not be used afterwards.
+   */
+  public void close() {
+    store.removeMoveListener(this);
+  }
+
+  public int size() {
+    return hash.size();
+  }
+
+  public boolean contains(int handle) {
+    return hash.contains(handle);
+  }
+
+  public void insert(int handle) {
+    store.updateTransformation(handle);
+    final float[] spheres = store.getSpheres();
+    final int s = handle * EntityStore.SPHERE_FLOATS;
+    hash.insert(handle, spheres[s], spheres[s + 1], spheres[s + 2], spheres[s + 3]);
+  }
+
+  public void remove(int handle) {
+    hash.remove(handle);
+  }
+
+  @Override
+  public void moved(int handle) {
+    if (!contains(handle)) {
+      return;
+    }
+    if (handle >= pendingOf.length) {
+      pendingOf = Arrays.copyOf(pendingOf, Math.max(handle + 1, pendingOf.length * 2));
+    }
+    if (!pendingOf[handle]) {
+      pendingOf[handle] = true;
+      if (pendingCount == pending.length) {
+        pending = Arrays.copyOf(pending, pendingCount * 2);
+      }
+      pending[pendingCount++] = handle;
+    }
+  }
+
+  /**
+   * Re-inserts entities whose bounds changed since the last update.
+   */
+  public void update() {
+    for (int i = 0; i < pendingCount; ++i) {
+      final int handle = pending[i];
+      pendingOf[handle] = false;
+      if (contains(handle)) {
+        insert(handle);
+      }
+    }
+    pendingCount = 0;
+  }
+
+  /**
+   * @see SpatialHash#queryRadius(float, float, float, float, int[])
+   */
+  public int queryRadius(float x, float y, float z, float radius, int[] out) {
+    update();
+    return hash.queryRadius(x, y, z, radius, out);
+  }
+
+  /**
+   * @see SpatialHash#queryBox(float, float, float, float, float, float, int[])
+   */
+  public int queryBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, int[] out) {
+    update();
+    return hash.queryBox(minX, minY, minZ, maxX, maxY, maxZ, out);
+  }
+
+  /**
+   * @see SpatialHash#nearest(float, float, float, int, int[])
+   */
+  public int nearest(float x, float y, float z, int k, int[] out) {
+    update();
+    return hash.nearest(x, y, z, k, out);
+  }
+}
@@ -0,0 +1,106 @@
+package net.seabears.game.spatial;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.IntConsumer;
+
+import org.joml.Vector3f;
+
+import net.seabears.game.entities.Entity;
+import net.seabears.game.entities.EntityStore;
+import net.seabears.game.util.Frustum;
+
+/**
+ * A list of entities that keeps a {@link LooseOctree} in step with its contents, so that visibility
+ * queries do not have to scan the whole list. Adding and removing entities updates the index
+ * directly; moving them is picked up from the {@link EntityStore}. An entity should appear in the
+ * list at most once.
+ */
+public class EntityList extends AbstractList<Entity> implements RandomAccess {
+  private static final float DEFAULT_HALF_SIZE = 4096.0f;
+  private static final int DEFAULT_DEPTH = 8;
+
+  private final List<Entity> entities;
+  private final LooseOctree index;
+  // entities by handle, for turning query results back into entities
+  private Entity[] byHandle;
+
+  /**
+   * Creates a list of entities in the default store indexed over a region centered on the origin.
+   */
+  public EntityList() {
+    this(new LooseOctree(EntityStore.getDefault(), 0.0f, 0.0f, 0.0f, DEFAULT_HALF_SIZE, DEFAULT_DEPTH));
+  }
+
+  public EntityList(LooseOctree index) {
+    this.entities = new ArrayList<>();
+    this.index = index;
+    this.byHandle = new Entity[64];
+  }
+
+  @Override
+  public Entity get(int i) {
+    return entities.get(i);
+  }
+
+  @Override
+  public int size() {
+    return entities.size();
+  }
+
+  @Override
+  public Entity set(int i, Entity entity) {
+    final Entity old = entities.set(i, entity);
+    index.remove(old.getHandle());
+    byHandle[old.getHandle()] = null;
+    insert(entity);
+    return old;
+  }
+
+  @Override
+  public void add(int i, Entity entity) {
+    entities.add(i, entity);
+    insert(entity);
+  }
+
+  @Override
+  public Entity remove(int i) {
+    final Entity old = entities.remove(i);
+    index.remove(old.getHandle());
+    byHandle[old.getHandle()] = null;
+    return old;
+  }
+
+  private void insert(Entity entity) {
+    final int handle = entity.getHandle();
+    if (handle >= byHandle.length) {
+      byHandle = Arrays.copyOf(byHandle, Math.max(handle + 1, byHandle.length * 2));
+    }
+    byHandle[handle] = entity;
+    index.insert(handle);
+  }
+
+  public LooseOctree getIndex() {
+    return index;
+  }
+
+  /**
+   * Passes the handle of every entity inside the frustum to the consumer.
+   */
+  public void query(Frustum frustum, IntConsumer visible) {
+    index.query(frustum, visible);
+  }
+
+  /**
+   * @param direction direction of the ray; distances are in multiples of it
+   * @param maxDistance distance beyond which hits are ignored
+   * @return the nearest entity hit by the ray, or <code>null</code> if there is none
+   */
+  public Entity pick(Vector3f origin, Vector3f direction, float maxDistance) {
+    final int handle = index.raycast(origin.x, origin.y, origin.z, direction.x, direction.y, direction.z, maxDistance);
+    return handle < 0 ? null : byHandle[handle];
+  }
+}
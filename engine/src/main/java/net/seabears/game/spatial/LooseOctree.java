@@ -0,0 +1,280 @@
+package net.seabears.game.spatial;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+import net.seabears.game.entities.EntityStore;
+import net.seabears.game.util.Frustum;
+import net.seabears.game.util.Intersection;
+
+/**
+ * Loose octree over the world bounding spheres of entities in an {@link EntityStore}. Each node's
+ * loose bounds are twice the size of its cell, so an entity goes into the deepest cell that contains
+ * its center and is at least as large as its radius, and never has to straddle cells. Moves are
+ * picked up through the store's move listener and applied lazily before the next query.
+ */
+public class LooseOctree implements EntityStore.MoveListener {
+  private static final class Node {
+    private final Node parent;
+    private final float centerX, centerY, centerZ;
+    private final float half;
+    private final Node[] children;
+    private int[] items;
+    private int count;
+    /** entities in this node and all of its descendants */
+    private int total;
+
+    private Node(Node parent, float centerX, float centerY, float centerZ, float half) {
+      this.parent = parent;
+      this.centerX = centerX;
+      this.centerY = centerY;
+      this.centerZ = centerZ;
+      this.half = half;
+      this.children = new Node[8];
+      this.items = new int[4];
+    }
+
+    private Node child(int index) {
+      if (children[index] == null) {
+        final float h = half * 0.5f;
+        children[index] = new Node(this,
+            centerX + ((index & 1) == 0 ? -h : h),
+            centerY + ((index & 2) == 0 ? -h : h),
+            centerZ + ((index & 4) == 0 ? -h : h), h);
+      }
+      return children[index];
+    }
+  }
+
+  private final EntityStore store;
+  private final Node root;
+  /** entities that are outside the root cell or larger than it */
+  private final Node overflow;
+  private final int maxDepth;
+  private Node[] nodeOf;
+  private int[] slotOf;
+  private boolean[] pendingOf;
+  private int[] pending;
+  private int pendingCount;
+  private int size;
+  // nearest hit of the ray being cast
+  private int hitHandle;
+  private float hitDistance;
+
+  /**
+   * @param centerX center of the indexed region
+   * @param halfSize half the width of the indexed region
+   * @param maxDepth number of times the region may be subdivided
+   */
+  public LooseOctree(EntityStore store, float centerX, float centerY, float centerZ, float halfSize, int maxDepth) {
+    this.store = store;
+    this.root = new Node(null, centerX, centerY, centerZ, halfSize);
+    this.overflow = new Node(null, centerX, centerY, centerZ, Float.POSITIVE_INFINITY);
+    this.maxDepth = maxDepth;
+    this.nodeOf = new Node[64];
+    this.slotOf = new int[64];
+    this.pendingOf = new boolean[64];
+    this.pending = new int[64];
+    store.addMoveListener(this);
+  }
+
+  /**
+   * Stops tracking moves; the index must not be used afterwards.
+   */
+  public void close() {
+    store.removeMoveListener(this);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean contains(int handle) {
+    return handle < nodeOf.length && nodeOf[handle] != null;
+  }
+
+  public void insert(int handle) {
+    if (handle >= nodeOf.length) {
+      final int capacity = Math.max(handle + 1, nodeOf.length * 2);
+      nodeOf = Arrays.copyOf(nodeOf, capacity);
+      slotOf = Arrays.copyOf(slotOf, capacity);
+      pendingOf = Arrays.copyOf(pendingOf, capacity);
+    }
+    if (nodeOf[handle] != null) {
+      detach(handle);
+    } else {
+      ++size;
+    }
+    store.updateTransformation(handle);
+    attach(handle, locate(handle));
+  }
+
+  public void remove(int handle) {
+    if (contains(handle)) {
+      detach(handle);
+      --size;
+    }
+  }
+
+  @Override
+  public void moved(int handle) {
+    if (contains(handle) && !pendingOf[handle]) {
+      pendingOf[handle] = true;
+      if (pendingCount == pending.length) {
+        pending = Arrays.copyOf(pending, pendingCount * 2);
+      }
+      pending[pendingCount++] = handle;
+    }
+  }
+
+  /**
+   * Moves entities whose bounds changed since the last update to their new cells.
+   */
+  public void update() {
+    for (int i = 0; i < pendingCount; ++i) {
+      final int handle = pending[i];
+      pendingOf[handle] = false;
+      if (contains(handle)) {
+        store.updateTransformation(handle);
+        final Node target = locate(handle);
+        if (target != nodeOf[handle]) {
+          detach(handle);
+          attach(handle, target);
+        }
+      }
+    }
+    pendingCount = 0;
+  }
+
+  /**
+   * Passes every indexed entity inside the frustum to the consumer. Subtrees entirely outside the
+   * frustum are skipped and subtrees entirely inside are accepted without testing each entity.
+   */
+  public void query(Frustum frustum, IntConsumer visible) {
+    update();
+    visit(root, frustum, false, visible);
+    for (int i = 0; i < overflow.count; ++i) {
+      final int handle = overflow.items[i];
+      if (store.isInside(frustum, handle)) {
+        visible.accept(handle);
+      }
+    }
+  }
+
+  /**
+   * Finds the nearest indexed entity hit by a ray, by its bounds and then its triangles. Subtrees
+   * the ray misses, or enters beyond the nearest hit so far, are skipped.
+   *
+   * @param maxDistance distance beyond which hits are ignored
+   * @return handle of the nearest entity hit, or -1 if there is none
+   */
+  public int raycast(float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance) {
+    update();
+    hitHandle = -1;
+    hitDistance = maxDistance;
+    cast(root, ox, oy, oz, dx, dy, dz);
+    cast(overflow, ox, oy, oz, dx, dy, dz);
+    return hitHandle;
+  }
+
+  /**
+   * @return distance to the entity found by the last {@link #raycast}
+   */
+  public float getHitDistance() {
+    return hitDistance;
+  }
+
+  private void cast(Node node, float ox, float oy, float oz, float dx, float dy, float dz) {
+    if (node.total == 0) {
+      return;
+    }
+    if (node != overflow) {
+      final float loose = node.half * 2.0f;
+      final float entry = Intersection.box(ox, oy, oz, dx, dy, dz,
+          node.centerX - loose, node.centerY - loose, node.centerZ - loose,
+          node.centerX + loose, node.centerY + loose, node.centerZ + loose);
+      if (entry > hitDistance) {
+        return;
+      }
+    }
+    for (int i = 0; i < node.count; ++i) {
+      final int handle = node.items[i];
+      final float distance = store.intersect(handle, ox, oy, oz, dx, dy, dz, hitDistance);
+      if (distance <= hitDistance && distance != Float.POSITIVE_INFINITY) {
+        hitDistance = distance;
+        hitHandle = handle;
+      }
+    }
+    for (Node child : node.children) {
+      if (child != null) {
+        cast(child, ox, oy, oz, dx, dy, dz);
+      }
+    }
+  }
+
+  private void visit(Node node, Frustum frustum, boolean inside, IntConsumer visible) {
+    if (node.total == 0) {
+      return;
+    }
+    if (!inside) {
+      final float loose = node.half * 2.0f;
+      final int result = frustum.classifyBox(node.centerX - loose, node.centerY - loose, node.centerZ - loose,
+          node.centerX + loose, node.centerY + loose, node.centerZ + loose);
+      if (result == Frustum.OUTSIDE) {
+        return;
+      }
+      inside = result == Frustum.INSIDE;
+    }
+    for (int i = 0; i < node.count; ++i) {
+      final int handle = node.items[i];
+      if (inside || store.isInside(frustum, handle)) {
+        visible.accept(handle);
+      }
+    }
+    for (Node child : node.children) {
+      if (child != null) {
+        visit(child, frustum, inside, visible);
+      }
+    }
+  }
+
+  private Node locate(int handle) {
+    final float[] spheres = store.getSpheres();
+    final int s = handle * EntityStore.SPHERE_FLOATS;
+    final float x = spheres[s], y = spheres[s + 1], z = spheres[s + 2], radius = spheres[s + 3];
+    if (radius > root.half || Math.abs(x - root.centerX) > root.half || Math.abs(y - root.centerY) > root.half
+        || Math.abs(z - root.centerZ) > root.half) {
+      return overflow;
+    }
+    Node node = root;
+    for (int depth = 0; depth < maxDepth && radius <= node.half * 0.5f; ++depth) {
+      final int index = (x < node.centerX ? 0 : 1) | (y < node.centerY ? 0 : 2) | (z < node.centerZ ? 0 : 4);
+      node = node.child(index);
+    }
+    return node;
+  }
+
+  private void attach(int handle, Node node) {
+    if (node.count == node.items.length) {
+      node.items = Arrays.copyOf(node.items, node.count * 2);
+    }
+    slotOf[handle] = node.count;
+    node.items[node.count++] = handle;
+    nodeOf[handle] = node;
+    for (Node n = node; n != null; n = n.parent) {
+      ++n.total;
+    }
+  }
+
+  private void detach(int handle) {
+    final Node node = nodeOf[handle];
+    final int slot = slotOf[handle];
+    final int last = node.items[--node.count];
+    node.items[slot] = last;
+    slotOf[last] = slot;
+    nodeOf[handle] = null;
+    for (Node n = node; n != null; n = n.parent) {
+      --n.total;
+    }
+  }
+}
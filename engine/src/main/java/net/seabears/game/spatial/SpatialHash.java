@@ -0,0 +1,276 @@
+package net.seabears.game.spatial;
+
+import java.util.Arrays;
+
+import org.joml.Vector3f;
+
+/**
+ * Uniform grid of cubic cells, stored in a fixed number of hash buckets, that answers radius, box and
+ * k-nearest queries about points or spheres. Items are identified by small non-negative ids chosen
+ * by the caller (a list index or an entity handle). Each item lives in the cell containing its
+ * center, so queries are widened by the largest item radius. Queries write ids into a caller-owned
+ * array and do not allocate.
+ */
+public class SpatialHash {
+  private static final int NONE = -1;
+
+  private final float cellSize;
+  private final int mask;
+  private final int[] heads;
+  private int[] next;
+  private int[] cellX, cellY, cellZ;
+  private float[] spheres;
+  private boolean[] present;
+  private int size;
+  private float maxRadius;
+  // range of occupied cells, which bounds how far the nearest-neighbor search has to look
+  private int minCellX, minCellY, minCellZ;
+  private int maxCellX, maxCellY, maxCellZ;
+  // scratch for nearest-neighbor queries
+  private float[] best;
+
+  /**
+   * @param cellSize width of a cell; roughly the radius of a typical query
+   * @param buckets number of hash buckets, rounded up to a power of two
+   */
+  public SpatialHash(float cellSize, int buckets) {
+    this.cellSize = cellSize;
+    final int capacity = Integer.highestOneBit(Math.max(1, buckets - 1)) << 1;
+    this.mask = capacity - 1;
+    this.heads = new int[capacity];
+    this.next = new int[16];
+    this.cellX = new int[16];
+    this.cellY = new int[16];
+    this.cellZ = new int[16];
+    this.spheres = new float[16 * 4];
+    this.present = new boolean[16];
+    this.best = new float[8];
+    clear();
+  }
+
+  /**
+   * Removes every item.
+   */
+  public void clear() {
+    Arrays.fill(heads, NONE);
+    Arrays.fill(present, false);
+    size = 0;
+    maxRadius = 0;
+    minCellX = minCellY = minCellZ = Integer.MAX_VALUE;
+    maxCellX = maxCellY = maxCellZ = Integer.MIN_VALUE;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean contains(int id) {
+    return id < present.length && present[id];
+  }
+
+  private int cell(float v) {
+    return (int) Math.floor(v / cellSize);
+  }
+
+  private int bucket(int x, int y, int z) {
+    return (x * 73856093 ^ y * 19349663 ^ z * 83492791) & mask;
+  }
+
+  public void insert(int id, Vector3f position) {
+    insert(id, position.x, position.y, position.z, 0.0f);
+  }
+
+  /**
+   * Adds an item, or moves it if the id is already present.
+   */
+  public void insert(int id, float x, float y, float z, float radius) {
+    if (id >= present.length) {
+      final int capacity = Math.max(id + 1, present.length * 2);
+      next = Arrays.copyOf(next, capacity);
+      cellX = Arrays.copyOf(cellX, capacity);
+      cellY = Arrays.copyOf(cellY, capacity);
+      cellZ = Arrays.copyOf(cellZ, capacity);
+      spheres = Arrays.copyOf(spheres, capacity * 4);
+      present = Arrays.copyOf(present, capacity);
+    }
+    final int cx = cell(x), cy = cell(y), cz = cell(z);
+    if (present[id]) {
+      if (cellX[id] == cx && cellY[id] == cy && cellZ[id] == cz) {
+        setSphere(id, x, y, z, radius);
+        return;
+      }
+      remove(id);
+    }
+    present[id] = true;
+    ++size;
+    cellX[id] = cx;
+    cellY[id] = cy;
+    cellZ[id] = cz;
+    setSphere(id, x, y, z, radius);
+    final int b = bucket(cx, cy, cz);
+    next[id] = heads[b];
+    heads[b] = id;
+    minCellX = Math.min(minCellX, cx);
+    minCellY = Math.min(minCellY, cy);
+    minCellZ = Math.min(minCellZ, cz);
+    maxCellX = Math.max(maxCellX, cx);
+    maxCellY = Math.max(maxCellY, cy);
+    maxCellZ = Math.max(maxCellZ, cz);
+  }
+
+  private void setSphere(int id, float x, float y, float z, float radius) {
+    final int s = id * 4;
+    spheres[s] = x;
+    spheres[s + 1] = y;
+    spheres[s + 2] = z;
+    spheres[s + 3] = radius;
+    // the largest radius is never shrunk, which only makes queries look a little further
+    maxRadius = Math.max(maxRadius, radius);
+  }
+
+  public void remove(int id) {
+    if (!contains(id)) {
+      return;
+    }
+    final int b = bucket(cellX[id], cellY[id], cellZ[id]);
+    if (heads[b] == id) {
+      heads[b] = next[id];
+    } else {
+      int i = heads[b];
+      while (next[i] != id) {
+        i = next[i];
+      }
+      next[i] = next[id];
+    }
+    present[id] = false;
+    --size;
+  }
+
+  /**
+   * Finds items whose sphere overlaps the query sphere.
+   *
+   * @param out receives ids; ids past its length are dropped
+   * @return number of ids written
+   */
+  public int queryRadius(float x, float y, float z, float radius, int[] out) {
+    final float reach = radius + maxRadius;
+    int length = 0;
+    final int x0 = Math.max(cell(x - reach), minCellX), x1 = Math.min(cell(x + reach), maxCellX);
+    final int y0 = Math.max(cell(y - reach), minCellY), y1 = Math.min(cell(y + reach), maxCellY);
+    final int z0 = Math.max(cell(z - reach), minCellZ), z1 = Math.min(cell(z + reach), maxCellZ);
+    for (int cx = x0; cx <= x1; ++cx) {
+      for (int cy = y0; cy <= y1; ++cy) {
+        for (int cz = z0; cz <= z1; ++cz) {
+          for (int id = heads[bucket(cx, cy, cz)]; id != NONE; id = next[id]) {
+            if (cellX[id] != cx || cellY[id] != cy || cellZ[id] != cz) {
+              continue;
+            }
+            final int s = id * 4;
+            final float dx = spheres[s] - x, dy = spheres[s + 1] - y, dz = spheres[s + 2] - z;
+            final float r = radius + spheres[s + 3];
+            if (dx * dx + dy * dy + dz * dz <= r * r && length < out.length) {
+              out[length++] = id;
+            }
+          }
+        }
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Finds items whose sphere overlaps the axis-aligned box.
+   *
+   * @param out receives ids; ids past its length are dropped
+   * @return number of ids written
+   */
+  public int queryBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, int[] out) {
+    int length = 0;
+    final int x0 = Math.max(cell(minX - maxRadius), minCellX), x1 = Math.min(cell(maxX + maxRadius), maxCellX);
+    final int y0 = Math.max(cell(minY - maxRadius), minCellY), y1 = Math.min(cell(maxY + maxRadius), maxCellY);
+    final int z0 = Math.max(cell(minZ - maxRadius), minCellZ), z1 = Math.min(cell(maxZ + maxRadius), maxCellZ);
+    for (int cx = x0; cx <= x1; ++cx) {
+      for (int cy = y0; cy <= y1; ++cy) {
+        for (int cz = z0; cz <= z1; ++cz) {
+          for (int id = heads[bucket(cx, cy, cz)]; id != NONE; id = next[id]) {
+            if (cellX[id] != cx || cellY[id] != cy || cellZ[id] != cz) {
+              continue;
+            }
+            final int s = id * 4;
+            final float r = spheres[s + 3];
+            if (spheres[s] + r >= minX && spheres[s] - r <= maxX && spheres[s + 1] + r >= minY
+                && spheres[s + 1] - r <= maxY && spheres[s + 2] + r >= minZ && spheres[s + 2] - r <= maxZ
+                && length < out.length) {
+              out[length++] = id;
+            }
+          }
+        }
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Finds the items whose centers are nearest to a point, searching outwards one shell of cells at a
+   * time.
+   *
+   * @param k maximum number of items to find
+   * @param out receives ids, nearest first; must hold at least <code>k</code> elements
+   * @return number of ids written
+   */
+  public int nearest(float x, float y, float z, int k, int[] out) {
+    if (size == 0 || k <= 0) {
+      return 0;
+    }
+    if (best.length < k) {
+      best = new float[k];
+    }
+    final int cx = cell(x), cy = cell(y), cz = cell(z);
+    // no occupied cell is further away than this
+    final int limit = Math.max(Math.max(Math.max(cx - minCellX, maxCellX - cx), Math.max(cy - minCellY, maxCellY - cy)),
+        Math.max(cz - minCellZ, maxCellZ - cz));
+    int length = 0;
+    for (int ring = 0; ring <= limit; ++ring) {
+      // everything in later shells is at least this far away
+      final float shellDistance = (ring - 1) * cellSize;
+      if (length == k && shellDistance > 0 && shellDistance * shellDistance > best[k - 1]) {
+        break;
+      }
+      for (int ix = cx - ring; ix <= cx + ring; ++ix) {
+        for (int iy = cy - ring; iy <= cy + ring; ++iy) {
+          final boolean edge = ix == cx - ring || ix == cx + ring || iy == cy - ring || iy == cy + ring;
+          // inside the shell only the two faces along z are new
+          for (int iz = cz - ring; iz <= cz + ring; iz += edge || ring == 0 ? 1 : 2 * ring) {
+            for (int id = heads[bucket(ix, iy, iz)]; id != NONE; id = next[id]) {
+              if (cellX[id] != ix || cellY[id] != iy || cellZ[id] != iz) {
+                continue;
+              }
+              final int s = id * 4;
+              final float dx = spheres[s] - x, dy = spheres[s + 1] - y, dz = spheres[s + 2] - z;
+              length = offer(id, dx * dx + dy * dy + dz * dz, k, length, out);
+            }
+          }
+        }
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Inserts a candidate into the sorted list of the best <code>k</code> so far.
+   */
+  private int offer(int id, float distanceSquared, int k, int length, int[] out) {
+    if (length == k && distanceSquared >= best[k - 1]) {
+      return length;
+    }
+    int i = length == k ? k - 1 : length++;
+    while (i > 0 && best[i - 1] > distanceSquared) {
+      best[i] = best[i - 1];
+      out[i] = out[i - 1];
+      --i;
+    }
+    best[i] = distanceSquared;
+    out[i] = id;
+    return length;
+  }
+}
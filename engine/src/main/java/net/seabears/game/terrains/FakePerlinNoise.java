@@ -1,13 +1,18 @@
 package net.seabears.game.terrains;
 
-import static java.util.stream.IntStream.range;
-import static java.util.stream.IntStream.rangeClosed;
-
-import java.util.Random;
-
 import org.joml.Vector2d;
 
+/**
+ * Value noise summed over octaves. Holds no mutable state, so one instance can generate heights on
+ * several threads at once.
+ */
 public class FakePerlinNoise implements HeightGenerator {
+  // constants of the linear congruential generator in java.util.Random
+  private static final long MULTIPLIER = 0x5DEECE66DL;
+  private static final long ADDEND = 0xBL;
+  private static final long MASK = (1L << 48) - 1;
+  private static final double DOUBLE_UNIT = 0x1.0p-53;
+
   public static long[] makeSeeds() {
     return new long[] {
         (long) (System.currentTimeMillis() * Math.random()),
@@ -16,34 +21,36 @@ public class FakePerlinNoise implements HeightGenerator {
         };
   }
 
-  private final double amplitude;
-  private final int octaves;
-  private final double roughness;
-  private final Random random;
   private final long[] seeds;
   private final Vector2d offset;
   private final int vertexCount;
+  // per-octave sample spacing and weight
+  private final double[] frequencies;
+  private final double[] amplitudes;
 
-  public FakePerlinNoise(int gridX, int gridZ, double amplitude, int octaves, double roughness, Random random, long[] seeds) {
-    this(gridX, gridZ, amplitude, octaves, roughness, random, seeds, 128);
+  public FakePerlinNoise(int gridX, int gridZ, double amplitude, int octaves, double roughness, long[] seeds) {
+    this(gridX, gridZ, amplitude, octaves, roughness, seeds, 128);
   }
 
-  public FakePerlinNoise(int gridX, int gridZ, double amplitude, int octaves, double roughness, Random random, long[] seeds, int vertexCount) {
-    this.amplitude = amplitude;
-    this.octaves = octaves;
-    this.roughness = roughness;
-    this.random = random;
+  public FakePerlinNoise(int gridX, int gridZ, double amplitude, int octaves, double roughness, long[] seeds, int vertexCount) {
     this.seeds = seeds;
     this.vertexCount = vertexCount;
     this.offset = new Vector2d(Math.abs(gridX) * (vertexCount - 1), Math.abs(gridZ) * (vertexCount - 1));
+    this.frequencies = new double[octaves];
+    this.amplitudes = new double[octaves];
+    for (int i = 0; i < octaves; ++i) {
+      frequencies[i] = Math.pow(2, i) / Math.pow(2, octaves - 1);
+      amplitudes[i] = amplitude * Math.pow(roughness, i);
+    }
   }
 
   @Override
   public float generate(final int x, final int z) {
-    return (float) range(0, octaves)
-        .mapToDouble(i -> getInterpolatedNoise((x + offset.x) * Math.pow(2, i) / Math.pow(2, octaves - 1),
-                                               (z + offset.y) * Math.pow(2, i) / Math.pow(2, octaves - 1))
-            * amplitude * Math.pow(roughness, i)).sum();
+    double sum = 0.0;
+    for (int i = 0; i < frequencies.length; ++i) {
+      sum += getInterpolatedNoise((x + offset.x) * frequencies[i], (z + offset.y) * frequencies[i]) * amplitudes[i];
+    }
+    return (float) sum;
   }
 
   @Override
@@ -51,14 +58,40 @@ public class FakePerlinNoise implements HeightGenerator {
     return vertexCount;
   }
 
-  /** return a random number in [-1,1] but always the same number for given coordinates (while the game is running) */
+  @Override
+  public long getFingerprint() {
+    long hash = vertexCount;
+    for (long seed : seeds) {
+      hash = hash * 31 + seed;
+    }
+    for (int i = 0; i < frequencies.length; ++i) {
+      hash = hash * 31 + Double.doubleToLongBits(frequencies[i]);
+      hash = hash * 31 + Double.doubleToLongBits(amplitudes[i]);
+    }
+    return hash * 31 + FakePerlinNoise.class.getName().hashCode();
+  }
+
+  /**
+   * @return a random number in [-1,1] but always the same number for given coordinates (while the
+   *         game is running); the first double a {@link java.util.Random} seeded from them would give
+   */
   private double getNoise(int x, int z) {
-    random.setSeed(x * seeds[1] + z * seeds[2] + seeds[0]);
-    return random.nextDouble() * 2.0f - 1.0f;
+    long seed = ((x * seeds[1] + z * seeds[2] + seeds[0]) ^ MULTIPLIER) & MASK;
+    seed = (seed * MULTIPLIER + ADDEND) & MASK;
+    final long high = seed >>> (48 - 26);
+    seed = (seed * MULTIPLIER + ADDEND) & MASK;
+    final long low = seed >>> (48 - 27);
+    return ((high << 27) + low) * DOUBLE_UNIT * 2.0 - 1.0;
   }
 
   public float getSmoothNoise(final int x, final int z) {
-    return (float) (rangeClosed(x - 1, x + 1).mapToObj(i -> i).flatMapToDouble(i -> rangeClosed(z - 1, z + 1).mapToDouble(j -> getNoise(i, j))).average().orElse(0.0));
+    double sum = 0.0;
+    for (int i = x - 1; i <= x + 1; ++i) {
+      for (int j = z - 1; j <= z + 1; ++j) {
+        sum += getNoise(i, j);
+      }
+    }
+    return (float) (sum / 9.0);
   }
 
   private double getInterpolatedNoise(double x, double z) {
@@ -0,0 +1,166 @@
+package net.seabears.game.terrains;
+
+import java.util.Random;
+
+/**
+ * Gradient (Perlin) noise summed over octaves. The gradients come from a permutation table built
+ * once from a seed, so the same seed always gives the same terrain, and nothing changes after
+ * construction, so one instance can be used by several threads at once. Tiles sample one continuous
+ * field, so neighbors line up at any grid position.
+ */
+public class GradientNoise implements HeightGenerator {
+  private static final int TABLE_SIZE = 256;
+  private static final int TABLE_MASK = TABLE_SIZE - 1;
+  // unit-length gradients of the corners of a square and the midpoints of its sides
+  private static final float DIAGONAL = (float) Math.sqrt(0.5);
+  private static final float[] GRADIENTS_X = {1, -1, 0, 0, DIAGONAL, -DIAGONAL, DIAGONAL, -DIAGONAL};
+  private static final float[] GRADIENTS_Z = {0, 0, 1, -1, DIAGONAL, DIAGONAL, -DIAGONAL, -DIAGONAL};
+
+  private final long seed;
+  private final int[] permutation;
+  private final int offsetX;
+  private final int offsetZ;
+  private final int vertexCount;
+  private final float[] frequencies;
+  private final float[] amplitudes;
+
+  /**
+   * @param frequency noise cycles per sample in the first octave
+   */
+  public GradientNoise(long seed, int gridX, int gridZ, double amplitude, int octaves, double roughness, double frequency) {
+    this(seed, gridX, gridZ, amplitude, octaves, roughness, frequency, 128);
+  }
+
+  public GradientNoise(long seed, int gridX, int gridZ, double amplitude, int octaves, double roughness, double frequency, int vertexCount) {
+    this.seed = seed;
+    this.permutation = makePermutation(seed);
+    this.offsetX = gridX * (vertexCount - 1);
+    this.offsetZ = gridZ * (vertexCount - 1);
+    this.vertexCount = vertexCount;
+    this.frequencies = new float[octaves];
+    this.amplitudes = new float[octaves];
+    for (int i = 0; i < octaves; ++i) {
+      frequencies[i] = (float) (frequency * Math.pow(2, i));
+      amplitudes[i] = (float) (amplitude * Math.pow(roughness, i));
+    }
+  }
+
+  /**
+   * @return a shuffle of <code>0..255</code>, twice over so lookups need not wrap
+   */
+  private static int[] makePermutation(long seed) {
+    final Random random = new Random(seed);
+    final int[] table = new int[TABLE_SIZE * 2];
+    for (int i = 0; i < TABLE_SIZE; ++i) {
+      table[i] = i;
+    }
+    for (int i = TABLE_SIZE - 1; i > 0; --i) {
+      final int j = random.nextInt(i + 1);
+      final int swap = table[i];
+      table[i] = table[j];
+      table[j] = swap;
+    }
+    System.arraycopy(table, 0, table, TABLE_SIZE, TABLE_SIZE);
+    return table;
+  }
+
+  @Override
+  public float generate(int x, int z) {
+    float sum = 0.0f;
+    for (int i = 0; i < frequencies.length; ++i) {
+      sum += noise((x + offsetX) * frequencies[i], (z + offsetZ) * frequencies[i]) * amplitudes[i];
+    }
+    return sum;
+  }
+
+  /**
+   * Fills the block one octave at a time, so the work that depends only on the row is done once per
+   * row. Allocates nothing.
+   */
+  @Override
+  public void generate(float[] out, int x0, int z0, int w, int h) {
+    for (int i = 0; i < w * h; ++i) {
+      out[i] = 0.0f;
+    }
+    for (int octave = 0; octave < frequencies.length; ++octave) {
+      final float frequency = frequencies[octave];
+      final float amplitude = amplitudes[octave];
+      for (int z = 0; z < h; ++z) {
+        final float nz = (z0 + z + offsetZ) * frequency;
+        final int iz = floor(nz);
+        final float fz = nz - iz;
+        final float v = fade(fz);
+        final int row = iz & TABLE_MASK;
+        final int offset = z * w;
+        for (int x = 0; x < w; ++x) {
+          final float nx = (x0 + x + offsetX) * frequency;
+          final int ix = floor(nx);
+          final float fx = nx - ix;
+          final int col = ix & TABLE_MASK;
+          out[offset + x] += interpolate(fx, fz, fade(fx), v, col, row) * amplitude;
+        }
+      }
+    }
+  }
+
+  @Override
+  public int getVertexCount() {
+    return vertexCount;
+  }
+
+  /**
+   * Covers everything but the grid position, which is the same field sampled elsewhere.
+   */
+  @Override
+  public long getFingerprint() {
+    long hash = seed * 31 + vertexCount;
+    for (int i = 0; i < frequencies.length; ++i) {
+      hash = hash * 31 + Float.floatToIntBits(frequencies[i]);
+      hash = hash * 31 + Float.floatToIntBits(amplitudes[i]);
+    }
+    return hash * 31 + GradientNoise.class.getName().hashCode();
+  }
+
+  /**
+   * @return noise at a point, roughly in [-0.7, 0.7]
+   */
+  private float noise(float x, float z) {
+    final int ix = floor(x);
+    final int iz = floor(z);
+    final float fx = x - ix;
+    final float fz = z - iz;
+    return interpolate(fx, fz, fade(fx), fade(fz), ix & TABLE_MASK, iz & TABLE_MASK);
+  }
+
+  /**
+   * Blends the gradients of the four corners of a lattice cell.
+   */
+  private float interpolate(float fx, float fz, float u, float v, int col, int row) {
+    final int a = permutation[col] + row;
+    final int b = permutation[col + 1] + row;
+    final float n00 = gradient(permutation[a], fx, fz);
+    final float n10 = gradient(permutation[b], fx - 1.0f, fz);
+    final float n01 = gradient(permutation[a + 1], fx, fz - 1.0f);
+    final float n11 = gradient(permutation[b + 1], fx - 1.0f, fz - 1.0f);
+    final float top = n00 + (n10 - n00) * u;
+    final float bottom = n01 + (n11 - n01) * u;
+    return top + (bottom - top) * v;
+  }
+
+  private static float gradient(int hash, float x, float z) {
+    final int g = hash & 7;
+    return GRADIENTS_X[g] * x + GRADIENTS_Z[g] * z;
+  }
+
+  /**
+   * @return <code>6t^5 - 15t^4 + 10t^3</code>, which eases in and out with no jump in curvature
+   */
+  private static float fade(float t) {
+    return t * t * t * (t * (t * 6.0f - 15.0f) + 10.0f);
+  }
+
+  private static int floor(float f) {
+    final int i = (int) f;
+    return f < i ? i - 1 : i;
+  }
+}
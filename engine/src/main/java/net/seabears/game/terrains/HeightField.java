@@ -0,0 +1,132 @@
+package net.seabears.game.terrains;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Grid of heights sampled once from a {@link HeightGenerator}, with a border one sample wide so that
+ * normals at the edges match the neighboring tiles. Rows are generated in parallel on the common
+ * fork/join pool, so the generator must be safe to call from several threads.
+ */
+public class HeightField {
+  // rows of samples filled by a single task
+  private static final int ROWS_PER_TASK = 8;
+
+  private final int size;
+  private final int stride;
+  // row-major by z, starting at (-1, -1)
+  private final float[] samples;
+
+  private HeightField(int size) {
+    this.size = size;
+    this.stride = size + 2;
+    this.samples = new float[stride * stride];
+  }
+
+  /**
+   * @param size number of samples along each side, not counting the border
+   */
+  public static HeightField generate(HeightGenerator generator, int size) {
+    final HeightField field = new HeightField(size);
+    ForkJoinPool.commonPool().invoke(new Rows((start, end) -> {
+      final float[] block = new float[(end - start) * field.stride];
+      generator.generate(block, -1, start - 1, field.stride, end - start);
+      System.arraycopy(block, 0, field.samples, start * field.stride, block.length);
+    }, 0, field.stride));
+    return field;
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * @param x from -1 to size, inclusive
+   * @param z from -1 to size, inclusive
+   */
+  public float get(int x, int z) {
+    return samples[(z + 1) * stride + x + 1];
+  }
+
+  /**
+   * Copies the heights, without the border, into an array indexed by x then z.
+   */
+  public void getHeights(float[][] heights) {
+    for (int x = 0; x < size; ++x) {
+      for (int z = 0; z < size; ++z) {
+        heights[x][z] = get(x, z);
+      }
+    }
+  }
+
+  /**
+   * @return the heights, without the border, indexed by x then z
+   */
+  public float[][] getHeights() {
+    final float[][] heights = new float[size][size];
+    getHeights(heights);
+    return heights;
+  }
+
+  /**
+   * @return normals laid out as for {@link #getNormals(float[])}
+   */
+  public float[] getNormals() {
+    final float[] normals = new float[size * size * 3];
+    getNormals(normals);
+    return normals;
+  }
+
+  /**
+   * Computes the normal at every sample from the heights around it.
+   *
+   * @param normals three floats per sample at <code>(x * size + z) * 3</code>
+   */
+  public void getNormals(float[] normals) {
+    ForkJoinPool.commonPool().invoke(new Rows((start, end) -> {
+      for (int x = start; x < end; ++x) {
+        for (int z = 0; z < size; ++z) {
+          final float nx = get(x - 1, z) - get(x + 1, z);
+          final float ny = 2.0f;
+          final float nz = get(x, z - 1) - get(x, z + 1);
+          final float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+          final int n = (x * size + z) * 3;
+          normals[n] = nx / length;
+          normals[n + 1] = ny / length;
+          normals[n + 2] = nz / length;
+        }
+      }
+    }, 0, size));
+  }
+
+  /**
+   * Splits a range of rows in half until it is small enough to fill in one task.
+   */
+  private static final class Rows extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private interface Block {
+      void compute(int start, int end);
+    }
+
+    private final Block block;
+    private final int start;
+    private final int end;
+
+    private Rows(Block block, int start, int end) {
+      this.block = block;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - start <= ROWS_PER_TASK) {
+        block.compute(start, end);
+      } else {
+        final int middle = (start + end) >>> 1;
+        invokeAll(new Rows(block, start, middle), new Rows(block, middle, end));
+      }
+    }
+  }
+}
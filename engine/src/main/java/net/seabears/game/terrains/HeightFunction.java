@@ -0,0 +1,9 @@
+package net.seabears.game.terrains;
+
+/**
+ * Height of the ground at a point, without boxing the coordinates.
+ */
+@FunctionalInterface
+public interface HeightFunction {
+  float getHeight(float x, float z);
+}
@@ -3,5 +3,26 @@ package net.seabears.game.terrains;
 public interface HeightGenerator {
   float generate(int x, int z);
 
+  /**
+   * Fills <code>out</code> with the heights of a block of <code>w</code> by <code>h</code> samples
+   * starting at <code>(x0, z0)</code>, one row of increasing x after another.
+   */
+  default void generate(float[] out, int x0, int z0, int w, int h) {
+    for (int z = 0; z < h; ++z) {
+      for (int x = 0; x < w; ++x) {
+        out[z * w + x] = generate(x0 + x, z0 + z);
+      }
+    }
+  }
+
   int getVertexCount();
+
+  /**
+   * @return a value that changes whenever the settings that shape the heights do, such as a hash of
+   *         the seed and octaves, so cached heights can be checked against the generator; zero if
+   *         the heights cannot be told apart this way and should not be cached
+   */
+  default long getFingerprint() {
+    return 0L;
+  }
 }
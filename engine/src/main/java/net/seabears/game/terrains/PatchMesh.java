@@ -0,0 +1,197 @@
+package net.seabears.game.terrains;
+
+import java.nio.ByteBuffer;
+import java.util.function.IntConsumer;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL33;
+
+import net.seabears.game.models.RawModel;
+import net.seabears.game.render.Loader;
+import net.seabears.game.shaders.ShaderProgram;
+
+/**
+ * Vertex layout of {@link TerrainPatch} meshes. Every patch is the same grid of quads with the same
+ * skirt, so the place of each vertex in its patch and the triangles between them are uploaded once
+ * and shared by every patch of every terrain. Each patch uploads only what differs:
+ * <ul>
+ * <li>shared: column, row and whether the vertex hangs in the skirt, as unsigned bytes</li>
+ * <li>per patch: height as a 16-bit fraction of the patch's height range, then the normal packed
+ * as {@link GL33#GL_INT_2_10_10_10_REV}, eight bytes in all</li>
+ * <li>shared: 16-bit indices</li>
+ * </ul>
+ * The shader places the vertex from the patch's offset, width and height range.
+ */
+final class PatchMesh {
+  /** Quads along each side of a patch */
+  static final int QUADS = 16;
+  static final int SIDE = QUADS + 1;
+  static final int PERIMETER = QUADS * 4;
+  /** Vertices in a patch: the grid, then one below each edge vertex for the skirt */
+  static final int VERTICES = SIDE * SIDE + PERIMETER;
+  static final int INDICES = 6 * QUADS * QUADS + 6 * PERIMETER;
+  /** Bytes each patch uploads per vertex */
+  static final int VERTEX_BYTES = 8;
+
+  private static final int GRID_BYTES = 4;
+  private static final int HEIGHT_STEPS = 0xffff;
+  private static final int NORMAL_STEPS = 511;
+  private static final String GRID_BUFFER = "terrain-patch-grid";
+  private static final String INDEX_BUFFER = "terrain-patch-indices";
+
+  private PatchMesh() {
+    throw new UnsupportedOperationException("cannot instantiate " + getClass());
+  }
+
+  /**
+   * Packs the vertices of a patch for upload. Skirt vertices repeat the height and normal of the
+   * edge vertex above them.
+   *
+   * @param heights height of each grid vertex, row by row
+   * @param normals three floats per grid vertex
+   * @param min lowest of the heights
+   * @param span highest of the heights less the lowest
+   */
+  static ByteBuffer pack(float[] heights, float[] normals, float min, float span) {
+    return pack(createBuffer(), heights, normals, min, span);
+  }
+
+  /**
+   * @return a buffer big enough for the packed vertices of a patch
+   */
+  static ByteBuffer createBuffer() {
+    return BufferUtils.createByteBuffer(VERTICES * VERTEX_BYTES);
+  }
+
+  /**
+   * Packs the vertices of a patch into a buffer from {@link #createBuffer()}, such as one kept to
+   * repack patches as they change.
+   */
+  static ByteBuffer pack(ByteBuffer buffer, float[] heights, float[] normals, float min, float span) {
+    buffer.clear();
+    for (int v = 0; v < SIDE * SIDE; ++v) {
+      put(buffer, heights, normals, v, min, span);
+    }
+    for (int k = 0; k < PERIMETER; ++k) {
+      put(buffer, heights, normals, getEdgeVertex(k), min, span);
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static void put(ByteBuffer buffer, float[] heights, float[] normals, int v, float min, float span) {
+    final float fraction = span > 0.0f ? (heights[v] - min) / span : 0.0f;
+    buffer.putShort((short) Math.round(fraction * HEIGHT_STEPS));
+    buffer.putShort((short) 0);
+    buffer.putInt(packNormal(normals[v * 3], normals[v * 3 + 1], normals[v * 3 + 2]));
+  }
+
+  /**
+   * @return x, y and z as signed 10-bit fractions from the lowest bits up
+   */
+  static int packNormal(float x, float y, float z) {
+    return (Math.round(x * NORMAL_STEPS) & 0x3ff)
+        | (Math.round(y * NORMAL_STEPS) & 0x3ff) << 10
+        | (Math.round(z * NORMAL_STEPS) & 0x3ff) << 20;
+  }
+
+  /**
+   * @return index of the k-th vertex around the edge of the grid, starting at its first corner
+   */
+  static int getEdgeVertex(int k) {
+    final int t = k % QUADS;
+    switch (k / QUADS) {
+      case 0:
+        return t;
+      case 1:
+        return t * SIDE + QUADS;
+      case 2:
+        return QUADS * SIDE + QUADS - t;
+      default:
+        return (QUADS - t) * SIDE;
+    }
+  }
+
+  /**
+   * Uploads a patch's vertices into a VAO that also uses the shared grid and indices, uploading
+   * those first if this is the first patch.
+   *
+   * @param vertexBuffer given the buffer holding the patch's own vertices, for later updates
+   */
+  static RawModel upload(Loader loader, ByteBuffer vertices, IntConsumer vertexBuffer) {
+    final int grid = loader.loadSharedBuffer(GRID_BUFFER, GL15.GL_ARRAY_BUFFER, PatchMesh::grid);
+    final int indices = loader.loadSharedBuffer(INDEX_BUFFER, GL15.GL_ELEMENT_ARRAY_BUFFER, PatchMesh::indices);
+    final int vaoId = loader.createVao();
+    GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, indices);
+    GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, grid);
+    GL20.glVertexAttribPointer(ShaderProgram.ATTR_POSITION, 3, GL11.GL_UNSIGNED_BYTE, false, GRID_BYTES, 0);
+    vertexBuffer.accept(loader.storeBuffer(GL15.GL_ARRAY_BUFFER, vertices));
+    GL20.glVertexAttribPointer(ShaderProgram.ATTR_TEXTURE, 1, GL11.GL_UNSIGNED_SHORT, true, VERTEX_BYTES, 0);
+    GL20.glVertexAttribPointer(ShaderProgram.ATTR_NORMAL, 4, GL33.GL_INT_2_10_10_10_REV, true, VERTEX_BYTES, 4);
+    // the VAO remembers these, so drawing a patch is just binding it
+    GL20.glEnableVertexAttribArray(ShaderProgram.ATTR_POSITION);
+    GL20.glEnableVertexAttribArray(ShaderProgram.ATTR_TEXTURE);
+    GL20.glEnableVertexAttribArray(ShaderProgram.ATTR_NORMAL);
+    GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+    loader.unbindVao(); // keeps the index buffer bound to the VAO
+    return new RawModel(vaoId, INDICES);
+  }
+
+  /**
+   * Replaces a run of a patch's uploaded vertices with the same run of a packed buffer.
+   *
+   * @param vertices all of the patch's vertices, packed
+   */
+  static void update(int vertexBuffer, ByteBuffer vertices, int first, int count) {
+    vertices.limit((first + count) * VERTEX_BYTES).position(first * VERTEX_BYTES);
+    GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vertexBuffer);
+    GL15.glBufferSubData(GL15.GL_ARRAY_BUFFER, first * VERTEX_BYTES, vertices);
+    GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+    vertices.clear();
+  }
+
+  private static ByteBuffer grid() {
+    final ByteBuffer buffer = BufferUtils.createByteBuffer(VERTICES * GRID_BYTES);
+    for (int row = 0; row < SIDE; ++row) {
+      for (int column = 0; column < SIDE; ++column) {
+        buffer.put((byte) column).put((byte) row).put((byte) 0).put((byte) 0);
+      }
+    }
+    for (int k = 0; k < PERIMETER; ++k) {
+      final int edge = getEdgeVertex(k);
+      buffer.put((byte) (edge % SIDE)).put((byte) (edge / SIDE)).put((byte) 1).put((byte) 0);
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static ByteBuffer indices() {
+    final ByteBuffer buffer = BufferUtils.createByteBuffer(INDICES * 2);
+    for (int row = 0; row < QUADS; ++row) {
+      for (int column = 0; column < QUADS; ++column) {
+        final int topLeft = row * SIDE + column;
+        final int topRight = topLeft + 1;
+        final int bottomLeft = topLeft + SIDE;
+        final int bottomRight = bottomLeft + 1;
+        putTriangle(buffer, topLeft, bottomLeft, topRight);
+        putTriangle(buffer, topRight, bottomLeft, bottomRight);
+      }
+    }
+    // the skirt walks the edge clockwise seen from above, so its faces point outward
+    final int skirtStart = SIDE * SIDE;
+    for (int k = 0; k < PERIMETER; ++k) {
+      final int next = (k + 1) % PERIMETER;
+      putTriangle(buffer, getEdgeVertex(k), getEdgeVertex(next), skirtStart + k);
+      putTriangle(buffer, getEdgeVertex(next), skirtStart + next, skirtStart + k);
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static void putTriangle(ByteBuffer buffer, int a, int b, int c) {
+    buffer.putShort((short) a).putShort((short) b).putShort((short) c);
+  }
+}
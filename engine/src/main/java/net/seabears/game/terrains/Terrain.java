@@ -1,38 +1,105 @@
 package net.seabears.game.terrains;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
-import org.joml.Vector2f;
 import org.joml.Vector3f;
 
-import net.seabears.game.models.RawModel;
 import net.seabears.game.render.Loader;
 import net.seabears.game.textures.TerrainTexture;
 import net.seabears.game.textures.TerrainTexturePack;
 import net.seabears.game.util.Barycentric;
+import net.seabears.game.util.Frustum;
+import net.seabears.game.util.Intersection;
 import net.seabears.game.util.Tile;
 
+/**
+ * Square of ground drawn as a quadtree of {@link TerrainPatch patches}, so that nearby ground is
+ * drawn in full detail and distant ground with fewer triangles.
+ */
 public class Terrain extends Tile {
+  // distance, in patch widths, inside which a patch is replaced by its four children
+  private static final float LOD_RANGE = 1.5f;
+  // offsets of the neighbors, in terrains: before and after along x, then along z
+  private static final int[] SIDE_X = {-1, 1, 0, 0};
+  private static final int[] SIDE_Z = {0, 0, -1, 1};
+
   private final float size;
   private final float x, z;
-  private final RawModel model;
+  private final TerrainPatch root;
+  // every node of the tree, in the order they are uploaded
+  private final List<TerrainPatch> patches;
+  private int uploaded;
+  private long memorySize;
   private final TerrainTexturePack texture;
   private final TerrainTexture blendMap;
   private final float[][] heights;
+  // bounds every height, though sculpting may leave them wider than needed
+  private float minHeight, maxHeight;
+  // quads across the terrain at the most detailed level
+  private final int leafQuads;
+  // reused while sampling patches
+  private final float[] corners = new float[12];
+  private float[] patchHeights, patchNormals;
+  private ByteBuffer patchVertices;
+  // first and last column and row of the heights the last stroke changed
+  private final int[] changed = new int[4];
+  // terrains beside this one while sculpting, in the order of SIDE_X and SIDE_Z
+  private final Terrain[] neighbors = new Terrain[4];
 
   public Terrain(float x, float z, Loader loader, TerrainTexturePack texture, TerrainTexture blendMap, HeightGenerator heightGen) {
     this(800, x, z, loader, texture, blendMap, heightGen);
   }
 
   public Terrain(float size, float x, float z, Loader loader, TerrainTexturePack texture, TerrainTexture blendMap, HeightGenerator heightGen) {
+    this(size, x, z, texture, blendMap, heightGen);
+    upload(loader);
+  }
+
+  /**
+   * Builds the terrain's meshes without uploading them, so it can be done on any thread. The terrain
+   * can be drawn once {@link #upload(Loader, long)} has finished on the GL thread.
+   */
+  public Terrain(float size, float x, float z, TerrainTexturePack texture, TerrainTexture blendMap, HeightGenerator heightGen) {
+    this(size, x, z, texture, blendMap, HeightField.generate(heightGen, heightGen.getVertexCount()));
+  }
+
+  private Terrain(float size, float x, float z, TerrainTexturePack texture, TerrainTexture blendMap, HeightField field) {
+    this(size, x, z, texture, blendMap, field.getHeights(), field.getNormals());
+  }
+
+  /**
+   * Builds the terrain's meshes from heights and normals made earlier, such as ones read from a
+   * {@link TerrainCache}. Like the constructor that takes a generator, this does not upload them.
+   *
+   * @param heights a square grid indexed by x then z
+   * @param normals three floats per height at <code>(x * vertexCount + z) * 3</code>
+   */
+  public Terrain(float size, float x, float z, TerrainTexturePack texture, TerrainTexture blendMap, float[][] heights, float[] normals) {
     super(new Vector3f(x * size + (size * 0.5f), 0.0f, z * size + (size * 0.5f)), new Vector3f(size, 0.0f, size));
     this.size = size;
     this.x = x * size;
     this.z = z * size;
-    final int vertexCount = heightGen.getVertexCount();
-    this.heights = new float[vertexCount][vertexCount];
-    this.model = generateTerrain(loader, heightGen, vertexCount);
+    final int vertexCount = heights.length;
+    this.heights = heights;
+    float min = Float.POSITIVE_INFINITY;
+    float max = Float.NEGATIVE_INFINITY;
+    for (float[] column : heights) {
+      for (float h : column) {
+        min = Math.min(min, h);
+        max = Math.max(max, h);
+      }
+    }
+    this.minHeight = min;
+    this.maxHeight = max;
+    // leaves are about as detailed as the height grid
+    final int depth = Math.max(0, (int) Math.ceil(Math.log((vertexCount - 1) / (double) PatchMesh.QUADS) / Math.log(2.0)));
+    this.leafQuads = PatchMesh.QUADS << depth;
+    this.patches = new ArrayList<>();
+    this.root = generatePatch(normals, 0.0f, 0.0f, size, depth);
     this.texture = texture;
     this.blendMap = blendMap;
   }
@@ -45,8 +112,55 @@ public class Terrain extends Tile {
     return z;
   }
 
-  public RawModel getModel() {
-    return model;
+  /**
+   * Uploads patch meshes until all are uploaded or the deadline passes, whichever is first. At least
+   * one is uploaded per call.
+   *
+   * @param deadline {@link System#nanoTime()} at which to stop
+   * @return whether every patch has been uploaded
+   */
+  public boolean upload(Loader loader, long deadline) {
+    while (uploaded < patches.size()) {
+      patches.get(uploaded++).upload(loader);
+      if (System.nanoTime() > deadline) {
+        break;
+      }
+    }
+    return isUploaded();
+  }
+
+  public void upload(Loader loader) {
+    upload(loader, Long.MAX_VALUE);
+  }
+
+  public boolean isUploaded() {
+    return uploaded == patches.size();
+  }
+
+  /**
+   * Deletes the meshes uploaded so far. The terrain cannot be drawn again afterward.
+   */
+  public void unload(Loader loader) {
+    patches.forEach(p -> p.unload(loader));
+  }
+
+  /**
+   * @return bytes of vertex data in all the patch meshes
+   */
+  public long getMemorySize() {
+    return memorySize;
+  }
+
+  public TerrainPatch getRoot() {
+    return root;
+  }
+
+  /**
+   * Adds the patches to draw for the part of this terrain inside the frustum, as detailed as their
+   * distance from the eye calls for.
+   */
+  public void select(Frustum frustum, Vector3f eye, List<TerrainPatch> patches) {
+    root.select(frustum, eye, LOD_RANGE, patches);
   }
 
   public TerrainTexturePack getTexture() {
@@ -58,18 +172,37 @@ public class Terrain extends Tile {
   }
 
   public static Optional<Terrain> find(List<Terrain> terrains, final float x, final float z) {
-    return terrains.stream()
-        .filter(t -> x - t.x >= 0 && x - t.x < t.size)
-        .filter(t -> z - t.z >= 0 && z - t.z < t.size)
-        .findFirst();
+    return Optional.ofNullable(findTile(terrains, x, z));
+  }
+
+  /**
+   * @return the terrain containing the point, or <code>null</code> if there is none; found directly
+   *         when the list is a {@link TerrainGrid}
+   */
+  public static Terrain findTile(List<Terrain> terrains, final float x, final float z) {
+    if (terrains instanceof TerrainGrid) {
+      return ((TerrainGrid) terrains).find(x, z);
+    }
+    for (int i = 0; i < terrains.size(); ++i) {
+      final Terrain t = terrains.get(i);
+      if (t.contains(x, z)) {
+        return t;
+      }
+    }
+    return null;
   }
 
   public static float getHeight(Optional<Terrain> terrain, final float x, final float z) {
-    return terrain.flatMap(t -> Optional.of(t.getHeight(x, z))).orElse(0.0f);
+    return terrain.isPresent() ? terrain.get().getHeight(x, z) : 0.0f;
   }
 
   public static float getHeight(List<Terrain> terrains, final float x, final float z) {
-    return getHeight(find(terrains, x, z), x, z);
+    final Terrain terrain = findTile(terrains, x, z);
+    return terrain == null ? 0.0f : terrain.getHeight(x, z);
+  }
+
+  public boolean contains(float x, float z) {
+    return x - this.x >= 0 && x - this.x < size && z - this.z >= 0 && z - this.z < size;
   }
 
   public float getHeight(float x, float z) {
@@ -84,62 +217,493 @@ public class Terrain extends Tile {
     final float xc = (tx % gridSquareSize) / gridSquareSize;
     final float zc = (tz % gridSquareSize) / gridSquareSize;
     if (xc <= (1 - zc)) {
-      return Barycentric.get(new Vector3f(0, heights[gx][gz], 0),
-                             new Vector3f(1, heights[gx + 1][gz], 0),
-                             new Vector3f(0, heights[gx][gz + 1], 1),
-                             new Vector2f(xc, zc));
+      return Barycentric.get(0, heights[gx][gz], 0,
+                             1, heights[gx + 1][gz], 0,
+                             0, heights[gx][gz + 1], 1,
+                             xc, zc);
     } else {
-      return Barycentric.get(new Vector3f(1, heights[gx + 1][gz], 0),
-                             new Vector3f(1, heights[gx + 1][gz + 1], 1),
-                             new Vector3f(0, heights[gx][gz + 1], 1),
-                             new Vector2f(xc, zc));
+      return Barycentric.get(1, heights[gx + 1][gz], 0,
+                             1, heights[gx + 1][gz + 1], 1,
+                             0, heights[gx][gz + 1], 1,
+                             xc, zc);
+    }
+  }
+
+  /**
+   * Finds where a ray first meets the ground of any of the terrains. A {@link TerrainGrid} is walked
+   * tile by tile along the ray; any other list has every terrain tested.
+   *
+   * @param maxDistance distance beyond which hits are ignored
+   * @return distance along the ray, in multiples of the direction, or infinity if it misses
+   */
+  public static float raycast(List<Terrain> terrains, float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance) {
+    if (terrains instanceof TerrainGrid) {
+      return ((TerrainGrid) terrains).raycast(ox, oy, oz, dx, dy, dz, maxDistance);
+    }
+    float nearest = Float.POSITIVE_INFINITY;
+    for (int i = 0; i < terrains.size(); ++i) {
+      nearest = Math.min(nearest, terrains.get(i).raycast(ox, oy, oz, dx, dy, dz, Math.min(nearest, maxDistance)));
+    }
+    return nearest;
+  }
+
+  /**
+   * Finds where a ray first meets the ground of this terrain. The ray walks the height grid square
+   * by square (Amanatides and Woo), so it visits only the squares under it, and is tested exactly
+   * against the two triangles of each square it could touch. Allocates nothing.
+   *
+   * @param maxDistance distance beyond which hits are ignored
+   * @return distance along the ray, in multiples of the direction, or infinity if it misses
+   */
+  public float raycast(float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance) {
+    // clip the ray to the space above this tile that the ground can occupy
+    final float enter = Intersection.box(ox, oy, oz, dx, dy, dz, x, minHeight, z, x + size, maxHeight, z + size);
+    if (enter > maxDistance) {
+      return Float.POSITIVE_INFINITY;
+    }
+    final float exit = Math.min(maxDistance, exit(ox, oy, oz, dx, dy, dz));
+
+    final int last = heights.length - 2;
+    final float square = size / (heights.length - 1);
+    final float sx = ox + dx * enter - x;
+    final float sz = oz + dz * enter - z;
+    int gx = Math.max(0, Math.min(last, (int) Math.floor(sx / square)));
+    int gz = Math.max(0, Math.min(last, (int) Math.floor(sz / square)));
+    final int stepX = dx > 0 ? 1 : -1;
+    final int stepZ = dz > 0 ? 1 : -1;
+    // distance along the ray to the next square boundary and between boundaries
+    final float deltaX = dx == 0.0f ? Float.POSITIVE_INFINITY : square / Math.abs(dx);
+    final float deltaZ = dz == 0.0f ? Float.POSITIVE_INFINITY : square / Math.abs(dz);
+    float nextX = dx == 0.0f ? Float.POSITIVE_INFINITY : enter + ((gx + (dx > 0 ? 1 : 0)) * square - sx) / dx;
+    float nextZ = dz == 0.0f ? Float.POSITIVE_INFINITY : enter + ((gz + (dz > 0 ? 1 : 0)) * square - sz) / dz;
+
+    float t = enter;
+    while (t <= exit) {
+      final float leave = Math.min(exit, Math.min(nextX, nextZ));
+      // skip squares the ray passes over without dipping below their highest corner
+      final float top = Math.max(Math.max(heights[gx][gz], heights[gx + 1][gz]), Math.max(heights[gx][gz + 1], heights[gx + 1][gz + 1]));
+      if (Math.min(oy + dy * t, oy + dy * leave) <= top) {
+        final float hit = intersectSquare(gx, gz, square, ox, oy, oz, dx, dy, dz);
+        if (hit <= maxDistance) {
+          return hit;
+        }
+      }
+      if (nextX < nextZ) {
+        gx += stepX;
+        t = nextX;
+        nextX += deltaX;
+      } else {
+        gz += stepZ;
+        t = nextZ;
+        nextZ += deltaZ;
+      }
+      if (gx < 0 || gx > last || gz < 0 || gz > last) {
+        break;
+      }
+    }
+    return Float.POSITIVE_INFINITY;
+  }
+
+  /**
+   * @return distance at which the ray leaves the space above this tile
+   */
+  private float exit(float ox, float oy, float oz, float dx, float dy, float dz) {
+    float far = Float.POSITIVE_INFINITY;
+    if (dx != 0.0f) {
+      far = Math.min(far, Math.max((x - ox) / dx, (x + size - ox) / dx));
+    }
+    if (dy != 0.0f) {
+      far = Math.min(far, Math.max((minHeight - oy) / dy, (maxHeight - oy) / dy));
+    }
+    if (dz != 0.0f) {
+      far = Math.min(far, Math.max((z - oz) / dz, (z + size - oz) / dz));
+    }
+    return far;
+  }
+
+  /**
+   * @return distance to the nearer of the two triangles of a grid square, split as in
+   *         {@link #getHeight(float, float)}
+   */
+  private float intersectSquare(int gx, int gz, float square, float ox, float oy, float oz, float dx, float dy, float dz) {
+    final float x0 = x + gx * square, x1 = x0 + square;
+    final float z0 = z + gz * square, z1 = z0 + square;
+    final float h00 = heights[gx][gz], h10 = heights[gx + 1][gz];
+    final float h01 = heights[gx][gz + 1], h11 = heights[gx + 1][gz + 1];
+    return Math.min(
+        Intersection.triangle(ox, oy, oz, dx, dy, dz, x0, h00, z0, x1, h10, z0, x0, h01, z1),
+        Intersection.triangle(ox, oy, oz, dx, dy, dz, x1, h10, z0, x1, h11, z1, x0, h01, z1));
+  }
+
+  /**
+   * Applies a brush stroke centered at a world point. Only the heights under the brush change, and
+   * only the patches over them are sampled again; each pushes just the rows of vertices that
+   * changed, unless the new heights fall outside the range its heights are stored in. Normals at the
+   * edges are found with the heights of the neighboring terrains, whose own edge normals are
+   * sampled again too, so no seam shows between them. Height queries and ray casts see the new
+   * ground at once. Runs on the GL thread, once the terrain is uploaded.
+   *
+   * @param terrains where to find the neighbors of this terrain
+   * @return whether any height changed
+   * @throws IllegalStateException if the terrain is not uploaded
+   */
+  public boolean sculpt(List<Terrain> terrains, TerrainBrush brush, float cx, float cz, float seconds) {
+    if (!isUploaded()) {
+      throw new IllegalStateException("terrain must be uploaded before it is sculpted");
+    }
+    if (!reshape(brush, cx, cz, seconds)) {
+      return false;
+    }
+    final int last = heights.length - 1;
+    final int x0 = changed[0], z0 = changed[1], x1 = changed[2], z1 = changed[3];
+    final float toGrid = last / size;
+    findNeighbors(terrains);
+    // normals depend on the heights beside them, so they change one height further out
+    for (int i = 0; i < patches.size(); ++i) {
+      final TerrainPatch patch = patches.get(i);
+      // the gaps to neighbors at other levels may change anywhere along an edge, even between vertices
+      if (patch.getX() * toGrid <= x1 && (patch.getX() + patch.getSize()) * toGrid >= x0
+          && patch.getZ() * toGrid <= z1 && (patch.getZ() + patch.getSize()) * toGrid >= z0) {
+        patch.setSkirtDepth(skirtDepth(patch.getX(), patch.getZ(), patch.getSize()));
+      }
+      resample(patch, Math.max(0, x0 - 1), Math.max(0, z0 - 1), Math.min(last, x1 + 1), Math.min(last, z1 + 1));
+    }
+    // and a neighbor's normals along the shared edge depend on the heights on this side of it
+    for (int side = 0; side < neighbors.length; ++side) {
+      final Terrain neighbor = neighbors[side];
+      if (neighbor != null && neighbor.isUploaded()) {
+        final int dx = SIDE_X[side] * last, dz = SIDE_Z[side] * last;
+        neighbor.resampleNormals(terrains, x0 - 1 - dx, z0 - 1 - dz, x1 + 1 - dx, z1 + 1 - dz);
+      }
     }
+    Arrays.fill(neighbors, null);
+    return true;
   }
 
-  private final RawModel generateTerrain(Loader loader, HeightGenerator heightGen, int vertexCount) {
-    final int count = vertexCount * vertexCount;
-    float[] vertices = new float[count * 3];
-    float[] normals = new float[count * 3];
-    float[] textureCoords = new float[count * 2];
-    int[] indices = new int[6 * (vertexCount - 1) * (vertexCount - 1)];
+  /**
+   * Moves the heights under a brush stroke, recording the rectangle of the grid they are in.
+   *
+   * @return whether any height changed
+   */
+  boolean reshape(TerrainBrush brush, float cx, float cz, float seconds) {
+    final int last = heights.length - 1;
+    final float square = size / last;
+    final float radius = brush.getRadius();
+    final int x0 = Math.max(0, (int) Math.ceil((cx - radius - x) / square));
+    final int x1 = Math.min(last, (int) Math.floor((cx + radius - x) / square));
+    final int z0 = Math.max(0, (int) Math.ceil((cz - radius - z) / square));
+    final int z1 = Math.min(last, (int) Math.floor((cz + radius - z) / square));
+    if (x0 > x1 || z0 > z1 || !brush.apply(heights, x0, z0, x1, z1, (cx - x) / square, (cz - z) / square, radius / square, seconds)) {
+      return false;
+    }
+    for (int gx = x0; gx <= x1; ++gx) {
+      for (int gz = z0; gz <= z1; ++gz) {
+        minHeight = Math.min(minHeight, heights[gx][gz]);
+        maxHeight = Math.max(maxHeight, heights[gx][gz]);
+      }
+    }
+    changed[0] = x0;
+    changed[1] = z0;
+    changed[2] = x1;
+    changed[3] = z1;
+    return true;
+  }
+
+  /**
+   * Samples again the patches over a rectangle of the grid, which may reach past the edges, after a
+   * neighbor's heights beside it changed.
+   */
+  private void resampleNormals(List<Terrain> terrains, int x0, int z0, int x1, int z1) {
+    final int last = heights.length - 1;
+    x0 = Math.max(0, x0);
+    z0 = Math.max(0, z0);
+    x1 = Math.min(last, x1);
+    z1 = Math.min(last, z1);
+    if (x0 > x1 || z0 > z1) {
+      return;
+    }
+    findNeighbors(terrains);
+    for (int i = 0; i < patches.size(); ++i) {
+      resample(patches.get(i), x0, z0, x1, z1);
+    }
+    Arrays.fill(neighbors, null);
+  }
+
+  /**
+   * Finds the terrains beside this one that share its grid, to read heights across its edges.
+   */
+  private void findNeighbors(List<Terrain> terrains) {
+    for (int side = 0; side < neighbors.length; ++side) {
+      final Terrain t = findTile(terrains, x + size * (0.5f + SIDE_X[side]), z + size * (0.5f + SIDE_Z[side]));
+      neighbors[side] = t != null && t.size == size && t.heights.length == heights.length ? t : null;
+    }
+  }
+
+  /**
+   * Works out the normal at a grid point from the heights, reading across the edges from the
+   * neighbors in the list.
+   *
+   * @param normal given the unit normal
+   */
+  void getNormal(List<Terrain> terrains, int gx, int gz, float[] normal) {
+    findNeighbors(terrains);
+    gridNormal(null, gx, gz, 0);
+    Arrays.fill(neighbors, null);
+    System.arraycopy(corners, 0, normal, 0, 3);
+  }
+
+  /**
+   * Samples a patch again if any of its vertices lie over the given rectangle of the height grid,
+   * and pushes the vertices that changed.
+   */
+  private void resample(TerrainPatch patch, int x0, int z0, int x1, int z1) {
+    if (patchVertices == null) {
+      patchHeights = new float[PatchMesh.SIDE * PatchMesh.SIDE];
+      patchNormals = new float[patchHeights.length * 3];
+      patchVertices = PatchMesh.createBuffer();
+    }
+    final float step = patch.getSize() / PatchMesh.QUADS;
+    final float toGrid = (heights.length - 1) / size;
+    // a vertex changes if either grid point it is interpolated from is in the rectangle
+    int firstColumn = PatchMesh.SIDE, lastColumn = -1;
+    int firstRow = PatchMesh.SIDE, lastRow = -1;
+    for (int k = 0; k < PatchMesh.SIDE; ++k) {
+      if (overlaps((patch.getX() + k * step) * toGrid, x0, x1)) {
+        firstColumn = Math.min(firstColumn, k);
+        lastColumn = k;
+      }
+      if (overlaps((patch.getZ() + k * step) * toGrid, z0, z1)) {
+        firstRow = Math.min(firstRow, k);
+        lastRow = k;
+      }
+    }
+    if (lastColumn < 0 || lastRow < 0) {
+      return;
+    }
+
+    float minY = Float.POSITIVE_INFINITY;
+    float maxY = Float.NEGATIVE_INFINITY;
     int vertexPointer = 0;
-    for (int i = 0; i < vertexCount; i++) {
-      for (int j = 0; j < vertexCount; j++) {
-        heights[j][i] = heightGen.generate(j, i);
-        vertices[vertexPointer * 3] = (float) j / ((float) vertexCount - 1) * size;
-        vertices[vertexPointer * 3 + 1] = heights[j][i];
-        vertices[vertexPointer * 3 + 2] = (float) i / ((float) vertexCount - 1) * size;
-        final Vector3f normal = getNormal(j, i, heightGen);
-        normals[vertexPointer * 3] = normal.x;
-        normals[vertexPointer * 3 + 1] = normal.y;
-        normals[vertexPointer * 3 + 2] = normal.z;
-        textureCoords[vertexPointer * 2] = (float) j / ((float) vertexCount - 1);
-        textureCoords[vertexPointer * 2 + 1] = (float) i / ((float) vertexCount - 1);
+    for (int i = 0; i < PatchMesh.SIDE; i++) {
+      for (int j = 0; j < PatchMesh.SIDE; j++) {
+        final float gx = (patch.getX() + j * step) * toGrid;
+        final float gz = (patch.getZ() + i * step) * toGrid;
+        final float height = sample(gx, gz);
+        minY = Math.min(minY, height);
+        maxY = Math.max(maxY, height);
+        patchHeights[vertexPointer] = height;
+        sampleNormal(null, gx, gz, patchNormals, vertexPointer * 3);
         vertexPointer++;
       }
     }
-    int pointer = 0;
-    for (int gz = 0; gz < vertexCount - 1; gz++) {
-      for (int gx = 0; gx < vertexCount - 1; gx++) {
-        int topLeft = (gz * vertexCount) + gx;
-        int topRight = topLeft + 1;
-        int bottomLeft = ((gz + 1) * vertexCount) + gx;
-        int bottomRight = bottomLeft + 1;
-        indices[pointer++] = topLeft;
-        indices[pointer++] = bottomLeft;
-        indices[pointer++] = topRight;
-        indices[pointer++] = topRight;
-        indices[pointer++] = bottomLeft;
-        indices[pointer++] = bottomRight;
+    if (minY < patch.getMinHeight() || maxY > patch.getMinHeight() + patch.getHeightRange()) {
+      // the heights no longer fit the range they are stored in, so every vertex changes
+      patch.setHeightRange(minY, maxY);
+      PatchMesh.update(patch.getVertexBuffer(), PatchMesh.pack(patchVertices, patchHeights, patchNormals, minY, maxY - minY), 0, PatchMesh.VERTICES);
+      return;
+    }
+    PatchMesh.pack(patchVertices, patchHeights, patchNormals, patch.getMinHeight(), patch.getHeightRange());
+    PatchMesh.update(patch.getVertexBuffer(), patchVertices, firstRow * PatchMesh.SIDE, (lastRow - firstRow + 1) * PatchMesh.SIDE);
+    if (firstRow == 0 || lastRow == PatchMesh.QUADS || firstColumn == 0 || lastColumn == PatchMesh.QUADS) {
+      PatchMesh.update(patch.getVertexBuffer(), patchVertices, PatchMesh.SIDE * PatchMesh.SIDE, PatchMesh.PERIMETER);
+    }
+  }
+
+  private boolean overlaps(float g, int first, int last) {
+    final int g0 = Math.min((int) g, heights.length - 2);
+    return g0 <= last && g0 + 1 >= first;
+  }
+
+  /**
+   * Builds the patch covering the square at <code>(x, z)</code> of this terrain, and the
+   * <code>depth</code> levels of patches under it.
+   */
+  private final TerrainPatch generatePatch(float[] heightNormals, float x, float z, float patchSize, int depth) {
+    final TerrainPatch[] children;
+    if (depth > 0) {
+      final float half = patchSize * 0.5f;
+      children = new TerrainPatch[] {
+          generatePatch(heightNormals, x, z, half, depth - 1),
+          generatePatch(heightNormals, x + half, z, half, depth - 1),
+          generatePatch(heightNormals, x, z + half, half, depth - 1),
+          generatePatch(heightNormals, x + half, z + half, half, depth - 1)};
+    } else {
+      children = null;
+    }
+
+    final float step = patchSize / PatchMesh.QUADS;
+    final float toGrid = (heights.length - 1) / size;
+    final float[] vertexHeights = new float[PatchMesh.SIDE * PatchMesh.SIDE];
+    final float[] normals = new float[vertexHeights.length * 3];
+    float minY = Float.POSITIVE_INFINITY;
+    float maxY = Float.NEGATIVE_INFINITY;
+    int vertexPointer = 0;
+    for (int i = 0; i < PatchMesh.SIDE; i++) {
+      for (int j = 0; j < PatchMesh.SIDE; j++) {
+        final float gx = (x + j * step) * toGrid;
+        final float gz = (z + i * step) * toGrid;
+        final float height = sample(gx, gz);
+        minY = Math.min(minY, height);
+        maxY = Math.max(maxY, height);
+        vertexHeights[vertexPointer] = height;
+        sampleNormal(heightNormals, gx, gz, normals, vertexPointer * 3);
+        vertexPointer++;
+      }
+    }
+    memorySize += PatchMesh.VERTICES * PatchMesh.VERTEX_BYTES;
+    final TerrainPatch patch = new TerrainPatch(this, PatchMesh.pack(vertexHeights, normals, minY, maxY - minY), children,
+        x, z, patchSize, minY, maxY, skirtDepth(x, z, patchSize));
+    patches.add(patch);
+    return patch;
+  }
+
+  /**
+   * Finds how deep a patch's skirt must hang to close the crack to any neighbor. A neighbor at
+   * another level draws the shared edge as straight lines between its own vertices, so the crack is
+   * where this patch's edge stands above that line; where it is below, the neighbor's skirt closes
+   * it. Neighbors may be at any level, so every level is measured. Both edges are straight between
+   * the vertices of the more detailed of the two, so measuring there finds the widest gap.
+   *
+   * @return widest gap along the edges of the patch at <code>(x, z)</code> of this terrain, plus a
+   *         sliver for the rounding of stored heights
+   */
+  private float skirtDepth(float x, float z, float patchSize) {
+    final int x0 = Math.round(x / size * leafQuads);
+    final int z0 = Math.round(z / size * leafQuads);
+    final int count = Math.round(patchSize / size * leafQuads);
+    final int stride = count / PatchMesh.QUADS;
+    float gap = 0.0f;
+    for (int i = 0; i <= count; ++i) {
+      gap = Math.max(gap, edgeGap(x0 + i, z0, true, stride));
+      gap = Math.max(gap, edgeGap(x0 + i, z0 + count, true, stride));
+      gap = Math.max(gap, edgeGap(z0 + i, x0, false, stride));
+      gap = Math.max(gap, edgeGap(z0 + i, x0 + count, false, stride));
+    }
+    return gap + patchSize / PatchMesh.QUADS * 0.01f;
+  }
+
+  /**
+   * @return how far an edge drawn with vertices <code>stride</code> apart stands above the same edge
+   *         drawn at any other level, at one point along it
+   */
+  private float edgeGap(int i, int line, boolean alongX, int stride) {
+    final float own = edgeHeight(i, line, alongX, stride);
+    float gap = 0.0f;
+    for (int other = 1; other <= leafQuads / PatchMesh.QUADS; other <<= 1) {
+      if (other != stride) {
+        gap = Math.max(gap, own - edgeHeight(i, line, alongX, other));
       }
     }
-    return loader.loadToVao(vertices, textureCoords, normals, null, indices);
+    return gap;
+  }
+
+  /**
+   * @param i point along the line, in quads of the most detailed level
+   * @param line the line of vertices, along x or z, in the same units
+   * @param stride quads of the most detailed level between the vertices the edge is drawn with
+   * @return height of the edge drawn straight between vertices
+   */
+  private float edgeHeight(int i, int line, boolean alongX, int stride) {
+    final int i0 = i / stride * stride;
+    final float a = latticeHeight(i0, line, alongX);
+    if (i == i0) {
+      return a;
+    }
+    final float b = latticeHeight(i0 + stride, line, alongX);
+    return a + (b - a) * (i - i0) / stride;
+  }
+
+  private float latticeHeight(int i, int line, boolean alongX) {
+    final float toGrid = (heights.length - 1) / (float) leafQuads;
+    return alongX ? sample(i * toGrid, line * toGrid) : sample(line * toGrid, i * toGrid);
+  }
+
+  /**
+   * @return height between grid points, interpolated from the four around it
+   */
+  private float sample(float gx, float gz) {
+    final int last = heights.length - 1;
+    final int x0 = Math.min((int) gx, last - 1);
+    final int z0 = Math.min((int) gz, last - 1);
+    final float fx = gx - x0;
+    final float fz = gz - z0;
+    final float top = heights[x0][z0] + (heights[x0 + 1][z0] - heights[x0][z0]) * fx;
+    final float bottom = heights[x0][z0 + 1] + (heights[x0 + 1][z0 + 1] - heights[x0][z0 + 1]) * fx;
+    return top + (bottom - top) * fz;
+  }
+
+  /**
+   * @param heightNormals normals at the grid points, or <code>null</code> to work them out from the
+   *        heights
+   */
+  private void sampleNormal(float[] heightNormals, float gx, float gz, float[] normals, int offset) {
+    final int last = heights.length - 1;
+    final int x0 = Math.min((int) gx, last - 1);
+    final int z0 = Math.min((int) gz, last - 1);
+    final float fx = gx - x0;
+    final float fz = gz - z0;
+    gridNormal(heightNormals, x0, z0, 0);
+    gridNormal(heightNormals, x0 + 1, z0, 3);
+    gridNormal(heightNormals, x0, z0 + 1, 6);
+    gridNormal(heightNormals, x0 + 1, z0 + 1, 9);
+    for (int c = 0; c < 3; ++c) {
+      final float top = corners[c] + (corners[3 + c] - corners[c]) * fx;
+      final float bottom = corners[6 + c] + (corners[9 + c] - corners[6 + c]) * fx;
+      normals[offset + c] = top + (bottom - top) * fz;
+    }
+    final float length = (float) Math.sqrt(normals[offset] * normals[offset]
+        + normals[offset + 1] * normals[offset + 1] + normals[offset + 2] * normals[offset + 2]);
+    normals[offset] /= length;
+    normals[offset + 1] /= length;
+    normals[offset + 2] /= length;
+  }
+
+  /**
+   * Puts the normal at a grid point into {@link #corners}. Worked out from the heights, it is found
+   * as in {@link HeightField}, reading the heights across the edges from the {@link #neighbors};
+   * an edge without a neighbor uses the one side it has.
+   */
+  private void gridNormal(float[] heightNormals, int gx, int gz, int offset) {
+    if (heightNormals != null) {
+      System.arraycopy(heightNormals, (gx * heights.length + gz) * 3, corners, offset, 3);
+      return;
+    }
+    final float height = heights[gx][gz];
+    final float nx = slope(gridHeight(gx - 1, gz), height, gridHeight(gx + 1, gz));
+    final float ny = 2.0f;
+    final float nz = slope(gridHeight(gx, gz - 1), height, gridHeight(gx, gz + 1));
+    final float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+    corners[offset] = nx / length;
+    corners[offset + 1] = ny / length;
+    corners[offset + 2] = nz / length;
   }
 
-  private Vector3f getNormal(int x, int z, HeightGenerator heightGen) {
-    return new Vector3f(
-        heightGen.generate(x - 1, z) - heightGen.generate(x + 1, z),
-        2.0f,
-        heightGen.generate(x, z - 1) - heightGen.generate(x, z + 1)).normalize();
+  /**
+   * @return difference of the heights on either side of a point, or twice the difference to the
+   *         point where one side is missing
+   */
+  private static float slope(float before, float at, float after) {
+    if (Float.isNaN(before)) {
+      return (at - after) * 2.0f;
+    }
+    if (Float.isNaN(after)) {
+      return (before - at) * 2.0f;
+    }
+    return before - after;
   }
+
+  /**
+   * @return height at a grid point up to one beyond the edges, read from a neighbor there, or NaN
+   *         if there is none
+   */
+  private float gridHeight(int gx, int gz) {
+    final int last = heights.length - 1;
+    final int side = gx < 0 ? 0 : gx > last ? 1 : gz < 0 ? 2 : gz > last ? 3 : -1;
+    if (side < 0) {
+      return heights[gx][gz];
+    }
+    final Terrain neighbor = neighbors[side];
+    return neighbor == null ? Float.NaN : neighbor.heights[gx - SIDE_X[side] * last][gz - SIDE_Z[side] * last];
+  }
+
 }
@@ -0,0 +1,175 @@
+package net.seabears.game.terrains;
+
+import java.util.List;
+
+/**
+ * Reshapes the ground under a circle. Each stroke moves every height under the brush toward the
+ * mode's goal by at most <code>strength</code> per second, less toward the rim, so holding the brush
+ * in place keeps working the ground at a steady rate whatever the frame rate.
+ */
+public class TerrainBrush {
+  public enum Mode {
+    /** Builds the ground up */
+    RAISE,
+    /** Digs the ground down */
+    LOWER,
+    /** Evens each height with its neighbors */
+    SMOOTH,
+    /** Levels the ground to the height where the stroke began */
+    FLATTEN
+  }
+
+  private Mode mode;
+  private float radius;
+  private float strength;
+  private float target;
+  // whether a stroke has begun and set the target
+  private boolean stroking;
+  // heights as they were before a smoothing stroke, so each one averages unchanged neighbors
+  private float[] before = new float[0];
+
+  /**
+   * @param radius world distance from the center to the rim
+   * @param strength most the height under the center moves in a second
+   */
+  public TerrainBrush(Mode mode, float radius, float strength) {
+    this.mode = mode;
+    this.radius = radius;
+    this.strength = strength;
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  public void setMode(Mode mode) {
+    this.mode = mode;
+  }
+
+  public float getRadius() {
+    return radius;
+  }
+
+  public void setRadius(float radius) {
+    this.radius = radius;
+  }
+
+  public float getStrength() {
+    return strength;
+  }
+
+  public void setStrength(float strength) {
+    this.strength = strength;
+  }
+
+  /**
+   * Starts a stroke at a point, taking the height there as the level to flatten to.
+   */
+  public void begin(List<Terrain> terrains, float x, float z) {
+    target = Terrain.getHeight(terrains, x, z);
+    stroking = true;
+  }
+
+  /**
+   * Ends the stroke, so the next one must begin again before it can flatten.
+   */
+  public void end() {
+    stroking = false;
+  }
+
+  public boolean isStroking() {
+    return stroking;
+  }
+
+  /**
+   * Applies the brush to every terrain it covers. Flattening does nothing until a stroke has begun,
+   * as there is no level to flatten to.
+   *
+   * @param seconds time the brush was held since the last stroke
+   * @return whether any height changed
+   */
+  public boolean stroke(List<Terrain> terrains, float x, float z, float seconds) {
+    if (mode == Mode.FLATTEN && !stroking) {
+      return false;
+    }
+    boolean changed = false;
+    for (int i = 0; i < terrains.size(); ++i) {
+      final Terrain terrain = terrains.get(i);
+      final float size = terrain.getSize().x;
+      if (x + radius >= terrain.getX() && x - radius <= terrain.getX() + size
+          && z + radius >= terrain.getZ() && z - radius <= terrain.getZ() + size) {
+        changed |= terrain.sculpt(terrains, this, x, z, seconds);
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Moves the heights in a rectangle of the grid. Smoothing leaves the edges of the grid alone, as
+   * their neighbors across the edge belong to another terrain; the other modes depend only on
+   * position, so they give the same height on both sides.
+   *
+   * @param heights grid indexed by x then z
+   * @param x0 first column of the rectangle
+   * @param x1 last column of the rectangle, inclusive
+   * @param cx center of the brush in grid squares
+   * @param r radius of the brush in grid squares
+   * @return whether any height changed
+   */
+  boolean apply(float[][] heights, int x0, int z0, int x1, int z1, float cx, float cz, float r, float seconds) {
+    final int last = heights.length - 1;
+    // copy the rectangle and a border one height wide
+    final int bx0 = Math.max(0, x0 - 1), bz0 = Math.max(0, z0 - 1);
+    final int bx1 = Math.min(last, x1 + 1), bz1 = Math.min(last, z1 + 1);
+    final int stride = bz1 - bz0 + 1;
+    if (mode == Mode.SMOOTH) {
+      final int count = (bx1 - bx0 + 1) * stride;
+      if (before.length < count) {
+        before = new float[count];
+      }
+      for (int x = bx0; x <= bx1; ++x) {
+        System.arraycopy(heights[x], bz0, before, (x - bx0) * stride, stride);
+      }
+    }
+
+    final float step = strength * seconds;
+    boolean changed = false;
+    for (int x = x0; x <= x1; ++x) {
+      for (int z = z0; z <= z1; ++z) {
+        final float dx = x - cx, dz = z - cz;
+        final float d2 = (dx * dx + dz * dz) / (r * r);
+        if (d2 >= 1.0f) {
+          continue;
+        }
+        final float falloff = (1.0f - d2) * (1.0f - d2);
+        final float height = heights[x][z];
+        final float goal;
+        switch (mode) {
+          case RAISE:
+            goal = Float.POSITIVE_INFINITY;
+            break;
+          case LOWER:
+            goal = Float.NEGATIVE_INFINITY;
+            break;
+          case SMOOTH:
+            if (x == 0 || x == last || z == 0 || z == last) {
+              continue;
+            }
+            final int b = (x - bx0) * stride + z - bz0;
+            goal = (before[b - stride] + before[b + stride] + before[b - 1] + before[b + 1]) * 0.25f;
+            break;
+          default:
+            goal = target;
+            break;
+        }
+        final float move = step * falloff;
+        final float moved = Math.max(height - move, Math.min(height + move, goal));
+        if (moved != height) {
+          heights[x][z] = moved;
+          changed = true;
+        }
+      }
+    }
+    return changed;
+  }
+}
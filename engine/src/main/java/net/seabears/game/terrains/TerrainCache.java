@@ -0,0 +1,202 @@
+package net.seabears.game.terrains;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Function;
+
+import net.seabears.game.textures.TerrainTexture;
+import net.seabears.game.textures.TerrainTexturePack;
+
+/**
+ * Terrain tiles saved on disk, so a tile is generated once and read back on later runs. Each tile is
+ * one file holding its heights as 16-bit steps between the lowest and highest height, its normals
+ * packed into two 16-bit values each, and the name of its blend map. Files are read through a
+ * memory map, and are only used when they were made by a generator with the same
+ * {@link HeightGenerator#getFingerprint() fingerprint}; otherwise the tile is generated again and
+ * the file replaced. Different tiles can be loaded on different threads at once.
+ */
+public class TerrainCache {
+  private static final int MAGIC = 0x54494c45; // "TILE"
+  private static final int VERSION = 1;
+  // magic, version, fingerprint, grid x and z, vertex count, lowest height, height step, name length
+  private static final int HEADER_BYTES = 4 + 4 + 8 + 4 + 4 + 4 + 4 + 4 + 2;
+  private static final int QUANTA = 0xffff;
+  private static final float SNORM = Short.MAX_VALUE;
+
+  private final Path directory;
+  private final float size;
+  private final TerrainTexturePack texture;
+  private final Function<String, TerrainTexture> blendMaps;
+
+  /**
+   * @param directory where the tile files are kept; created if missing
+   * @param size width of each tile
+   * @param blendMaps finds a blend map by the name saved with a tile; called on the loading thread,
+   *        so it must not load textures itself
+   */
+  public TerrainCache(Path directory, float size, TerrainTexturePack texture, Function<String, TerrainTexture> blendMaps) {
+    this.directory = directory;
+    this.size = size;
+    this.texture = texture;
+    this.blendMaps = blendMaps;
+  }
+
+  /**
+   * Reads the tile at a grid position, or generates it and saves it for next time if there is no
+   * usable file. A tile that cannot be saved is still returned, and is generated again next time.
+   * The returned terrain is not uploaded.
+   *
+   * @param blendMap name of the blend map to save with a tile that has to be generated
+   */
+  public Terrain load(int gridX, int gridZ, HeightGenerator generator, String blendMap) {
+    final long fingerprint = generator.getFingerprint();
+    final Path file = getFile(gridX, gridZ);
+    if (fingerprint != 0L && Files.isRegularFile(file)) {
+      final Terrain terrain = read(file, gridX, gridZ, fingerprint, generator.getVertexCount());
+      if (terrain != null) {
+        return terrain;
+      }
+    }
+    final HeightField field = HeightField.generate(generator, generator.getVertexCount());
+    final float[][] heights = field.getHeights();
+    final float[] normals = field.getNormals();
+    if (fingerprint != 0L) {
+      try {
+        write(file, gridX, gridZ, fingerprint, heights, normals, blendMap);
+      } catch (IOException e) {
+        System.err.println("Failed to save terrain tile " + file + ": " + e);
+      }
+    }
+    return new Terrain(size, gridX, gridZ, texture, blendMaps.apply(blendMap), heights, normals);
+  }
+
+  Path getFile(int gridX, int gridZ) {
+    return directory.resolve("tile_" + gridX + "_" + gridZ + ".bin");
+  }
+
+  /**
+   * @return the saved tile, or <code>null</code> if the file is unreadable or out of date
+   */
+  private Terrain read(Path file, int gridX, int gridZ, long fingerprint, int vertexCount) {
+    final MappedByteBuffer map;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } catch (IOException e) {
+      return null;
+    }
+    final ByteBuffer buffer = map.order(ByteOrder.LITTLE_ENDIAN);
+    if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+        || buffer.getLong() != fingerprint || buffer.getInt() != gridX || buffer.getInt() != gridZ
+        || buffer.getInt() != vertexCount) {
+      return null;
+    }
+    final float minHeight = buffer.getFloat();
+    final float step = buffer.getFloat();
+    final int nameLength = buffer.getShort() & 0xffff;
+    final int count = vertexCount * vertexCount;
+    if (buffer.remaining() != nameLength + count * 2 * 3) {
+      return null;
+    }
+    final byte[] name = new byte[nameLength];
+    buffer.get(name);
+
+    final ShortBuffer data = buffer.asShortBuffer();
+    final float[][] heights = new float[vertexCount][vertexCount];
+    for (int x = 0; x < vertexCount; ++x) {
+      for (int z = 0; z < vertexCount; ++z) {
+        heights[x][z] = minHeight + (data.get() & 0xffff) * step;
+      }
+    }
+    final float[] normals = new float[count * 3];
+    for (int i = 0; i < count; ++i) {
+      unpackNormal(data.get() / SNORM, data.get() / SNORM, normals, i * 3);
+    }
+    return new Terrain(size, gridX, gridZ, texture, blendMaps.apply(new String(name, StandardCharsets.UTF_8)), heights, normals);
+  }
+
+  private void write(Path file, int gridX, int gridZ, long fingerprint, float[][] heights, float[] normals, String blendMap) throws IOException {
+    final int vertexCount = heights.length;
+    float min = Float.POSITIVE_INFINITY;
+    float max = Float.NEGATIVE_INFINITY;
+    for (float[] column : heights) {
+      for (float h : column) {
+        min = Math.min(min, h);
+        max = Math.max(max, h);
+      }
+    }
+    final float step = max > min ? (max - min) / QUANTA : 1.0f;
+    final byte[] name = blendMap.getBytes(StandardCharsets.UTF_8);
+
+    final ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + name.length + vertexCount * vertexCount * 2 * 3)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(MAGIC).putInt(VERSION).putLong(fingerprint).putInt(gridX).putInt(gridZ).putInt(vertexCount);
+    buffer.putFloat(min).putFloat(step).putShort((short) name.length).put(name);
+    for (int x = 0; x < vertexCount; ++x) {
+      for (int z = 0; z < vertexCount; ++z) {
+        buffer.putShort((short) Math.round((heights[x][z] - min) / step));
+      }
+    }
+    for (int n = 0; n < normals.length; n += 3) {
+      packNormal(normals[n], normals[n + 1], normals[n + 2], buffer);
+    }
+    buffer.flip();
+
+    // write beside the real file and swap it in, so a reader never sees half a tile
+    Files.createDirectories(directory);
+    final Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+      }
+      try {
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Projects a unit normal onto the faces of an octahedron and unfolds the lower half over the
+   * corners, which leaves two values in [-1, 1] that are stored as signed 16-bit fractions.
+   */
+  private static void packNormal(float x, float y, float z, ByteBuffer out) {
+    final float l1 = Math.abs(x) + Math.abs(y) + Math.abs(z);
+    float u = x / l1;
+    float v = z / l1;
+    if (y < 0.0f) {
+      final float fu = u;
+      u = (1.0f - Math.abs(v)) * (fu >= 0.0f ? 1.0f : -1.0f);
+      v = (1.0f - Math.abs(fu)) * (v >= 0.0f ? 1.0f : -1.0f);
+    }
+    out.putShort((short) Math.round(u * SNORM));
+    out.putShort((short) Math.round(v * SNORM));
+  }
+
+  private static void unpackNormal(float u, float v, float[] normals, int offset) {
+    final float y = 1.0f - Math.abs(u) - Math.abs(v);
+    if (y < 0.0f) {
+      final float fu = u;
+      u = (1.0f - Math.abs(v)) * (fu >= 0.0f ? 1.0f : -1.0f);
+      v = (1.0f - Math.abs(fu)) * (v >= 0.0f ? 1.0f : -1.0f);
+    }
+    final float length = (float) Math.sqrt(u * u + y * y + v * v);
+    normals[offset] = u / length;
+    normals[offset + 1] = y / length;
+    normals[offset + 2] = v / length;
+  }
+}
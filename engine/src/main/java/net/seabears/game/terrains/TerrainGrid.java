@@ -0,0 +1,269 @@
+package net.seabears.game.terrains;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import net.seabears.game.util.Intersection;
+
+/**
+ * A list of terrains that also indexes them by tile coordinates, so the terrain under a point is
+ * found with one hash lookup instead of a scan. Every terrain in the grid must be the same size and
+ * placed on the grid of that size, as the {@link Terrain} constructors do. Lookups allocate nothing.
+ */
+public class TerrainGrid extends AbstractList<Terrain> implements RandomAccess, HeightFunction {
+  private final List<Terrain> terrains;
+  private float tileSize;
+  // open addressing with linear probing; a null tile marks an empty slot
+  private long[] keys;
+  private Terrain[] tiles;
+  // tiles in the table, which is what decides the tile size; the list may hold one more during set
+  private int indexed;
+  // tiles ever indexed lie within these, which bounds the walk of a ray
+  private int minTileX, minTileZ, maxTileX, maxTileZ;
+
+  public TerrainGrid() {
+    this.terrains = new ArrayList<>();
+    this.keys = new long[16];
+    this.tiles = new Terrain[16];
+  }
+
+  @Override
+  public Terrain get(int i) {
+    return terrains.get(i);
+  }
+
+  @Override
+  public int size() {
+    return terrains.size();
+  }
+
+  @Override
+  public Terrain set(int i, Terrain terrain) {
+    final Terrain old = terrains.get(i);
+    // the only tile may be replaced by one of any size
+    if (indexed > 1) {
+      checkSize(terrain);
+    }
+    unindex(old);
+    try {
+      index(terrain);
+    } catch (IllegalArgumentException e) {
+      index(old);
+      throw e;
+    }
+    terrains.set(i, terrain);
+    return old;
+  }
+
+  @Override
+  public void add(int i, Terrain terrain) {
+    index(terrain);
+    terrains.add(i, terrain);
+  }
+
+  @Override
+  public Terrain remove(int i) {
+    final Terrain old = terrains.remove(i);
+    unindex(old);
+    return old;
+  }
+
+  /**
+   * @return the terrain containing the point, or <code>null</code> if there is none
+   */
+  public Terrain find(float x, float z) {
+    if (terrains.isEmpty()) {
+      return null;
+    }
+    return get((int) Math.floor(x / tileSize), (int) Math.floor(z / tileSize));
+  }
+
+  private Terrain get(int tileX, int tileZ) {
+    final long key = key(tileX, tileZ);
+    for (int i = slot(key); tiles[i] != null; i = (i + 1) & (tiles.length - 1)) {
+      if (keys[i] == key) {
+        return tiles[i];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return height of the terrain at the point, or zero where there is no terrain
+   */
+  @Override
+  public float getHeight(float x, float z) {
+    final Terrain terrain = find(x, z);
+    return terrain == null ? 0.0f : terrain.getHeight(x, z);
+  }
+
+  /**
+   * Looks up many heights at once, such as when placing things across the terrain.
+   *
+   * @param xz pairs of x and z coordinates
+   * @param out the height of each pair
+   */
+  public void getHeights(float[] xz, float[] out) {
+    Terrain terrain = null;
+    for (int i = 0; i < out.length; ++i) {
+      final float x = xz[i * 2];
+      final float z = xz[i * 2 + 1];
+      // points next to each other are usually on the same tile
+      if (terrain == null || !terrain.contains(x, z)) {
+        terrain = find(x, z);
+      }
+      out[i] = terrain == null ? 0.0f : terrain.getHeight(x, z);
+    }
+  }
+
+  /**
+   * Finds where a ray first meets the ground, walking the tiles under the ray in order and asking
+   * each one in turn, so the cost depends on the distance covered and not on the number of tiles.
+   *
+   * @param maxDistance distance beyond which hits are ignored
+   * @return distance along the ray, in multiples of the direction, or infinity if it misses
+   */
+  public float raycast(float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance) {
+    if (terrains.isEmpty()) {
+      return Float.POSITIVE_INFINITY;
+    }
+    final float enter = Intersection.box(ox, oy, oz, dx, dy, dz,
+        minTileX * tileSize, Float.NEGATIVE_INFINITY, minTileZ * tileSize,
+        (maxTileX + 1) * tileSize, Float.POSITIVE_INFINITY, (maxTileZ + 1) * tileSize);
+    if (enter > maxDistance) {
+      return Float.POSITIVE_INFINITY;
+    }
+    final float sx = ox + dx * enter;
+    final float sz = oz + dz * enter;
+    int tx = Math.max(minTileX, Math.min(maxTileX, (int) Math.floor(sx / tileSize)));
+    int tz = Math.max(minTileZ, Math.min(maxTileZ, (int) Math.floor(sz / tileSize)));
+    final float deltaX = dx == 0.0f ? Float.POSITIVE_INFINITY : tileSize / Math.abs(dx);
+    final float deltaZ = dz == 0.0f ? Float.POSITIVE_INFINITY : tileSize / Math.abs(dz);
+    float nextX = dx == 0.0f ? Float.POSITIVE_INFINITY : enter + ((tx + (dx > 0 ? 1 : 0)) * tileSize - sx) / dx;
+    float nextZ = dz == 0.0f ? Float.POSITIVE_INFINITY : enter + ((tz + (dz > 0 ? 1 : 0)) * tileSize - sz) / dz;
+    float t = enter;
+    while (t <= maxDistance) {
+      final Terrain terrain = get(tx, tz);
+      if (terrain != null) {
+        final float hit = terrain.raycast(ox, oy, oz, dx, dy, dz, maxDistance);
+        if (hit <= maxDistance) {
+          return hit;
+        }
+      }
+      if (nextX < nextZ) {
+        tx += dx > 0 ? 1 : -1;
+        t = nextX;
+        nextX += deltaX;
+      } else {
+        tz += dz > 0 ? 1 : -1;
+        t = nextZ;
+        nextZ += deltaZ;
+      }
+      if (tx < minTileX || tx > maxTileX || tz < minTileZ || tz > maxTileZ) {
+        break;
+      }
+    }
+    return Float.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Adds a terrain to the table. Nothing changes if it cannot be added.
+   */
+  private void index(Terrain terrain) {
+    if (indexed == 0) {
+      tileSize = terrain.getSize().x;
+    } else {
+      checkSize(terrain);
+    }
+    if ((indexed + 1) * 2 > tiles.length) {
+      grow();
+    }
+    final int tileX = Math.round(terrain.getX() / tileSize);
+    final int tileZ = Math.round(terrain.getZ() / tileSize);
+    insert(key(tileX, tileZ), terrain);
+    if (indexed == 0) {
+      minTileX = maxTileX = tileX;
+      minTileZ = maxTileZ = tileZ;
+    } else {
+      minTileX = Math.min(minTileX, tileX);
+      minTileZ = Math.min(minTileZ, tileZ);
+      maxTileX = Math.max(maxTileX, tileX);
+      maxTileZ = Math.max(maxTileZ, tileZ);
+    }
+    ++indexed;
+  }
+
+  private void checkSize(Terrain terrain) {
+    final float size = terrain.getSize().x;
+    if (size != tileSize) {
+      throw new IllegalArgumentException("terrain is " + size + " wide but the grid's tiles are " + tileSize);
+    }
+  }
+
+  private void insert(long key, Terrain terrain) {
+    int i = slot(key);
+    while (tiles[i] != null) {
+      if (keys[i] == key) {
+        throw new IllegalArgumentException("grid already has a terrain at " + terrain.getX() + ", " + terrain.getZ());
+      }
+      i = (i + 1) & (tiles.length - 1);
+    }
+    keys[i] = key;
+    tiles[i] = terrain;
+  }
+
+  private void unindex(Terrain terrain) {
+    final int mask = tiles.length - 1;
+    int i = slot(key(terrain));
+    while (tiles[i] != terrain) {
+      i = (i + 1) & mask;
+    }
+    tiles[i] = null;
+    --indexed;
+    // shift back later entries of the probe sequence into the hole, so lookups do not stop early
+    for (int j = (i + 1) & mask; tiles[j] != null; j = (j + 1) & mask) {
+      final int home = slot(keys[j]);
+      if (((j - home) & mask) >= ((j - i) & mask)) {
+        keys[i] = keys[j];
+        tiles[i] = tiles[j];
+        tiles[j] = null;
+        i = j;
+      }
+    }
+  }
+
+  private void grow() {
+    final long[] oldKeys = keys;
+    final Terrain[] oldTiles = tiles;
+    keys = new long[oldKeys.length * 2];
+    tiles = new Terrain[oldTiles.length * 2];
+    for (int i = 0; i < oldTiles.length; ++i) {
+      if (oldTiles[i] != null) {
+        insert(oldKeys[i], oldTiles[i]);
+      }
+    }
+  }
+
+  private long key(Terrain terrain) {
+    return key(Math.round(terrain.getX() / tileSize), Math.round(terrain.getZ() / tileSize));
+  }
+
+  private static long key(int x, int z) {
+    return ((long) x << 32) | (z & 0xffffffffL);
+  }
+
+  private int slot(long key) {
+    final long hash = key * 0x9E3779B97F4A7C15L;
+    return (int) (hash ^ (hash >>> 32)) & (tiles.length - 1);
+  }
+
+  @Override
+  public void clear() {
+    terrains.clear();
+    Arrays.fill(tiles, null);
+    indexed = 0;
+  }
+}
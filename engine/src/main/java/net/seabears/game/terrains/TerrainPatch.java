@@ -0,0 +1,168 @@
+package net.seabears.game.terrains;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.joml.Vector3f;
+
+import net.seabears.game.models.RawModel;
+import net.seabears.game.render.Loader;
+import net.seabears.game.util.Frustum;
+
+/**
+ * Node of a {@link Terrain}'s quadtree. Every node covers a square of the terrain with a mesh of the
+ * same number of quads, so each level down is twice as detailed as the one above it. A skirt hangs
+ * from the edges of each mesh to hide the cracks where patches of different levels meet.
+ */
+public class TerrainPatch {
+  private final Terrain terrain;
+  // vertices waiting to be uploaded, which may be packed away from the GL thread
+  private ByteBuffer vertices;
+  private RawModel model;
+  private int vertexBuffer;
+  private final TerrainPatch[] children;
+  private final float x, z;
+  private final float size;
+  // heights are stored as fractions of this range
+  private float minHeight, heightRange;
+  private float skirtDepth;
+  // world bounds of the mesh, including its skirt
+  private final float minX, minZ, maxX, maxZ;
+  private float minY, maxY;
+
+  /**
+   * @param x offset of the patch in its terrain
+   * @param minY lowest height of the patch, not counting the skirt
+   * @param skirtDepth how far the skirt hangs below the edge
+   */
+  TerrainPatch(Terrain terrain, ByteBuffer vertices, TerrainPatch[] children, float x, float z, float size, float minY, float maxY,
+      float skirtDepth) {
+    this.terrain = terrain;
+    this.vertices = vertices;
+    this.children = children;
+    this.x = x;
+    this.z = z;
+    this.size = size;
+    this.minHeight = minY;
+    this.heightRange = maxY - minY;
+    this.skirtDepth = skirtDepth;
+    this.minX = terrain.getX() + x;
+    this.minY = minY - skirtDepth;
+    this.minZ = terrain.getZ() + z;
+    this.maxX = minX + size;
+    this.maxY = maxY;
+    this.maxZ = minZ + size;
+  }
+
+  public Terrain getTerrain() {
+    return terrain;
+  }
+
+  public RawModel getModel() {
+    return model;
+  }
+
+  void upload(Loader loader) {
+    model = PatchMesh.upload(loader, vertices, vbo -> vertexBuffer = vbo);
+    vertices = null;
+  }
+
+  void unload(Loader loader) {
+    if (model != null) {
+      loader.unload(model);
+      model = null;
+    }
+  }
+
+  /**
+   * @return buffer of the vertices that belong to this patch alone, once it is uploaded
+   */
+  int getVertexBuffer() {
+    return vertexBuffer;
+  }
+
+  /**
+   * Sets the range the heights are stored in, which also bounds the patch. Every vertex must be
+   * packed again afterward.
+   */
+  void setHeightRange(float minY, float maxY) {
+    this.minHeight = minY;
+    this.heightRange = maxY - minY;
+    this.minY = minY - skirtDepth;
+    this.maxY = maxY;
+  }
+
+  /**
+   * Sets how far the skirt hangs, which also bounds the patch.
+   */
+  void setSkirtDepth(float skirtDepth) {
+    this.minY += this.skirtDepth - skirtDepth;
+    this.skirtDepth = skirtDepth;
+  }
+
+  /**
+   * @return offset of the patch along x in its terrain
+   */
+  public float getX() {
+    return x;
+  }
+
+  public float getZ() {
+    return z;
+  }
+
+  public float getSize() {
+    return size;
+  }
+
+  public float getMinHeight() {
+    return minHeight;
+  }
+
+  /**
+   * @return highest height of the patch less the lowest
+   */
+  public float getHeightRange() {
+    return heightRange;
+  }
+
+  public float getSkirtDepth() {
+    return skirtDepth;
+  }
+
+  public boolean isLeaf() {
+    return children == null;
+  }
+
+  /**
+   * @return signed distance of the highest corner of the bounds from the plane
+   *         <code>ax + by + cz + d = 0</code>
+   */
+  public float getDistance(float a, float b, float c, float d) {
+    return a * (a > 0 ? maxX : minX) + b * (b > 0 ? maxY : minY) + c * (c > 0 ? maxZ : minZ) + d;
+  }
+
+  /**
+   * Adds the visible patches to draw from this node down. A node is drawn whole when the eye is at
+   * least <code>range</code> times its width away from it; otherwise its children are drawn.
+   */
+  void select(Frustum frustum, Vector3f eye, float range, List<TerrainPatch> patches) {
+    if (!frustum.containsBox(minX, minY, minZ, maxX, maxY, maxZ)) {
+      return;
+    }
+    if (children == null || distanceSquared(eye) >= size * size * range * range) {
+      patches.add(this);
+    } else {
+      for (TerrainPatch child : children) {
+        child.select(frustum, eye, range, patches);
+      }
+    }
+  }
+
+  private float distanceSquared(Vector3f p) {
+    final float dx = Math.max(Math.max(minX - p.x, p.x - maxX), 0.0f);
+    final float dy = Math.max(Math.max(minY - p.y, p.y - maxY), 0.0f);
+    final float dz = Math.max(Math.max(minZ - p.z, p.z - maxZ), 0.0f);
+    return dx * dx + dy * dy + dz * dz;
+  }
+}
@@ -5,18 +5,18 @@ import java.util.List;
 import org.joml.Matrix4f;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL13;
-import org.lwjgl.opengl.GL20;
 import org.lwjgl.opengl.GL30;
 
 import net.seabears.game.models.RawModel;
 import net.seabears.game.render.Renderer;
-import net.seabears.game.shaders.ShaderProgram;
 import net.seabears.game.textures.ModelTexture;
-import net.seabears.game.textures.TerrainTexture;
-import net.seabears.game.textures.TerrainTexturePack;
 
 public class TerrainRenderer implements Renderer {
+  // textures bound for each terrain before its ground textures and blend maps became arrays
+  private static final int TEXTURES_PER_TERRAIN = 5;
+
   private final TerrainShader shader;
+  private int bindsSaved;
 
   public TerrainRenderer(TerrainShader shader, Matrix4f projectionMatrix) {
     this.shader = shader;
@@ -24,6 +24,7 @@ public class TerrainRenderer implements Renderer {
     this.shader.start();
     this.shader.loadProjectionMatrix(projectionMatrix);
     this.shader.loadTerrain();
+    this.shader.loadTexture(new ModelTexture(0, 0.0f, 1.0f));
     this.shader.stop();
   }
 
@@ -31,57 +32,57 @@ public class TerrainRenderer implements Renderer {
     return shader;
   }
 
-  public void render(List<Terrain> terrains, int shadowMap) {
-    GL13.glActiveTexture(getUnitId(TerrainShader.TEXTURE_SHADOW));
+  /**
+   * @param patches patches to draw, with those of each terrain next to each other
+   */
+  public void render(List<TerrainPatch> patches, int shadowMap) {
+    GL13.glActiveTexture(GL13.GL_TEXTURE0 + TerrainShader.TEXTURE_SHADOW);
     GL11.glBindTexture(GL11.GL_TEXTURE_2D, shadowMap);
-    for (Terrain terrain : terrains) {
-      final RawModel model = terrain.getModel();
+    int groundTextures = 0;
+    int blendMaps = 0;
+    int binds = 1; // the shadow map
+    Terrain terrain = null;
+    for (int i = 0; i < patches.size(); ++i) {
+      final TerrainPatch patch = patches.get(i);
+      if (patch.getTerrain() != terrain) {
+        terrain = patch.getTerrain();
+        bindsSaved += TEXTURES_PER_TERRAIN;
+        // neighbouring tiles share their arrays, so only the blend map layer usually changes
+        if (terrain.getTexture().getTextureId() != groundTextures) {
+          groundTextures = bindTextureArray(terrain.getTexture().getTextureId(), TerrainShader.TEXTURE_UNIT_GROUND);
+          ++binds;
+        }
+        if (terrain.getBlendMap().getTextureId() != blendMaps) {
+          blendMaps = bindTextureArray(terrain.getBlendMap().getTextureId(), TerrainShader.TEXTURE_UNIT_BLEND);
+          ++binds;
+        }
+        shader.loadBlendLayer(terrain.getBlendMap().getLayer());
+        shader.loadTransformationMatrix(terrain);
+      }
+      shader.loadPatch(patch);
+      final RawModel model = patch.getModel();
       GL30.glBindVertexArray(model.getVaoId());
-      GL20.glEnableVertexAttribArray(ShaderProgram.ATTR_POSITION);
-      GL20.glEnableVertexAttribArray(ShaderProgram.ATTR_TEXTURE);
-      GL20.glEnableVertexAttribArray(ShaderProgram.ATTR_NORMAL);
-      bindTextures(terrain);
-      shader.loadTexture(new ModelTexture(0, 0.0f, 1.0f));
-      shader.loadTransformationMatrix(terrain);
-      GL11.glDrawElements(GL11.GL_TRIANGLES, model.getVertexCount(), GL11.GL_UNSIGNED_INT, 0);
-      GL20.glDisableVertexAttribArray(ShaderProgram.ATTR_POSITION);
-      GL20.glDisableVertexAttribArray(ShaderProgram.ATTR_TEXTURE);
-      GL20.glDisableVertexAttribArray(ShaderProgram.ATTR_NORMAL);
-      GL30.glBindVertexArray(0);
+      GL11.glDrawElements(GL11.GL_TRIANGLES, model.getVertexCount(), GL11.GL_UNSIGNED_SHORT, 0);
     }
+    GL30.glBindVertexArray(0);
+    // the shadow map was always bound once per call
+    bindsSaved += 1 - binds;
   }
 
-  private void bindTextures(Terrain terrain) {
-    final TerrainTexturePack pack = terrain.getTexture();
-    bindTexture(pack.getBackgroundTexture(), TerrainShader.TEXTURE_UNIT_BACKGROUND);
-    bindTexture(pack.getrTexture(), TerrainShader.TEXTURE_UNIT_R);
-    bindTexture(pack.getgTexture(), TerrainShader.TEXTURE_UNIT_G);
-    bindTexture(pack.getbTexture(), TerrainShader.TEXTURE_UNIT_B);
-    bindTexture(terrain.getBlendMap(), TerrainShader.TEXTURE_UNIT_BLEND);
-  }
-
-  private void bindTexture(TerrainTexture texture, int textureUnit) {
-    GL13.glActiveTexture(getUnitId(textureUnit));
-    GL11.glBindTexture(GL11.GL_TEXTURE_2D, texture.getTextureId());
+  private static int bindTextureArray(int textureId, int textureUnit) {
+    GL13.glActiveTexture(GL13.GL_TEXTURE0 + textureUnit);
+    GL11.glBindTexture(GL30.GL_TEXTURE_2D_ARRAY, textureId);
+    return textureId;
   }
 
-  private static int getUnitId(final int unit) {
-    switch (unit) {
-      case 0:
-        return GL13.GL_TEXTURE0;
-      case 1:
-        return GL13.GL_TEXTURE1;
-      case 2:
-        return GL13.GL_TEXTURE2;
-      case 3:
-        return GL13.GL_TEXTURE3;
-      case 4:
-        return GL13.GL_TEXTURE4;
-      case 5:
-        return GL13.GL_TEXTURE5;
-      default:
-        throw new UnsupportedOperationException("add texture unit mapping");
-    }
+  /**
+   * @return number of texture binds avoided since the last call, compared to binding every texture
+   *         of every terrain drawn
+   */
+  public int resetBindsSaved() {
+    final int saved = bindsSaved;
+    bindsSaved = 0;
+    return saved;
   }
 
   @Override
@@ -12,33 +12,33 @@ import org.joml.Vector4f;
 import net.seabears.game.entities.Light;
 import net.seabears.game.shadows.ShadowShader;
 import net.seabears.game.textures.ModelTexture;
-import net.seabears.game.util.TransformationMatrix;
 
 public class TerrainShader extends ShadowShader {
-  public static final int TEXTURE_UNIT_BACKGROUND = 0;
-  public static final int TEXTURE_UNIT_R = 1;
-  public static final int TEXTURE_UNIT_G = 2;
-  public static final int TEXTURE_UNIT_B = 3;
-  public static final int TEXTURE_UNIT_BLEND = 4;
-  public static final int TEXTURE_SHADOW = 5;
+  public static final int TEXTURE_UNIT_GROUND = 0;
+  public static final int TEXTURE_UNIT_BLEND = 1;
+  public static final int TEXTURE_SHADOW = 2;
 
   private final int lights;
+  // reused for the uniforms loaded for every patch
+  private final Vector4f patchValue = new Vector4f();
+  private final Vector3f heightRangeValue = new Vector3f();
+  private final Matrix4f transformationValue = new Matrix4f();
+  private int locationBlendLayer;
   private int locationClippingPlane;
   private int locationFakeLighting;
+  private int locationHeightRange;
   private int[] locationLightAttenuation;
   private int[] locationLightColor;
   private int[] locationLightPosition;
+  private int locationPatch;
   private int locationProjectionMatrix;
   private int locationReflectivity;
   private int locationShineDamper;
   private int locationSkyColor;
   private int locationTransformationMatrix;
   private int locationViewMatrix;
-  private int locationBackgroundTexture;
-  private int locationrTexture;
-  private int locationgTexture;
-  private int locationbTexture;
-  private int locationBlendMap;
+  private int locationGroundTextures;
+  private int locationBlendMaps;
 
   public TerrainShader(int lights) throws IOException {
     super(SHADER_ROOT + "terrain/", TEXTURE_SHADOW);
@@ -47,30 +47,35 @@ public class TerrainShader extends ShadowShader {
 
   @Override
   protected void bindAttributes() {
-    super.bindAttribute(ATTR_POSITION, "position");
-    super.bindAttribute(ATTR_TEXTURE, "textureCoords");
+    // see PatchMesh for the layout
+    super.bindAttribute(ATTR_POSITION, "grid");
+    super.bindAttribute(ATTR_TEXTURE, "height");
     super.bindAttribute(ATTR_NORMAL, "normal");
   }
 
   @Override
   protected void getAllUniformLocations() {
     super.getAllUniformLocations();
+    locationBlendLayer = super.getUniformLocation("blendLayer");
     locationClippingPlane = super.getUniformLocation("clippingPlane");
     locationFakeLighting = super.getUniformLocation("fakeLighting");
+    locationHeightRange = super.getUniformLocation("heightRange");
     locationLightAttenuation = super.getUniformLocations("attenuation", lights);
     locationLightColor = super.getUniformLocations("lightColor", lights);
     locationLightPosition = super.getUniformLocations("lightPosition", lights);
+    locationPatch = super.getUniformLocation("patch");
     locationProjectionMatrix = super.getUniformLocation("projectionMatrix");
     locationReflectivity = super.getUniformLocation("reflectivity");
     locationShineDamper = super.getUniformLocation("shineDamper");
     locationSkyColor = super.getUniformLocation("skyColor");
     locationTransformationMatrix = super.getUniformLocation("transformationMatrix");
     locationViewMatrix = super.getUniformLocation("viewMatrix");
-    locationBackgroundTexture = super.getUniformLocation("backgroundTexture");
-    locationrTexture = super.getUniformLocation("rTexture");
-    locationgTexture = super.getUniformLocation("gTexture");
-    locationbTexture = super.getUniformLocation("bTexture");
-    locationBlendMap = super.getUniformLocation("blendMap");
+    locationGroundTextures = super.getUniformLocation("groundTextures");
+    locationBlendMaps = super.getUniformLocation("blendMaps");
+  }
+
+  public void loadBlendLayer(int layer) {
+    super.loadFloat(locationBlendLayer, layer);
   }
 
   public void loadClippingPlane(Vector4f plane) {
@@ -87,6 +92,14 @@ public class TerrainShader extends ShadowShader {
     super.loadFloat(locationLightPosition[index], light.getPosition());
   }
 
+  /**
+   * Loads where a patch lies in its terrain and how to unpack its heights.
+   */
+  public void loadPatch(TerrainPatch patch) {
+    super.loadFloat(locationPatch, patchValue.set(patch.getX(), patch.getZ(), patch.getSize() / PatchMesh.QUADS, patch.getTerrain().getSize().x));
+    super.loadFloat(locationHeightRange, heightRangeValue.set(patch.getMinHeight(), patch.getHeightRange(), patch.getSkirtDepth()));
+  }
+
   public void loadProjectionMatrix(Matrix4f matrix) {
     super.loadMatrix(locationProjectionMatrix, matrix);
   }
@@ -96,11 +109,8 @@ public class TerrainShader extends ShadowShader {
   }
 
   public void loadTerrain() {
-    super.loadInt(locationBackgroundTexture, TEXTURE_UNIT_BACKGROUND);
-    super.loadInt(locationrTexture, TEXTURE_UNIT_R);
-    super.loadInt(locationgTexture, TEXTURE_UNIT_G);
-    super.loadInt(locationbTexture, TEXTURE_UNIT_B);
-    super.loadInt(locationBlendMap, TEXTURE_UNIT_BLEND);
+    super.loadInt(locationGroundTextures, TEXTURE_UNIT_GROUND);
+    super.loadInt(locationBlendMaps, TEXTURE_UNIT_BLEND);
   }
 
   public void loadTexture(ModelTexture texture) {
@@ -110,7 +120,7 @@ public class TerrainShader extends ShadowShader {
   }
 
   public void loadTransformationMatrix(Terrain terrain) {
-    loadTransformationMatrix(new TransformationMatrix(new Vector3f(terrain.getX(), 0.0f, terrain.getZ()), new Vector3f(), 1.0f).toMatrix());
+    loadTransformationMatrix(transformationValue.translation(terrain.getX(), 0.0f, terrain.getZ()));
   }
 
   public void loadTransformationMatrix(Matrix4f matrix) {
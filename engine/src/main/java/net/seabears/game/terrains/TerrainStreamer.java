@@ -0,0 +1,197 @@
+package net.seabears.game.terrains;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.joml.Vector3f;
+
+import net.seabears.game.render.Loader;
+
+/**
+ * Keeps the terrain tiles around a position loaded. Tiles are built on worker threads as the
+ * position comes within range of them, and uploaded on the GL thread a little each frame. Tiles
+ * that are out of range stay loaded until the total size of the loaded meshes goes over a limit,
+ * when the least recently needed ones are unloaded.
+ */
+public class TerrainStreamer implements AutoCloseable {
+  /**
+   * Builds the tile at a grid position, without a {@link Loader}. Called on worker threads.
+   */
+  public interface TileFactory {
+    Terrain create(int gridX, int gridZ);
+  }
+
+  private static final class Tile {
+    private final Future<Terrain> future;
+    private Terrain terrain;
+    private long frame;
+
+    private Tile(Future<Terrain> future) {
+      this.future = future;
+    }
+  }
+
+  private final Loader loader;
+  private final TileFactory factory;
+  private final ExecutorService workers;
+  private final float tileSize;
+  private final float loadDistance;
+  private final long memoryLimit;
+  private final long uploadBudget;
+  // least recently needed first
+  private final Map<Long, Tile> tiles;
+  private final TerrainGrid terrains;
+  private long memorySize;
+  private long frame;
+
+  /**
+   * @param loadDistance distance from the position within which tiles are loaded
+   * @param memoryLimit bytes of loaded meshes above which tiles out of range are unloaded
+   * @param uploadBudget nanoseconds per update that may be spent uploading meshes
+   * @param threads number of worker threads
+   */
+  public TerrainStreamer(Loader loader, TileFactory factory, float tileSize, float loadDistance, long memoryLimit,
+      long uploadBudget, int threads) {
+    this.loader = loader;
+    this.factory = factory;
+    this.workers = Executors.newFixedThreadPool(threads, r -> {
+      final Thread thread = new Thread(r, "terrain-streamer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.tileSize = tileSize;
+    this.loadDistance = loadDistance;
+    this.memoryLimit = memoryLimit;
+    this.uploadBudget = uploadBudget;
+    this.tiles = new LinkedHashMap<>(64, 0.75f, true);
+    this.terrains = new TerrainGrid();
+  }
+
+  /**
+   * @return tiles that are ready to draw, which only the streamer should change
+   */
+  public TerrainGrid getTerrains() {
+    return terrains;
+  }
+
+  /**
+   * Starts building tiles that have come within range, uploads finished tiles for up to the upload
+   * budget, and unloads tiles if over the memory limit. Call once a frame on the GL thread.
+   */
+  public void update(Vector3f position) {
+    request(position);
+    final long deadline = System.nanoTime() + uploadBudget;
+    for (Iterator<Tile> it = tiles.values().iterator(); it.hasNext();) {
+      final Tile tile = it.next();
+      if (tile.terrain != null && tile.terrain.isUploaded()) {
+        continue;
+      }
+      if (tile.frame != frame) {
+        // left range before it was ready
+        it.remove();
+        unload(tile);
+      } else if (tile.future.isDone() && System.nanoTime() <= deadline) {
+        upload(tile, deadline);
+      }
+    }
+    evict();
+  }
+
+  /**
+   * Builds and uploads the tiles in range of the position before returning, for places that must be
+   * loaded right away, such as where the player starts.
+   */
+  public void load(Vector3f position) {
+    request(position);
+    for (Tile tile : tiles.values()) {
+      if (tile.frame == frame && (tile.terrain == null || !tile.terrain.isUploaded())) {
+        upload(tile, Long.MAX_VALUE);
+      }
+    }
+    evict();
+  }
+
+  private void request(Vector3f position) {
+    ++frame;
+    final int minX = (int) Math.floor((position.x - loadDistance) / tileSize);
+    final int maxX = (int) Math.floor((position.x + loadDistance) / tileSize);
+    final int minZ = (int) Math.floor((position.z - loadDistance) / tileSize);
+    final int maxZ = (int) Math.floor((position.z + loadDistance) / tileSize);
+    for (int x = minX; x <= maxX; ++x) {
+      for (int z = minZ; z <= maxZ; ++z) {
+        // distance from the position to the nearest point of the tile
+        final float dx = Math.max(Math.max(x * tileSize - position.x, position.x - (x + 1) * tileSize), 0.0f);
+        final float dz = Math.max(Math.max(z * tileSize - position.z, position.z - (z + 1) * tileSize), 0.0f);
+        if (dx * dx + dz * dz <= loadDistance * loadDistance) {
+          final Long key = key(x, z);
+          Tile tile = tiles.get(key);
+          if (tile == null) {
+            final int gridX = x, gridZ = z;
+            tile = new Tile(workers.submit(() -> factory.create(gridX, gridZ)));
+            tiles.put(key, tile);
+          }
+          tile.frame = frame;
+        }
+      }
+    }
+  }
+
+  private void upload(Tile tile, long deadline) {
+    if (tile.terrain == null) {
+      try {
+        tile.terrain = tile.future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("interrupted while loading terrain", e);
+      } catch (ExecutionException e) {
+        throw new IllegalStateException("failed to build terrain", e.getCause());
+      }
+      memorySize += tile.terrain.getMemorySize();
+    }
+    if (tile.terrain.upload(loader, deadline)) {
+      terrains.add(tile.terrain);
+    }
+  }
+
+  /**
+   * Unloads the least recently needed tiles while over the memory limit. Tiles needed this frame
+   * are never unloaded.
+   */
+  private void evict() {
+    final Iterator<Tile> it = tiles.values().iterator();
+    while (memorySize > memoryLimit && it.hasNext()) {
+      final Tile tile = it.next();
+      if (tile.frame == frame) {
+        // the rest were needed this frame too
+        break;
+      }
+      it.remove();
+      unload(tile);
+    }
+  }
+
+  private void unload(Tile tile) {
+    tile.future.cancel(false);
+    if (tile.terrain != null) {
+      terrains.remove(tile.terrain);
+      tile.terrain.unload(loader);
+      memorySize -= tile.terrain.getMemorySize();
+    }
+  }
+
+  private static Long key(int x, int z) {
+    return ((long) x << 32) | (z & 0xffffffffL);
+  }
+
+  @Override
+  public void close() {
+    workers.shutdownNow();
+    tiles.values().forEach(this::unload);
+    tiles.clear();
+  }
+}
@@ -1,13 +1,26 @@
 package net.seabears.game.textures;
 
+/**
+ * A layer of a texture array, such as one blend map among those of many terrains.
+ */
 public class TerrainTexture {
     private final int textureId;
+    private final int layer;
 
     public TerrainTexture(int textureId) {
+        this(textureId, 0);
+    }
+
+    public TerrainTexture(int textureId, int layer) {
         this.textureId = textureId;
+        this.layer = layer;
     }
 
     public int getTextureId() {
         return textureId;
     }
+
+    public int getLayer() {
+        return layer;
+    }
 }
@@ -1,32 +1,22 @@
 package net.seabears.game.textures;
 
+/**
+ * The ground textures of a terrain, as the layers of one texture array: the background first, then
+ * the textures painted by the red, green and blue of the blend map.
+ */
 public class TerrainTexturePack {
-    private final TerrainTexture backgroundTexture;
-    private final TerrainTexture rTexture;
-    private final TerrainTexture gTexture;
-    private final TerrainTexture bTexture;
+    public static final int LAYERS = 4;
 
-    public TerrainTexturePack(TerrainTexture backgroundTexture, TerrainTexture rTexture,
-            TerrainTexture gTexture, TerrainTexture bTexture) {
-        this.backgroundTexture = backgroundTexture;
-        this.rTexture = rTexture;
-        this.gTexture = gTexture;
-        this.bTexture = bTexture;
-    }
-
-    public TerrainTexture getBackgroundTexture() {
-        return backgroundTexture;
-    }
-
-    public TerrainTexture getrTexture() {
-        return rTexture;
-    }
+    private final int textureId;
 
-    public TerrainTexture getgTexture() {
-        return gTexture;
+    /**
+     * @param textureId a {@link org.lwjgl.opengl.GL30#GL_TEXTURE_2D_ARRAY} of {@link #LAYERS} layers
+     */
+    public TerrainTexturePack(int textureId) {
+        this.textureId = textureId;
     }
 
-    public TerrainTexture getbTexture() {
-        return bTexture;
+    public int getTextureId() {
+        return textureId;
     }
 }
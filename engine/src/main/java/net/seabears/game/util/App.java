@@ -1,12 +1,12 @@
 package net.seabears.game.util;
 
-import static java.util.stream.Collectors.toCollection;
 import static org.lwjgl.glfw.GLFW.*;
 import static org.lwjgl.opengl.GL11.GL_TRUE;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -27,6 +27,7 @@ import org.lwjgl.glfw.GLFWScrollCallback;
 import net.seabears.game.entities.Camera;
 import net.seabears.game.entities.Entity;
 import net.seabears.game.entities.EntityRenderer;
+import net.seabears.game.entities.EntityStore;
 import net.seabears.game.entities.EntityTexture;
 import net.seabears.game.entities.Light;
 import net.seabears.game.entities.Player;
@@ -40,29 +41,39 @@ import net.seabears.game.guis.fonts.FontRenderer;
 import net.seabears.game.guis.fonts.FontShader;
 import net.seabears.game.guis.fonts.GuiText;
 import net.seabears.game.guis.fonts.TextMaster;
+import net.seabears.game.impostors.ImpostorBaker;
+import net.seabears.game.impostors.ImpostorRenderer;
+import net.seabears.game.impostors.ImpostorShader;
 import net.seabears.game.input.ActionKeys;
 import net.seabears.game.input.CameraPanTilt;
 import net.seabears.game.input.DirectionKeys;
 import net.seabears.game.input.MouseButton;
 import net.seabears.game.input.MovementKeys;
 import net.seabears.game.input.Scroll;
-import net.seabears.game.particles.Particle;
+import net.seabears.game.models.TexturedModel;
+import net.seabears.game.particles.GpuParticles;
 import net.seabears.game.particles.ParticleMaster;
 import net.seabears.game.particles.ParticleRenderer;
 import net.seabears.game.particles.ParticleShader;
 import net.seabears.game.particles.ParticleSystem;
 import net.seabears.game.render.DisplayManager;
 import net.seabears.game.render.FrameBuffer;
+import net.seabears.game.render.InstanceBuffer;
+import net.seabears.game.render.LodSelector;
 import net.seabears.game.render.Loader;
 import net.seabears.game.render.MasterRenderer;
+import net.seabears.game.render.RenderList;
 import net.seabears.game.render.Renderer;
+import net.seabears.game.shadows.OpaqueShadowMapShader;
 import net.seabears.game.shadows.ShadowBox;
 import net.seabears.game.shadows.ShadowMapRenderer;
 import net.seabears.game.shadows.ShadowMapShader;
 import net.seabears.game.skybox.Skybox;
 import net.seabears.game.skybox.SkyboxRenderer;
 import net.seabears.game.skybox.SkyboxShader;
+import net.seabears.game.spatial.SpatialHash;
 import net.seabears.game.terrains.Terrain;
+import net.seabears.game.terrains.TerrainPatch;
 import net.seabears.game.terrains.TerrainRenderer;
 import net.seabears.game.terrains.TerrainShader;
 import net.seabears.game.water.WaterFrameBuffers;
@@ -73,8 +84,18 @@ import net.seabears.game.water.WaterTile;
 public abstract class App {
   public static final float SKYBOX_SIZE = 500.0f;
   public static final int MAX_LIGHTS = 4;
+  private static final float LIGHT_CELL_SIZE = 100.0f;
+  // screen sizes, as fractions of half the screen height, below which each coarser level is used
+  private static final float[] LOD_THRESHOLDS = {0.25f, 0.1f, 0.04f};
+  private static final float LOD_HYSTERESIS = 0.15f;
+  // distance past which impostor models are drawn as pictures, and the band over which they fade in
+  private static final float IMPOSTOR_DISTANCE = 250.0f;
+  private static final float IMPOSTOR_FADE = 25.0f;
+  private static final int IMPOSTOR_CELL_SIZE = 128;
+  private static final int IMPOSTOR_VIEWS = 8;
 
   private static final Vector4f HIGH_PLANE = new Vector4f(0.0f, 1.0f, 0.0f, -1000.0f);
+  private static final int MAX_INSTANCES = 10000;
   private static final int MAX_PARTICLES = 10000;
   private static final int SHADOW_MAP_SIZE = 4096;
 
@@ -132,6 +153,9 @@ public abstract class App {
 
   protected abstract List<GuiText> getGuiText();
 
+  /**
+   * @return entities to draw, which must belong to the default {@link EntityStore}
+   */
   protected abstract List<Entity> getEntities();
 
   protected abstract List<Entity> getNormalMapEntities();
@@ -148,6 +172,20 @@ public abstract class App {
 
   protected abstract void init(DisplayManager display, Loader loader, FpsCalc fps, Matrix4f projMatrix) throws IOException;
 
+  /**
+   * @return models whose distant entities are drawn as impostors instead of meshes
+   */
+  protected List<TexturedModel> getImpostorModels() {
+    return Collections.emptyList();
+  }
+
+  /**
+   * @return particles simulated on the GPU, which are closed with the renderers
+   */
+  protected List<GpuParticles> getGpuParticles() {
+    return Collections.emptyList();
+  }
+
   protected Function<EntityTexture, Optional<Object>> getGuiAction() {
     return t -> Optional.empty();
   }
@@ -172,6 +210,31 @@ public abstract class App {
 
   protected void close() {};
 
+  /**
+   * Chooses the lights sent to the shaders, which only have room for {@link #MAX_LIGHTS}. The first
+   * light is the sun and is always kept.
+   */
+  private static List<Light> selectLights(List<Light> all, Vector3f position, SpatialHash index, int[] nearest, List<Light> selected) {
+    if (all.size() <= MAX_LIGHTS) {
+      return all;
+    }
+    // lights may move, so index them every frame; unmoved lights stay in their cells
+    for (int i = all.size(); index.contains(i); ++i) {
+      index.remove(i);
+    }
+    for (int i = 1; i < all.size(); ++i) {
+      final Vector3f p = all.get(i).getPosition();
+      index.insert(i, p.x, p.y, p.z, 0.0f);
+    }
+    final int count = index.nearest(position.x, position.y, position.z, nearest.length, nearest);
+    selected.clear();
+    selected.add(all.get(0));
+    for (int i = 0; i < count; ++i) {
+      selected.add(all.get(nearest[i]));
+    }
+    return selected;
+  }
+
   private List<Renderer> loop(final DisplayManager display, final Loader loader, final CameraPanTilt panTilt) throws IOException {
     // frame-rate stuff
     final FpsCalc fps = new FpsCalc();
@@ -190,10 +253,12 @@ public abstract class App {
     /*
      * rendering
      */
+    final InstanceBuffer instances = new InstanceBuffer(loader, MAX_INSTANCES);
+    final LodSelector lods = new LodSelector(fov, LOD_THRESHOLDS, LOD_HYSTERESIS);
     final StaticShader shader = new StaticShader(MAX_LIGHTS);
-    final EntityRenderer entityRenderer = new EntityRenderer(shader, projMatrix.toMatrix());
+    final EntityRenderer entityRenderer = new EntityRenderer(shader, projMatrix.toMatrix(), instances);
     final NormalMappingShader nmShader = new NormalMappingShader(MAX_LIGHTS);
-    final NormalMappingRenderer nmRenderer = new NormalMappingRenderer(nmShader, projMatrix.toMatrix());
+    final NormalMappingRenderer nmRenderer = new NormalMappingRenderer(nmShader, projMatrix.toMatrix(), instances);
     final ParticleShader particleShader = new ParticleShader();
     final ParticleRenderer particleRenderer = new ParticleRenderer(loader, particleShader, projMatrix.toMatrix(), 0.5f, MAX_PARTICLES);
     final TerrainShader terrainShader = new TerrainShader(MAX_LIGHTS);
@@ -201,11 +266,26 @@ public abstract class App {
     final Skybox skybox = getSkybox();
     final SkyboxRenderer skyboxRenderer = new SkyboxRenderer(loader, new SkyboxShader(fps, 1.0f),
         projMatrix.toMatrix(), SKYBOX_SIZE, skybox.getDayTextureId(), skybox.getNightTextureId());
-    final ShadowMapRenderer shadowRenderer = new ShadowMapRenderer(new ShadowMapShader(), new ShadowBox(150, 10),
-        new FrameBuffer(SHADOW_MAP_SIZE, SHADOW_MAP_SIZE, display.getWidth(), display.getHeight()), 2);
+    final ShadowMapRenderer shadowRenderer = new ShadowMapRenderer(new ShadowMapShader(), new OpaqueShadowMapShader(),
+        new ShadowBox(150, 10), new FrameBuffer(SHADOW_MAP_SIZE, SHADOW_MAP_SIZE, display.getWidth(), display.getHeight()), 2,
+        instances, lods);
     final MasterRenderer renderer = new MasterRenderer(skyColor, entityRenderer, nmRenderer, terrainRenderer, skyboxRenderer, shadowRenderer);
     final GuiRenderer guiRenderer = new GuiRenderer(loader, new GuiShader());
 
+    /*
+     * impostors
+     */
+    final ImpostorRenderer impostorRenderer = new ImpostorRenderer(loader, new ImpostorShader(), projMatrix.toMatrix(), skyColor,
+        EntityStore.getDefault(), IMPOSTOR_DISTANCE, IMPOSTOR_FADE, MAX_INSTANCES);
+    final ImpostorBaker baker = new ImpostorBaker(IMPOSTOR_CELL_SIZE, IMPOSTOR_VIEWS);
+    try {
+      for (TexturedModel model : getImpostorModels()) {
+        impostorRenderer.add(baker.bake(model, display.getWidth(), display.getHeight()));
+      }
+    } finally {
+      baker.close();
+    }
+
     /*
      * water rendering
      */
@@ -221,7 +301,7 @@ public abstract class App {
     /*
      * particles
      */
-    final ParticleMaster particles = new ParticleMaster(fps);
+    final ParticleMaster particles = new ParticleMaster(fps, MAX_PARTICLES);
     getParticleSystems().forEach(particles::add);
 
     /*
@@ -233,6 +313,21 @@ public abstract class App {
     // Run the rendering loop until the user has attempted to close
     // the window or has pressed the ESCAPE key.
     final List<Scroll> currentScrolls = new LinkedList<>();
+    final RenderList entitiesInView = new RenderList(EntityStore.getDefault());
+    final RenderList nmEntitiesInView = new RenderList(EntityStore.getDefault());
+    final int[] particlesInView = new int[MAX_PARTICLES];
+    final List<TerrainPatch> terrainsInView = new ArrayList<>();
+    final List<WaterTile> waterTilesInView = new ArrayList<>();
+    // visibility for the water reflection and refraction passes, which are drawn one after the other
+    final Matrix4f passMatrix = new Matrix4f();
+    // levels of detail are always chosen from the real camera position, even for the reflection
+    final Vector3f eye = new Vector3f();
+    final RenderList entitiesInPass = new RenderList(EntityStore.getDefault());
+    final RenderList nmEntitiesInPass = new RenderList(EntityStore.getDefault());
+    final List<TerrainPatch> terrainsInPass = new ArrayList<>();
+    final SpatialHash lightIndex = new SpatialHash(LIGHT_CELL_SIZE, 64);
+    final int[] nearestLights = new int[MAX_LIGHTS - 1];
+    final List<Light> lightsInRange = new ArrayList<>(MAX_LIGHTS);
     while (display.isRunning()) {
       // update timing
       fps.update();
@@ -253,48 +348,74 @@ public abstract class App {
 
       // particles
       particles.update(camera);
+      getGpuParticles().forEach(p -> p.update(fps.get()));
 
-      // lights
-      final List<Light> lights = getLights();
+      // lights: the sun, then those nearest the camera
+      final List<Light> lights = selectLights(getLights(), camera.getPosition(), lightIndex, nearestLights, lightsInRange);
 
       // view-frustum culling
       final CameraOrientation c = new CameraOrientation(camera.getPosition(), viewMatrix, fov, nearPlane, display.getWidth() / display.getHeight());
       final Frustum frustum = new Frustum(c, nearPlane + farPlane);
-      final List<Entity> entitiesInView = getEntities().stream()
-          .filter(e -> frustum.contains(e.getPosition(), 0.0f))
-          .collect(toCollection(LinkedList::new));
-      final List<Entity> nmEntitiesInView = getNormalMapEntities().stream()
-          .filter(e -> frustum.contains(e.getPosition(), 0.0f))
-          .collect(toCollection(LinkedList::new));
-      final List<Particle> particlesInView = particles.getParticles().stream()
-          .filter(p -> frustum.contains(p.getPosition(), 0.0f))
-          .collect(toCollection(LinkedList::new));
-      final List<Terrain> terrainsInView = getTerrain().stream()
-          .filter(t -> frustum.contains(t.getPosition(), t.getRadius()))
-          .collect(toCollection(LinkedList::new));
-      final List<WaterTile> waterTilesInView = getWater().stream()
-          .filter(w -> frustum.contains(w.getPosition(), w.getRadius()))
-          .collect(toCollection(LinkedList::new));
+      eye.set(camera.getPosition());
+      entitiesInView.clear();
+      entitiesInView.addVisible(getEntities(), frustum);
+      impostorRenderer.take(entitiesInView, eye);
+      entitiesInView.sort(lods, eye);
+      nmEntitiesInView.clear();
+      nmEntitiesInView.addVisible(getNormalMapEntities(), frustum);
+      nmEntitiesInView.sort(lods, eye);
+      final int particlesVisible = particles.getParticles().select(frustum, particlesInView);
+      terrainsInView.clear();
+      for (Terrain terrain : getTerrain()) {
+        terrain.select(frustum, eye, terrainsInView);
+      }
+      waterTilesInView.clear();
+      for (WaterTile tile : getWater()) {
+        if (frustum.contains(tile.getPosition(), tile.getRadius())) {
+          waterTilesInView.add(tile);
+        }
+      }
 
       // render scene
-      renderer.renderShadowMap(entitiesInView, nmEntitiesInView, c, lights, display.getWidth(), display.getHeight());
-      // TODO some objects might be excluded when rendering water (because of frustum culling)
-      final BiConsumer<Matrix4f, Vector4f> renderAction = (v, p) -> renderer.render(entitiesInView, nmEntitiesInView, terrainsInView, lights, skybox, v, p);
-      waterRenderer.preRender(waterTilesInView, lights, camera, display, renderAction);
-      renderAction.accept(viewMatrix, HIGH_PLANE);
+      // the shadow pass culls against its own volume, since casters off screen can shade what is on it
+      renderer.renderShadowMap(getEntities(), getNormalMapEntities(), c, lights, display.getWidth(), display.getHeight());
+      // the water passes see the scene from elsewhere and keep only one side of the water, so each culls for itself
+      final BiConsumer<Matrix4f, Vector4f> waterAction = (v, p) -> {
+        final Frustum passFrustum = new Frustum(projMatrix.toMatrix().mul(v, passMatrix));
+        entitiesInPass.clear();
+        entitiesInPass.addVisible(getEntities(), passFrustum);
+        entitiesInPass.clip(p);
+        entitiesInPass.sort(lods, eye);
+        nmEntitiesInPass.clear();
+        nmEntitiesInPass.addVisible(getNormalMapEntities(), passFrustum);
+        nmEntitiesInPass.clip(p);
+        nmEntitiesInPass.sort(lods, eye);
+        terrainsInPass.clear();
+        for (Terrain terrain : getTerrain()) {
+          terrain.select(passFrustum, eye, terrainsInPass);
+        }
+        terrainsInPass.removeIf(t -> t.getDistance(p.x, p.y, p.z, p.w) < 0.0f);
+        renderer.render(entitiesInPass, nmEntitiesInPass, terrainsInPass, lights, skybox, v, p);
+      };
+      waterRenderer.preRender(waterTilesInView, lights, camera, display, waterAction);
+      renderer.render(entitiesInView, nmEntitiesInView, terrainsInView, lights, skybox, viewMatrix, HIGH_PLANE);
+      impostorRenderer.render(viewMatrix);
       waterRenderer.render(waterTilesInView, lights, viewMatrix, camera.getPosition());
-      particleRenderer.render(ParticleMaster.sortParticles(particlesInView), viewMatrix);
+      particleRenderer.render(particles.getParticles(), particlesInView, particlesVisible, viewMatrix);
+      getGpuParticles().forEach(p -> p.render(viewMatrix));
       guiRenderer.render(getGuis());
       textMaster.render();
 
       // update the screen
       display.update();
+      final int transformsBuilt = EntityStore.getDefault().resetTransformationsBuilt();
+      final int bindsSaved = terrainRenderer.resetBindsSaved();
 
       // update rendering statistics
       if (fpsCount.update(fps.get())) {
-        display.setTitle(String.format("FPS: %d, Entities: %d, Particles: %d, Terrain: %d, Water: %d",
-            fpsCount.get(), entitiesInView.size() + nmEntitiesInView.size(), particlesInView.size(),
-            terrainsInView.size(), waterTilesInView.size()));
+        display.setTitle(String.format("FPS: %d, Entities: %d, Particles: %d, Terrain: %d, Water: %d, Transforms: %d, Binds saved: %d",
+            fpsCount.get(), entitiesInView.size() + nmEntitiesInView.size(), particlesVisible,
+            terrainsInView.size(), waterTilesInView.size(), transformsBuilt, bindsSaved));
       }
 
       // display some debugging info
@@ -304,7 +425,10 @@ public abstract class App {
       }
     }
     close();
-    return Arrays.asList(textMaster, guiRenderer, waterRenderer, entityRenderer, nmRenderer, particleRenderer, terrainRenderer, skyboxRenderer, shadowRenderer);
+    final List<Renderer> renderers = new ArrayList<>(Arrays.asList(textMaster, guiRenderer, waterRenderer, entityRenderer, nmRenderer,
+        impostorRenderer, particleRenderer, terrainRenderer, skyboxRenderer, shadowRenderer));
+    renderers.addAll(getGpuParticles());
+    return renderers;
   }
 
   private void init(final DisplayManager display, final CameraPanTilt panTilt) {
@@ -366,6 +490,9 @@ public abstract class App {
         if (key == GLFW_KEY_E) {
           actions.interact.set(action == GLFW_PRESS);
         }
+        if (key >= GLFW_KEY_0 && key <= GLFW_KEY_9 && action == GLFW_PRESS) {
+          actions.number.set(key - GLFW_KEY_0);
+        }
         if (key == GLFW_KEY_GRAVE_ACCENT) {
           actions.debug.set(action == GLFW_PRESS && shift);
         }
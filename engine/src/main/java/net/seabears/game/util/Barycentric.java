@@ -15,4 +15,16 @@ public final class Barycentric {
     float l3 = 1.0f - l1 - l2;
     return l1 * p1.y + l2 * p2.y + l3 * p3.y;
   }
+
+  /**
+   * Same as {@link #get(Vector3f, Vector3f, Vector3f, Vector2f)} without the vectors, for callers
+   * that run often enough that the allocations matter.
+   */
+  public static float get(float x1, float y1, float z1, float x2, float y2, float z2, float x3, float y3, float z3, float x, float z) {
+    float det = (z2 - z3) * (x1 - x3) + (x3 - x2) * (z1 - z3);
+    float l1 = ((z2 - z3) * (x - x3) + (x3 - x2) * (z - z3)) / det;
+    float l2 = ((z3 - z1) * (x - x3) + (x1 - x3) * (z - z3)) / det;
+    float l3 = 1.0f - l1 - l2;
+    return l1 * y1 + l2 * y2 + l3 * y3;
+  }
 }
@@ -1,41 +1,52 @@
 package net.seabears.game.util;
 
-import java.util.Arrays;
-import java.util.EnumMap;
-import java.util.Map;
+import java.util.BitSet;
 
+import org.joml.Matrix4f;
 import org.joml.Vector3f;
 
+/**
+ * View frustum stored as six normalized plane equations <code>ax + by + cz + d = 0</code> whose
+ * normals point inwards. None of the tests allocate.
+ */
 public class Frustum {
   enum Plane {
     FAR, NEAR, TOP, BOTTOM, RIGHT, LEFT
   }
 
-  private final Map<Plane, Vector3f> normals;
-  private final Map<Plane, Vector3f> points;
+  private static final int PLANES = Plane.values().length;
+  private static final int PLANE_FLOATS = 4;
+  /** Floats per sphere in the packed arrays given to the batch tests: x, y, z and radius */
+  public static final int SPHERE_FLOATS = 4;
+  /** Results of {@link #classifyBox(float, float, float, float, float, float)} */
+  public static final int OUTSIDE = 0, INTERSECTS = 1, INSIDE = 2;
+
+  private final float[] planes;
 
   public Frustum(final CameraOrientation c, float distance) {
-    this.normals = new EnumMap<>(Plane.class);
-    this.points = new EnumMap<>(Plane.class);
-
-    // get points on each plane
-    // the camera position is on 4 of the planes
-    this.points.put(Plane.NEAR, c.nc);
-    this.points.put(Plane.FAR, c.farCenter(distance));
-    this.points.put(Plane.TOP, c.position);
-    this.points.put(Plane.BOTTOM, c.position);
-    this.points.put(Plane.LEFT, c.position);
-    this.points.put(Plane.RIGHT, c.position);
+    this.planes = new float[PLANES * PLANE_FLOATS];
 
     // NEAR and FAR are the look-at and negative look-at vectors
-    this.normals.put(Plane.NEAR, c.lookAt);
-    this.normals.put(Plane.FAR, c.lookAt.negate(new Vector3f()));
-
-    // calculate remaining normals
-    this.normals.put(Plane.TOP, calcNormal(c.up, c.right, c.hNear, c.nc, c.position));
-    this.normals.put(Plane.BOTTOM, calcNormal(c.down, c.left, c.hNear, c.nc, c.position));
-    this.normals.put(Plane.RIGHT, calcNormal(c.right, c.down, c.wNear, c.nc, c.position));
-    this.normals.put(Plane.LEFT, calcNormal(c.left, c.up, c.wNear, c.nc, c.position));
+    // the camera position is on the other 4 planes
+    set(Plane.NEAR, c.lookAt, c.nc);
+    set(Plane.FAR, c.lookAt.negate(new Vector3f()), c.farCenter(distance));
+    set(Plane.TOP, calcNormal(c.up, c.right, c.hNear, c.nc, c.position), c.position);
+    set(Plane.BOTTOM, calcNormal(c.down, c.left, c.hNear, c.nc, c.position), c.position);
+    set(Plane.RIGHT, calcNormal(c.right, c.down, c.wNear, c.nc, c.position), c.position);
+    set(Plane.LEFT, calcNormal(c.left, c.up, c.wNear, c.nc, c.position), c.position);
+  }
+
+  /**
+   * Extracts the planes from a combined projection-view matrix (Gribb and Hartmann).
+   */
+  public Frustum(final Matrix4f m) {
+    this.planes = new float[PLANES * PLANE_FLOATS];
+    set(Plane.LEFT, m.m03 + m.m00, m.m13 + m.m10, m.m23 + m.m20, m.m33 + m.m30);
+    set(Plane.RIGHT, m.m03 - m.m00, m.m13 - m.m10, m.m23 - m.m20, m.m33 - m.m30);
+    set(Plane.BOTTOM, m.m03 + m.m01, m.m13 + m.m11, m.m23 + m.m21, m.m33 + m.m31);
+    set(Plane.TOP, m.m03 - m.m01, m.m13 - m.m11, m.m23 - m.m21, m.m33 - m.m31);
+    set(Plane.NEAR, m.m03 + m.m02, m.m13 + m.m12, m.m23 + m.m22, m.m33 + m.m32);
+    set(Plane.FAR, m.m03 - m.m02, m.m13 - m.m12, m.m23 - m.m22, m.m33 - m.m32);
   }
 
   private static Vector3f calcNormal(Vector3f dir, Vector3f ortho, double near, Vector3f nc, Vector3f point) {
@@ -44,29 +55,127 @@ public class Frustum {
     return ortho.cross(a, a);
   }
 
+  private void set(Plane plane, Vector3f normal, Vector3f point) {
+    set(plane, normal.x, normal.y, normal.z, -normal.dot(point));
+  }
+
+  private void set(Plane plane, float a, float b, float c, float d) {
+    final float length = (float) Math.sqrt(a * a + b * b + c * c);
+    final int i = plane.ordinal() * PLANE_FLOATS;
+    planes[i] = a / length;
+    planes[i + 1] = b / length;
+    planes[i + 2] = c / length;
+    planes[i + 3] = d / length;
+  }
+
   public boolean contains(final Vector3f position, final float radius) {
-    return Arrays.stream(Plane.values()).allMatch(p -> distance(p, position) >= -radius);
+    return containsSphere(position.x, position.y, position.z, radius);
+  }
+
+  /**
+   * @return whether any part of the sphere may be inside the frustum
+   */
+  public boolean containsSphere(float x, float y, float z, float radius) {
+    final float[] p = planes;
+    for (int i = 0; i < p.length; i += PLANE_FLOATS) {
+      if (p[i] * x + p[i + 1] * y + p[i + 2] * z + p[i + 3] < -radius) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return whether any part of the axis-aligned box may be inside the frustum
+   */
+  public boolean containsBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+    final float[] p = planes;
+    for (int i = 0; i < p.length; i += PLANE_FLOATS) {
+      // test the corner furthest along the plane normal
+      final float a = p[i], b = p[i + 1], c = p[i + 2];
+      if (a * (a > 0 ? maxX : minX) + b * (b > 0 ? maxY : minY) + c * (c > 0 ? maxZ : minZ) + p[i + 3] < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Classifies an axis-aligned box as completely outside, partly inside or completely inside the
+   * frustum, so that hierarchies can accept or reject whole subtrees.
+   *
+   * @return {@link #OUTSIDE}, {@link #INTERSECTS} or {@link #INSIDE}
+   */
+  public int classifyBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+    final float[] p = planes;
+    int result = INSIDE;
+    for (int i = 0; i < p.length; i += PLANE_FLOATS) {
+      final float a = p[i], b = p[i + 1], c = p[i + 2], d = p[i + 3];
+      // corner furthest along the normal, then the one furthest against it
+      if (a * (a > 0 ? maxX : minX) + b * (b > 0 ? maxY : minY) + c * (c > 0 ? maxZ : minZ) + d < 0) {
+        return OUTSIDE;
+      }
+      if (a * (a > 0 ? minX : maxX) + b * (b > 0 ? minY : maxY) + c * (c > 0 ? minZ : maxZ) + d < 0) {
+        result = INTERSECTS;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Tests packed spheres (see {@link #SPHERE_FLOATS}) and writes the indices of those in view.
+   *
+   * @param spheres packed spheres
+   * @param count number of spheres
+   * @param visible receives the indices of visible spheres; must hold <code>count</code> elements
+   * @return number of indices written
+   */
+  public int cullSpheres(float[] spheres, int count, int[] visible) {
+    final float[] p = planes;
+    int length = 0;
+    for (int s = 0, j = 0; s < count; ++s, j += SPHERE_FLOATS) {
+      final float x = spheres[j], y = spheres[j + 1], z = spheres[j + 2], r = -spheres[j + 3];
+      if (p[0] * x + p[1] * y + p[2] * z + p[3] >= r
+          && p[4] * x + p[5] * y + p[6] * z + p[7] >= r
+          && p[8] * x + p[9] * y + p[10] * z + p[11] >= r
+          && p[12] * x + p[13] * y + p[14] * z + p[15] >= r
+          && p[16] * x + p[17] * y + p[18] * z + p[19] >= r
+          && p[20] * x + p[21] * y + p[22] * z + p[23] >= r) {
+        visible[length++] = s;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Tests packed spheres (see {@link #SPHERE_FLOATS}) and sets the bits of those in view.
+   *
+   * @param spheres packed spheres
+   * @param count number of spheres
+   * @param visible bit <code>i</code> is set if sphere <code>i</code> is visible and cleared
+   *        otherwise
+   */
+  public void cullSpheres(float[] spheres, int count, BitSet visible) {
+    for (int s = 0, j = 0; s < count; ++s, j += SPHERE_FLOATS) {
+      visible.set(s, containsSphere(spheres[j], spheres[j + 1], spheres[j + 2], spheres[j + 3]));
+    }
   }
 
   float distance(Plane plane, Vector3f position) {
-    return normals.get(plane).dot(position.sub(points.get(plane), new Vector3f()));
+    final int i = plane.ordinal() * PLANE_FLOATS;
+    return planes[i] * position.x + planes[i + 1] * position.y + planes[i + 2] * position.z + planes[i + 3];
   }
 
   @Override
   public String toString() {
-    // print normals
+    // print plane equations
     final String eol = System.lineSeparator();
-    final StringBuilder toString = new StringBuilder("Normals:").append(eol);
-    for (Map.Entry<Plane, Vector3f> plane : normals.entrySet()) {
-      final Vector3f v = plane.getValue();
-      toString.append(plane.getKey()).append(": (").append(v.x).append(", ").append(v.y).append(", ").append(v.z).append(')').append(eol);
-    }
-    // print points
-    toString.append("Points:").append(eol);
-    for (Map.Entry<Plane, Vector3f> plane : points.entrySet()) {
-      final Vector3f p = plane.getValue();
-      toString.append(plane.getKey()).append(": (").append(p.x).append(", ").append(p.y).append(", ").append(p.z).append(')').append(eol);
+    final StringBuilder toString = new StringBuilder("Planes:");
+    for (Plane plane : Plane.values()) {
+      final int i = plane.ordinal() * PLANE_FLOATS;
+      toString.append(eol).append(plane).append(": (").append(planes[i]).append(", ").append(planes[i + 1])
+          .append(", ").append(planes[i + 2]).append(", ").append(planes[i + 3]).append(')');
     }
-    return toString.substring(0, toString.length() - eol.length()).toString();
+    return toString.toString();
   }
 }
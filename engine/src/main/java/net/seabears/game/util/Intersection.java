@@ -0,0 +1,93 @@
+package net.seabears.game.util;
+
+/**
+ * Ray intersection tests on plain floats. A ray is an origin and a direction, which need not be
+ * unit length; distances are measured in multiples of the direction, so they stay the same when the
+ * ray is carried into another space by an affine transformation. A miss is
+ * {@link Float#POSITIVE_INFINITY}, so the nearest hit is a plain minimum.
+ */
+public final class Intersection {
+  private static final float EPSILON = 1E-7f;
+
+  private Intersection() {
+    throw new UnsupportedOperationException("cannot instantiate " + getClass());
+  }
+
+  /**
+   * @return distance at which the ray enters the box, zero if it starts inside, or infinity if it
+   *         misses
+   */
+  public static float box(float ox, float oy, float oz, float dx, float dy, float dz,
+      float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+    float near = 0.0f;
+    float far = Float.POSITIVE_INFINITY;
+    // x slab
+    if (dx == 0.0f) {
+      if (ox < minX || ox > maxX) {
+        return Float.POSITIVE_INFINITY;
+      }
+    } else {
+      final float t1 = (minX - ox) / dx;
+      final float t2 = (maxX - ox) / dx;
+      near = Math.max(near, Math.min(t1, t2));
+      far = Math.min(far, Math.max(t1, t2));
+    }
+    // y slab
+    if (dy == 0.0f) {
+      if (oy < minY || oy > maxY) {
+        return Float.POSITIVE_INFINITY;
+      }
+    } else {
+      final float t1 = (minY - oy) / dy;
+      final float t2 = (maxY - oy) / dy;
+      near = Math.max(near, Math.min(t1, t2));
+      far = Math.min(far, Math.max(t1, t2));
+    }
+    // z slab
+    if (dz == 0.0f) {
+      if (oz < minZ || oz > maxZ) {
+        return Float.POSITIVE_INFINITY;
+      }
+    } else {
+      final float t1 = (minZ - oz) / dz;
+      final float t2 = (maxZ - oz) / dz;
+      near = Math.max(near, Math.min(t1, t2));
+      far = Math.min(far, Math.max(t1, t2));
+    }
+    return near <= far ? near : Float.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Tests both sides of a triangle (Moller and Trumbore).
+   *
+   * @return distance to the triangle, or infinity if the ray misses it or it is behind the origin
+   */
+  public static float triangle(float ox, float oy, float oz, float dx, float dy, float dz,
+      float ax, float ay, float az, float bx, float by, float bz, float cx, float cy, float cz) {
+    final float e1x = bx - ax, e1y = by - ay, e1z = bz - az;
+    final float e2x = cx - ax, e2y = cy - ay, e2z = cz - az;
+    final float px = dy * e2z - dz * e2y;
+    final float py = dz * e2x - dx * e2z;
+    final float pz = dx * e2y - dy * e2x;
+    final float det = e1x * px + e1y * py + e1z * pz;
+    if (Math.abs(det) < EPSILON) {
+      // parallel to the triangle's plane
+      return Float.POSITIVE_INFINITY;
+    }
+    final float inv = 1.0f / det;
+    final float sx = ox - ax, sy = oy - ay, sz = oz - az;
+    final float u = (sx * px + sy * py + sz * pz) * inv;
+    if (u < 0.0f || u > 1.0f) {
+      return Float.POSITIVE_INFINITY;
+    }
+    final float qx = sy * e1z - sz * e1y;
+    final float qy = sz * e1x - sx * e1z;
+    final float qz = sx * e1y - sy * e1x;
+    final float v = (dx * qx + dy * qy + dz * qz) * inv;
+    if (v < 0.0f || u + v > 1.0f) {
+      return Float.POSITIVE_INFINITY;
+    }
+    final float t = (e2x * qx + e2y * qy + e2z * qz) * inv;
+    return t >= 0.0f ? t : Float.POSITIVE_INFINITY;
+  }
+}
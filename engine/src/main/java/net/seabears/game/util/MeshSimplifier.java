@@ -0,0 +1,345 @@
+package net.seabears.game.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.joml.Vector3f;
+
+/**
+ * Reduces the number of triangles in a mesh by collapsing edges in order of quadric error (Garland
+ * and Heckbert). Each collapse merges a vertex into one of its neighbors, so no new vertices or
+ * attributes are invented. A {@link ModelData} repeats a vertex wherever its texture coordinates or
+ * normal change; those seams and the open edges of the mesh are never moved, so the simplified mesh
+ * keeps its outline and texture layout.
+ */
+public final class MeshSimplifier {
+  private static final class Collapse implements Comparable<Collapse> {
+    private final double cost;
+    private final int vertex;
+    private final int version;
+
+    private Collapse(double cost, int vertex, int version) {
+      this.cost = cost;
+      this.vertex = vertex;
+      this.version = version;
+    }
+
+    @Override
+    public int compareTo(Collapse other) {
+      return Double.compare(cost, other.cost);
+    }
+  }
+
+  // upper triangle of a symmetric 4x4 matrix
+  private static final int QUADRIC_DOUBLES = 10;
+
+  /**
+   * @param ratio fraction of the triangles to keep
+   * @return the simplified mesh, which may have more triangles than asked for if the seams and
+   *         edges of the mesh prevent further collapses
+   */
+  public static ModelData simplify(ModelData data, float ratio) {
+    final MeshSimplifier simplifier = new MeshSimplifier(data);
+    simplifier.collapse(Math.max(1, (int) (data.getIndices().length / 3 * ratio)));
+    return simplifier.toModelData();
+  }
+
+  private final ModelData data;
+  private final float[] positions;
+  private final int[] triangles;
+  private final boolean[] triangleRemoved;
+  private final int[][] trianglesOf;
+  private final int[] triangleCountOf;
+  private final double[] quadrics;
+  private final boolean[] locked;
+  private final boolean[] removed;
+  private final int[] targets;
+  private final int[] versions;
+  private final PriorityQueue<Collapse> queue;
+  private int triangleCount;
+
+  private MeshSimplifier(ModelData data) {
+    this.data = data;
+    this.positions = data.getVertices();
+    this.triangles = data.getIndices().clone();
+    final int vertexCount = positions.length / 3;
+    this.triangleCount = triangles.length / 3;
+    this.triangleRemoved = new boolean[triangleCount];
+    this.trianglesOf = new int[vertexCount][];
+    this.triangleCountOf = new int[vertexCount];
+    this.quadrics = new double[vertexCount * QUADRIC_DOUBLES];
+    this.locked = new boolean[vertexCount];
+    this.removed = new boolean[vertexCount];
+    this.targets = new int[vertexCount];
+    this.versions = new int[vertexCount];
+    this.queue = new PriorityQueue<>();
+
+    for (int v = 0; v < vertexCount; ++v) {
+      trianglesOf[v] = new int[8];
+    }
+    for (int t = 0; t < triangleCount; ++t) {
+      for (int k = 0; k < 3; ++k) {
+        addTriangle(triangles[t * 3 + k], t);
+      }
+      addPlane(t);
+    }
+    lockSeams(vertexCount);
+    lockOpenEdges();
+    for (int v = 0; v < vertexCount; ++v) {
+      offer(v);
+    }
+  }
+
+  private void addTriangle(int vertex, int triangle) {
+    if (triangleCountOf[vertex] == trianglesOf[vertex].length) {
+      trianglesOf[vertex] = Arrays.copyOf(trianglesOf[vertex], triangleCountOf[vertex] * 2);
+    }
+    trianglesOf[vertex][triangleCountOf[vertex]++] = triangle;
+  }
+
+  /**
+   * Adds the plane of a triangle, weighted by its area, to the quadrics of its corners.
+   */
+  private void addPlane(int t) {
+    final int a = triangles[t * 3] * 3, b = triangles[t * 3 + 1] * 3, c = triangles[t * 3 + 2] * 3;
+    final double ux = positions[b] - positions[a], uy = positions[b + 1] - positions[a + 1], uz = positions[b + 2] - positions[a + 2];
+    final double vx = positions[c] - positions[a], vy = positions[c + 1] - positions[a + 1], vz = positions[c + 2] - positions[a + 2];
+    double nx = uy * vz - uz * vy, ny = uz * vx - ux * vz, nz = ux * vy - uy * vx;
+    final double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+    if (length == 0) {
+      return;
+    }
+    nx /= length;
+    ny /= length;
+    nz /= length;
+    final double d = -(nx * positions[a] + ny * positions[a + 1] + nz * positions[a + 2]);
+    final double area = length * 0.5;
+    for (int k = 0; k < 3; ++k) {
+      final int q = triangles[t * 3 + k] * QUADRIC_DOUBLES;
+      quadrics[q] += area * nx * nx;
+      quadrics[q + 1] += area * nx * ny;
+      quadrics[q + 2] += area * nx * nz;
+      quadrics[q + 3] += area * nx * d;
+      quadrics[q + 4] += area * ny * ny;
+      quadrics[q + 5] += area * ny * nz;
+      quadrics[q + 6] += area * ny * d;
+      quadrics[q + 7] += area * nz * nz;
+      quadrics[q + 8] += area * nz * d;
+      quadrics[q + 9] += area * d * d;
+    }
+  }
+
+  /**
+   * Locks vertices that share a position with another vertex, i.e. texture or normal seams.
+   */
+  private void lockSeams(int vertexCount) {
+    final Map<Vector3f, Integer> firstAt = new HashMap<>();
+    for (int v = 0; v < vertexCount; ++v) {
+      final Integer other = firstAt.putIfAbsent(new Vector3f(positions[v * 3], positions[v * 3 + 1], positions[v * 3 + 2]), v);
+      if (other != null) {
+        locked[v] = true;
+        locked[other] = true;
+      }
+    }
+  }
+
+  /**
+   * Locks vertices on edges used by only one triangle.
+   */
+  private void lockOpenEdges() {
+    final Map<Long, Integer> uses = new HashMap<>();
+    for (int t = 0; t < triangleCount; ++t) {
+      for (int k = 0; k < 3; ++k) {
+        uses.merge(edge(triangles[t * 3 + k], triangles[t * 3 + (k + 1) % 3]), 1, Integer::sum);
+      }
+    }
+    for (Map.Entry<Long, Integer> entry : uses.entrySet()) {
+      if (entry.getValue() == 1) {
+        locked[(int) (entry.getKey() >>> 32)] = true;
+        locked[(int) (long) entry.getKey()] = true;
+      }
+    }
+  }
+
+  private static long edge(int a, int b) {
+    return a < b ? (long) a << 32 | b : (long) b << 32 | a;
+  }
+
+  /**
+   * Finds the cheapest neighbor to merge a vertex into and queues the collapse.
+   */
+  private void offer(int v) {
+    ++versions[v];
+    if (locked[v] || removed[v]) {
+      return;
+    }
+    double best = Double.POSITIVE_INFINITY;
+    int target = -1;
+    for (int i = 0; i < triangleCountOf[v]; ++i) {
+      final int t = trianglesOf[v][i];
+      if (triangleRemoved[t]) {
+        continue;
+      }
+      for (int k = 0; k < 3; ++k) {
+        final int w = triangles[t * 3 + k];
+        if (w == v || w == target) {
+          continue;
+        }
+        final double cost = error(v, w);
+        if (cost < best && !flips(v, w)) {
+          best = cost;
+          target = w;
+        }
+      }
+    }
+    if (target >= 0) {
+      targets[v] = target;
+      queue.add(new Collapse(best, v, versions[v]));
+    }
+  }
+
+  /**
+   * @return error of both vertices' quadrics at the position of <code>w</code>
+   */
+  private double error(int v, int w) {
+    final double x = positions[w * 3], y = positions[w * 3 + 1], z = positions[w * 3 + 2];
+    final int a = v * QUADRIC_DOUBLES, b = w * QUADRIC_DOUBLES;
+    final double[] q = quadrics;
+    return (q[a] + q[b]) * x * x + 2 * (q[a + 1] + q[b + 1]) * x * y + 2 * (q[a + 2] + q[b + 2]) * x * z
+        + 2 * (q[a + 3] + q[b + 3]) * x + (q[a + 4] + q[b + 4]) * y * y + 2 * (q[a + 5] + q[b + 5]) * y * z
+        + 2 * (q[a + 6] + q[b + 6]) * y + (q[a + 7] + q[b + 7]) * z * z + 2 * (q[a + 8] + q[b + 8]) * z
+        + (q[a + 9] + q[b + 9]);
+  }
+
+  /**
+   * @return whether moving <code>v</code> onto <code>w</code> would turn any remaining triangle
+   *         over or flatten it
+   */
+  private boolean flips(int v, int w) {
+    for (int i = 0; i < triangleCountOf[v]; ++i) {
+      final int t = trianglesOf[v][i];
+      if (triangleRemoved[t]) {
+        continue;
+      }
+      final int a = triangles[t * 3], b = triangles[t * 3 + 1], c = triangles[t * 3 + 2];
+      if (a == w || b == w || c == w) {
+        continue;
+      }
+      final Vector3f before = normal(a, b, c, -1, -1);
+      final Vector3f after = normal(a, b, c, v, w);
+      if (after.lengthSquared() == 0 || before.dot(after) <= 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private Vector3f normal(int a, int b, int c, int from, int to) {
+    a = a == from ? to : a;
+    b = b == from ? to : b;
+    c = c == from ? to : c;
+    final Vector3f u = new Vector3f(positions[b * 3] - positions[a * 3], positions[b * 3 + 1] - positions[a * 3 + 1], positions[b * 3 + 2] - positions[a * 3 + 2]);
+    final Vector3f v = new Vector3f(positions[c * 3] - positions[a * 3], positions[c * 3 + 1] - positions[a * 3 + 1], positions[c * 3 + 2] - positions[a * 3 + 2]);
+    return u.cross(v);
+  }
+
+  private void collapse(int targetTriangles) {
+    while (triangleCount > targetTriangles && !queue.isEmpty()) {
+      final Collapse next = queue.poll();
+      final int v = next.vertex;
+      if (next.version != versions[v] || removed[v]) {
+        continue;
+      }
+      final int w = targets[v];
+      if (removed[w] || flips(v, w)) {
+        // the neighborhood changed since this collapse was queued
+        offer(v);
+        continue;
+      }
+      merge(v, w);
+      offer(w);
+      for (int i = 0; i < triangleCountOf[w]; ++i) {
+        final int t = trianglesOf[w][i];
+        if (!triangleRemoved[t]) {
+          for (int k = 0; k < 3; ++k) {
+            if (triangles[t * 3 + k] != w) {
+              offer(triangles[t * 3 + k]);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Moves every triangle of <code>v</code> onto <code>w</code>, dropping those that become
+   * degenerate.
+   */
+  private void merge(int v, int w) {
+    for (int i = 0; i < triangleCountOf[v]; ++i) {
+      final int t = trianglesOf[v][i];
+      if (triangleRemoved[t]) {
+        continue;
+      }
+      final int o = t * 3;
+      if (triangles[o] == w || triangles[o + 1] == w || triangles[o + 2] == w) {
+        triangleRemoved[t] = true;
+        --triangleCount;
+      } else {
+        for (int k = 0; k < 3; ++k) {
+          if (triangles[o + k] == v) {
+            triangles[o + k] = w;
+          }
+        }
+        addTriangle(w, t);
+      }
+    }
+    for (int i = 0; i < QUADRIC_DOUBLES; ++i) {
+      quadrics[w * QUADRIC_DOUBLES + i] += quadrics[v * QUADRIC_DOUBLES + i];
+    }
+    removed[v] = true;
+    triangleCountOf[v] = 0;
+  }
+
+  /**
+   * Copies the remaining triangles and the vertices they use into a new mesh.
+   */
+  private ModelData toModelData() {
+    final int[] remap = new int[removed.length];
+    Arrays.fill(remap, -1);
+    final int[] indices = new int[triangleCount * 3];
+    int vertexCount = 0;
+    for (int t = 0, i = 0; t < triangleRemoved.length; ++t) {
+      if (triangleRemoved[t]) {
+        continue;
+      }
+      for (int k = 0; k < 3; ++k) {
+        final int v = triangles[t * 3 + k];
+        if (remap[v] < 0) {
+          remap[v] = vertexCount++;
+        }
+        indices[i++] = remap[v];
+      }
+    }
+    final float[] newPositions = copy(positions, remap, vertexCount, 3);
+    final float[] textureCoords = copy(data.getTextureCoords(), remap, vertexCount, 2);
+    final float[] normals = copy(data.getNormals(), remap, vertexCount, 3);
+    final float[] tangents = copy(data.getTangents(), remap, vertexCount, 3);
+    return new ModelData(newPositions, textureCoords, normals, tangents, indices, data.getFurthestPoint());
+  }
+
+  private static float[] copy(float[] source, int[] remap, int count, int size) {
+    if (source == null) {
+      return null;
+    }
+    final float[] target = new float[count * size];
+    for (int v = 0; v < remap.length; ++v) {
+      if (remap[v] >= 0) {
+        System.arraycopy(source, v * size, target, remap[v] * size, size);
+      }
+    }
+    return target;
+  }
+}
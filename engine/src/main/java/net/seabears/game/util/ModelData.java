@@ -1,5 +1,7 @@
 package net.seabears.game.util;
 
+import net.seabears.game.models.Bounds;
+
 public class ModelData {
   private final float[] vertices;
   private final float[] textureCoords;
@@ -7,6 +9,7 @@ public class ModelData {
   private final float[] tangents;
   private final int[] indices;
   private final float furthestPoint;
+  private final Bounds bounds;
 
   public ModelData(float[] vertices, float[] textureCoords, float[] normals, int[] indices, float furthestPoint) {
     this(vertices, textureCoords, normals, null, indices, furthestPoint);
@@ -20,6 +23,7 @@ public class ModelData {
     this.indices = indices;
     this.furthestPoint = furthestPoint;
     this.tangents = tangents;
+    this.bounds = Bounds.of(vertices);
   }
 
   public float[] getVertices() {
@@ -46,4 +50,8 @@ public class ModelData {
     return furthestPoint;
   }
 
+  public Bounds getBounds() {
+    return bounds;
+  }
+
 }
@@ -0,0 +1,140 @@
+package net.seabears.game.entities;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.Test;
+
+import net.seabears.game.models.Bounds;
+import net.seabears.game.models.RawModel;
+import net.seabears.game.models.TexturedModel;
+import net.seabears.game.render.LodSelector;
+import net.seabears.game.render.RenderList;
+import net.seabears.game.textures.ModelTexture;
+import net.seabears.game.util.TransformationMatrix;
+
+public class EntityStoreTest {
+    private static final TexturedModel MODEL_A = new TexturedModel((RawModel) null, new ModelTexture(1, 2));
+    private static final TexturedModel MODEL_B = new TexturedModel((RawModel) null, new ModelTexture(2));
+
+    @Test
+    public void testHandlesAreReused() {
+        final EntityStore store = new EntityStore(1);
+        final Entity a = new Entity(store, new EntityTexture(MODEL_A), new Vector3f(1, 2, 3), new Vector3f(), 1.0f, null);
+        final Entity b = new Entity(store, new EntityTexture(MODEL_A), new Vector3f(4, 5, 6), new Vector3f(), 1.0f, null);
+        assertEquals(2, store.size());
+        assertEquals(new Vector3f(1, 2, 3), a.getPosition());
+        assertEquals(new Vector3f(4, 5, 6), b.getPosition());
+
+        a.release();
+        assertFalse(store.isAlive(a.getHandle()));
+        final Entity c = new Entity(store, new EntityTexture(MODEL_B), new Vector3f(), new Vector3f(), 1.0f, null);
+        assertEquals(a.getHandle(), c.getHandle());
+        assertEquals(2, store.size());
+        assertEquals(new Vector3f(4, 5, 6), b.getPosition());
+    }
+
+    @Test
+    public void testTransformationIsCached() {
+        final EntityStore store = new EntityStore();
+        final Entity entity = new Entity(store, new EntityTexture(MODEL_A, 3), new Vector3f(1, 2, 3), new Vector3f(10, 20, 30), 2.0f, null);
+        final Matrix4f expected = new TransformationMatrix(new Vector3f(1, 2, 3), new Vector3f(10, 20, 30), 2.0f).toMatrix();
+        assertMatrixEquals(expected, entity.getTransformation());
+        entity.getTransformation();
+        assertEquals(1, store.resetTransformationsBuilt());
+
+        entity.increasePosition(new Vector3f(1, 0, 0));
+        entity.increaseRotation(new Vector3f(0, 5, 0));
+        entity.increaseScale(1.0f);
+        final Matrix4f moved = new TransformationMatrix(new Vector3f(2, 2, 3), new Vector3f(10, 25, 30), 3.0f).toMatrix();
+        assertMatrixEquals(moved, entity.getTransformation());
+        assertEquals(1, store.resetTransformationsBuilt());
+
+        // atlas index 3 with 2 rows is the bottom-right cell
+        assertEquals(0.5f, entity.getTextureOffset().x, 0.0f);
+        assertEquals(0.5f, entity.getTextureOffset().y, 0.0f);
+    }
+
+    @Test
+    public void testWorldBounds() {
+        final TexturedModel model = new TexturedModel(new RawModel(0, 0, Bounds.of(new float[] {0, 0, 0, 2, 1, 1})), new ModelTexture(1));
+        final EntityStore store = new EntityStore();
+        final Entity entity = new Entity(store, new EntityTexture(model), new Vector3f(10, 0, 0), new Vector3f(0, 90, 0), 2.0f, null);
+        store.updateTransformation(entity.getHandle());
+
+        final float radius = model.getBounds().getRadius();
+        final float[] sphere = Arrays.copyOfRange(store.getSpheres(), entity.getHandle() * EntityStore.SPHERE_FLOATS, (entity.getHandle() + 1) * EntityStore.SPHERE_FLOATS);
+        assertArrayEquals(new float[] {11, 1, -2, radius * 2}, sphere, 1E-5f);
+        final float[] box = Arrays.copyOfRange(store.getBoxes(), entity.getHandle() * EntityStore.BOX_FLOATS, (entity.getHandle() + 1) * EntityStore.BOX_FLOATS);
+        assertArrayEquals(new float[] {10, 0, -4, 12, 2, 0}, box, 1E-5f);
+    }
+
+    @Test
+    public void testRenderListGroupsByModel() {
+        final EntityStore store = new EntityStore();
+        final Entity a1 = new Entity(store, new EntityTexture(MODEL_A), new Vector3f(), new Vector3f(), 1.0f, null);
+        final Entity b1 = new Entity(store, new EntityTexture(MODEL_B), new Vector3f(), new Vector3f(), 1.0f, null);
+        final Entity a2 = new Entity(store, new EntityTexture(MODEL_A), new Vector3f(), new Vector3f(), 1.0f, null);
+        final Entity none = new Entity(store, null, new Vector3f(), new Vector3f(), 1.0f, null);
+
+        final RenderList list = new RenderList(store);
+        list.add(b1.getHandle());
+        list.add(a1.getHandle());
+        list.add(none.getHandle());
+        list.add(a2.getHandle());
+        list.sort();
+
+        final int a = store.getModelId(MODEL_A);
+        final int b = store.getModelId(MODEL_B);
+        assertEquals(3, list.size());
+        assertEquals(2, list.getEnd(a) - list.getStart(a));
+        assertEquals(1, list.getEnd(b) - list.getStart(b));
+        assertEquals(b1.getHandle(), list.getHandles()[list.getStart(b)]);
+        assertEquals(a1.getHandle(), list.getHandles()[list.getStart(a)]);
+        assertEquals(a2.getHandle(), list.getHandles()[list.getStart(a) + 1]);
+        assertEquals(3, store.resetTransformationsBuilt());
+    }
+
+    @Test
+    public void testRenderListGroupsByLod() {
+        final Bounds bounds = Bounds.of(new float[] {-1, -1, -1, 1, 1, 1});
+        final RawModel[] lods = {new RawModel(0, 0, bounds), new RawModel(1, 0, bounds), new RawModel(2, 0, bounds)};
+        final TexturedModel model = new TexturedModel(lods, new ModelTexture(1));
+        final EntityStore store = new EntityStore();
+        final Entity near = new Entity(store, new EntityTexture(model), new Vector3f(0, 0, -5), new Vector3f(), 1.0f, null);
+        final Entity far = new Entity(store, new EntityTexture(model), new Vector3f(0, 0, -500), new Vector3f(), 1.0f, null);
+        // a 90 degree field of view makes the screen size radius / distance, with a radius of sqrt(3)
+        final LodSelector selector = new LodSelector(90.0f, new float[] {0.1f, 0.01f}, 0.2f);
+
+        final RenderList list = new RenderList(store);
+        list.add(far.getHandle());
+        list.add(near.getHandle());
+        list.sort(selector, new Vector3f());
+        final int id = store.getModelId(model);
+        assertEquals(near.getHandle(), list.getHandles()[list.getStart(id, 0)]);
+        assertEquals(0, list.getEnd(id, 1) - list.getStart(id, 1));
+        assertEquals(far.getHandle(), list.getHandles()[list.getStart(id, 2)]);
+        assertEquals(2, list.getEnd(id) - list.getStart(id));
+
+        // just past the threshold is not far enough to switch
+        near.place(new Vector3f(0, 0, -19));
+        list.sort(selector, new Vector3f());
+        assertEquals(0, store.getLods()[near.getHandle()]);
+        near.place(new Vector3f(0, 0, -23));
+        list.sort(selector, new Vector3f());
+        assertEquals(1, store.getLods()[near.getHandle()]);
+        near.place(new Vector3f(0, 0, -16));
+        list.sort(selector, new Vector3f());
+        assertEquals(1, store.getLods()[near.getHandle()]);
+        near.place(new Vector3f(0, 0, -5));
+        list.sort(selector, new Vector3f());
+        assertEquals(0, store.getLods()[near.getHandle()]);
+    }
+
+    private static void assertMatrixEquals(Matrix4f expected, Matrix4f actual) {
+        assertArrayEquals(expected.get(new float[16]), actual.get(new float[16]), 1E-5f);
+    }
+}
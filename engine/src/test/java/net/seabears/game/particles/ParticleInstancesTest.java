@@ -0,0 +1,93 @@
+package net.seabears.game.particles;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.Test;
+
+public class ParticleInstancesTest {
+    private static final ParticleTexture SMOKE = new ParticleTexture(1, 4);
+    private static final ParticleTexture FIRE = new ParticleTexture(2, 2, true);
+
+    /**
+     * The billboard as the renderer used to build it.
+     */
+    private static Matrix4f billboard(ParticlePool pool, int i, Matrix4f view) {
+        final Matrix4f model = new Matrix4f().translation(pool.getX(i), pool.getY(i), pool.getZ(i));
+        model.m00 = view.m00;
+        model.m01 = view.m10;
+        model.m02 = view.m20;
+        model.m10 = view.m01;
+        model.m11 = view.m11;
+        model.m12 = view.m21;
+        model.m20 = view.m02;
+        model.m21 = view.m12;
+        model.m22 = view.m22;
+        model.rotate((float) Math.toRadians(pool.getRotation(i)), new Vector3f(0.0f, 0.0f, 1.0f));
+        model.scale(pool.getScale(i));
+        return view.mul(model, new Matrix4f());
+    }
+
+    @Test
+    public void testGroupsSortsAndMatchesMatrices() {
+        final Random random = new Random(42L);
+        final int count = 10000;
+        final ParticlePool pool = new ParticlePool(count);
+        for (int i = 0; i < count; ++i) {
+            pool.emit(i % 3 == 0 ? FIRE : SMOKE, random.nextFloat() * 100.0f, random.nextFloat() * 10.0f, random.nextFloat() * 100.0f,
+                    0.0f, 1.0f, 0.0f, 0.0f, 4.0f, random.nextFloat() * 360.0f, 0.5f + random.nextFloat());
+        }
+        final ForkJoinPool executor = new ForkJoinPool(4);
+        pool.update(1.5f, executor);
+        pool.measure(new Vector3f(50.0f, 20.0f, -10.0f), executor);
+        final Matrix4f view = new Matrix4f().lookAt(50.0f, 20.0f, -10.0f, 40.0f, 0.0f, 60.0f, 0.0f, 1.0f, 0.0f);
+        final int[] visible = IntStream.range(0, count).filter(i -> i % 2 == 0).toArray();
+
+        final ParticleInstances instances = new ParticleInstances(count);
+        instances.build(pool, visible, visible.length, view, executor);
+        executor.shutdown();
+        assertEquals(2, instances.getTextureCount());
+        assertEquals(visible.length, instances.getCount(0) + instances.getCount(1));
+        assertEquals(instances.getCount(0), instances.getStart(1));
+
+        final float[] data = instances.getData();
+        final float[][] expected = new float[visible.length][16];
+        for (int v = 0; v < visible.length; ++v) {
+            billboard(pool, visible[v], view).get(expected[v]);
+        }
+        final int smoke = pool.getTextures().indexOf(SMOKE);
+        float lastDistance = Float.POSITIVE_INFINITY;
+        for (int k = 0; k < visible.length; ++k) {
+            // find the particle by its translation
+            final int p = k * ParticleInstances.FLOATS;
+            int v = 0;
+            while (Math.abs(expected[v][12] - data[p + 12]) > 1E-4f || Math.abs(expected[v][13] - data[p + 13]) > 1E-4f
+                    || Math.abs(expected[v][14] - data[p + 14]) > 1E-4f) {
+                ++v;
+            }
+            for (int m = 0; m < 16; ++m) {
+                assertEquals(expected[v][m], data[p + m], 1E-4f);
+            }
+            final int i = visible[v];
+            final int texture = pool.getTexture(i);
+            assertTrue(k >= instances.getStart(texture) && k < instances.getStart(texture) + instances.getCount(texture));
+            // smoke is sorted farthest first; fire adds up in any order
+            if (texture == smoke) {
+                assertTrue(pool.getDistance(i) <= lastDistance);
+                lastDistance = pool.getDistance(i);
+            }
+            // three eighths of the way through life on a 4x4 or 2x2 atlas
+            final int rows = texture == smoke ? 4 : 2;
+            final float progress = 0.375f * rows * rows;
+            final int stage = (int) progress;
+            assertEquals((float) (stage % rows) / rows, data[p + 16], 1E-6f);
+            assertEquals((float) (stage / rows) / rows, data[p + 17], 1E-6f);
+            assertEquals(progress - stage, data[p + 20], 1E-5f);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package net.seabears.game.particles;
+
+import static org.junit.Assert.*;
+
+import org.joml.Vector3f;
+import org.junit.Test;
+
+public class ParticlePoolTest {
+    private static final ParticleTexture SMOKE = new ParticleTexture(1, 4);
+    private static final ParticleTexture FIRE = new ParticleTexture(2, 4, true);
+
+    @Test
+    public void testMovesAndAges() {
+        final ParticlePool pool = new ParticlePool(4);
+        assertEquals(0, pool.emit(SMOKE, 1.0f, 2.0f, 3.0f, 2.0f, 10.0f, -4.0f, -4.0f, 2.0f, 45.0f, 0.5f));
+        pool.update(0.5f);
+        assertEquals(1, pool.size());
+        assertEquals(2.0f, pool.getX(0), 1E-6f);
+        // gravity acts before the move
+        assertEquals(2.0f + (10.0f - 2.0f) * 0.5f, pool.getY(0), 1E-6f);
+        assertEquals(1.0f, pool.getZ(0), 1E-6f);
+        assertEquals(0.25f, pool.getLife(0), 1E-6f);
+        assertEquals(45.0f, pool.getRotation(0), 0.0f);
+        assertEquals(0.5f, pool.getScale(0), 0.0f);
+
+        pool.measure(new Vector3f(2.0f, 6.0f, 4.0f));
+        assertEquals(9.0f, pool.getDistance(0), 1E-6f);
+    }
+
+    @Test
+    public void testDeadParticlesAreReplacedByTheLast() {
+        final ParticlePool pool = new ParticlePool(4);
+        pool.emit(SMOKE, 0.0f, 0.0f, 0.0f, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f, 1.0f);
+        pool.emit(FIRE, 1.0f, 0.0f, 0.0f, 0.0f, 0.0f, 0.0f, 0.0f, 3.0f, 0.0f, 1.0f);
+        pool.emit(SMOKE, 2.0f, 0.0f, 0.0f, 0.0f, 0.0f, 0.0f, 0.0f, 1.0f, 0.0f, 1.0f);
+        pool.emit(FIRE, 3.0f, 0.0f, 0.0f, 0.0f, 0.0f, 0.0f, 0.0f, 3.0f, 0.0f, 1.0f);
+        pool.update(1.0f);
+        assertEquals(2, pool.size());
+        assertEquals(3.0f, pool.getX(0), 0.0f);
+        assertEquals(1.0f, pool.getX(1), 0.0f);
+        assertEquals(1, pool.getTexture(0));
+        assertEquals(1, pool.getTexture(1));
+        assertSame(FIRE, pool.getTextures().get(1));
+        // survivors were each updated once
+        assertEquals(1.0f / 3.0f, pool.getLife(0), 1E-6f);
+        assertEquals(1.0f / 3.0f, pool.getLife(1), 1E-6f);
+    }
+
+    @Test
+    public void testFullPoolDropsParticles() {
+        final ParticlePool pool = new ParticlePool(2);
+        pool.emit(SMOKE, new Vector3f(), new Vector3f(), 0.0f, 1.0f, 0.0f, 1.0f);
+        pool.emit(SMOKE, new Vector3f(), new Vector3f(), 0.0f, 1.0f, 0.0f, 1.0f);
+        assertEquals(-1, pool.emit(SMOKE, new Vector3f(), new Vector3f(), 0.0f, 1.0f, 0.0f, 1.0f));
+        assertEquals(2, pool.size());
+        assertEquals(1, pool.getTextures().size());
+    }
+}
@@ -0,0 +1,124 @@
+package net.seabears.game.spatial;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.junit.Test;
+
+import net.seabears.game.entities.Entity;
+import net.seabears.game.entities.EntityStore;
+import net.seabears.game.entities.EntityTexture;
+import net.seabears.game.models.Bounds;
+import net.seabears.game.models.RawModel;
+import net.seabears.game.models.TexturedModel;
+import net.seabears.game.models.TriangleMesh;
+import net.seabears.game.textures.ModelTexture;
+import net.seabears.game.util.Frustum;
+import net.seabears.game.util.ProjectionMatrix;
+
+public class LooseOctreeTest {
+    private static final TexturedModel SMALL = new TexturedModel(new RawModel(0, 0, Bounds.of(new float[] {-1, 0, -1, 1, 2, 1})), new ModelTexture(1));
+    private static final TexturedModel LARGE = new TexturedModel(new RawModel(1, 0, Bounds.of(new float[] {-20, 0, -10, 20, 15, 10})), new ModelTexture(1));
+    // a wedge standing on its edge, with its triangles kept for picking
+    private static final float[] WEDGE = {-2, 0, 0, 2, 0, 0, 0, 4, 0, 0, 0, 3};
+    private static final TexturedModel MESH = new TexturedModel(new RawModel(2, 6, Bounds.of(WEDGE),
+            new TriangleMesh(WEDGE, new int[] {0, 1, 2, 0, 3, 2})), new ModelTexture(1));
+
+    @Test
+    public void testQueryMatchesScan() {
+        final EntityStore store = new EntityStore();
+        final EntityList entities = new EntityList(new LooseOctree(store, 500, 0, 500, 512, 6));
+        final Random random = new Random(7);
+        for (int i = 0; i < 2000; ++i) {
+            entities.add(new Entity(store, new EntityTexture(random.nextInt(10) == 0 ? LARGE : SMALL), position(random),
+                    new Vector3f(0, random.nextInt(360), 0), 0.5f + random.nextFloat(), null));
+        }
+        // some entities outside the indexed region
+        entities.add(new Entity(store, new EntityTexture(SMALL), new Vector3f(5000, 0, 5000), new Vector3f(), 1.0f, null));
+        entities.add(new Entity(store, new EntityTexture(SMALL), new Vector3f(400, 0, -300), new Vector3f(), 1.0f, null));
+
+        final Frustum frustum = frustum();
+        assertEquals(scan(store, entities, frustum), query(entities, frustum));
+
+        // move and remove some entities without rebuilding
+        for (int i = 0; i < 500; ++i) {
+            entities.get(random.nextInt(entities.size())).place(position(random));
+        }
+        for (int i = 0; i < 200; ++i) {
+            entities.remove(random.nextInt(entities.size())).release();
+        }
+        entities.get(0).increaseScale(100.0f);
+        assertEquals(scan(store, entities, frustum), query(entities, frustum));
+        assertEquals(entities.size(), entities.getIndex().size());
+    }
+
+    @Test
+    public void testRaycastMatchesScan() {
+        final EntityStore store = new EntityStore();
+        final EntityList entities = new EntityList(new LooseOctree(store, 500, 0, 500, 512, 6));
+        final Random random = new Random(11);
+        for (int i = 0; i < 2000; ++i) {
+            final TexturedModel model = random.nextInt(10) == 0 ? LARGE : random.nextBoolean() ? SMALL : MESH;
+            entities.add(new Entity(store, new EntityTexture(model), position(random),
+                    new Vector3f(0, random.nextInt(360), 0), 0.5f + random.nextFloat(), null));
+        }
+        entities.add(new Entity(store, new EntityTexture(MESH), new Vector3f(5000, 0, 5000), new Vector3f(), 1.0f, null));
+
+        int hits = 0;
+        for (int i = 0; i < 200; ++i) {
+            final Vector3f origin = new Vector3f(random.nextFloat() * 1000, 50, random.nextFloat() * 1000);
+            final Vector3f direction = new Vector3f(random.nextFloat() - 0.5f, -0.5f, random.nextFloat() - 0.5f).normalize();
+            Entity nearest = null;
+            float nearestDistance = 300.0f;
+            for (Entity entity : entities) {
+                store.updateTransformation(entity.getHandle());
+                final float distance = store.intersect(entity.getHandle(), origin.x, origin.y, origin.z, direction.x, direction.y, direction.z, 300.0f);
+                if (distance < nearestDistance) {
+                    nearest = entity;
+                    nearestDistance = distance;
+                }
+            }
+            assertSame(nearest, entities.pick(origin, direction, 300.0f));
+            hits += nearest == null ? 0 : 1;
+        }
+        assertTrue(hits > 0);
+
+        // through the wedge, which is hit on its face and missed beside it
+        final Entity wedge = entities.get(entities.size() - 1);
+        assertSame(wedge, entities.pick(new Vector3f(5000, 1, 4990), new Vector3f(0, 0, 1), 300.0f));
+        assertEquals(10.0f, entities.getIndex().getHitDistance(), 1E-4f);
+        assertNull(entities.pick(new Vector3f(5001.5f, 3.5f, 4990), new Vector3f(0, 0, 1), 300.0f));
+    }
+
+    private static Vector3f position(Random random) {
+        return new Vector3f(random.nextFloat() * 1000, random.nextFloat() * 20, random.nextFloat() * 1000);
+    }
+
+    private static Frustum frustum() {
+        final Matrix4f projection = new ProjectionMatrix(800, 600, 70.0f, 0.1f, 400.0f).toMatrix();
+        final Matrix4f view = new Matrix4f().rotateY((float) Math.toRadians(30)).translate(-500, -10, -800);
+        return new Frustum(projection.mul(view, new Matrix4f()));
+    }
+
+    private static TreeSet<Integer> scan(EntityStore store, EntityList entities, Frustum frustum) {
+        final TreeSet<Integer> visible = new TreeSet<>();
+        for (Entity entity : entities) {
+            store.updateTransformation(entity.getHandle());
+            if (store.isInside(frustum, entity.getHandle())) {
+                visible.add(entity.getHandle());
+            }
+        }
+        assertFalse(visible.isEmpty());
+        return visible;
+    }
+
+    private static TreeSet<Integer> query(EntityList entities, Frustum frustum) {
+        final TreeSet<Integer> visible = new TreeSet<>();
+        entities.query(frustum, handle -> assertTrue(visible.add(handle)));
+        return visible;
+    }
+}
@@ -0,0 +1,111 @@
+package net.seabears.game.spatial;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+public class SpatialHashTest {
+    private static final int COUNT = 1000;
+
+    @Test
+    public void testQueriesMatchScan() {
+        final SpatialHash hash = new SpatialHash(10.0f, 64);
+        final float[] spheres = new float[COUNT * 4];
+        final Random random = new Random(11);
+        for (int i = 0; i < COUNT; ++i) {
+            place(hash, spheres, i, random);
+        }
+        // move some and remove others
+        for (int i = 0; i < 300; ++i) {
+            place(hash, spheres, random.nextInt(COUNT), random);
+        }
+        final boolean[] removed = new boolean[COUNT];
+        for (int i = 0; i < 100; ++i) {
+            final int id = random.nextInt(COUNT);
+            hash.remove(id);
+            removed[id] = true;
+        }
+        int live = 0;
+        for (boolean r : removed) {
+            live += r ? 0 : 1;
+        }
+        assertEquals(live, hash.size());
+
+        final int[] out = new int[COUNT];
+        for (int q = 0; q < 50; ++q) {
+            final float x = random.nextFloat() * 200 - 100, y = random.nextFloat() * 40, z = random.nextFloat() * 200 - 100;
+            final float r = random.nextFloat() * 30;
+
+            final TreeSet<Integer> inRadius = new TreeSet<>();
+            final TreeSet<Integer> inBox = new TreeSet<>();
+            for (int i = 0; i < COUNT; ++i) {
+                if (removed[i]) {
+                    continue;
+                }
+                final int s = i * 4;
+                final float dx = spheres[s] - x, dy = spheres[s + 1] - y, dz = spheres[s + 2] - z, d = r + spheres[s + 3];
+                if (dx * dx + dy * dy + dz * dz <= d * d) {
+                    inRadius.add(i);
+                }
+                if (Math.abs(dx) <= r + spheres[s + 3] && Math.abs(dy) <= r + spheres[s + 3] && Math.abs(dz) <= r + spheres[s + 3]) {
+                    inBox.add(i);
+                }
+            }
+            assertEquals(inRadius, toSet(out, hash.queryRadius(x, y, z, r, out)));
+            assertEquals(inBox, toSet(out, hash.queryBox(x - r, y - r, z - r, x + r, y + r, z + r, out)));
+
+            final int k = 1 + random.nextInt(8);
+            final int found = hash.nearest(x, y, z, k, out);
+            assertEquals(k, found);
+            final float[] distances = new float[live];
+            for (int i = 0, j = 0; i < COUNT; ++i) {
+                if (!removed[i]) {
+                    distances[j++] = distanceSquared(spheres, i, x, y, z);
+                }
+            }
+            Arrays.sort(distances);
+            for (int i = 0; i < found; ++i) {
+                assertEquals(distances[i], distanceSquared(spheres, out[i], x, y, z), 0.0f);
+            }
+        }
+    }
+
+    @Test
+    public void testNearestWithFewItems() {
+        final SpatialHash hash = new SpatialHash(1.0f, 16);
+        final int[] out = new int[4];
+        assertEquals(0, hash.nearest(0, 0, 0, 4, out));
+        hash.insert(3, 500, 0, 0, 0);
+        hash.insert(7, -2, 0, 0, 0);
+        assertEquals(2, hash.nearest(0, 0, 0, 4, out));
+        assertEquals(7, out[0]);
+        assertEquals(3, out[1]);
+    }
+
+    private static void place(SpatialHash hash, float[] spheres, int id, Random random) {
+        final int s = id * 4;
+        spheres[s] = random.nextFloat() * 200 - 100;
+        spheres[s + 1] = random.nextFloat() * 40;
+        spheres[s + 2] = random.nextFloat() * 200 - 100;
+        spheres[s + 3] = random.nextInt(20) == 0 ? random.nextFloat() * 15 : 0.0f;
+        hash.insert(id, spheres[s], spheres[s + 1], spheres[s + 2], spheres[s + 3]);
+    }
+
+    private static float distanceSquared(float[] spheres, int id, float x, float y, float z) {
+        final int s = id * 4;
+        final float dx = spheres[s] - x, dy = spheres[s + 1] - y, dz = spheres[s + 2] - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private static TreeSet<Integer> toSet(int[] ids, int length) {
+        final TreeSet<Integer> set = new TreeSet<>();
+        for (int i = 0; i < length; ++i) {
+            assertTrue(set.add(ids[i]));
+        }
+        return set;
+    }
+}
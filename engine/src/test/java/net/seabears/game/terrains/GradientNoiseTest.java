@@ -0,0 +1,33 @@
+package net.seabears.game.terrains;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class GradientNoiseTest {
+    @Test
+    public void testBulkMatchesSingleSamples() {
+        final GradientNoise noise = new GradientNoise(42L, -1, 2, 70.0, 4, 0.4, 1.0 / 64.0);
+        final float[] block = new float[20 * 7];
+        noise.generate(block, -3, 5, 20, 7);
+        for (int z = 0; z < 7; ++z) {
+            for (int x = 0; x < 20; ++x) {
+                assertEquals(noise.generate(x - 3, z + 5), block[z * 20 + x], 1E-4f);
+            }
+        }
+    }
+
+    @Test
+    public void testSameSeedSameTerrainAndTilesLineUp() {
+        final GradientNoise a = new GradientNoise(7L, -1, 0, 70.0, 3, 0.3, 1.0 / 64.0);
+        final GradientNoise b = new GradientNoise(7L, 0, 0, 70.0, 3, 0.3, 1.0 / 64.0);
+        final GradientNoise c = new GradientNoise(7L, 0, 0, 70.0, 3, 0.3, 1.0 / 64.0);
+        boolean varies = false;
+        for (int z = 0; z < 128; ++z) {
+            assertEquals(b.generate(0, z), a.generate(127, z), 1E-4f);
+            assertEquals(b.generate(z, z), c.generate(z, z), 0.0f);
+            varies |= b.generate(z, z) != b.generate(0, 0);
+        }
+        assertTrue(varies);
+    }
+}
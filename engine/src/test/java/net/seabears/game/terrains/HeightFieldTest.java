@@ -0,0 +1,49 @@
+package net.seabears.game.terrains;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.joml.Vector3f;
+import org.junit.Test;
+
+public class HeightFieldTest {
+    private static final long[] SEEDS = {123456789L, 987654321L, 192837465L};
+
+    @Test
+    public void testNoiseMatchesReseededRandom() {
+        final FakePerlinNoise noise = new FakePerlinNoise(0, 0, 70.0, 3, 0.3, SEEDS);
+        final Random random = new Random();
+        for (int x = -5; x < 5; ++x) {
+            for (int z = -5; z < 5; ++z) {
+                double sum = 0.0;
+                for (int i = x - 1; i <= x + 1; ++i) {
+                    for (int j = z - 1; j <= z + 1; ++j) {
+                        random.setSeed(i * SEEDS[1] + j * SEEDS[2] + SEEDS[0]);
+                        sum += random.nextDouble() * 2.0 - 1.0;
+                    }
+                }
+                assertEquals(sum / 9.0, noise.getSmoothNoise(x, z), 1E-6);
+            }
+        }
+    }
+
+    @Test
+    public void testFieldMatchesGenerator() {
+        final FakePerlinNoise noise = new FakePerlinNoise(1, 0, 70.0, 3, 0.3, SEEDS, 65);
+        final HeightField field = HeightField.generate(noise, noise.getVertexCount());
+        final float[][] heights = new float[65][65];
+        final float[] normals = new float[65 * 65 * 3];
+        field.getHeights(heights);
+        field.getNormals(normals);
+        for (int x = 0; x < 65; ++x) {
+            for (int z = 0; z < 65; ++z) {
+                assertEquals(noise.generate(x, z), heights[x][z], 0.0f);
+                final Vector3f normal = new Vector3f(noise.generate(x - 1, z) - noise.generate(x + 1, z), 2.0f,
+                        noise.generate(x, z - 1) - noise.generate(x, z + 1)).normalize();
+                final int n = (x * 65 + z) * 3;
+                assertArrayEquals(new float[] {normal.x, normal.y, normal.z}, new float[] {normals[n], normals[n + 1], normals[n + 2]}, 1E-6f);
+            }
+        }
+    }
+}
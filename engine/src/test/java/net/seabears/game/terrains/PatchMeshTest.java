@@ -0,0 +1,34 @@
+package net.seabears.game.terrains;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class PatchMeshTest {
+    @Test
+    public void testPacksHeightsAndNormals() {
+        final float[] heights = new float[PatchMesh.SIDE * PatchMesh.SIDE];
+        final float[] normals = new float[heights.length * 3];
+        for (int i = 0; i < heights.length; ++i) {
+            heights[i] = 10.0f + i * 0.25f;
+            normals[i * 3] = -0.6f;
+            normals[i * 3 + 1] = 0.8f;
+        }
+        final float span = heights[heights.length - 1] - heights[0];
+        final ByteBuffer buffer = PatchMesh.pack(heights, normals, heights[0], span);
+        assertEquals(PatchMesh.VERTICES * PatchMesh.VERTEX_BYTES, buffer.remaining());
+
+        for (int v = 0; v < PatchMesh.VERTICES; ++v) {
+            final int grid = v < heights.length ? v : PatchMesh.getEdgeVertex(v - heights.length);
+            final float fraction = (buffer.getShort(v * PatchMesh.VERTEX_BYTES) & 0xffff) / 65535.0f;
+            assertEquals(heights[grid], heights[0] + fraction * span, 1E-3f);
+            // sign-extend each 10-bit field
+            final int normal = buffer.getInt(v * PatchMesh.VERTEX_BYTES + 4);
+            assertEquals(-0.6f, (normal << 22 >> 22) / 511.0f, 1E-3f);
+            assertEquals(0.8f, (normal << 12 >> 22) / 511.0f, 1E-3f);
+            assertEquals(0.0f, (normal << 2 >> 22) / 511.0f, 1E-3f);
+        }
+    }
+}
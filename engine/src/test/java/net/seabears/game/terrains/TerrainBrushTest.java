@@ -0,0 +1,122 @@
+package net.seabears.game.terrains;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TerrainBrushTest {
+    private static final int SIZE = 9;
+
+    private static float[][] flat(float height) {
+        final float[][] heights = new float[SIZE][SIZE];
+        for (float[] column : heights) {
+            Arrays.fill(column, height);
+        }
+        return heights;
+    }
+
+    @Test
+    public void testRaiseFallsOffToRim() {
+        final float[][] heights = flat(0.0f);
+        final TerrainBrush brush = new TerrainBrush(TerrainBrush.Mode.RAISE, 3.0f, 2.0f);
+        assertTrue(brush.apply(heights, 1, 1, 7, 7, 4.0f, 4.0f, 3.0f, 0.5f));
+        assertEquals(1.0f, heights[4][4], 1E-6f);
+        assertTrue(heights[5][4] < heights[4][4]);
+        assertTrue(heights[5][4] > 0.0f);
+        // outside the circle
+        assertEquals(0.0f, heights[7][7], 0.0f);
+        assertEquals(0.0f, heights[0][4], 0.0f);
+    }
+
+    @Test
+    public void testFlattenStopsAtTarget() {
+        final float[][] heights = flat(5.0f);
+        heights[4][4] = 5.5f;
+        final TerrainBrush brush = new TerrainBrush(TerrainBrush.Mode.FLATTEN, 2.0f, 10.0f);
+        // the target of a brush that has not begun a stroke is zero
+        assertTrue(brush.apply(heights, 3, 3, 5, 5, 4.0f, 4.0f, 2.0f, 0.01f));
+        assertEquals(5.4f, heights[4][4], 1E-5f);
+        brush.apply(heights, 3, 3, 5, 5, 4.0f, 4.0f, 2.0f, 10.0f);
+        assertEquals(0.0f, heights[4][4], 0.0f);
+    }
+
+    @Test
+    public void testFlattenWaitsForBegin() {
+        final int vertexCount = 9;
+        final TerrainGrid grid = new TerrainGrid();
+        final HeightField field = HeightField.generate(new GradientNoise(3L, 0, 0, 70.0, 4, 0.35, 1.0 / 32.0, vertexCount), vertexCount);
+        grid.add(new Terrain(160, 0, 0, null, null, field.getHeights(), field.getNormals()));
+        final TerrainBrush brush = new TerrainBrush(TerrainBrush.Mode.FLATTEN, 40.0f, 10.0f);
+        // returns before reaching the terrain, which would refuse to be sculpted before it is uploaded
+        assertFalse(brush.stroke(grid, 80.0f, 80.0f, 1.0f));
+        brush.begin(grid, 80.0f, 80.0f);
+        assertTrue(brush.isStroking());
+        try {
+            brush.stroke(grid, 80.0f, 80.0f, 1.0f);
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        brush.end();
+        assertFalse(brush.isStroking());
+        assertFalse(brush.stroke(grid, 80.0f, 80.0f, 1.0f));
+    }
+
+    @Test
+    public void testSmoothKeepsEdges() {
+        final float[][] heights = flat(0.0f);
+        for (int z = 0; z < SIZE; ++z) {
+            heights[0][z] = 4.0f;
+        }
+        heights[1][4] = 4.0f;
+        final TerrainBrush brush = new TerrainBrush(TerrainBrush.Mode.SMOOTH, 100.0f, 100.0f);
+        assertTrue(brush.apply(heights, 0, 0, 8, 8, 4.0f, 4.0f, 100.0f, 1.0f));
+        // averages its neighbors as they were before the stroke
+        assertEquals(1.0f, heights[1][4], 1E-3f);
+        assertEquals(1.0f, heights[2][4], 1E-3f);
+        for (int z = 0; z < SIZE; ++z) {
+            assertEquals(4.0f, heights[0][z], 0.0f);
+        }
+    }
+
+    @Test
+    public void testNormalsMatchAcrossSeam() {
+        final int vertexCount = 33;
+        final TerrainGrid grid = new TerrainGrid();
+        final float[][] fieldNormals = new float[2][];
+        for (int gridX = 0; gridX < 2; ++gridX) {
+            final HeightField field = HeightField.generate(new GradientNoise(3L, gridX, 0, 70.0, 4, 0.35, 1.0 / 32.0, vertexCount), vertexCount);
+            fieldNormals[gridX] = field.getNormals();
+            grid.add(new Terrain(320, gridX, 0, null, null, field.getHeights(), fieldNormals[gridX]));
+        }
+        final Terrain left = grid.get(0), right = grid.get(1);
+        final int last = vertexCount - 1;
+        final float[] a = new float[3], b = new float[3];
+
+        // worked out from the heights, edge normals match those generated with a border, except at
+        // the corners, which have no tile beyond them along z
+        for (int z = 1; z < last; ++z) {
+            left.getNormal(grid, last, z, a);
+            for (int c = 0; c < 3; ++c) {
+                assertEquals(fieldNormals[0][(last * vertexCount + z) * 3 + c], a[c], 1E-5f);
+            }
+        }
+
+        // a stroke across the seam changes both tiles, which still agree along it
+        final TerrainBrush brush = new TerrainBrush(TerrainBrush.Mode.RAISE, 60.0f, 20.0f);
+        assertTrue(left.reshape(brush, 330.0f, 160.0f, 1.0f));
+        assertTrue(right.reshape(brush, 330.0f, 160.0f, 1.0f));
+        boolean moved = false;
+        for (int z = 0; z <= last; ++z) {
+            left.getNormal(grid, last, z, a);
+            right.getNormal(grid, 0, z, b);
+            for (int c = 0; c < 3; ++c) {
+                assertEquals(a[c], b[c], 1E-6f);
+                moved |= Math.abs(a[c] - fieldNormals[0][(last * vertexCount + z) * 3 + c]) > 1E-3f;
+            }
+        }
+        assertTrue(moved);
+    }
+}
@@ -0,0 +1,96 @@
+package net.seabears.game.terrains;
+
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.seabears.game.textures.TerrainTexture;
+
+public class TerrainCacheTest {
+    private static final TerrainTexture BLEND_MAP = new TerrainTexture(7);
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Noise that counts the rows it has been asked for.
+     */
+    private static final class CountingNoise extends GradientNoise {
+        private final AtomicInteger rows = new AtomicInteger();
+
+        private CountingNoise(long seed, int gridX, int gridZ) {
+            super(seed, gridX, gridZ, 70.0, 4, 0.35, 1.0 / 32.0, 65);
+        }
+
+        @Override
+        public void generate(float[] out, int x0, int z0, int w, int h) {
+            rows.addAndGet(h);
+            super.generate(out, x0, z0, w, h);
+        }
+    }
+
+    @Test
+    public void testReadsBackWhatItGenerated() throws Exception {
+        final Path dir = folder.getRoot().toPath().resolve("tiles");
+        final TerrainCache cache = new TerrainCache(dir, 320, null, Collections.singletonMap("blend", BLEND_MAP)::get);
+
+        final CountingNoise first = new CountingNoise(5L, -1, 2);
+        final Terrain generated = cache.load(-1, 2, first, "blend");
+        assertTrue(first.rows.get() > 0);
+        assertTrue(Files.isRegularFile(cache.getFile(-1, 2)));
+
+        final CountingNoise second = new CountingNoise(5L, -1, 2);
+        final Terrain cached = cache.load(-1, 2, second, "blend");
+        assertEquals(0, second.rows.get());
+        assertSame(BLEND_MAP, cached.getBlendMap());
+        assertEquals(generated.getX(), cached.getX(), 0.0f);
+        assertEquals(generated.getZ(), cached.getZ(), 0.0f);
+        for (float x = -320; x < 0; x += 7.3f) {
+            for (float z = 640; z < 960; z += 7.3f) {
+                // 16-bit steps over a range of about 100
+                assertEquals(generated.getHeight(x, z), cached.getHeight(x, z), 2E-3f);
+            }
+        }
+
+        // another seed does not match the file, so the tile is generated and saved again
+        final CountingNoise reseeded = new CountingNoise(6L, -1, 2);
+        cache.load(-1, 2, reseeded, "blend");
+        assertTrue(reseeded.rows.get() > 0);
+        final CountingNoise again = new CountingNoise(6L, -1, 2);
+        cache.load(-1, 2, again, "blend");
+        assertEquals(0, again.rows.get());
+
+        // a damaged file is a miss rather than an error
+        Files.write(cache.getFile(-1, 2), new byte[] {1, 2, 3});
+        final CountingNoise damaged = new CountingNoise(6L, -1, 2);
+        cache.load(-1, 2, damaged, "blend");
+        assertTrue(damaged.rows.get() > 0);
+    }
+
+    @Test
+    public void testUnwritableDirectoryOnlyLosesCaching() throws Exception {
+        // a file where the directory should be cannot hold tiles, even for a user who can write anywhere
+        final Path dir = folder.newFile("tiles").toPath();
+        final TerrainCache cache = new TerrainCache(dir, 320, null, Collections.singletonMap("blend", BLEND_MAP)::get);
+
+        final CountingNoise first = new CountingNoise(5L, 0, 0);
+        final Terrain generated = cache.load(0, 0, first, "blend");
+        assertTrue(first.rows.get() > 0);
+        assertSame(BLEND_MAP, generated.getBlendMap());
+        assertTrue(generated.getHeight(100.0f, 100.0f) != 0.0f);
+
+        // nothing was saved, so the tile is generated again
+        final CountingNoise second = new CountingNoise(5L, 0, 0);
+        final Terrain again = cache.load(0, 0, second, "blend");
+        assertTrue(second.rows.get() > 0);
+        assertEquals(generated.getHeight(100.0f, 100.0f), again.getHeight(100.0f, 100.0f), 0.0f);
+        assertTrue(Files.isRegularFile(dir));
+    }
+}
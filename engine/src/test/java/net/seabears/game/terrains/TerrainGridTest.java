@@ -0,0 +1,113 @@
+package net.seabears.game.terrains;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+public class TerrainGridTest {
+    private static final HeightGenerator SLOPE = new HeightGenerator() {
+        @Override
+        public float generate(int x, int z) {
+            return x + 2 * z;
+        }
+
+        @Override
+        public int getVertexCount() {
+            return 17;
+        }
+    };
+
+    private static Terrain tile(int x, int z) {
+        return new Terrain(160, x, z, null, null, SLOPE);
+    }
+
+    @Test
+    public void testFindsTilesAndHeights() {
+        final TerrainGrid grid = new TerrainGrid();
+        final Terrain[] tiles = new Terrain[25];
+        for (int i = 0; i < tiles.length; ++i) {
+            tiles[i] = tile(i % 5 - 2, i / 5 - 2);
+            grid.add(tiles[i]);
+        }
+        assertSame(tiles[12], grid.find(5, 5));
+        assertSame(tiles[0], grid.find(-200, -170));
+        assertNull(grid.find(500, 0));
+
+        // a grid square is 10 wide, and the plane rises 0.1 along x and 0.2 along z
+        assertEquals(1.5f + 0.4f, grid.getHeight(15, 2), 1E-4f);
+        final float[] heights = new float[2];
+        grid.getHeights(new float[] {15, 2, 500, 0}, heights);
+        assertArrayEquals(new float[] {1.9f, 0.0f}, heights, 1E-4f);
+
+        grid.remove(tiles[12]);
+        assertNull(grid.find(5, 5));
+        for (int i = 0; i < tiles.length; ++i) {
+            if (i != 12) {
+                assertSame(tiles[i], grid.find(tiles[i].getX() + 1, tiles[i].getZ() + 1));
+            }
+        }
+    }
+
+    @Test
+    public void testRaycastHitsGround() {
+        final TerrainGrid grid = new TerrainGrid();
+        for (int i = 0; i < 9; ++i) {
+            grid.add(tile(i % 3 - 1, i / 3 - 1));
+        }
+        // straight down
+        assertEquals(100.0f - grid.getHeight(15, 2), grid.raycast(15, 100, 2, 0, -1, 0, 1000), 1E-3f);
+        // across tiles at a slant, landing on the ground
+        final float distance = grid.raycast(-150, 100, -150, 1, -0.2f, 1, 1000);
+        final float x = -150 + distance, y = 100 - 0.2f * distance, z = -150 + distance;
+        assertTrue(x > -160 && x < 320);
+        assertEquals(grid.getHeight(x, z), y, 1E-3f);
+        // and the list version agrees
+        assertEquals(distance, Terrain.raycast(new ArrayList<>(grid), -150, 100, -150, 1, -0.2f, 1, 1000), 1E-3f);
+        // out of range, off the grid and pointing up
+        assertEquals(Float.POSITIVE_INFINITY, grid.raycast(-150, 100, -150, 1, -0.2f, 1, 10), 0.0f);
+        assertEquals(Float.POSITIVE_INFINITY, grid.raycast(1000, 100, 1000, 0, -1, 0, 1000), 0.0f);
+        assertEquals(Float.POSITIVE_INFINITY, grid.raycast(15, 100, 2, 0, 1, 0, 1000), 0.0f);
+    }
+
+    @Test
+    public void testSetReplacesTiles() {
+        final TerrainGrid grid = new TerrainGrid();
+        for (int i = 0; i < 4; ++i) {
+            grid.add(tile(i % 2, i / 2));
+        }
+        final Terrain old = grid.get(3);
+        final Terrain moved = tile(2, 1);
+        assertSame(old, grid.set(3, moved));
+        assertNull(grid.find(170, 170));
+        assertSame(moved, grid.find(330, 170));
+
+        // a tile of another size, or on top of another tile, leaves the grid as it was
+        try {
+            grid.set(3, new Terrain(80, 2, 1, null, null, SLOPE));
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            grid.set(3, tile(0, 0));
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertSame(moved, grid.get(3));
+        assertSame(moved, grid.find(330, 170));
+        assertSame(grid.get(0), grid.find(5, 5));
+        assertEquals(100.0f - grid.getHeight(330, 170), grid.raycast(330, 100, 170, 0, -1, 0, 1000), 1E-3f);
+
+        // the only tile may be replaced by one of any size
+        final TerrainGrid single = new TerrainGrid();
+        single.add(tile(0, 0));
+        final Terrain small = new Terrain(80, 3, 3, null, null, SLOPE);
+        single.set(0, small);
+        assertNull(single.find(5, 5));
+        assertSame(small, single.find(245, 245));
+        assertEquals(100.0f - single.getHeight(245, 245), single.raycast(245, 100, 245, 0, -1, 0, 1000), 1E-3f);
+    }
+}
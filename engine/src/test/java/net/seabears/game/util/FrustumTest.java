@@ -2,6 +2,8 @@ package net.seabears.game.util;
 
 import static org.junit.Assert.*;
 
+import java.util.BitSet;
+
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 import org.junit.Test;
@@ -37,6 +39,52 @@ public class FrustumTest {
         assertFalse(frustum.contains(camera.getPosition(), 0.0f));
     }
 
+    @Test
+    public void testProjectionViewMatrix() {
+        final Player player = new Player(null, new Vector3f(800, 5, 0), new Vector3f(), 0.5f, null, new Volume(5, 4), 0, 0, 0, 0);
+        final Camera camera = new Camera(player);
+        camera.move();
+        final Matrix4f viewMatrix = new ViewMatrix(camera).toMatrix();
+        final Matrix4f projMatrix = new ProjectionMatrix(WIDTH, HEIGHT, FOV, NEAR_PLANE, FAR_PLANE).toMatrix();
+        final Frustum frustum = new Frustum(projMatrix.mul(viewMatrix, new Matrix4f()));
+        final Vector3f playerPosition = player.getPosition();
+        assertEquals(frustum.distance(Plane.LEFT, playerPosition), frustum.distance(Plane.RIGHT, playerPosition), 1E-3);
+        assertTrue(frustum.contains(playerPosition, 0.0f));
+        assertFalse(frustum.contains(camera.getPosition(), 0.0f));
+        assertTrue(frustum.contains(camera.getPosition(), 1.0f));
+    }
+
+    @Test
+    public void testBoxAndBatch() {
+        final Player player = new Player(null, new Vector3f(800, 5, 0), new Vector3f(), 0.5f, null, new Volume(5, 4), 0, 0, 0, 0);
+        final Camera camera = new Camera(player);
+        camera.move();
+        final Matrix4f viewMatrix = new ViewMatrix(camera).toMatrix();
+        final CameraOrientation c = new CameraOrientation(camera.getPosition(), viewMatrix, FOV, NEAR_PLANE, WIDTH / HEIGHT);
+        final Frustum frustum = new Frustum(c, NEAR_PLANE + FAR_PLANE);
+        final Vector3f p = player.getPosition();
+        final Vector3f behind = c.lookAt.mul(-10.0f, new Vector3f()).add(camera.getPosition());
+
+        assertTrue(frustum.containsBox(p.x - 1, p.y - 1, p.z - 1, p.x + 1, p.y + 1, p.z + 1));
+        assertFalse(frustum.containsBox(behind.x - 1, behind.y - 1, behind.z - 1, behind.x + 1, behind.y + 1, behind.z + 1));
+        assertTrue(frustum.containsBox(behind.x - 20, behind.y - 20, behind.z - 20, behind.x + 20, behind.y + 20, behind.z + 20));
+
+        final float[] spheres = {
+            p.x, p.y, p.z, 0.0f,
+            behind.x, behind.y, behind.z, 1.0f,
+            behind.x, behind.y, behind.z, 20.0f,
+        };
+        final int[] visible = new int[3];
+        assertEquals(2, frustum.cullSpheres(spheres, 3, visible));
+        assertEquals(0, visible[0]);
+        assertEquals(2, visible[1]);
+
+        final BitSet bits = new BitSet();
+        bits.set(1);
+        frustum.cullSpheres(spheres, 3, bits);
+        assertEquals("{0, 2}", bits.toString());
+    }
+
     private static void print(Frustum f, Vector3f pos) {
         for (Plane p : Plane.values()) {
             System.out.println(p + ":\t" + f.distance(p, pos));
@@ -0,0 +1,110 @@
+package net.seabears.game.util;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class MeshSimplifierTest {
+    @Test
+    public void testSphereStaysClosed() {
+        final ModelData sphere = sphere(24, 48);
+        final int triangles = sphere.getIndices().length / 3;
+        final ModelData simpler = MeshSimplifier.simplify(sphere, 0.25f);
+        final int left = simpler.getIndices().length / 3;
+        assertTrue(left <= triangles / 4 + 1);
+        assertTrue(left > 0);
+        assertEquals(simpler.getVertices().length / 3 * 2, simpler.getTextureCoords().length);
+        assertEquals(simpler.getVertices().length, simpler.getNormals().length);
+
+        // every edge is still shared by exactly two triangles
+        final Map<Long, Integer> edges = new HashMap<>();
+        final int[] indices = simpler.getIndices();
+        for (int t = 0; t < indices.length; t += 3) {
+            for (int k = 0; k < 3; ++k) {
+                final int a = indices[t + k], b = indices[t + (k + 1) % 3];
+                assertNotEquals(a, b);
+                edges.merge(a < b ? (long) a << 32 | b : (long) b << 32 | a, 1, Integer::sum);
+            }
+        }
+        for (int uses : edges.values()) {
+            assertEquals(2, uses);
+        }
+    }
+
+    @Test
+    public void testOpenEdgesAreKept() {
+        // flat grid: the interior can collapse to almost nothing, but the border must stay
+        final int n = 10;
+        final float[] vertices = new float[(n + 1) * (n + 1) * 3];
+        for (int z = 0; z <= n; ++z) {
+            for (int x = 0; x <= n; ++x) {
+                final int v = (z * (n + 1) + x) * 3;
+                vertices[v] = x;
+                vertices[v + 2] = z;
+            }
+        }
+        final int[] indices = new int[n * n * 6];
+        for (int z = 0, i = 0; z < n; ++z) {
+            for (int x = 0; x < n; ++x) {
+                final int v = z * (n + 1) + x;
+                indices[i++] = v;
+                indices[i++] = v + n + 1;
+                indices[i++] = v + 1;
+                indices[i++] = v + 1;
+                indices[i++] = v + n + 1;
+                indices[i++] = v + n + 2;
+            }
+        }
+        final ModelData grid = new ModelData(vertices, new float[vertices.length / 3 * 2], new float[vertices.length], indices, n);
+        final ModelData simpler = MeshSimplifier.simplify(grid, 0.1f);
+        assertTrue(simpler.getIndices().length < indices.length);
+        assertEquals(4 * n, simpler.getVertices().length / 3);
+        assertEquals(0.0f, simpler.getBounds().getMinX(), 0.0f);
+        assertEquals(n, simpler.getBounds().getMaxZ(), 0.0f);
+    }
+
+    private static ModelData sphere(int rings, int segments) {
+        final int vertexCount = 2 + (rings - 1) * segments;
+        final float[] vertices = new float[vertexCount * 3];
+        vertices[1] = 1;
+        vertices[(vertexCount - 1) * 3 + 1] = -1;
+        for (int r = 1; r < rings; ++r) {
+            final double phi = Math.PI * r / rings;
+            for (int s = 0; s < segments; ++s) {
+                final double theta = 2 * Math.PI * s / segments;
+                final int v = (1 + (r - 1) * segments + s) * 3;
+                vertices[v] = (float) (Math.sin(phi) * Math.cos(theta));
+                vertices[v + 1] = (float) Math.cos(phi);
+                vertices[v + 2] = (float) (Math.sin(phi) * Math.sin(theta));
+            }
+        }
+        final int[] indices = new int[segments * 6 * (rings - 1)];
+        int i = 0;
+        for (int s = 0; s < segments; ++s) {
+            final int next = (s + 1) % segments;
+            indices[i++] = 0;
+            indices[i++] = 1 + next;
+            indices[i++] = 1 + s;
+            indices[i++] = vertexCount - 1;
+            indices[i++] = 1 + (rings - 2) * segments + s;
+            indices[i++] = 1 + (rings - 2) * segments + next;
+        }
+        for (int r = 1; r < rings - 1; ++r) {
+            final int top = 1 + (r - 1) * segments, bottom = top + segments;
+            for (int s = 0; s < segments; ++s) {
+                final int next = (s + 1) % segments;
+                indices[i++] = top + s;
+                indices[i++] = top + next;
+                indices[i++] = bottom + s;
+                indices[i++] = top + next;
+                indices[i++] = bottom + next;
+                indices[i++] = bottom + s;
+            }
+        }
+        // normals equal positions on a unit sphere
+        return new ModelData(vertices, new float[vertexCount * 2], vertices.clone(), indices, 1.0f);
+    }
+}
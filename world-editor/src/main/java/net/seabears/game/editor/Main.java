@@ -9,7 +9,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Random;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
@@ -37,8 +36,11 @@ import net.seabears.game.render.FrameBuffer;
 import net.seabears.game.render.Loader;
 import net.seabears.game.skybox.Skybox;
 import net.seabears.game.skybox.SkyboxRenderer;
-import net.seabears.game.terrains.FakePerlinNoise;
+import net.seabears.game.spatial.EntityList;
+import net.seabears.game.terrains.GradientNoise;
 import net.seabears.game.terrains.Terrain;
+import net.seabears.game.terrains.TerrainBrush;
+import net.seabears.game.terrains.TerrainGrid;
 import net.seabears.game.textures.ModelTexture;
 import net.seabears.game.textures.TerrainTexture;
 import net.seabears.game.textures.TerrainTexturePack;
@@ -55,10 +57,16 @@ public class Main extends App {
   private static final float FOV = 70.0f;
   private static final float NEAR_PLANE = 0.1f;
   private static final float FAR_PLANE = 1000.0f;
+  private static final int MODEL_LODS = 3;
+  // the same seed gives the same terrain every run
+  private static final long TERRAIN_SEED = 20160101L;
+  private static final double TERRAIN_FREQUENCY = 1.0 / 32.0;
   private static final float GRAVITY = -32.0f;
   private static final Vector3f SKY_COLOR = new Vector3f(0.5f);
   private static final long DAY_LENGTH_MS = TimeUnit.HOURS.toMillis(1L);
   private static final float MAX_TERRAIN_RANGE = 600.0f;
+  // number keys 1 to 4 pick a brush; 0 goes back to placing entities
+  private static final TerrainBrush.Mode[] BRUSHES = TerrainBrush.Mode.values();
 
   private Camera camera;
   private Player player;
@@ -66,9 +74,13 @@ public class Main extends App {
   private GuiPicker guiPicker;
   private MousePicker mousePicker;
   private float debounce;
-  private final List<Entity> entities = new ArrayList<>();
-  private final List<Entity> nmEntities = new ArrayList<>();
-  private final List<Terrain> terrains = new ArrayList<>();
+  private Entity selected;
+  private boolean wasPressed;
+  private boolean sculpting;
+  private final TerrainBrush brush = new TerrainBrush(TerrainBrush.Mode.RAISE, 20.0f, 10.0f);
+  private final List<Entity> entities = new EntityList();
+  private final List<Entity> nmEntities = new EntityList();
+  private final List<Terrain> terrains = new TerrainGrid();
   private final List<WaterTile> water = new ArrayList<>();
   private final List<Light> lights = new ArrayList<>();
   private final Map<EntityTexture, GuiTexture> menuGuis = new HashMap<>();
@@ -90,29 +102,25 @@ public class Main extends App {
     /*
      * models
      */
-    final TexturedModel stall = new TexturedModel(loader.loadToVao(ObjFileLoader.load("stall")),
+    final TexturedModel stall = new TexturedModel(loader.loadToVao(ObjFileLoader.load("stall"), MODEL_LODS),
         new ModelTexture(loader.loadTexture("stall"), 1.0f, 10.0f));
     final TexturedModel lamp = new TexturedModel(loader.loadToVao(ObjFileLoader.load("lamp")),
         new ModelTexture(loader.loadTexture("lamp"), 1.0f, 5.0f));
-    final TexturedModel tree = new TexturedModel(loader.loadToVao(ObjFileLoader.load("pine")),
+    final TexturedModel tree = new TexturedModel(loader.loadToVao(ObjFileLoader.load("pine"), MODEL_LODS),
         new ModelTexture(loader.loadTexture("pine"), true, true));
-    final TexturedModel lowPolyTree = new TexturedModel(loader.loadToVao(ObjFileLoader.load("lowPolyTree")),
+    final TexturedModel lowPolyTree = new TexturedModel(loader.loadToVao(ObjFileLoader.load("lowPolyTree"), MODEL_LODS),
         new ModelTexture(loader.loadTexture("lowPolyTree"), 2));
-    final TexturedModel fern = new TexturedModel(loader.loadToVao(ObjFileLoader.load("fern")),
+    final TexturedModel fern = new TexturedModel(loader.loadToVao(ObjFileLoader.load("fern"), MODEL_LODS),
         new ModelTexture(loader.loadTexture("fern"), 2, true, true));
 
     /*
      * terrains
      */
     final TerrainTexturePack terrainPack = new TerrainTexturePack(
-            new TerrainTexture(loader.loadTexture("grass")),
-            new TerrainTexture(loader.loadTexture("mud")),
-            new TerrainTexture(loader.loadTexture("grass-flowers")),
-            new TerrainTexture(loader.loadTexture("tile-path")));
-    final TerrainTexture terrainBlend = new TerrainTexture(loader.loadTexture("blend-map"));
-    final long[] seeds = FakePerlinNoise.makeSeeds();
-    terrains.add(new Terrain(0, 0, loader, terrainPack, terrainBlend, new FakePerlinNoise(0, 0, 70.0, 3, 0.3, new Random(), seeds)));
-    terrains.add(new Terrain(1, 0, loader, terrainPack, terrainBlend, new FakePerlinNoise(1, 0, 70.0, 3, 0.3, new Random(), seeds)));
+            loader.loadTextureArray("grass", "mud", "grass-flowers", "tile-path"));
+    final TerrainTexture terrainBlend = new TerrainTexture(loader.loadTextureArray("blend-map"), 0);
+    terrains.add(new Terrain(0, 0, loader, terrainPack, terrainBlend, new GradientNoise(TERRAIN_SEED, 0, 0, 70.0, 4, 0.35, TERRAIN_FREQUENCY)));
+    terrains.add(new Terrain(1, 0, loader, terrainPack, terrainBlend, new GradientNoise(TERRAIN_SEED, 1, 0, 70.0, 4, 0.35, TERRAIN_FREQUENCY)));
 
     /*
      * player
@@ -163,7 +171,9 @@ public class Main extends App {
       final FrameBuffer fb = new FrameBuffer(display.getWidth(), display.getHeight(), display.getWidth(), display.getHeight(), true);
       fbs.add(fb);
       fb.bind();
-      renderer.render(Collections.singletonList(new Entity(texture.getKey(), new Vector3f(), new Vector3f(), texture.getValue())), fakeViewMatrix);
+      final Entity thumbnail = new Entity(texture.getKey(), new Vector3f(), new Vector3f(), texture.getValue());
+      renderer.render(Collections.singletonList(thumbnail), fakeViewMatrix);
+      thumbnail.release();
       fb.unbind(display.getWidth(), display.getHeight());
       guiBuilder.add(texture.getKey(), fb.getTexture());
     }
@@ -245,7 +255,8 @@ public class Main extends App {
   @Override
   protected Function<EntityTexture, Optional<Object>> getGuiAction() {
     return t -> {
-      entities.add(new Entity(t, new Vector3f(), new Vector3f(), 1.0f));
+      selected = new Entity(t, new Vector3f(), new Vector3f(), 1.0f);
+      entities.add(selected);
       return Optional.empty();
     };
   }
@@ -253,7 +264,9 @@ public class Main extends App {
   @Override
   protected Function<Vector3f, Optional<Object>> getMouseAction() {
     return p -> {
-      entities.get(entities.size() - 1).place(p);
+      if (selected != null) {
+        selected.place(p);
+      }
       return Optional.empty();
     };
   }
@@ -263,50 +276,61 @@ public class Main extends App {
     // GUI picker to create new entities in the scene
     final boolean guiActive = guiPicker.update(display.getWidth(), display.getHeight());
     guiPicker.getSelection().map(t -> {
-      entities.add(new Entity(t, new Vector3f(), savedRotation.getOrDefault(t, new Vector3f()), savedScale.getOrDefault(t, 1.0f)));
+      selected = new Entity(t, new Vector3f(), savedRotation.getOrDefault(t, new Vector3f()), savedScale.getOrDefault(t, 1.0f));
+      entities.add(selected);
       return null;
     });
 
-    // mouse picker to move the previously created entity
+    // mouse picker to select an entity by clicking it, then drag it over the terrain
     mousePicker.update(display.getWidth(), display.getHeight(), viewMatrix);
-    if (!guiActive) {
-      mousePicker.findTerrainPoint(getTerrain(), MAX_TERRAIN_RANGE).map(p -> {
-        if (!entities.isEmpty()) {
-          entities.get(entities.size() - 1).place(p);
-        }
-        return null;
-      });
+    final boolean pressed = MouseButton.LEFT.isPressed();
+    final int tool = getActions().number.get();
+    final boolean wasSculpting = sculpting;
+    sculpting = tool > 0 && tool <= BRUSHES.length;
+    if (sculpting) {
+      // picking a brush lets go of the selection, though entities added from the GUI stay selected
+      if (!wasSculpting) {
+        selected = null;
+      }
+      sculpt(tool, pressed && !guiActive, secondsDelta);
+    } else if (!guiActive) {
+      final Optional<Entity> clicked = pressed && !wasPressed ? mousePicker.findEntity(entities, MAX_TERRAIN_RANGE) : Optional.empty();
+      if (clicked.isPresent()) {
+        selected = clicked.get();
+      } else if (selected != null) {
+        mousePicker.findTerrainPoint(getTerrain(), MAX_TERRAIN_RANGE).ifPresent(p -> selected.place(p));
+      }
     }
+    wasPressed = pressed;
 
-    // modify last entity
-    if (!entities.isEmpty()) {
-      final int index = entities.size() - 1;
+    // modify selected entity
+    if (selected != null) {
       boolean changed = false;
 
       // scale
       if (getDirections().up.get()) {
-        entities.get(index).increaseScale(1.0f * secondsDelta);
+        selected.increaseScale(1.0f * secondsDelta);
         changed = true;
       }
       if (getDirections().down.get()) {
-        entities.get(index).increaseScale(-1.0f * secondsDelta);
+        selected.increaseScale(-1.0f * secondsDelta);
         changed = true;
       }
 
       // rotate
       if (getDirections().right.get()) {
-        entities.get(index).increaseRotation(new Vector3f(0.0f, 10.0f * secondsDelta, 0.0f));
+        selected.increaseRotation(new Vector3f(0.0f, 10.0f * secondsDelta, 0.0f));
         changed = true;
       }
       if (getDirections().left.get()) {
-        entities.get(index).increaseRotation(new Vector3f(0.0f, -10.0f * secondsDelta, 0.0f));
+        selected.increaseRotation(new Vector3f(0.0f, -10.0f * secondsDelta, 0.0f));
         changed = true;
       }
 
       if (changed) {
-        final EntityTexture tex = entities.get(index).getTexture();
-        savedRotation.put(tex, entities.get(index).getRotation());
-        savedScale.put(tex, entities.get(index).getScale());
+        final EntityTexture tex = selected.getTexture();
+        savedRotation.put(tex, new Vector3f(selected.getRotation()));
+        savedScale.put(tex, selected.getScale());
       }
 
       // remove
@@ -314,7 +338,9 @@ public class Main extends App {
       if (getActions().delete.get()) {
         // delete at most one entity per second
         if (debounce == 0.0f || secondsDelta + debounce >= 1.0f) {
-          entities.remove(index);
+          entities.remove(selected);
+          selected.release();
+          selected = null;
           debounce = 0.0f;
         }
         debounce += secondsDelta;
@@ -324,6 +350,31 @@ public class Main extends App {
     }
   }
 
+  /**
+   * Sculpts the terrain under the mouse while the button is held. The up and down keys resize the
+   * brush.
+   */
+  private void sculpt(int tool, boolean pressed, float secondsDelta) {
+    brush.setMode(BRUSHES[tool - 1]);
+    if (getDirections().up.get()) {
+      brush.setRadius(brush.getRadius() + 10.0f * secondsDelta);
+    }
+    if (getDirections().down.get()) {
+      brush.setRadius(Math.max(1.0f, brush.getRadius() - 10.0f * secondsDelta));
+    }
+    if (pressed) {
+      // a drag may start off the terrain, so the stroke begins wherever it first touches the ground
+      mousePicker.findTerrainPoint(getTerrain(), MAX_TERRAIN_RANGE).ifPresent(p -> {
+        if (!brush.isStroking()) {
+          brush.begin(terrains, p.x, p.z);
+        }
+        brush.stroke(terrains, p.x, p.z, secondsDelta);
+      });
+    } else {
+      brush.end();
+    }
+  }
+
   @Override
   protected void close() {
     fbs.forEach(fb -> fb.close());